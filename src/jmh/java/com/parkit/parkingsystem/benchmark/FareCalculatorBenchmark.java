@@ -0,0 +1,73 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.TariffEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FareCalculatorService#calculateFare(Ticket, boolean)} and the
+ * {@link TariffEngine} quote in cents behind it, for both vehicle types, under
+ * the free half hour, a bit over an hour and a full day.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FareCalculatorBenchmark {
+
+	@Param({ "CAR", "BIKE" })
+	public ParkingType parkingType;
+
+	@Param({ "20", "75", "1440" })
+	public int minutes;
+
+	@Param({ "false", "true" })
+	public boolean discount;
+
+	private final FareCalculatorService fareCalculatorService = new FareCalculatorService();
+	private final TariffEngine tariffEngine = TariffEngine.defaultTariffs();
+	private Ticket ticket;
+	private long inMillis;
+	private long outMillis;
+
+	@Setup
+	public void setUp() {
+		long outTime = System.currentTimeMillis();
+		ticket = new Ticket();
+		ticket.setParkingSpot(new ParkingSpot(1, parkingType, false));
+		ticket.setVehicleRegNumber("ABCDEF");
+		ticket.setInTime(new Date(outTime - minutes * 60L * 1000L));
+		ticket.setOutTime(new Date(outTime));
+		inMillis = ticket.getInTime().getTime();
+		outMillis = outTime;
+	}
+
+	@Benchmark
+	public double calculateFare() {
+		fareCalculatorService.calculateFare(ticket, discount);
+		return ticket.getPrice();
+	}
+
+	@Benchmark
+	public long quoteCents() {
+		return tariffEngine.quote(parkingType, inMillis, outMillis, discount);
+	}
+}
@@ -0,0 +1,111 @@
+package com.parkit.parkingsystem.benchmark;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.config.builder.api.AppenderComponentBuilder;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilder;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilderFactory;
+import org.apache.logging.log4j.core.config.builder.api.RootLoggerComponentBuilder;
+import org.apache.logging.log4j.core.config.builder.impl.BuiltConfiguration;
+import org.apache.logging.log4j.util.Unbox;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost to the gate threads of the logging of one vehicle exit, with the
+ * logging of the DAOs before and after it was reworked, each through a
+ * synchronous or an asynchronous logger writing to a file with the pattern of
+ * {@code log4j2.properties}.
+ * <p>
+ * {@code chatterPerStatement} is the former logging: an INFO line built by
+ * concatenation for each connection, statement and result set closed, seven
+ * for an exit. {@code transactionSummary} is the current one: a single
+ * parameterized line per exit, the chatter being sampled at DEBUG and so off.
+ * With the asynchronous logger, once the ring buffer is full because the file
+ * is slower than the gates, INFO events are dropped rather than waited for, as
+ * configured in {@code log4j2.component.properties}; run with
+ * {@code -prof gc} to also compare the allocation rates.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class LoggingBenchmark {
+
+	private static final String PATTERN = "%d{yyyy-MM-dd HH:mm:ss} [%t] %-5level %logger{36} - %msg%n";
+
+	@Param({ "sync", "async" })
+	public String mode;
+
+	private Path file;
+	private LoggerContext context;
+	private Logger dataBaseLogger;
+	private Logger transactionLogger;
+
+	@Setup
+	public void setUp() throws Exception {
+		file = Files.createTempFile("logging-benchmark", ".log");
+		ConfigurationBuilder<BuiltConfiguration> builder = ConfigurationBuilderFactory.newConfigurationBuilder();
+		builder.setConfigurationName("logging-benchmark-" + mode);
+		builder.setStatusLevel(Level.WARN);
+		AppenderComponentBuilder appender = builder.newAppender("File", "File")
+				.addAttribute("fileName", file.toString()).addAttribute("append", false)
+				.add(builder.newLayout("PatternLayout").addAttribute("pattern", PATTERN));
+		builder.add(appender);
+		RootLoggerComponentBuilder root = "async".equals(mode) ? builder.newAsyncRootLogger(Level.INFO)
+				: builder.newRootLogger(Level.INFO);
+		builder.add(root.add(builder.newAppenderRef("File")));
+
+		context = new LoggerContext("logging-benchmark-" + mode);
+		context.start(builder.build());
+		dataBaseLogger = context.getLogger("DataBaseConfig");
+		transactionLogger = context.getLogger("GateTransaction");
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		context.stop();
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public void chatterPerStatement() {
+		// getActiveTicket, getNbTicket, then the exit transaction
+		dataBaseLogger.info("Create DB connection");
+		dataBaseLogger.info("Closing Result Set");
+		dataBaseLogger.info("Closing Prepared Statement");
+		dataBaseLogger.info("Closing DB connection");
+		dataBaseLogger.info("Create DB connection");
+		dataBaseLogger.info("Closing Prepared Statement");
+		dataBaseLogger.info("Closing DB connection " + "ABCDEF" + " nbTicket :" + 2);
+	}
+
+	@Benchmark
+	public void transactionSummary() {
+		dataBaseLogger.debug("Create DB connection (1 in {} logged)", Unbox.box(100));
+		transactionLogger.info(
+				"operation=exit vehicle={} spot={} ticket={} status={} price={} discounted={} fareMicros={} micros={}",
+				"ABCDEF", Unbox.box(1), Unbox.box(42), "OK", Unbox.box(1.425), Unbox.box(true), Unbox.box(3L),
+				Unbox.box(850L));
+	}
+}
@@ -0,0 +1,121 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingStorage;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full {@link ParkingService} cycle, a vehicle entering then leaving, at 1, 8
+ * and 64 gates, against the {@link StandInDataBaseConfig stand-in database} or
+ * the in-memory storage backend.
+ * <p>
+ * Every gate uses its own vehicles, a quarter of them bikes. The lot has more
+ * spots than gates, so a cycle never fails for lack of space; above
+ * {@code parkit.db.pool.maxSize} gates, they also wait for a connection.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParkingServiceBenchmark {
+
+	private static final int VEHICLES_PER_GATE = 500;
+
+	@Param({ ParkingStorage.JDBC, ParkingStorage.MEMORY })
+	public String backend;
+
+	private final StandInDataBaseConfig dataBaseConfig = new StandInDataBaseConfig("parking-service-bench");
+	private ParkingService parkingService;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		ParkingStorage parkingStorage;
+		if (ParkingStorage.MEMORY.equals(backend)) {
+			parkingStorage = ParkingStorage.inMemory(StandInDataBaseConfig.CAR_SPOTS, StandInDataBaseConfig.BIKE_SPOTS);
+		} else {
+			dataBaseConfig.createSchema();
+			parkingStorage = ParkingStorage.jdbc(dataBaseConfig);
+		}
+		parkingService = new ParkingService(null, parkingStorage);
+		parkingStorage.warmUp();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		if (ParkingStorage.JDBC.equals(backend)) {
+			dataBaseConfig.getConnectionPool().close();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Gate {
+		private int gate;
+		private int next;
+
+		@Setup(Level.Trial)
+		public void setUp(ThreadParams threadParams) {
+			gate = threadParams.getThreadIndex();
+		}
+
+		String nextVehicle() {
+			next = (next + 1) % VEHICLES_PER_GATE;
+			return String.format("G%02dV%04d", gate, next);
+		}
+
+		ParkingType parkingType() {
+			return next % 4 == 0 ? ParkingType.BIKE : ParkingType.CAR;
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public boolean entryExitCycle1Gate(Gate gate) {
+		return cycle(gate);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public boolean entryExitCycle8Gates(Gate gate) {
+		return cycle(gate);
+	}
+
+	@Benchmark
+	@Threads(64)
+	public boolean entryExitCycle64Gates(Gate gate) {
+		return cycle(gate);
+	}
+
+	private boolean cycle(Gate gate) {
+		String vehicleRegNumber = gate.nextVehicle();
+		Instant inTime = Instant.now();
+		EntryResult entry = parkingService.enter(vehicleRegNumber, gate.parkingType(), inTime);
+		if (!entry.isSuccess()) {
+			return false;
+		}
+		ExitResult exit = parkingService.exit(vehicleRegNumber, inTime.plusSeconds(3600));
+		return exit.isSuccess();
+	}
+}
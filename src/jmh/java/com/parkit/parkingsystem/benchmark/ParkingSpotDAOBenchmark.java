@@ -0,0 +1,83 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every public {@link ParkingSpotDAO} method against the
+ * {@link StandInDataBaseConfig stand-in database}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParkingSpotDAOBenchmark {
+
+	private final StandInDataBaseConfig dataBaseConfig = new StandInDataBaseConfig("parking-spot-dao-bench");
+	private ParkingSpotDAO parkingSpotDAO;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		dataBaseConfig.createSchema();
+		parkingSpotDAO = new ParkingSpotDAO();
+		parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+		parkingSpotDAO.resyncFreeSpots();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		dataBaseConfig.getConnectionPool().close();
+	}
+
+	@Benchmark
+	public int getNextAvailableSlot() {
+		return parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR);
+	}
+
+	/**
+	 * Claims a spot and frees it again, so the lot never fills up.
+	 */
+	@Benchmark
+	public boolean claimAndReleaseSlot() {
+		int parkingNumber = parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR);
+		return parkingNumber > 0
+				&& parkingSpotDAO.updateParking(new ParkingSpot(parkingNumber, ParkingType.CAR, true));
+	}
+
+	@Benchmark
+	public boolean updateParking() {
+		return parkingSpotDAO.updateParking(new ParkingSpot(StandInDataBaseConfig.CAR_SPOTS, ParkingType.CAR, true));
+	}
+
+	@Benchmark
+	public boolean resyncFreeSpots() {
+		return parkingSpotDAO.resyncFreeSpots();
+	}
+
+	@Benchmark
+	public int getFreeSpotCount() {
+		return parkingSpotDAO.getFreeSpotCount(ParkingType.CAR);
+	}
+
+	@Benchmark
+	public int getSpotCount() {
+		return parkingSpotDAO.getSpotCount(ParkingType.CAR);
+	}
+}
@@ -0,0 +1,89 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Properties;
+
+/**
+ * In-process H2 database in MySQL mode standing in for the MySQL server in the
+ * benchmarks, with the schema of {@code Data.sql} and migrations V1, V2 and V4.
+ * <p>
+ * The numbers it gives are not MySQL latencies: they measure the code path of
+ * the DAOs (pooling, statements, caches, transactions) without network or disk,
+ * which is what a regression in this code changes.
+ * </p>
+ */
+public class StandInDataBaseConfig extends DataBaseConfig {
+
+	public static final int CAR_SPOTS = 150;
+	public static final int BIKE_SPOTS = 50;
+
+	private final String name;
+
+	public StandInDataBaseConfig(String name) {
+		this.name = name;
+	}
+
+	@Override
+	protected String getUrl() {
+		return "jdbc:h2:mem:" + name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+	}
+
+	// H2 rejects the MySQL driver properties
+	@Override
+	protected Properties getConnectionProperties() {
+		return new Properties();
+	}
+
+	@Override
+	protected String getUser() {
+		return "sa";
+	}
+
+	@Override
+	protected String getPassword() {
+		return "";
+	}
+
+	/**
+	 * Drops and recreates the tables, with {@link #CAR_SPOTS} car spots followed
+	 * by {@link #BIKE_SPOTS} bike spots, all free.
+	 */
+	public void createSchema() throws Exception {
+		Connection con = getConnection();
+		try {
+			execute(con, "drop table if exists ticket");
+			execute(con, "drop table if exists parking");
+			execute(con, "drop table if exists vehicle_stats");
+			execute(con, "drop table if exists ticket_rollup_hourly");
+			execute(con, "create table parking(PARKING_NUMBER int PRIMARY KEY, AVAILABLE bool NOT NULL, "
+					+ "TYPE varchar(10) NOT NULL)");
+			execute(con, "create table ticket(ID int PRIMARY KEY AUTO_INCREMENT, PARKING_NUMBER int NOT NULL, "
+					+ "VEHICLE_REG_NUMBER varchar(10) NOT NULL, PRICE double, IN_TIME DATETIME NOT NULL, "
+					+ "OUT_TIME DATETIME, FOREIGN KEY (PARKING_NUMBER) REFERENCES parking(PARKING_NUMBER))");
+			execute(con, "create table vehicle_stats(VEHICLE_REG_NUMBER varchar(10) PRIMARY KEY, "
+					+ "VISIT_COUNT int NOT NULL)");
+			execute(con, "create table ticket_rollup_hourly(HOUR_START DATETIME NOT NULL, TYPE varchar(10) NOT NULL, "
+					+ "ENTRIES int NOT NULL DEFAULT 0, EXITS int NOT NULL DEFAULT 0, REVENUE double NOT NULL DEFAULT 0, "
+					+ "TOTAL_DURATION_MILLIS bigint NOT NULL DEFAULT 0, PEAK_OCCUPANCY int NOT NULL DEFAULT 0, "
+					+ "PRIMARY KEY (HOUR_START, TYPE))");
+			execute(con, "create index idx_ticket_vehicle_in_time on ticket (VEHICLE_REG_NUMBER, IN_TIME)");
+			execute(con, "create index idx_ticket_open on ticket (OUT_TIME, VEHICLE_REG_NUMBER)");
+			execute(con, "create index idx_parking_type_available on parking (TYPE, AVAILABLE, PARKING_NUMBER)");
+			for (int spot = 1; spot <= CAR_SPOTS + BIKE_SPOTS; spot++) {
+				execute(con, "insert into parking(PARKING_NUMBER, AVAILABLE, TYPE) values(" + spot + ", true, '"
+						+ (spot <= CAR_SPOTS ? "CAR" : "BIKE") + "')");
+			}
+		} finally {
+			closeConnection(con);
+		}
+	}
+
+	private static void execute(Connection con, String sql) throws Exception {
+		Statement statement = con.createStatement();
+		statement.execute(sql);
+		statement.close();
+	}
+}
@@ -0,0 +1,156 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every public {@link TicketDAO} method against the
+ * {@link StandInDataBaseConfig stand-in database}, holding
+ * {@value #HISTORY_VEHICLES} vehicles with past tickets and
+ * {@value #PARKED_VEHICLES} parked vehicles.
+ * <p>
+ * Methods served by the in-memory caches are measured both on a hit and, where
+ * the database can still be read, on a miss.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TicketDAOBenchmark {
+
+	static final int HISTORY_VEHICLES = 1000;
+	static final int PARKED_VEHICLES = 100;
+
+	private final StandInDataBaseConfig dataBaseConfig = new StandInDataBaseConfig("ticket-dao-bench");
+	private TicketDAO ticketDAO;
+	private TicketDAO uncachedTicketDAO;
+	private int[] historyTicketIds;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		dataBaseConfig.createSchema();
+		ticketDAO = new TicketDAO();
+		ticketDAO.dataBaseConfig = dataBaseConfig;
+		long now = System.currentTimeMillis();
+		historyTicketIds = new int[HISTORY_VEHICLES];
+		for (int i = 0; i < HISTORY_VEHICLES; i++) {
+			Ticket ticket = ticket(historyPlate(i), new Date(now - 7200000L), new Date(now - 3600000L));
+			ticketDAO.saveTicket(ticket);
+			historyTicketIds[i] = ticket.getId();
+		}
+		for (int i = 0; i < PARKED_VEHICLES; i++) {
+			ticketDAO.saveTicket(ticket(parkedPlate(i), new Date(now - 3600000L), null));
+		}
+		ticketDAO.loadActiveTickets();
+
+		// a second DAO whose visit counter cache is emptied before every call
+		uncachedTicketDAO = new TicketDAO();
+		uncachedTicketDAO.dataBaseConfig = dataBaseConfig;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		dataBaseConfig.getConnectionPool().close();
+	}
+
+	@State(Scope.Thread)
+	public static class Vehicles {
+		private int next;
+
+		int nextIndex(int bound) {
+			next = (next + 1) % bound;
+			return next;
+		}
+	}
+
+	@Benchmark
+	public boolean saveTicket(Vehicles vehicles) {
+		long now = System.currentTimeMillis();
+		return ticketDAO.saveTicket(
+				ticket(historyPlate(vehicles.nextIndex(HISTORY_VEHICLES)), new Date(now - 60000L), new Date(now)));
+	}
+
+	@Benchmark
+	public boolean updateTicket(Vehicles vehicles) {
+		int i = vehicles.nextIndex(HISTORY_VEHICLES);
+		Ticket ticket = ticket(historyPlate(i), new Date(0L), new Date());
+		ticket.setId(historyTicketIds[i]);
+		ticket.setPrice(1.5);
+		return ticketDAO.updateTicket(ticket);
+	}
+
+	@Benchmark
+	public Ticket getTicket(Vehicles vehicles) {
+		return ticketDAO.getTicket(historyPlate(vehicles.nextIndex(HISTORY_VEHICLES)));
+	}
+
+	@Benchmark
+	public Ticket getActiveTicketParked(Vehicles vehicles) {
+		return ticketDAO.getActiveTicket(parkedPlate(vehicles.nextIndex(PARKED_VEHICLES)));
+	}
+
+	@Benchmark
+	public Ticket getActiveTicketNotParked(Vehicles vehicles) {
+		return ticketDAO.getActiveTicket(historyPlate(vehicles.nextIndex(HISTORY_VEHICLES)));
+	}
+
+	@Benchmark
+	public List<Ticket> getActiveTickets() {
+		return ticketDAO.getActiveTickets();
+	}
+
+	@Benchmark
+	public boolean loadActiveTickets() {
+		return ticketDAO.loadActiveTickets();
+	}
+
+	@Benchmark
+	public int getNbTicketCached(Vehicles vehicles) {
+		return ticketDAO.getNbTicket(historyPlate(vehicles.nextIndex(HISTORY_VEHICLES)));
+	}
+
+	@Benchmark
+	public int getNbTicketUncached(Vehicles vehicles) {
+		uncachedTicketDAO.clearCaches();
+		return uncachedTicketDAO.getNbTicket(historyPlate(vehicles.nextIndex(HISTORY_VEHICLES)));
+	}
+
+	static String historyPlate(int i) {
+		return String.format("H%05d", i);
+	}
+
+	static String parkedPlate(int i) {
+		return String.format("P%05d", i);
+	}
+
+	private static Ticket ticket(String vehicleRegNumber, Date inTime, Date outTime) {
+		Ticket ticket = new Ticket();
+		ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+		ticket.setVehicleRegNumber(vehicleRegNumber);
+		ticket.setPrice(0);
+		ticket.setInTime(inTime);
+		ticket.setOutTime(outTime);
+		return ticket;
+	}
+}
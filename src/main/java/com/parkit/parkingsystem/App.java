@@ -1,14 +1,195 @@
 package com.parkit.parkingsystem;
 
+import com.parkit.parkingsystem.archive.TicketArchiver;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.HourlyRollupDAO;
+import com.parkit.parkingsystem.dao.ParkingStorage;
+import com.parkit.parkingsystem.dao.StateSnapshotter;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.PrometheusExporter;
+import com.parkit.parkingsystem.server.GateHttpServer;
 import com.parkit.parkingsystem.service.InteractiveShell;
+import com.parkit.parkingsystem.service.OccupancyReconciler;
+import com.parkit.parkingsystem.service.ParkingService;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * Starts the parking system, either as the interactive console or, with
+ * {@code --server [port]}, as the HTTP gate server (port 8080 by default).
+ * {@code --storage jdbc|memory} chooses the storage backend, see
+ * {@link ParkingStorage}. With the JDBC backend, {@code --journal <directory>}
+ * (or the {@code parkit.journal.dir} system property) journals vehicle entries
+ * and exits in that directory while the database is unreachable.
+ * <p>
+ * Every storage call is timed in the default {@link MetricsRegistry}, served
+ * by the gate server on {@code GET /metrics}. {@code --metrics-file <file>} (or
+ * the {@code parkit.metrics.file} system property) also writes the metrics to
+ * that file every {@code parkit.metrics.fileIntervalMillis} (15 seconds by
+ * default), in the Prometheus text format.
+ * </p>
+ * <p>
+ * With the JDBC backend, {@code --snapshot <file>} (or the
+ * {@code parkit.snapshot.file} system property) makes the gate server save its
+ * in-memory state to that file periodically and on shutdown, and start from it
+ * on the next run, see {@link StateSnapshotter}.
+ * </p>
+ * <p>
+ * With the JDBC backend, the gate server archives the tickets closed more than
+ * {@code parkit.archive.maxAgeDays} days ago when that property is set, see
+ * {@link TicketArchiver}.
+ * </p>
+ */
 public class App {
 	private static final Logger logger = LogManager.getLogger("App");
 
+	private static final int DEFAULT_SERVER_PORT = 8080;
+	private static final long METRICS_FILE_INTERVAL_MILLIS = Long.getLong("parkit.metrics.fileIntervalMillis",
+			15000L);
+
 	public static void main(String args[]) {
 		logger.info("Initializing Parking System");
-		InteractiveShell.loadInterface();
+		boolean server = false;
+		int port = DEFAULT_SERVER_PORT;
+		String backend = System.getProperty("parkit.storage", ParkingStorage.JDBC);
+		String journalDirectory = System.getProperty("parkit.journal.dir");
+		String metricsFile = System.getProperty("parkit.metrics.file");
+		String snapshotFile = System.getProperty("parkit.snapshot.file");
+		for (int i = 0; i < args.length; i++) {
+			if ("--server".equals(args[i])) {
+				server = true;
+				if (i + 1 < args.length && args[i + 1].matches("\\d+")) {
+					port = Integer.parseInt(args[++i]);
+				}
+			} else if ("--storage".equals(args[i]) && i + 1 < args.length) {
+				backend = args[++i];
+			} else if ("--journal".equals(args[i]) && i + 1 < args.length) {
+				journalDirectory = args[++i];
+			} else if ("--metrics-file".equals(args[i]) && i + 1 < args.length) {
+				metricsFile = args[++i];
+			} else if ("--snapshot".equals(args[i]) && i + 1 < args.length) {
+				snapshotFile = args[++i];
+			}
+		}
+		ParkingStorage parkingStorage;
+		try {
+			parkingStorage = ParkingStorage.forBackend(backend);
+		} catch (IllegalArgumentException e) {
+			logger.error("Unable to start the parking system", e);
+			return;
+		}
+
+		if (parkingStorage.isPersistent()) {
+			try {
+				new SchemaMigrator(new DataBaseConfig()).migrate();
+			} catch (IllegalStateException e) {
+				logger.error("Database schema is inconsistent, shutting down", e);
+				return;
+			} catch (Exception e) {
+				logger.error("Unable to migrate the database schema", e);
+			}
+			// puts back the rollup counts lost if the last run died, before the journal replay and the
+			// gates add to them
+			parkingStorage.hourlyRollups().recoverRecentHours();
+			if (journalDirectory != null) {
+				try {
+					parkingStorage = parkingStorage.withJournal(Paths.get(journalDirectory));
+				} catch (IOException e) {
+					logger.error("Unable to open the journal in {}, shutting down", journalDirectory, e);
+					return;
+				}
+			}
+		}
+		StateSnapshotter stateSnapshotter = null;
+		if (server && snapshotFile != null && parkingStorage.isPersistent()) {
+			stateSnapshotter = parkingStorage.snapshotter(Paths.get(snapshotFile));
+		}
+		HourlyRollupDAO hourlyRollupDAO = parkingStorage.isPersistent() ? parkingStorage.hourlyRollups() : null;
+		parkingStorage = parkingStorage.instrumented(MetricsRegistry.getDefault());
+		if (metricsFile != null) {
+			new PrometheusExporter(MetricsRegistry.getDefault()).startFileExport(Paths.get(metricsFile),
+					METRICS_FILE_INTERVAL_MILLIS);
+		}
+		if (server) {
+			startServer(parkingStorage, port, stateSnapshotter, hourlyRollupDAO);
+		} else {
+			if (hourlyRollupDAO != null) {
+				hourlyRollupDAO.start(HourlyRollupDAO.DEFAULT_FLUSH_INTERVAL_MILLIS);
+				Runtime.getRuntime().addShutdownHook(new Thread(hourlyRollupDAO::close, "hourly-rollup-shutdown"));
+			}
+			InteractiveShell.loadInterface(parkingStorage);
+		}
+	}
+
+	private static void startServer(ParkingStorage parkingStorage, int port, StateSnapshotter stateSnapshotter,
+			HourlyRollupDAO hourlyRollupDAO) {
+		ParkingService parkingService = new ParkingService(null, parkingStorage);
+		if (hourlyRollupDAO != null) {
+			hourlyRollupDAO.occupancyCounters = parkingService.occupancyCounters;
+			hourlyRollupDAO.start(HourlyRollupDAO.DEFAULT_FLUSH_INTERVAL_MILLIS);
+		}
+		if (stateSnapshotter != null) {
+			stateSnapshotter.warmStart();
+			stateSnapshotter.start(StateSnapshotter.DEFAULT_INTERVAL_MILLIS);
+		} else {
+			parkingStorage.warmUp();
+		}
+		OccupancyReconciler occupancyReconciler = new OccupancyReconciler(parkingService,
+				OccupancyReconciler.DEFAULT_INTERVAL_MILLIS);
+		occupancyReconciler.start();
+		TicketArchiver ticketArchiver = startTicketArchiver(parkingStorage);
+		for (ParkingType parkingType : ParkingType.values()) {
+			MetricsRegistry.getDefault().gauge("parkit_spots_occupied", "Occupied spots by parking type",
+					() -> parkingService.occupancyCounters.getOccupied(parkingType), "type", parkingType.name());
+			MetricsRegistry.getDefault().gauge("parkit_spots_free", "Free spots by parking type",
+					() -> parkingService.occupancyCounters.getFree(parkingType), "type", parkingType.name());
+		}
+
+		try {
+			// no more database calls in flight than pooled connections
+			int maxConcurrentDbCalls = parkingStorage.isPersistent()
+					? new DataBaseConfig().getConnectionPool().getMaxSize()
+					: Runtime.getRuntime().availableProcessors() * 4;
+			GateHttpServer server = new GateHttpServer(parkingService, new InetSocketAddress(port),
+					maxConcurrentDbCalls);
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				server.stop(5);
+				occupancyReconciler.close();
+				if (hourlyRollupDAO != null) {
+					hourlyRollupDAO.close();
+				}
+				if (ticketArchiver != null) {
+					ticketArchiver.close();
+				}
+				if (stateSnapshotter != null) {
+					stateSnapshotter.close();
+				}
+			}, "gate-server-shutdown"));
+			server.start();
+		} catch (Exception e) {
+			logger.error("Unable to start the gate server", e);
+		}
+	}
+
+	/**
+	 * @return the archiver started for the JDBC backend, or null if the archival
+	 *         is off
+	 */
+	private static TicketArchiver startTicketArchiver(ParkingStorage parkingStorage) {
+		if (!parkingStorage.isPersistent() || TicketArchiver.DEFAULT_MAX_AGE_DAYS <= 0) {
+			return null;
+		}
+		TicketArchiver ticketArchiver = new TicketArchiver(new DataBaseConfig(),
+				Duration.ofDays(TicketArchiver.DEFAULT_MAX_AGE_DAYS), TicketArchiver.DEFAULT_BATCH_SIZE,
+				TicketArchiver.DEFAULT_PAUSE_MILLIS);
+		ticketArchiver.start(TicketArchiver.DEFAULT_INTERVAL_MILLIS);
+		return ticketArchiver;
 	}
 }
@@ -0,0 +1,361 @@
+package com.parkit.parkingsystem.archive;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.JdbcUrlDataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.metrics.Counter;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves the closed tickets older than a given age out of the {@code ticket}
+ * table into monthly archive tables, {@code ticket_archive_YYYYMM} by month of
+ * OUT_TIME, created on first use with the columns and indexes of the ticket
+ * table. The open tickets and the recent history stay in the live table, so
+ * its lookups no longer grow with the whole history.
+ * <p>
+ * The tickets are moved oldest first, {@code batchSize} at a time. Each batch
+ * is its own short transaction, which locks only the rows it moves, by primary
+ * key. The archiver pauses {@code pauseMillis} between batches, so the gates
+ * never queue behind it.
+ * </p>
+ * <p>
+ * Nothing reads the archive tables. The visits of the archived tickets stay
+ * counted in {@code vehicle_stats}: VISIT_COUNT, read for the loyalty
+ * discount, is left as is, and ARCHIVED_COUNT counts the archived tickets, so
+ * that the billing run still discounts the first ticket left of a returning
+ * vehicle. The hourly rollups are kept too; a range already archived must not
+ * be backfilled, as the backfill would find no ticket in it.
+ * </p>
+ * <p>
+ * The gate server archives every {@code parkit.archive.intervalMillis} (1 hour
+ * by default) the tickets closed more than {@code parkit.archive.maxAgeDays}
+ * ago, when set. The archival can also be run once. Usage:
+ * </p>
+ *
+ * <pre>
+ * java ... TicketArchiver --max-age-days 365 [--batch-size 500] [--pause-millis 200]
+ *     [--jdbc-url jdbc:mysql://localhost:3306/prod] [--user root] [--password rootroot]
+ * </pre>
+ */
+public class TicketArchiver implements AutoCloseable {
+
+	private static final Logger logger = LogManager.getLogger("TicketArchiver");
+
+	// 0 turns the archival off
+	public static final int DEFAULT_MAX_AGE_DAYS = Integer.getInteger("parkit.archive.maxAgeDays", 0);
+	public static final int DEFAULT_BATCH_SIZE = Integer.getInteger("parkit.archive.batchSize", 500);
+	public static final long DEFAULT_PAUSE_MILLIS = Long.getLong("parkit.archive.pauseMillis", 200L);
+	public static final long DEFAULT_INTERVAL_MILLIS = Long.getLong("parkit.archive.intervalMillis", 3600000L);
+
+	private static final String ARCHIVE_TABLE_PREFIX = "ticket_archive_";
+	private static final DateTimeFormatter ARCHIVE_TABLE_MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+	private static final String CREATE_ARCHIVE_TABLE = "create table if not exists %s like ticket";
+	private static final String COPY_TO_ARCHIVE = "insert into %s select * from ticket where ID in (%s)";
+	private static final String DELETE_ARCHIVED = "delete from ticket where ID in (%s)";
+
+	private static final Counter archivedTickets = MetricsRegistry.getDefault().counter(
+			"parkit_tickets_archived_total", "Closed tickets moved to the archive tables");
+
+	private final DataBaseConfig dataBaseConfig;
+	private final Duration maxAge;
+	private final int batchSize;
+	private final long pauseMillis;
+	private final ScheduledExecutorService scheduler;
+	// the archive tables known to exist, only used by archive()
+	private final Set<String> archiveTables = new HashSet<>();
+	private volatile boolean closed;
+
+	public TicketArchiver(DataBaseConfig dataBaseConfig, Duration maxAge, int batchSize, long pauseMillis) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+		}
+		this.dataBaseConfig = dataBaseConfig;
+		this.maxAge = maxAge;
+		this.batchSize = batchSize;
+		this.pauseMillis = pauseMillis;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "ticket-archiver");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public static void main(String[] args) throws Exception {
+		int maxAgeDays = 0;
+		int batchSize = DEFAULT_BATCH_SIZE;
+		long pauseMillis = DEFAULT_PAUSE_MILLIS;
+		String jdbcUrl = "jdbc:mysql://localhost:3306/prod";
+		String user = "root";
+		String password = "rootroot";
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value of " + option);
+			}
+			String value = args[++i];
+			switch (option) {
+			case "--max-age-days":
+				maxAgeDays = Integer.parseInt(value);
+				break;
+			case "--batch-size":
+				batchSize = Integer.parseInt(value);
+				break;
+			case "--pause-millis":
+				pauseMillis = Long.parseLong(value);
+				break;
+			case "--jdbc-url":
+				jdbcUrl = value;
+				break;
+			case "--user":
+				user = value;
+				break;
+			case "--password":
+				password = value;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + option);
+			}
+		}
+		if (maxAgeDays <= 0) {
+			throw new IllegalArgumentException("--max-age-days is required and must be positive");
+		}
+
+		DataBaseConfig dataBaseConfig = new JdbcUrlDataBaseConfig(jdbcUrl, user, password);
+		try (TicketArchiver archiver = new TicketArchiver(dataBaseConfig, Duration.ofDays(maxAgeDays), batchSize,
+				pauseMillis)) {
+			long archived = archiver.archive(archiver.getCutoff());
+			System.out.println("Archived " + archived + " ticket(s) closed more than " + maxAgeDays + " days ago");
+		} finally {
+			dataBaseConfig.getConnectionPool().close();
+		}
+	}
+
+	/**
+	 * Archives the old tickets every {@code intervalMillis}, the first time one
+	 * interval from now.
+	 */
+	public void start(long intervalMillis) {
+		scheduler.scheduleWithFixedDelay(this::archiveOldTickets, intervalMillis, intervalMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return the time before which a ticket must have been closed to be
+	 *         archived now
+	 */
+	public Date getCutoff() {
+		return new Date(System.currentTimeMillis() - maxAge.toMillis());
+	}
+
+	private void archiveOldTickets() {
+		try {
+			archive(getCutoff());
+		} catch (InterruptedException ex) {
+			// closed while pausing between two batches
+			Thread.currentThread().interrupt();
+		} catch (Exception ex) {
+			// never let an error cancel the next runs
+			logger.error("Error archiving old tickets", ex);
+		}
+	}
+
+	/**
+	 * Archives the tickets closed before the cutoff, oldest first, until none is
+	 * left or the archiver is closed.
+	 *
+	 * @return the number of tickets archived
+	 * @throws Exception if a batch could not be archived; the batches committed
+	 *                   until then stay archived
+	 */
+	public synchronized long archive(Date cutoff) throws Exception {
+		long archived = 0;
+		Date oldest;
+		while (!closed && (oldest = getOldestClosedTicket(cutoff)) != null) {
+			YearMonth month = YearMonth.from(oldest.toInstant().atZone(ZoneId.systemDefault()));
+			Date monthStart = toDate(month);
+			Date monthEnd = toDate(month.plusMonths(1));
+			if (monthEnd.after(cutoff)) {
+				monthEnd = cutoff;
+			}
+			String table = createArchiveTable(month);
+			long archivedInMonth = 0;
+			int moved;
+			do {
+				moved = archiveBatch(table, monthStart, monthEnd);
+				archivedInMonth += moved;
+				pause();
+			} while (moved == batchSize && !closed);
+			if (archivedInMonth == 0) {
+				// the oldest ticket is not in its month, as seen by the database
+				logger.warn("No ticket found to archive in {}, oldest closed {}", month, oldest);
+				break;
+			}
+			archived += archivedInMonth;
+			logger.info("Archived {} ticket(s) of {} into {}", archivedInMonth, month, table);
+		}
+		return archived;
+	}
+
+	/**
+	 * @return the name of the archive table of the tickets closed in that month
+	 */
+	public static String archiveTable(YearMonth month) {
+		return ARCHIVE_TABLE_PREFIX + ARCHIVE_TABLE_MONTH.format(month);
+	}
+
+	private Date getOldestClosedTicket(Date cutoff) throws Exception {
+		Connection con = null;
+		PreparedStatement ps = null;
+		try {
+			con = dataBaseConfig.getConnection();
+			ps = con.prepareStatement(DBConstants.GET_OLDEST_CLOSED_TICKET);
+			ps.setTimestamp(1, new Timestamp(cutoff.getTime()));
+			ResultSet rs = ps.executeQuery();
+			Timestamp oldest = rs.next() ? rs.getTimestamp(1) : null;
+			dataBaseConfig.closeResultSet(rs);
+			return oldest;
+		} finally {
+			dataBaseConfig.closePreparedStatement(ps);
+			dataBaseConfig.closeConnection(con);
+		}
+	}
+
+	private String createArchiveTable(YearMonth month) throws Exception {
+		String table = archiveTable(month);
+		if (archiveTables.contains(table)) {
+			return table;
+		}
+		Connection con = null;
+		try {
+			con = dataBaseConfig.getConnection();
+			Statement statement = con.createStatement();
+			try {
+				statement.execute(String.format(CREATE_ARCHIVE_TABLE, table));
+			} finally {
+				statement.close();
+			}
+		} finally {
+			dataBaseConfig.closeConnection(con);
+		}
+		archiveTables.add(table);
+		return table;
+	}
+
+	/**
+	 * Moves the oldest tickets closed in the range to the archive table, and
+	 * counts them in the ARCHIVED_COUNT of their vehicle, in one transaction.
+	 *
+	 * @return the number of tickets moved, less than the batch size once the
+	 *         range is empty
+	 */
+	private int archiveBatch(String table, Date from, Date to) throws Exception {
+		Connection con = null;
+		PreparedStatement ps = null;
+		try {
+			con = dataBaseConfig.getConnection();
+			List<Integer> ids = new ArrayList<>(batchSize);
+			Map<String, Integer> visits = new HashMap<>();
+			ps = con.prepareStatement(DBConstants.GET_ARCHIVABLE_TICKETS);
+			ps.setTimestamp(1, new Timestamp(from.getTime()));
+			ps.setTimestamp(2, new Timestamp(to.getTime()));
+			ps.setInt(3, batchSize);
+			ResultSet rs = ps.executeQuery();
+			while (rs.next()) {
+				ids.add(rs.getInt(1));
+				visits.merge(rs.getString(2), 1, Integer::sum);
+			}
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
+			ps = null;
+			if (ids.isEmpty()) {
+				return 0;
+			}
+
+			// a failure leaves the transaction to be rolled back by the pool
+			con.setAutoCommit(false);
+			String idList = placeholders(ids.size());
+			int copied = executeForIds(con, String.format(COPY_TO_ARCHIVE, table, idList), ids);
+			int deleted = executeForIds(con, String.format(DELETE_ARCHIVED, idList), ids);
+			if (copied != ids.size() || deleted != ids.size()) {
+				throw new SQLException("Copied " + copied + " and deleted " + deleted + " of " + ids.size()
+						+ " tickets to archive into " + table);
+			}
+			ps = con.prepareStatement(DBConstants.ADD_ARCHIVED_VISITS);
+			for (Map.Entry<String, Integer> vehicle : visits.entrySet()) {
+				ps.setInt(1, vehicle.getValue());
+				ps.setString(2, vehicle.getKey());
+				ps.addBatch();
+			}
+			ps.executeBatch();
+			con.commit();
+			archivedTickets.add(ids.size());
+			return ids.size();
+		} finally {
+			dataBaseConfig.closePreparedStatement(ps);
+			dataBaseConfig.closeConnection(con);
+		}
+	}
+
+	private int executeForIds(Connection con, String sql, List<Integer> ids) throws Exception {
+		PreparedStatement ps = con.prepareStatement(sql);
+		try {
+			for (int i = 0; i < ids.size(); i++) {
+				ps.setInt(i + 1, ids.get(i));
+			}
+			return ps.executeUpdate();
+		} finally {
+			dataBaseConfig.closePreparedStatement(ps);
+		}
+	}
+
+	private void pause() throws InterruptedException {
+		if (pauseMillis > 0 && !closed) {
+			Thread.sleep(pauseMillis);
+		}
+	}
+
+	// ?,?,... a full batch always gives the same statement, prepared once per connection
+	private static String placeholders(int count) {
+		StringBuilder sb = new StringBuilder(count * 2);
+		for (int i = 0; i < count; i++) {
+			sb.append(i == 0 ? "?" : ",?");
+		}
+		return sb.toString();
+	}
+
+	private static Date toDate(YearMonth month) {
+		return Date.from(month.atDay(1).atStartOfDay(ZoneId.systemDefault()).toInstant());
+	}
+
+	/**
+	 * Stops the archival, after the batch in progress.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		scheduler.shutdownNow();
+	}
+}
@@ -0,0 +1,418 @@
+package com.parkit.parkingsystem.billing;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.JdbcUrlDataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.service.TariffEngine;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * End-of-day billing run: recomputes the price of every closed ticket with the
+ * current tariff and corrects the tickets whose stored price differs from it
+ * by half a cent or more.
+ * <p>
+ * The tickets are streamed through a forward-only, read-only cursor, in plate
+ * order so that the loyalty discount is given to every ticket following
+ * another of the same vehicle, as the {@code ParkingService} does at exit, and
+ * to every ticket of a vehicle whose earlier tickets were archived. The
+ * reader packs closed tickets into {@link TicketChunk chunks}, whose prices are
+ * recomputed on a fork/join pool while the next chunk is read. A writer thread
+ * takes the chunks in order, writes the corrections back in JDBC batches, one
+ * transaction per batch, and lists them in a CSV report. A fixed number of
+ * chunks is reused for the whole run, so memory does not grow with the number
+ * of tickets.
+ * </p>
+ * <p>
+ * With MySQL, rows are only fetched {@code --fetch-size} at a time through a
+ * server-side cursor: {@code useCursorFetch=true} is added to the JDBC url if
+ * it is not there. With {@code --dry-run true} the mismatches are reported but
+ * not corrected. Usage:
+ * </p>
+ *
+ * <pre>
+ * java ... BillingReconciliation [--fetch-size 1000] [--chunk-size 4096] [--parallelism 8]
+ *     [--batch-size 500] [--dry-run false] [--report reconciliation-report.csv]
+ *     [--jdbc-url jdbc:mysql://localhost:3306/prod] [--user root] [--password rootroot]
+ * </pre>
+ */
+public class BillingReconciliation {
+
+	private static final Logger logger = LogManager.getLogger("BillingReconciliation");
+
+	private static final TicketChunk END = new TicketChunk(0);
+
+	private int fetchSize = 1000;
+	private int chunkSize = 4096;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private int batchSize = 500;
+	private boolean dryRun;
+	private String reportFile = "reconciliation-report.csv";
+	private String jdbcUrl = "jdbc:mysql://localhost:3306/prod";
+	private String user = "root";
+	private String password = "rootroot";
+
+	private final TariffEngine tariffEngine;
+
+	public BillingReconciliation() {
+		this(TariffEngine.defaultTariffs());
+	}
+
+	public BillingReconciliation(TariffEngine tariffEngine) {
+		this.tariffEngine = tariffEngine;
+	}
+
+	public static void main(String[] args) throws Exception {
+		BillingReconciliation reconciliation = new BillingReconciliation();
+		reconciliation.parseOptions(args);
+		DataBaseConfig dataBaseConfig = new JdbcUrlDataBaseConfig(withCursorFetch(reconciliation.jdbcUrl),
+				reconciliation.user, reconciliation.password);
+		try {
+			System.out.println(reconciliation.run(dataBaseConfig));
+		} finally {
+			dataBaseConfig.getConnectionPool().close();
+		}
+	}
+
+	public void parseOptions(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value of " + option);
+			}
+			String value = args[++i];
+			switch (option) {
+			case "--fetch-size":
+				fetchSize = Integer.parseInt(value);
+				break;
+			case "--chunk-size":
+				chunkSize = Integer.parseInt(value);
+				break;
+			case "--parallelism":
+				parallelism = Integer.parseInt(value);
+				break;
+			case "--batch-size":
+				batchSize = Integer.parseInt(value);
+				break;
+			case "--dry-run":
+				dryRun = Boolean.parseBoolean(value);
+				break;
+			case "--report":
+				reportFile = value;
+				break;
+			case "--jdbc-url":
+				jdbcUrl = value;
+				break;
+			case "--user":
+				user = value;
+				break;
+			case "--password":
+				password = value;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + option);
+			}
+		}
+	}
+
+	static String withCursorFetch(String url) {
+		if (!url.startsWith("jdbc:mysql:") || url.contains("useCursorFetch=")) {
+			return url;
+		}
+		return url + (url.contains("?") ? "&" : "?") + "useCursorFetch=true";
+	}
+
+	/**
+	 * Reconciles every closed ticket of a database.
+	 *
+	 * @throws Exception if the tickets could not be read or the corrections
+	 *                   written; the batches committed until then are kept
+	 */
+	public Summary run(DataBaseConfig dataBaseConfig) throws Exception {
+		long startNanos = System.nanoTime();
+		// two chunks per worker: one being recomputed while the other is written
+		int inFlight = Math.max(2, parallelism * 2);
+		BlockingQueue<TicketChunk> free = new ArrayBlockingQueue<>(inFlight);
+		BlockingQueue<TicketChunk> pending = new ArrayBlockingQueue<>(inFlight + 1);
+		for (int i = 0; i < inFlight; i++) {
+			free.add(new TicketChunk(chunkSize));
+		}
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		Summary summary = new Summary();
+		CorrectionWriter writer = new CorrectionWriter(dataBaseConfig, pending, free, summary);
+		Thread writerThread = new Thread(writer, "billing-writer");
+		writerThread.start();
+		long unknownTypes;
+		try {
+			unknownTypes = read(dataBaseConfig, pool, free, pending, writer, summary);
+		} finally {
+			pending.put(END);
+			writerThread.join();
+			pool.shutdown();
+		}
+		if (writer.failure != null) {
+			throw writer.failure;
+		}
+		summary.unpriced += unknownTypes;
+		summary.elapsedMillis = (System.nanoTime() - startNanos) / 1000000L;
+		logger.info(summary);
+		return summary;
+	}
+
+	/**
+	 * Streams the tickets into chunks and hands them to the pool and the writer.
+	 *
+	 * @return the number of closed tickets with an unknown parking type
+	 */
+	private long read(DataBaseConfig dataBaseConfig, ForkJoinPool pool, BlockingQueue<TicketChunk> free,
+			BlockingQueue<TicketChunk> pending, CorrectionWriter writer, Summary summary) throws Exception {
+		Connection con = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			con = dataBaseConfig.getConnection();
+			ps = con.prepareStatement(DBConstants.STREAM_TICKETS_BY_VEHICLE, ResultSet.TYPE_FORWARD_ONLY,
+					ResultSet.CONCUR_READ_ONLY);
+			ps.setFetchSize(fetchSize);
+			rs = ps.executeQuery();
+			long unknownTypes = 0;
+			TicketChunk chunk = free.take();
+			String previousVehicle = null;
+			while (rs.next() && writer.failure == null) {
+				summary.ticketsRead++;
+				String vehicle = rs.getString(2);
+				boolean discount = vehicle.equals(previousVehicle) || rs.getInt(7) > 0;
+				previousVehicle = vehicle;
+				Timestamp outTime = rs.getTimestamp(5);
+				if (outTime == null) {
+					continue;
+				}
+				summary.closedTickets++;
+				ParkingType parkingType;
+				try {
+					parkingType = ParkingType.valueOf(rs.getString(6));
+				} catch (IllegalArgumentException e) {
+					unknownTypes++;
+					continue;
+				}
+				chunk.add(rs.getInt(1), parkingType, rs.getTimestamp(4).getTime(), outTime.getTime(), discount,
+						rs.getDouble(3));
+				if (chunk.isFull()) {
+					chunk.task = pool.submit(chunk.recompute(tariffEngine));
+					pending.put(chunk);
+					chunk = free.take();
+				}
+			}
+			if (chunk.size > 0) {
+				chunk.task = pool.submit(chunk.recompute(tariffEngine));
+				pending.put(chunk);
+			} else {
+				free.put(chunk);
+			}
+			return unknownTypes;
+		} finally {
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
+			dataBaseConfig.closeConnection(con);
+		}
+	}
+
+	/**
+	 * Takes the recomputed chunks in order, writes the corrections and reports
+	 * them, and gives the chunks back for reuse. After a failure, the chunks are
+	 * still given back, so the reader never waits for one.
+	 */
+	private final class CorrectionWriter implements Runnable {
+		private final DataBaseConfig dataBaseConfig;
+		private final BlockingQueue<TicketChunk> pending;
+		private final BlockingQueue<TicketChunk> free;
+		private final Summary summary;
+		private volatile Exception failure;
+		private Connection con;
+		private PreparedStatement ps;
+		private Writer report;
+		private int batched;
+
+		private CorrectionWriter(DataBaseConfig dataBaseConfig, BlockingQueue<TicketChunk> pending,
+				BlockingQueue<TicketChunk> free, Summary summary) {
+			this.dataBaseConfig = dataBaseConfig;
+			this.pending = pending;
+			this.free = free;
+			this.summary = summary;
+		}
+
+		@Override
+		public void run() {
+			try {
+				open();
+			} catch (Exception e) {
+				failure = e;
+			}
+			try {
+				while (true) {
+					TicketChunk chunk = pending.take();
+					if (chunk == END) {
+						break;
+					}
+					if (failure == null) {
+						try {
+							chunk.task.join();
+							write(chunk);
+						} catch (Exception e) {
+							failure = e;
+						}
+					}
+					chunk.size = 0;
+					chunk.task = null;
+					free.put(chunk);
+				}
+				if (failure == null) {
+					flush();
+				}
+			} catch (InterruptedException e) {
+				failure = e;
+				Thread.currentThread().interrupt();
+			} catch (Exception e) {
+				failure = e;
+			} finally {
+				close();
+			}
+		}
+
+		private void open() throws Exception {
+			if (reportFile != null && !reportFile.isEmpty()) {
+				report = new BufferedWriter(Files.newBufferedWriter(Paths.get(reportFile), StandardCharsets.UTF_8));
+				report.write("ID,TYPE,IN_TIME,OUT_TIME,DISCOUNT,PRICE,EXPECTED_PRICE\n");
+			}
+			if (!dryRun) {
+				con = dataBaseConfig.getConnection();
+				con.setAutoCommit(false);
+				ps = con.prepareStatement(DBConstants.CORRECT_TICKET_PRICE);
+			}
+		}
+
+		private void write(TicketChunk chunk) throws Exception {
+			for (int i = 0; i < chunk.size; i++) {
+				if (Double.isNaN(chunk.expectedPrices[i])) {
+					summary.unpriced++;
+					continue;
+				}
+				if (!chunk.isMismatch(i)) {
+					continue;
+				}
+				summary.mismatches++;
+				if (report != null) {
+					report.write(chunk.ids[i] + "," + ParkingType.values()[chunk.types[i]] + ","
+							+ Instant.ofEpochMilli(chunk.inMillis[i]) + "," + Instant.ofEpochMilli(chunk.outMillis[i])
+							+ "," + chunk.discounts[i] + "," + chunk.storedPrices[i] + "," + chunk.expectedPrices[i]
+							+ "\n");
+				}
+				if (ps != null) {
+					ps.setDouble(1, chunk.expectedPrices[i]);
+					ps.setInt(2, chunk.ids[i]);
+					ps.addBatch();
+					if (++batched == batchSize) {
+						flush();
+					}
+				}
+			}
+		}
+
+		private void flush() throws Exception {
+			if (batched > 0) {
+				ps.executeBatch();
+				con.commit();
+				summary.corrected += batched;
+				batched = 0;
+			}
+		}
+
+		private void close() {
+			if (con != null && batched > 0) {
+				try {
+					con.rollback();
+				} catch (Exception e) {
+					logger.error("Error while rolling back the corrections", e);
+				}
+			}
+			dataBaseConfig.closePreparedStatement(ps);
+			dataBaseConfig.closeConnection(con);
+			if (report != null) {
+				try {
+					report.close();
+				} catch (IOException e) {
+					logger.error("Error while closing the reconciliation report", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts of a reconciliation run.
+	 */
+	public static final class Summary {
+		private long ticketsRead;
+		private long closedTickets;
+		private long mismatches;
+		private long corrected;
+		private long unpriced;
+		private long elapsedMillis;
+
+		public long getTicketsRead() {
+			return ticketsRead;
+		}
+
+		public long getClosedTickets() {
+			return closedTickets;
+		}
+
+		/**
+		 * @return the closed tickets whose stored price is off by half a cent or
+		 *         more
+		 */
+		public long getMismatches() {
+			return mismatches;
+		}
+
+		/**
+		 * @return the mismatches whose price was corrected, 0 for a dry run
+		 */
+		public long getCorrected() {
+			return corrected;
+		}
+
+		/**
+		 * @return the closed tickets the tariff cannot price, such as tickets with
+		 *         an unknown parking type or an out time before the in time
+		 */
+		public long getUnpriced() {
+			return unpriced;
+		}
+
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		@Override
+		public String toString() {
+			return "Reconciled " + closedTickets + " closed ticket(s) of " + ticketsRead + " in " + elapsedMillis
+					+ " ms: " + mismatches + " mismatch(es), " + corrected + " corrected, " + unpriced + " unpriced";
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package com.parkit.parkingsystem.billing;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.JdbcUrlDataBaseConfig;
+import com.parkit.parkingsystem.dao.HourlyRollupDAO;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+
+/**
+ * Fills the hourly rollups of past hours from the ticket table, see
+ * {@link HourlyRollupDAO#backfill(Date, Date)}.
+ * <p>
+ * The range is rounded out to whole hours, and is backfilled one day at a time
+ * so each transaction stays short. Usage:
+ * </p>
+ *
+ * <pre>
+ * java ... RollupBackfill --from 2024-01-01T00:00 --to 2024-06-01T00:00
+ *     [--jdbc-url jdbc:mysql://localhost:3306/prod] [--user root] [--password rootroot]
+ * </pre>
+ */
+public class RollupBackfill {
+
+	public static void main(String[] args) throws Exception {
+		LocalDateTime from = null;
+		LocalDateTime to = null;
+		String jdbcUrl = "jdbc:mysql://localhost:3306/prod";
+		String user = "root";
+		String password = "rootroot";
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value of " + option);
+			}
+			String value = args[++i];
+			switch (option) {
+			case "--from":
+				from = LocalDateTime.parse(value).truncatedTo(ChronoUnit.HOURS);
+				break;
+			case "--to":
+				LocalDateTime end = LocalDateTime.parse(value);
+				to = end.truncatedTo(ChronoUnit.HOURS);
+				if (to.isBefore(end)) {
+					to = to.plusHours(1);
+				}
+				break;
+			case "--jdbc-url":
+				jdbcUrl = value;
+				break;
+			case "--user":
+				user = value;
+				break;
+			case "--password":
+				password = value;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + option);
+			}
+		}
+		if (from == null || to == null || !from.isBefore(to)) {
+			throw new IllegalArgumentException("--from and --to are required, --from before --to");
+		}
+
+		DataBaseConfig dataBaseConfig = new JdbcUrlDataBaseConfig(BillingReconciliation.withCursorFetch(jdbcUrl),
+				user, password);
+		HourlyRollupDAO hourlyRollupDAO = new HourlyRollupDAO();
+		hourlyRollupDAO.dataBaseConfig = dataBaseConfig;
+		int written = 0;
+		try {
+			for (LocalDateTime day = from; day.isBefore(to); day = day.plusDays(1)) {
+				LocalDateTime dayEnd = day.plusDays(1).isBefore(to) ? day.plusDays(1) : to;
+				written += hourlyRollupDAO.backfill(toDate(day), toDate(dayEnd));
+			}
+		} finally {
+			dataBaseConfig.getConnectionPool().close();
+		}
+		System.out.println("Backfilled " + written + " hourly rollup(s) from " + from + " to " + to);
+	}
+
+	private static Date toDate(LocalDateTime time) {
+		return Date.from(time.atZone(ZoneId.systemDefault()).toInstant());
+	}
+}
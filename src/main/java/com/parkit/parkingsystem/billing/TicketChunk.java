@@ -0,0 +1,98 @@
+package com.parkit.parkingsystem.billing;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.service.TariffEngine;
+
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A run of closed tickets read by the {@link BillingReconciliation}, held in
+ * primitive arrays. Chunks are allocated once and reused for the whole run, so
+ * the memory of the job does not depend on the number of tickets.
+ */
+final class TicketChunk {
+
+	// below this many tickets a fork/join task computes instead of splitting
+	private static final int SPLIT_THRESHOLD = 512;
+	private static final ParkingType[] PARKING_TYPES = ParkingType.values();
+
+	final int[] ids;
+	final byte[] types;
+	final long[] inMillis;
+	final long[] outMillis;
+	final boolean[] discounts;
+	final double[] storedPrices;
+	final double[] expectedPrices;
+	int size;
+	ForkJoinTask<?> task;
+
+	TicketChunk(int capacity) {
+		ids = new int[capacity];
+		types = new byte[capacity];
+		inMillis = new long[capacity];
+		outMillis = new long[capacity];
+		discounts = new boolean[capacity];
+		storedPrices = new double[capacity];
+		expectedPrices = new double[capacity];
+	}
+
+	boolean isFull() {
+		return size == ids.length;
+	}
+
+	void add(int id, ParkingType type, long in, long out, boolean discount, double storedPrice) {
+		ids[size] = id;
+		types[size] = (byte) type.ordinal();
+		inMillis[size] = in;
+		outMillis[size] = out;
+		discounts[size] = discount;
+		storedPrices[size] = storedPrice;
+		size++;
+	}
+
+	/**
+	 * @return whether the stored price of a ticket is off the recomputed one by
+	 *         half a cent or more; {@code false} if it could not be recomputed
+	 */
+	boolean isMismatch(int i) {
+		return !Double.isNaN(expectedPrices[i]) && Math.abs(storedPrices[i] - expectedPrices[i]) * 100.0 >= 0.5;
+	}
+
+	/**
+	 * @return a task recomputing the expected price of every ticket of the chunk,
+	 *         {@code NaN} for a ticket the tariff cannot price
+	 */
+	RecursiveAction recompute(TariffEngine tariffEngine) {
+		return new Recompute(tariffEngine, 0, size);
+	}
+
+	private final class Recompute extends RecursiveAction {
+		private final TariffEngine tariffEngine;
+		private final int from;
+		private final int to;
+
+		private Recompute(TariffEngine tariffEngine, int from, int to) {
+			this.tariffEngine = tariffEngine;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > SPLIT_THRESHOLD) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Recompute(tariffEngine, from, middle), new Recompute(tariffEngine, middle, to));
+				return;
+			}
+			for (int i = from; i < to; i++) {
+				try {
+					expectedPrices[i] = TariffEngine.toPrice(
+							tariffEngine.quoteUnits(PARKING_TYPES[types[i]], inMillis[i], outMillis[i], discounts[i]));
+				} catch (IllegalArgumentException | ArithmeticException e) {
+					expectedPrices[i] = Double.NaN;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package com.parkit.parkingsystem.cache;
+
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.util.PlateCodec;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory registry of the open tickets, that is of the vehicles parked right
+ * now, keyed by normalized registration number.
+ * <p>
+ * The registry stores its own copies of the tickets: callers can modify the
+ * tickets they register or get back without changing its content.
+ * </p>
+ */
+public class ActiveTicketRegistry {
+
+	private final ConcurrentHashMap<String, Ticket> activeTickets = new ConcurrentHashMap<>();
+
+	/**
+	 * Normalizes a registration number so that the same plate typed with a
+	 * different case or surrounding spaces finds the same ticket.
+	 *
+	 * @see PlateCodec#normalize(String)
+	 */
+	public static String normalize(String vehicleRegNumber) {
+		return PlateCodec.normalize(vehicleRegNumber);
+	}
+
+	public void register(Ticket ticket) {
+		activeTickets.put(normalize(ticket.getVehicleRegNumber()), copy(ticket));
+	}
+
+	/**
+	 * @return a copy of the open ticket of the vehicle, or {@code null} if the
+	 *         vehicle is not parked
+	 */
+	public Ticket find(String vehicleRegNumber) {
+		Ticket ticket = activeTickets.get(normalize(vehicleRegNumber));
+		return ticket == null ? null : copy(ticket);
+	}
+
+	/**
+	 * Removes the ticket of the vehicle, if it is still the given one.
+	 */
+	public void remove(Ticket ticket) {
+		String key = normalize(ticket.getVehicleRegNumber());
+		activeTickets.computeIfPresent(key, (k, active) -> active.getId() == ticket.getId() ? null : active);
+	}
+
+	/**
+	 * Replaces the whole content of the registry.
+	 */
+	public void reload(Collection<Ticket> tickets) {
+		activeTickets.clear();
+		for (Ticket ticket : tickets) {
+			register(ticket);
+		}
+	}
+
+	/**
+	 * @return a copy of every open ticket
+	 */
+	public List<Ticket> getAll() {
+		List<Ticket> tickets = new ArrayList<>(activeTickets.size());
+		for (Ticket ticket : activeTickets.values()) {
+			tickets.add(copy(ticket));
+		}
+		return tickets;
+	}
+
+	public int size() {
+		return activeTickets.size();
+	}
+
+	public void clear() {
+		activeTickets.clear();
+	}
+
+	private static Ticket copy(Ticket ticket) {
+		Ticket copy = new Ticket();
+		copy.setId(ticket.getId());
+		ParkingSpot parkingSpot = ticket.getParkingSpot();
+		if (parkingSpot != null) {
+			copy.setParkingSpot(
+					new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), parkingSpot.isAvailable()));
+		}
+		copy.setVehicleRegNumber(ticket.getVehicleRegNumber());
+		copy.setPrice(ticket.getPrice());
+		copy.setInTime(ticket.getInTime());
+		copy.setOutTime(ticket.getOutTime());
+		return copy;
+	}
+}
@@ -0,0 +1,101 @@
+package com.parkit.parkingsystem.cache;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * In-memory index of the free parking spots, one bitset per
+ * {@link ParkingType}.
+ * <p>
+ * Bit {@code n} of a type is set when spot number {@code n} of that type is
+ * free, so the lowest free spot is the first set bit. The index mirrors the
+ * {@code parking} table, which stays the source of truth: it is loaded with
+ * {@link #reload(Map)} and kept up to date as spots are taken and released.
+ * </p>
+ */
+public class FreeSpotIndex {
+
+	private final Map<ParkingType, BitSet> freeSpots = new EnumMap<>(ParkingType.class);
+
+	public FreeSpotIndex() {
+		for (ParkingType parkingType : ParkingType.values()) {
+			freeSpots.put(parkingType, new BitSet());
+		}
+	}
+
+	/**
+	 * Replaces the whole content of the index.
+	 *
+	 * @param spots the free spots of each type, as read from the database
+	 * @return the number of spots whose state differed from the previous content
+	 */
+	public int reload(Map<ParkingType, BitSet> spots) {
+		int drift = 0;
+		for (ParkingType parkingType : ParkingType.values()) {
+			BitSet loaded = spots.getOrDefault(parkingType, new BitSet());
+			BitSet current = freeSpots.get(parkingType);
+			synchronized (current) {
+				BitSet diff = (BitSet) current.clone();
+				diff.xor(loaded);
+				drift += diff.cardinality();
+				current.clear();
+				current.or(loaded);
+			}
+		}
+		return drift;
+	}
+
+	/**
+	 * @return the lowest free spot number of that type, or 0 if every spot is
+	 *         taken
+	 */
+	public int lowestFree(ParkingType parkingType) {
+		BitSet spots = freeSpots.get(parkingType);
+		synchronized (spots) {
+			int number = spots.nextSetBit(1);
+			return number < 0 ? 0 : number;
+		}
+	}
+
+	/**
+	 * Takes the lowest free spot of that type out of the index in one step, so
+	 * that concurrent callers never get the same spot.
+	 *
+	 * @return the claimed spot number, or 0 if every spot is taken
+	 */
+	public int claimLowest(ParkingType parkingType) {
+		BitSet spots = freeSpots.get(parkingType);
+		synchronized (spots) {
+			int number = spots.nextSetBit(1);
+			if (number < 0) {
+				return 0;
+			}
+			spots.clear(number);
+			return number;
+		}
+	}
+
+	public void setAvailable(ParkingType parkingType, int number, boolean available) {
+		BitSet spots = freeSpots.get(parkingType);
+		synchronized (spots) {
+			spots.set(number, available);
+		}
+	}
+
+	public boolean isAvailable(ParkingType parkingType, int number) {
+		BitSet spots = freeSpots.get(parkingType);
+		synchronized (spots) {
+			return spots.get(number);
+		}
+	}
+
+	public int countFree(ParkingType parkingType) {
+		BitSet spots = freeSpots.get(parkingType);
+		synchronized (spots) {
+			return spots.cardinality();
+		}
+	}
+}
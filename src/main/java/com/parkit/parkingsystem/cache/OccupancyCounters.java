@@ -0,0 +1,111 @@
+package com.parkit.parkingsystem.cache;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live count of the occupied spots of each {@link ParkingType}, for the
+ * displays at the lot entrance.
+ * <p>
+ * The counts are kept in {@link LongAdder}s, so the gates counting entries and
+ * exits never contend on a lock or on a single memory location, and reading
+ * them never touches the database. They drift from the {@code parking} table,
+ * which stays the source of truth, when spots are changed outside of the
+ * service or a gate fails between its commit and its count:
+ * {@link #reconcile(int[], int[])} corrects them with counts read from the
+ * table.
+ * </p>
+ */
+public class OccupancyCounters {
+
+	private static final ParkingType[] TYPES = ParkingType.values();
+
+	private final LongAdder[] occupied = new LongAdder[TYPES.length];
+	private final long[] lastDrift = new long[TYPES.length];
+	private volatile int[] spotCounts;
+
+	public OccupancyCounters() {
+		for (int t = 0; t < TYPES.length; t++) {
+			occupied[t] = new LongAdder();
+		}
+	}
+
+	public void vehicleEntered(ParkingType parkingType) {
+		occupied[parkingType.ordinal()].increment();
+	}
+
+	public void vehicleExited(ParkingType parkingType) {
+		occupied[parkingType.ordinal()].decrement();
+	}
+
+	/**
+	 * Corrects the counts with those read from the storage.
+	 * <p>
+	 * The storage is read while gates keep counting, so a vehicle committed
+	 * but not counted yet, or counted after the read, shows up as a drift of
+	 * one round only. A drift is therefore corrected when the same drift is
+	 * seen by two rounds in a row, except on the first round, which loads the
+	 * counts.
+	 * </p>
+	 *
+	 * @param spots          the number of spots of each type, by ordinal
+	 * @param storedOccupied the number of taken spots of each type, by ordinal
+	 * @return the sum of the corrections made, in absolute value
+	 */
+	public synchronized long reconcile(int[] spots, int[] storedOccupied) {
+		boolean first = spotCounts == null;
+		long corrected = 0;
+		for (int t = 0; t < TYPES.length; t++) {
+			long drift = storedOccupied[t] - occupied[t].sum();
+			if (drift != 0 && (first || drift == lastDrift[t])) {
+				occupied[t].add(drift);
+				corrected += Math.abs(drift);
+				drift = 0;
+			}
+			lastDrift[t] = drift;
+		}
+		spotCounts = spots.clone();
+		return corrected;
+	}
+
+	/**
+	 * @return {@code true} once the counts were loaded by a first
+	 *         {@link #reconcile(int[], int[])}
+	 */
+	public boolean isLoaded() {
+		return spotCounts != null;
+	}
+
+	/**
+	 * @return the number of spots of that type, free or not, as of the last
+	 *         reconciliation, or -1 if the counts were never loaded
+	 */
+	public int getSpotCount(ParkingType parkingType) {
+		int[] spots = spotCounts;
+		return spots == null ? -1 : spots[parkingType.ordinal()];
+	}
+
+	/**
+	 * @return the number of taken spots of that type, or -1 if the counts were
+	 *         never loaded
+	 */
+	public int getOccupied(ParkingType parkingType) {
+		if (spotCounts == null) {
+			return -1;
+		}
+		return (int) Math.max(0, occupied[parkingType.ordinal()].sum());
+	}
+
+	/**
+	 * @return the number of free spots of that type, or -1 if the counts were
+	 *         never loaded
+	 */
+	public int getFree(ParkingType parkingType) {
+		int[] spots = spotCounts;
+		if (spots == null) {
+			return -1;
+		}
+		return (int) Math.max(0, spots[parkingType.ordinal()] - occupied[parkingType.ordinal()].sum());
+	}
+}
@@ -0,0 +1,305 @@
+package com.parkit.parkingsystem.cache;
+
+import com.parkit.parkingsystem.util.PlateCodec;
+
+import java.util.Arrays;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Thread-safe map from a plate encoded by {@link PlateCodec} to a {@code long},
+ * held in primitive arrays with open addressing: an entry costs two array
+ * slots and no object, so millions of plates fit in a few tens of megabytes.
+ * <p>
+ * The map is split into segments, each a linear-probing table guarded by its
+ * own lock, so that gates working on different plates rarely wait for each
+ * other. A segment grows when it is three quarters full, unless the map is
+ * bounded: a new plate then first drops about a quarter of the entries of its
+ * segment, which is cheaper than tracking usage on every read.
+ * </p>
+ */
+public class PlateMap {
+
+	/**
+	 * Returned for a plate that has no entry, and passed to
+	 * {@link #compute(long, LongUnaryOperator)} for it.
+	 */
+	public static final long MISSING = Long.MIN_VALUE;
+
+	private static final int MAX_SEGMENTS = 16;
+	private static final int MIN_TABLE_SIZE = 8;
+
+	private final Segment[] segments;
+	private final int segmentShift;
+
+	/**
+	 * A map growing as plates are added.
+	 */
+	public PlateMap() {
+		this(MAX_SEGMENTS * MIN_TABLE_SIZE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param expectedEntries the number of entries to size the tables for
+	 * @param maxEntries      the number of entries above which some are
+	 *                        dropped, {@link Integer#MAX_VALUE} for none
+	 */
+	public PlateMap(int expectedEntries, int maxEntries) {
+		// a few segments only for a small bounded map, so that each can still hold a fair share
+		int segmentCount = Integer.highestOneBit(Math.max(1, Math.min(MAX_SEGMENTS, maxEntries / 64)));
+		segments = new Segment[segmentCount];
+		segmentShift = 64 - Integer.numberOfTrailingZeros(segmentCount);
+		int segmentMax = maxEntries == Integer.MAX_VALUE ? Integer.MAX_VALUE
+				: Math.max(1, maxEntries / segmentCount);
+		int segmentExpected = Math.min(expectedEntries, maxEntries) / segmentCount;
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment(tableSize(segmentExpected), segmentMax);
+		}
+	}
+
+	/**
+	 * @return the value of the plate, or {@link #MISSING}
+	 */
+	public long get(long plate) {
+		long hash = hash(plate);
+		Segment segment = segmentFor(hash);
+		synchronized (segment) {
+			return segment.get(plate, hash);
+		}
+	}
+
+	/**
+	 * Sets the value of the plate to {@code value} if it has none, otherwise to
+	 * {@code function(current, value)}.
+	 *
+	 * @return the new value
+	 */
+	public long merge(long plate, long value, LongBinaryOperator function) {
+		long hash = hash(plate);
+		Segment segment = segmentFor(hash);
+		synchronized (segment) {
+			long current = segment.get(plate, hash);
+			long merged = current == MISSING ? value : function.applyAsLong(current, value);
+			segment.put(plate, hash, merged);
+			return merged;
+		}
+	}
+
+	/**
+	 * Sets the value of the plate to {@code function(current)}, current being
+	 * {@link #MISSING} if it has none, while holding the lock of its segment.
+	 * Returning {@link #MISSING} removes the entry.
+	 *
+	 * @return the new value
+	 */
+	public long compute(long plate, LongUnaryOperator function) {
+		long hash = hash(plate);
+		Segment segment = segmentFor(hash);
+		synchronized (segment) {
+			long computed = function.applyAsLong(segment.get(plate, hash));
+			if (computed == MISSING) {
+				segment.remove(plate, hash);
+			} else {
+				segment.put(plate, hash, computed);
+			}
+			return computed;
+		}
+	}
+
+	/**
+	 * @return the value the plate had, or {@link #MISSING}
+	 */
+	public long remove(long plate) {
+		long hash = hash(plate);
+		Segment segment = segmentFor(hash);
+		synchronized (segment) {
+			return segment.remove(plate, hash);
+		}
+	}
+
+	/**
+	 * Calls the consumer with every entry, one segment at a time while holding
+	 * its lock.
+	 */
+	public void forEach(EntryConsumer consumer) {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				for (int i = 0; i < segment.keys.length; i++) {
+					if (segment.keys[i] != 0) {
+						consumer.accept(segment.keys[i], segment.values[i]);
+					}
+				}
+			}
+		}
+	}
+
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size;
+			}
+		}
+		return size;
+	}
+
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	@FunctionalInterface
+	public interface EntryConsumer {
+		void accept(long plate, long value);
+	}
+
+	private Segment segmentFor(long hash) {
+		// the high bits pick the segment, the low ones the slot within it
+		return segmentShift == 64 ? segments[0] : segments[(int) (hash >>> segmentShift)];
+	}
+
+	// plate codes have their low bits zero for short plates, so mix them all
+	private static long hash(long plate) {
+		long h = plate;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private static int tableSize(int entries) {
+		int size = MIN_TABLE_SIZE;
+		while (size < (1 << 30) && size * 3L / 4 < entries) {
+			size <<= 1;
+		}
+		return size;
+	}
+
+	private static final class Segment {
+		// 0 marks a free slot, no plate code is 0
+		private long[] keys;
+		private long[] values;
+		private int mask;
+		private int size;
+		private final int maxEntries;
+		// where the next eviction starts, so that it does not always drop the same slots
+		private int evictionCursor;
+
+		private Segment(int tableSize, int maxEntries) {
+			this.maxEntries = maxEntries;
+			allocate(tableSize);
+		}
+
+		private void allocate(int tableSize) {
+			keys = new long[tableSize];
+			values = new long[tableSize];
+			mask = tableSize - 1;
+		}
+
+		private long get(long plate, long hash) {
+			for (int i = (int) hash & mask;; i = (i + 1) & mask) {
+				long key = keys[i];
+				if (key == 0) {
+					return MISSING;
+				}
+				if (key == plate) {
+					return values[i];
+				}
+			}
+		}
+
+		private void put(long plate, long hash, long value) {
+			if (plate <= 0) {
+				throw new IllegalArgumentException("Not a plate code: " + plate);
+			}
+			int i = (int) hash & mask;
+			while (keys[i] != 0) {
+				if (keys[i] == plate) {
+					values[i] = value;
+					return;
+				}
+				i = (i + 1) & mask;
+			}
+			if (size >= maxEntries) {
+				evict(Math.max(1, maxEntries / 4));
+			} else if (size + 1 > (mask + 1) * 3L / 4) {
+				grow();
+			} else {
+				keys[i] = plate;
+				values[i] = value;
+				size++;
+				return;
+			}
+			// the table changed, look for the free slot again
+			put(plate, hash, value);
+		}
+
+		private long remove(long plate, long hash) {
+			for (int i = (int) hash & mask;; i = (i + 1) & mask) {
+				long key = keys[i];
+				if (key == 0) {
+					return MISSING;
+				}
+				if (key == plate) {
+					long value = values[i];
+					removeAt(i);
+					return value;
+				}
+			}
+		}
+
+		// backward-shift deletion: no tombstones, the probe sequences stay short
+		private void removeAt(int slot) {
+			int free = slot;
+			for (int i = (slot + 1) & mask; keys[i] != 0; i = (i + 1) & mask) {
+				int home = (int) hash(keys[i]) & mask;
+				// move the entry back if its home slot is not between the free slot and it
+				if (((i - home) & mask) >= ((i - free) & mask)) {
+					keys[free] = keys[i];
+					values[free] = values[i];
+					free = i;
+				}
+			}
+			keys[free] = 0;
+			values[free] = 0;
+			size--;
+		}
+
+		private void evict(int count) {
+			int i = evictionCursor & mask;
+			while (count > 0 && size > 0) {
+				if (keys[i] != 0) {
+					// an entry may have been shifted into this slot, look at it again
+					removeAt(i);
+					count--;
+				} else {
+					i = (i + 1) & mask;
+				}
+			}
+			evictionCursor = i;
+		}
+
+		private void grow() {
+			long[] oldKeys = keys;
+			long[] oldValues = values;
+			allocate(oldKeys.length << 1);
+			size = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != 0) {
+					put(oldKeys[i], hash(oldKeys[i]), oldValues[i]);
+				}
+			}
+		}
+
+		private void clear() {
+			Arrays.fill(keys, 0);
+			Arrays.fill(values, 0);
+			size = 0;
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package com.parkit.parkingsystem.cache;
+
+import com.parkit.parkingsystem.util.PlateCodec;
+
+/**
+ * In-memory cache of the number of visits of each vehicle, in front of the
+ * {@code vehicle_stats} table.
+ * <p>
+ * A visit count only ever grows, so every value read from or written to the
+ * database is merged by keeping the highest one: a count read before a
+ * concurrent increment was committed can never overwrite the incremented one.
+ * The counts are held in a {@link PlateMap} keyed by encoded plate; a plate
+ * that {@link PlateCodec} cannot encode is never cached.
+ * </p>
+ */
+public class VisitCounterCache {
+
+	private final PlateMap visitCounts;
+
+	public VisitCounterCache(int maxEntries) {
+		visitCounts = new PlateMap(maxEntries, maxEntries);
+	}
+
+	/**
+	 * @return the cached visit count of the vehicle, or -1 if it is not cached
+	 */
+	public int get(String vehicleRegNumber) {
+		long plate = PlateCodec.encode(vehicleRegNumber);
+		if (plate == PlateCodec.NOT_ENCODABLE) {
+			return -1;
+		}
+		long visitCount = visitCounts.get(plate);
+		return visitCount == PlateMap.MISSING ? -1 : (int) visitCount;
+	}
+
+	/**
+	 * Records a visit count known to be committed in the database.
+	 */
+	public void update(String vehicleRegNumber, int visitCount) {
+		update(PlateCodec.encode(vehicleRegNumber), visitCount);
+	}
+
+	/**
+	 * Same as {@link #update(String, int)} for a plate encoded by
+	 * {@link PlateCodec}.
+	 */
+	public void update(long plate, int visitCount) {
+		if (plate != PlateCodec.NOT_ENCODABLE) {
+			visitCounts.merge(plate, visitCount, Math::max);
+		}
+	}
+
+	/**
+	 * Calls the consumer with the encoded plate and visit count of every cached
+	 * vehicle.
+	 */
+	public void forEach(PlateMap.EntryConsumer consumer) {
+		visitCounts.forEach(consumer);
+	}
+
+	public void clear() {
+		visitCounts.clear();
+	}
+
+	public int size() {
+		return visitCounts.size();
+	}
+}
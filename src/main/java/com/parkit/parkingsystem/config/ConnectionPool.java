@@ -0,0 +1,668 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of JDBC connections.
+ * <p>
+ * At most {@code maxSize} connections are handed out at the same time. A
+ * borrower waits up to {@code maxWaitMillis} for a free slot, idle connections
+ * are validated before being handed out again and are closed once they have
+ * been idle longer than {@code idleTimeoutMillis}.
+ * </p>
+ * <p>
+ * The connections returned by {@link #borrow()} are proxies: calling
+ * {@code close()} on them gives the physical connection back to the pool
+ * instead of closing it.
+ * </p>
+ * <p>
+ * Each physical connection keeps up to {@code statementCacheSize} prepared
+ * statements open, keyed by their SQL, so that a query is prepared once per
+ * connection rather than once per call: {@code prepareStatement(sql)} and
+ * {@code prepareStatement(sql, autoGeneratedKeys)} hand out the cached
+ * statement when it is free, and closing it gives it back to the cache with its
+ * parameters cleared. Statements still open when the connection is given back,
+ * cached or not, are reclaimed and counted as leaked.
+ * </p>
+ */
+public class ConnectionPool {
+
+	private static final Logger logger = LogManager.getLogger("ConnectionPool");
+
+	/**
+	 * Opens a new physical connection to the database.
+	 */
+	public interface ConnectionFactory {
+		Connection create() throws SQLException;
+	}
+
+	private final ConnectionFactory connectionFactory;
+	private final int maxSize;
+	private final long maxWaitMillis;
+	private final long idleTimeoutMillis;
+	private final int validationTimeoutSeconds;
+	private final int statementCacheSize;
+
+	private final Semaphore permits;
+	private final ConcurrentLinkedDeque<PooledConnection> idleConnections = new ConcurrentLinkedDeque<>();
+	private final AtomicInteger idleCount = new AtomicInteger();
+	private final AtomicInteger activeCount = new AtomicInteger();
+	private final ScheduledExecutorService evictor;
+	private volatile boolean closed;
+
+	private final LongAdder borrowCount = new LongAdder();
+	private final LongAdder borrowWaitNanos = new LongAdder();
+	private final AtomicLong maxBorrowWaitNanos = new AtomicLong();
+	private final LongAdder waitedBorrowCount = new LongAdder();
+	private final LongAdder exhaustedCount = new LongAdder();
+	private final LongAdder createdCount = new LongAdder();
+	private final LongAdder destroyedCount = new LongAdder();
+	private final LongAdder validationFailureCount = new LongAdder();
+	private final LongAdder statementCacheHits = new LongAdder();
+	private final LongAdder statementCacheMisses = new LongAdder();
+	private final LongAdder leakedStatementCount = new LongAdder();
+
+	/**
+	 * Creates a pool without statement cache.
+	 */
+	public ConnectionPool(ConnectionFactory connectionFactory, int maxSize, long maxWaitMillis,
+			long idleTimeoutMillis, int validationTimeoutSeconds) {
+		this(connectionFactory, maxSize, maxWaitMillis, idleTimeoutMillis, validationTimeoutSeconds, 0);
+	}
+
+	/**
+	 * @param statementCacheSize the number of prepared statements kept open per
+	 *                           connection, 0 to close every statement
+	 */
+	public ConnectionPool(ConnectionFactory connectionFactory, int maxSize, long maxWaitMillis,
+			long idleTimeoutMillis, int validationTimeoutSeconds, int statementCacheSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Pool size must be positive: " + maxSize);
+		}
+		this.connectionFactory = connectionFactory;
+		this.maxSize = maxSize;
+		this.maxWaitMillis = maxWaitMillis;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.validationTimeoutSeconds = validationTimeoutSeconds;
+		this.statementCacheSize = Math.max(0, statementCacheSize);
+		this.permits = new Semaphore(maxSize, true);
+		this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "connection-pool-evictor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long evictionPeriod = Math.max(1000, idleTimeoutMillis / 2);
+		evictor.scheduleWithFixedDelay(this::evictIdleConnections, evictionPeriod, evictionPeriod,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Borrows a connection from the pool, opening a new one if no idle
+	 * connection is available.
+	 *
+	 * @return a pooled connection; closing it gives it back to the pool
+	 * @throws SQLTimeoutException if no connection became available within the
+	 *                             configured max wait
+	 * @throws SQLException        if a new connection could not be opened
+	 */
+	public Connection borrow() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool is closed");
+		}
+		long start = System.nanoTime();
+		boolean acquired = permits.tryAcquire();
+		if (!acquired) {
+			waitedBorrowCount.increment();
+			try {
+				acquired = permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while waiting for a connection", e);
+			}
+		}
+		long waited = System.nanoTime() - start;
+		if (!acquired) {
+			exhaustedCount.increment();
+			throw new SQLTimeoutException("Connection pool exhausted: no connection available after "
+					+ maxWaitMillis + " ms (max size " + maxSize + ")");
+		}
+		recordBorrowWait(waited);
+
+		try {
+			PooledConnection pooled = takeValidIdleConnection();
+			if (pooled == null) {
+				pooled = new PooledConnection(connectionFactory.create());
+				createdCount.increment();
+			}
+			activeCount.incrementAndGet();
+			return pooled.lease();
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	private PooledConnection takeValidIdleConnection() {
+		PooledConnection pooled;
+		while ((pooled = idleConnections.pollFirst()) != null) {
+			idleCount.decrementAndGet();
+			if (isExpired(pooled, System.currentTimeMillis())) {
+				destroy(pooled);
+				continue;
+			}
+			if (isValid(pooled)) {
+				return pooled;
+			}
+			validationFailureCount.increment();
+			destroy(pooled);
+		}
+		return null;
+	}
+
+	private boolean isValid(PooledConnection pooled) {
+		try {
+			return pooled.physical.isValid(validationTimeoutSeconds);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private boolean isExpired(PooledConnection pooled, long now) {
+		return idleTimeoutMillis > 0 && now - pooled.lastReleased > idleTimeoutMillis;
+	}
+
+	private void recordBorrowWait(long waitedNanos) {
+		borrowCount.increment();
+		borrowWaitNanos.add(waitedNanos);
+		long max;
+		while (waitedNanos > (max = maxBorrowWaitNanos.get())) {
+			if (maxBorrowWaitNanos.compareAndSet(max, waitedNanos)) {
+				break;
+			}
+		}
+	}
+
+	private void release(PooledConnection pooled) {
+		activeCount.decrementAndGet();
+		try {
+			int leaked = pooled.reclaimStatements();
+			if (leaked > 0) {
+				leakedStatementCount.add(leaked);
+				logger.warn("{} statement(s) left open on a connection given back to the pool", leaked);
+			}
+			if (closed || pooled.physical.isClosed()) {
+				destroy(pooled);
+				return;
+			}
+			if (!pooled.physical.getAutoCommit()) {
+				pooled.physical.rollback();
+				pooled.physical.setAutoCommit(true);
+			}
+			pooled.lastReleased = System.currentTimeMillis();
+			idleConnections.offerFirst(pooled);
+			idleCount.incrementAndGet();
+		} catch (SQLException e) {
+			logger.error("Error while returning connection to the pool", e);
+			destroy(pooled);
+		} finally {
+			permits.release();
+		}
+	}
+
+	private void destroy(PooledConnection pooled) {
+		destroyedCount.increment();
+		try {
+			pooled.closeStatements();
+			pooled.physical.close();
+		} catch (SQLException e) {
+			logger.error("Error while closing pooled connection", e);
+		}
+	}
+
+	/**
+	 * Closes the connections that stayed idle longer than the idle timeout. Runs
+	 * periodically in the background, but can also be called directly.
+	 */
+	public void evictIdleConnections() {
+		long now = System.currentTimeMillis();
+		Iterator<PooledConnection> it = idleConnections.descendingIterator();
+		while (it.hasNext()) {
+			PooledConnection pooled = it.next();
+			if (isExpired(pooled, now) && idleConnections.removeLastOccurrence(pooled)) {
+				idleCount.decrementAndGet();
+				destroy(pooled);
+			}
+		}
+	}
+
+	/**
+	 * Closes every idle connection and stops handing out new ones. Connections
+	 * still borrowed are closed when they are given back.
+	 */
+	public void close() {
+		closed = true;
+		evictor.shutdownNow();
+		PooledConnection pooled;
+		while ((pooled = idleConnections.pollFirst()) != null) {
+			idleCount.decrementAndGet();
+			destroy(pooled);
+		}
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public int getActiveCount() {
+		return activeCount.get();
+	}
+
+	public int getIdleCount() {
+		return idleCount.get();
+	}
+
+	public long getBorrowCount() {
+		return borrowCount.sum();
+	}
+
+	public long getTotalBorrowWaitNanos() {
+		return borrowWaitNanos.sum();
+	}
+
+	public long getMaxBorrowWaitNanos() {
+		return maxBorrowWaitNanos.get();
+	}
+
+	/**
+	 * @return the number of borrows that found every connection in use and had
+	 *         to wait for one to be given back
+	 */
+	public long getWaitedBorrowCount() {
+		return waitedBorrowCount.sum();
+	}
+
+	/**
+	 * @return the number of borrows that gave up after waiting the max wait
+	 */
+	public long getExhaustedCount() {
+		return exhaustedCount.sum();
+	}
+
+	public long getCreatedCount() {
+		return createdCount.sum();
+	}
+
+	public long getDestroyedCount() {
+		return destroyedCount.sum();
+	}
+
+	public long getValidationFailureCount() {
+		return validationFailureCount.sum();
+	}
+
+	public int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+
+	/**
+	 * @return the number of statements prepared with a SQL found free in the
+	 *         statement cache of the connection
+	 */
+	public long getStatementCacheHits() {
+		return statementCacheHits.sum();
+	}
+
+	/**
+	 * @return the number of cacheable statements that had to be prepared, the
+	 *         SQL being missing from the cache or its statement in use
+	 */
+	public long getStatementCacheMisses() {
+		return statementCacheMisses.sum();
+	}
+
+	/**
+	 * @return the number of statements still open when their connection was
+	 *         given back to the pool
+	 */
+	public long getLeakedStatementCount() {
+		return leakedStatementCount.sum();
+	}
+
+	@Override
+	public String toString() {
+		long borrows = getBorrowCount();
+		long avgWaitMicros = borrows == 0 ? 0 : getTotalBorrowWaitNanos() / borrows / 1000;
+		return "ConnectionPool[max=" + maxSize + ", active=" + getActiveCount() + ", idle=" + getIdleCount()
+				+ ", borrows=" + borrows + ", avgWaitMicros=" + avgWaitMicros + ", maxWaitMicros="
+				+ getMaxBorrowWaitNanos() / 1000 + ", waited=" + getWaitedBorrowCount() + ", exhausted="
+				+ getExhaustedCount() + ", created=" + getCreatedCount() + ", destroyed=" + getDestroyedCount()
+				+ ", statementHits=" + getStatementCacheHits() + ", statementMisses=" + getStatementCacheMisses()
+				+ ", leakedStatements=" + getLeakedStatementCount() + "]";
+	}
+
+	/**
+	 * A physical connection owned by the pool. Each borrow hands out a fresh
+	 * proxy, so a stale proxy kept by a caller cannot reach the connection once
+	 * it has been given back.
+	 */
+	private final class PooledConnection {
+		private final Connection physical;
+		private volatile long lastReleased = System.currentTimeMillis();
+		// only used by the borrower, or by the pool while the connection is not lent
+		private final Map<StatementKey, CachedStatement> statementCache = new LinkedHashMap<>(16, 0.75f, true);
+		private final List<Statement> leasedStatements = new ArrayList<>();
+
+		private PooledConnection(Connection physical) {
+			this.physical = physical;
+		}
+
+		private Connection lease() {
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, new LeaseHandler(this));
+		}
+
+		private Object createStatement(Method method, Object[] args) throws Throwable {
+			StatementKey key = StatementKey.of(method.getName(), args);
+			if (key == null || statementCacheSize == 0) {
+				return track((Statement) invokePhysical(method, args));
+			}
+			CachedStatement cached = statementCache.get(key);
+			if (cached != null && !cached.inUse && cached.statement.isClosed()) {
+				// closed by the driver, after an error
+				statementCache.remove(key);
+				cached = null;
+			}
+			if (cached != null && !cached.inUse) {
+				statementCacheHits.increment();
+				return cached.checkOut();
+			}
+			statementCacheMisses.increment();
+			PreparedStatement ps = (PreparedStatement) invokePhysical(method, args);
+			if (cached != null || !makeRoom()) {
+				// the cached one is in use, or every cached statement is
+				return track(ps);
+			}
+			try {
+				cached = new CachedStatement(ps);
+			} catch (SQLException e) {
+				ps.close();
+				throw e;
+			}
+			statementCache.put(key, cached);
+			return cached.checkOut();
+		}
+
+		private Object invokePhysical(Method method, Object[] args) throws Throwable {
+			try {
+				return method.invoke(physical, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+
+		private Statement track(Statement statement) {
+			leasedStatements.add(statement);
+			return statement;
+		}
+
+		/**
+		 * Closes the least recently used free statement if the cache is full.
+		 *
+		 * @return {@code false} if the cache is full of statements in use
+		 */
+		private boolean makeRoom() {
+			if (statementCache.size() < statementCacheSize) {
+				return true;
+			}
+			Iterator<CachedStatement> it = statementCache.values().iterator();
+			while (it.hasNext()) {
+				CachedStatement cached = it.next();
+				if (!cached.inUse) {
+					it.remove();
+					closeQuietly(cached.statement);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Gives back to the cache the cached statements the borrower did not close,
+		 * and closes the others.
+		 *
+		 * @return the number of statements left open by the borrower
+		 */
+		private int reclaimStatements() {
+			int leaked = 0;
+			for (CachedStatement cached : statementCache.values()) {
+				if (cached.inUse) {
+					leaked++;
+					cached.checkIn();
+				}
+			}
+			for (Statement statement : leasedStatements) {
+				try {
+					if (!statement.isClosed()) {
+						leaked++;
+						statement.close();
+					}
+				} catch (SQLException e) {
+					logger.error("Error while closing leaked statement", e);
+				}
+			}
+			leasedStatements.clear();
+			return leaked;
+		}
+
+		private void closeStatements() {
+			for (CachedStatement cached : statementCache.values()) {
+				closeQuietly(cached.statement);
+			}
+			statementCache.clear();
+		}
+
+		private void closeQuietly(Statement statement) {
+			try {
+				statement.close();
+			} catch (SQLException e) {
+				logger.error("Error while closing cached statement", e);
+			}
+		}
+	}
+
+	/**
+	 * SQL and generated keys option of a cacheable prepared statement.
+	 */
+	private static final class StatementKey {
+		private final String sql;
+		private final int autoGeneratedKeys;
+
+		private StatementKey(String sql, int autoGeneratedKeys) {
+			this.sql = sql;
+			this.autoGeneratedKeys = autoGeneratedKeys;
+		}
+
+		/**
+		 * @return the key of a {@code prepareStatement(sql)} or
+		 *         {@code prepareStatement(sql, autoGeneratedKeys)} call, or null for
+		 *         any other statement, whose options a cached statement could not
+		 *         honour
+		 */
+		private static StatementKey of(String methodName, Object[] args) {
+			if (!"prepareStatement".equals(methodName) || !(args[0] instanceof String)) {
+				return null;
+			}
+			if (args.length == 1) {
+				return new StatementKey((String) args[0], Statement.NO_GENERATED_KEYS);
+			}
+			if (args.length == 2 && args[1] instanceof Integer) {
+				return new StatementKey((String) args[0], (Integer) args[1]);
+			}
+			return null;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof StatementKey)) {
+				return false;
+			}
+			StatementKey other = (StatementKey) o;
+			return autoGeneratedKeys == other.autoGeneratedKeys && sql.equals(other.sql);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(sql, autoGeneratedKeys);
+		}
+	}
+
+	/**
+	 * A prepared statement kept open by its connection. Like a connection, it is
+	 * handed out through a fresh proxy on each checkout, closing the proxy giving
+	 * the statement back to the cache.
+	 * <p>
+	 * A statement given back is reset to the state it was prepared in: no
+	 * parameters, no pending batch, and the fetch size, max rows and query
+	 * timeout of the driver, so that a borrower never runs the batch or the
+	 * settings of the previous one. A statement that cannot be reset is closed,
+	 * which evicts it from the cache on the next lookup.
+	 * </p>
+	 */
+	private static final class CachedStatement {
+		private final PreparedStatement statement;
+		private final int fetchSize;
+		private final int maxRows;
+		private final int queryTimeout;
+		private boolean inUse;
+		private AtomicBoolean checkedIn;
+
+		private CachedStatement(PreparedStatement statement) throws SQLException {
+			this.statement = statement;
+			this.fetchSize = statement.getFetchSize();
+			this.maxRows = statement.getMaxRows();
+			this.queryTimeout = statement.getQueryTimeout();
+		}
+
+		private PreparedStatement checkOut() {
+			inUse = true;
+			AtomicBoolean returned = new AtomicBoolean();
+			checkedIn = returned;
+			return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+						switch (method.getName()) {
+						case "close":
+							if (returned.compareAndSet(false, true)) {
+								reset();
+							}
+							return null;
+						case "isClosed":
+							return returned.get() || statement.isClosed();
+						case "equals":
+							return proxy == args[0];
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						default:
+							if (returned.get()) {
+								throw new SQLException("Statement has already been closed");
+							}
+							try {
+								return method.invoke(statement, args);
+							} catch (InvocationTargetException e) {
+								throw e.getCause();
+							}
+						}
+					});
+		}
+
+		private void checkIn() {
+			if (checkedIn.compareAndSet(false, true)) {
+				reset();
+			}
+		}
+
+		private void reset() {
+			inUse = false;
+			try {
+				statement.clearParameters();
+				statement.clearBatch();
+				statement.setFetchSize(fetchSize);
+				statement.setMaxRows(maxRows);
+				statement.setQueryTimeout(queryTimeout);
+			} catch (SQLException e) {
+				logger.error("Error while resetting cached statement, evicting it", e);
+				try {
+					statement.close();
+				} catch (SQLException closeError) {
+					e.addSuppressed(closeError);
+				}
+			}
+		}
+	}
+
+	private final class LeaseHandler implements InvocationHandler {
+		private final PooledConnection pooled;
+		private final AtomicBoolean returned = new AtomicBoolean();
+
+		private LeaseHandler(PooledConnection pooled) {
+			this.pooled = pooled;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (returned.compareAndSet(false, true)) {
+					release(pooled);
+				}
+				return null;
+			case "isClosed":
+				return returned.get() || pooled.physical.isClosed();
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "PooledConnection[" + pooled.physical + "]";
+			default:
+				if (returned.get()) {
+					throw new SQLException("Connection has already been returned to the pool");
+				}
+				if (method.getReturnType() == Statement.class || method.getReturnType() == PreparedStatement.class
+						|| method.getName().equals("prepareCall")) {
+					return pooled.createStatement(method, args);
+				}
+				try {
+					return method.invoke(pooled.physical, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		}
+	}
+}
@@ -1,25 +1,149 @@
 package com.parkit.parkingsystem.config;
 
+import com.parkit.parkingsystem.metrics.ConnectionBorrowEvent;
+import com.parkit.parkingsystem.metrics.InstrumentedConnection;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.Timer;
+import com.parkit.parkingsystem.util.LogSampler;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.util.Unbox;
 
 import java.sql.*;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DataBaseConfig {
 
 	private static final Logger logger = LogManager.getLogger("DataBaseConfig");
 
+	// One pool per JDBC url, shared by every DAO pointing at the same database
+	private static final Map<String, ConnectionPool> connectionPools = new ConcurrentHashMap<>();
+
+	private static final int POOL_MAX_SIZE = Integer.getInteger("parkit.db.pool.maxSize", 10);
+	private static final long POOL_MAX_WAIT_MILLIS = Long.getLong("parkit.db.pool.maxWaitMillis", 5000L);
+	private static final long POOL_IDLE_TIMEOUT_MILLIS = Long.getLong("parkit.db.pool.idleTimeoutMillis", 300000L);
+	private static final int POOL_VALIDATION_TIMEOUT_SECONDS = Integer
+			.getInteger("parkit.db.pool.validationTimeoutSeconds", 2);
+	// enough for every DBConstants query, so that none is prepared twice on a connection
+	private static final int POOL_STATEMENT_CACHE_SIZE = Integer.getInteger("parkit.db.pool.statementCacheSize", 32);
+
+	// the connection and statement messages are emitted on every DAO call: log a sample only
+	private static final int CHATTER_SAMPLE_RATE = Integer.getInteger("parkit.log.dbSampleRate", 100);
+
+	private static final Timer connectionTimer = MetricsRegistry.getDefault().timer("parkit_db_connection_borrow",
+			"Connections borrowed from the pool");
+
+	/**
+	 * Borrows a connection from the pool of this database. Closing the returned
+	 * connection, directly or through {@link #closeConnection(Connection)}, gives
+	 * it back to the pool.
+	 * <p>
+	 * The borrow and the statements run on the connection are timed in the
+	 * default {@link MetricsRegistry}, see {@link InstrumentedConnection}, and
+	 * recorded as JFR events, the borrow as a {@link ConnectionBorrowEvent}.
+	 * </p>
+	 * <p>
+	 * The prepared statements are cached by the connection, see
+	 * {@link ConnectionPool}: a statement closed by a DAO stays prepared for the
+	 * next call of the same query.
+	 * </p>
+	 */
 	public Connection getConnection() throws ClassNotFoundException, SQLException {
-		logger.info("Create DB connection");
-		Class.forName("com.mysql.cj.jdbc.Driver");
-		return DriverManager.getConnection("jdbc:mysql://localhost:3306/prod", "root", "rootroot");
+		if (logger.isDebugEnabled() && LogSampler.sample(CHATTER_SAMPLE_RATE)) {
+			logger.debug("Create DB connection (1 in {} logged)", Unbox.box(CHATTER_SAMPLE_RATE));
+		}
+		ConnectionBorrowEvent event = new ConnectionBorrowEvent();
+		event.begin();
+		long start = System.nanoTime();
+		boolean failed = true;
+		ConnectionPool pool = null;
+		try {
+			pool = getConnectionPool();
+			Connection con = InstrumentedConnection.wrap(pool.borrow());
+			failed = false;
+			return con;
+		} finally {
+			connectionTimer.stop(start, failed);
+			event.end();
+			if (event.shouldCommit()) {
+				event.activeConnections = pool == null ? 0 : pool.getActiveCount();
+				event.failed = failed;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * @return the connection pool of this database, created on first use
+	 */
+	public ConnectionPool getConnectionPool() throws ClassNotFoundException {
+		String url = getUrl();
+		ConnectionPool pool = connectionPools.get(url);
+		if (pool == null) {
+			Class.forName("com.mysql.cj.jdbc.Driver");
+			Properties properties = getConnectionProperties();
+			properties.setProperty("user", getUser());
+			properties.setProperty("password", getPassword());
+			pool = connectionPools.computeIfAbsent(url, u -> registerPoolGauges(u, new ConnectionPool(
+					() -> DriverManager.getConnection(u, properties), POOL_MAX_SIZE, POOL_MAX_WAIT_MILLIS,
+					POOL_IDLE_TIMEOUT_MILLIS, POOL_VALIDATION_TIMEOUT_SECONDS, POOL_STATEMENT_CACHE_SIZE)));
+		}
+		return pool;
+	}
+
+	private static ConnectionPool registerPoolGauges(String url, ConnectionPool pool) {
+		// the url without its parameters, which may hold credentials
+		String database = url.split("\\?")[0];
+		MetricsRegistry registry = MetricsRegistry.getDefault();
+		registry.gauge("parkit_db_pool_connections", "Pooled connections by state", pool::getActiveCount,
+				"database", database, "state", "active");
+		registry.gauge("parkit_db_pool_connections", "Pooled connections by state", pool::getIdleCount,
+				"database", database, "state", "idle");
+		registry.gauge("parkit_db_pool_exhausted_borrows", "Borrows failed for lack of a free connection",
+				pool::getExhaustedCount, "database", database);
+		registry.gauge("parkit_db_statement_cache_requests", "Prepared statements by statement cache result",
+				pool::getStatementCacheHits, "database", database, "result", "hit");
+		registry.gauge("parkit_db_statement_cache_requests", "Prepared statements by statement cache result",
+				pool::getStatementCacheMisses, "database", database, "result", "miss");
+		registry.gauge("parkit_db_leaked_statements", "Statements left open when a connection was given back",
+				pool::getLeakedStatementCount, "database", database);
+		return pool;
+	}
+
+	protected String getUrl() {
+		return "jdbc:mysql://localhost:3306/prod";
+	}
+
+	/**
+	 * @return the driver properties of the connections, without the user and
+	 *         password: server-side prepared statements, which the pool keeps
+	 *         prepared on the server as long as they are cached
+	 */
+	protected Properties getConnectionProperties() {
+		Properties properties = new Properties();
+		properties.setProperty("useServerPrepStmts", "true");
+		// the pool caches the statements, the driver does not need to
+		properties.setProperty("cachePrepStmts", "false");
+		return properties;
+	}
+
+	protected String getUser() {
+		return "root";
+	}
+
+	protected String getPassword() {
+		return "rootroot";
 	}
 
 	public void closeConnection(Connection con) {
 		if (con != null) {
 			try {
 				con.close();
-				logger.info("Closing DB connection");
+				if (logger.isDebugEnabled() && LogSampler.sample(CHATTER_SAMPLE_RATE)) {
+					logger.debug("Closing DB connection (1 in {} logged)", Unbox.box(CHATTER_SAMPLE_RATE));
+				}
 			} catch (SQLException e) {
 				logger.error("Error while closing connection", e);
 			}
@@ -30,7 +154,9 @@ public class DataBaseConfig {
 		if (ps != null) {
 			try {
 				ps.close();
-				logger.info("Closing Prepared Statement");
+				if (logger.isDebugEnabled() && LogSampler.sample(CHATTER_SAMPLE_RATE)) {
+					logger.debug("Closing Prepared Statement (1 in {} logged)", Unbox.box(CHATTER_SAMPLE_RATE));
+				}
 			} catch (SQLException e) {
 				logger.error("Error while closing prepared statement", e);
 			}
@@ -41,7 +167,9 @@ public class DataBaseConfig {
 		if (rs != null) {
 			try {
 				rs.close();
-				logger.info("Closing Result Set");
+				if (logger.isDebugEnabled() && LogSampler.sample(CHATTER_SAMPLE_RATE)) {
+					logger.debug("Closing Result Set (1 in {} logged)", Unbox.box(CHATTER_SAMPLE_RATE));
+				}
 			} catch (SQLException e) {
 				logger.error("Error while closing result set", e);
 			}
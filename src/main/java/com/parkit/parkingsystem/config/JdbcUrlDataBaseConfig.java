@@ -0,0 +1,32 @@
+package com.parkit.parkingsystem.config;
+
+/**
+ * A {@link DataBaseConfig} for a database given on the command line, as used
+ * by the tools run outside of the application.
+ */
+public class JdbcUrlDataBaseConfig extends DataBaseConfig {
+	private final String url;
+	private final String user;
+	private final String password;
+
+	public JdbcUrlDataBaseConfig(String url, String user, String password) {
+		this.url = url;
+		this.user = user;
+		this.password = password;
+	}
+
+	@Override
+	protected String getUrl() {
+		return url;
+	}
+
+	@Override
+	protected String getUser() {
+		return user;
+	}
+
+	@Override
+	protected String getPassword() {
+		return password;
+	}
+}
@@ -0,0 +1,190 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Applies the versioned schema migrations of {@code db/migration} to the
+ * database at startup.
+ * <p>
+ * Each applied version is recorded in the {@code schema_version} table with the
+ * checksum of its script. A version is applied only once, and the application
+ * refuses to start if the script of an applied version has been modified
+ * since. A MySQL named lock keeps two instances starting at the same time from
+ * applying the same version twice.
+ * </p>
+ * <p>
+ * MySQL commits DDL statements implicitly, so a failing script is not rolled
+ * back: its version is not recorded and it must be fixed by hand.
+ * </p>
+ */
+public class SchemaMigrator {
+
+	private static final Logger logger = LogManager.getLogger("SchemaMigrator");
+
+	private static final String MIGRATION_LOCATION = "db/migration/";
+
+	// applied in this order; never edit a script once released, add a new version instead
+	private static final String[] MIGRATIONS = { "V1__ticket_and_parking_indexes.sql", "V2__vehicle_stats.sql",
+			"V3__journal_checkpoint.sql", "V4__ticket_rollup_hourly.sql", "V5__ticket_archive.sql" };
+
+	private static final String CREATE_SCHEMA_VERSION = "create table if not exists schema_version(VERSION int PRIMARY KEY, DESCRIPTION varchar(100) NOT NULL, CHECKSUM bigint NOT NULL, APPLIED_ON DATETIME NOT NULL)";
+	private static final String GET_SCHEMA_VERSIONS = "select VERSION, CHECKSUM from schema_version";
+	private static final String SAVE_SCHEMA_VERSION = "insert into schema_version(VERSION, DESCRIPTION, CHECKSUM, APPLIED_ON) values(?,?,?,?)";
+	private static final String GET_LOCK = "select GET_LOCK('parkit_schema_migration', 60)";
+	private static final String RELEASE_LOCK = "select RELEASE_LOCK('parkit_schema_migration')";
+
+	private final DataBaseConfig dataBaseConfig;
+
+	public SchemaMigrator(DataBaseConfig dataBaseConfig) {
+		this.dataBaseConfig = dataBaseConfig;
+	}
+
+	/**
+	 * Applies every migration not applied yet.
+	 *
+	 * @return the number of migrations applied
+	 * @throws IllegalStateException if an applied migration was modified
+	 * @throws SQLException          if the database is unreachable or a migration
+	 *                               fails
+	 */
+	public int migrate() throws SQLException, ClassNotFoundException {
+		Connection con = null;
+		try {
+			con = dataBaseConfig.getConnection();
+			lock(con);
+			try {
+				return applyPendingMigrations(con);
+			} finally {
+				execute(con, RELEASE_LOCK);
+			}
+		} finally {
+			dataBaseConfig.closeConnection(con);
+		}
+	}
+
+	private int applyPendingMigrations(Connection con) throws SQLException {
+		execute(con, CREATE_SCHEMA_VERSION);
+		Map<Integer, Long> applied = new HashMap<>();
+		PreparedStatement ps = con.prepareStatement(GET_SCHEMA_VERSIONS);
+		ResultSet rs = ps.executeQuery();
+		while (rs.next()) {
+			applied.put(rs.getInt(1), rs.getLong(2));
+		}
+		dataBaseConfig.closeResultSet(rs);
+		dataBaseConfig.closePreparedStatement(ps);
+
+		int count = 0;
+		for (String script : MIGRATIONS) {
+			int version = parseVersion(script);
+			String sql = readScript(script);
+			long checksum = checksum(sql);
+			Long appliedChecksum = applied.get(version);
+			if (appliedChecksum != null) {
+				if (appliedChecksum != checksum) {
+					throw new IllegalStateException("Migration " + script + " was modified after being applied "
+							+ "(checksum " + checksum + ", applied " + appliedChecksum + ")");
+				}
+				continue;
+			}
+			logger.info("Applying schema migration {}", script);
+			for (String statement : splitStatements(sql)) {
+				execute(con, statement);
+			}
+			PreparedStatement save = con.prepareStatement(SAVE_SCHEMA_VERSION);
+			save.setInt(1, version);
+			save.setString(2, script);
+			save.setLong(3, checksum);
+			save.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+			save.executeUpdate();
+			dataBaseConfig.closePreparedStatement(save);
+			count++;
+		}
+		if (count > 0) {
+			logger.info("Applied {} schema migration(s)", count);
+		}
+		return count;
+	}
+
+	private void lock(Connection con) throws SQLException {
+		PreparedStatement ps = con.prepareStatement(GET_LOCK);
+		ResultSet rs = ps.executeQuery();
+		boolean locked = rs.next() && rs.getInt(1) == 1;
+		dataBaseConfig.closeResultSet(rs);
+		dataBaseConfig.closePreparedStatement(ps);
+		if (!locked) {
+			throw new SQLException("Could not acquire the schema migration lock");
+		}
+	}
+
+	private void execute(Connection con, String sql) throws SQLException {
+		Statement statement = con.createStatement();
+		try {
+			statement.execute(sql);
+		} finally {
+			statement.close();
+		}
+	}
+
+	static int parseVersion(String script) {
+		return Integer.parseInt(script.substring(1, script.indexOf("__")));
+	}
+
+	static long checksum(String sql) {
+		CRC32 crc = new CRC32();
+		crc.update(sql.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8));
+		return crc.getValue();
+	}
+
+	/**
+	 * Splits a script on the semicolons ending its statements, dropping the
+	 * {@code --} comment lines.
+	 */
+	static List<String> splitStatements(String sql) {
+		List<String> statements = new ArrayList<>();
+		StringBuilder current = new StringBuilder();
+		for (String line : sql.split("\r?\n")) {
+			String trimmed = line.trim();
+			if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+				continue;
+			}
+			current.append(line).append('\n');
+			if (trimmed.endsWith(";")) {
+				String statement = current.toString().trim();
+				statements.add(statement.substring(0, statement.length() - 1));
+				current.setLength(0);
+			}
+		}
+		if (current.toString().trim().length() > 0) {
+			statements.add(current.toString().trim());
+		}
+		return statements;
+	}
+
+	private static String readScript(String script) {
+		try (InputStream in = SchemaMigrator.class.getClassLoader()
+				.getResourceAsStream(MIGRATION_LOCATION + script)) {
+			if (in == null) {
+				throw new IllegalStateException("Migration script not found: " + script);
+			}
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to read migration script " + script, e);
+		}
+	}
+}
@@ -4,9 +4,16 @@ public class DBConstants {
 
 	public static final String GET_NEXT_PARKING_SPOT = "select min(PARKING_NUMBER) from parking where AVAILABLE = true and TYPE = ?";
 	public static final String UPDATE_PARKING_SPOT = "update parking set available = ? where PARKING_NUMBER = ?";
+	// only succeeds if the spot is still free, so two gates can never take the same spot
+	public static final String CLAIM_PARKING_SPOT = "update parking set AVAILABLE = false where PARKING_NUMBER = ? and TYPE = ? and AVAILABLE = true";
+	public static final String GET_PARKING_SPOTS = "select PARKING_NUMBER, AVAILABLE, TYPE from parking";
+	public static final String COUNT_SPOTS_BY_TYPE = "select TYPE, count(*), sum(case when AVAILABLE then 0 else 1 end) from parking group by TYPE";
 
 	public static final String SAVE_TICKET = "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?)";
 	public static final String UPDATE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=?";
+	public static final String CLOSE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=? and OUT_TIME is null";
+	public static final String GET_OPEN_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.VEHICLE_REG_NUMBER, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.OUT_TIME is null and t.VEHICLE_REG_NUMBER=? order by t.IN_TIME DESC limit 1";
+	public static final String GET_OPEN_TICKETS = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.VEHICLE_REG_NUMBER, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.OUT_TIME is null";
 	public static final String GET_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? order by t.IN_TIME DESC limit 1";
 
 	// count how many times a vehicle has parked, based on its license plate number
@@ -14,4 +21,45 @@ public class DBConstants {
 	// It selects the vehicle registration number and the number of tickets (rows)
 	// associated with it.
 	public static final String COUNT_TICKET = "select VEHICLE_REG_NUMBER, COUNT(*) from ticket WHERE VEHICLE_REG_NUMBER =?";
+
+	// per vehicle visit counter, incremented with each saved ticket so that counting
+	// the visits of a vehicle does not scan the ticket table. The new count goes through
+	// LAST_INSERT_ID(expr), which MySQL returns as the generated key of the statement
+	public static final String INCREMENT_VISIT_COUNT = "insert into vehicle_stats(VEHICLE_REG_NUMBER, VISIT_COUNT) values(?,LAST_INSERT_ID(1)) on duplicate key update VISIT_COUNT = LAST_INSERT_ID(VISIT_COUNT + 1)";
+	public static final String GET_VISIT_COUNT = "select VISIT_COUNT from vehicle_stats where VEHICLE_REG_NUMBER = ?";
+
+	// replay of the offline journal, see JournaledParkingTransactionDAO
+	public static final String SAVE_JOURNALED_TICKET = "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME, JOURNAL_SEQUENCE) values(?,?,?,?,?,?)";
+	public static final String CLOSE_JOURNALED_TICKET = "update ticket set PRICE=?, OUT_TIME=? where JOURNAL_SEQUENCE=? and OUT_TIME is null";
+	public static final String GET_JOURNAL_CHECKPOINT = "select SEQUENCE from journal_checkpoint where ID = 1";
+	// only moves forward, so a record replayed twice updates no row
+	public static final String UPDATE_JOURNAL_CHECKPOINT = "update journal_checkpoint set SEQUENCE = ? where ID = 1 and SEQUENCE < ?";
+
+	// end-of-day billing run, see BillingReconciliation: every ticket in plate order, which
+	// walks idx_ticket_vehicle_in_time, so that a ticket following another of the same
+	// vehicle is known to be discounted, as is every ticket of a vehicle with archived tickets
+	public static final String STREAM_TICKETS_BY_VEHICLE = "select t.ID, t.VEHICLE_REG_NUMBER, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE, coalesce(s.ARCHIVED_COUNT, 0) from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER left join vehicle_stats s on s.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER order by t.VEHICLE_REG_NUMBER, t.IN_TIME, t.ID";
+	public static final String CORRECT_TICKET_PRICE = "update ticket set PRICE=? where ID=?";
+
+	// hourly rollups, see HourlyRollupDAO. The deltas of an hour are added to its row and
+	// PEAK_OCCUPANCY only goes up
+	public static final String ROLLUP_ADD = "insert into ticket_rollup_hourly(HOUR_START, TYPE, ENTRIES, EXITS, REVENUE, TOTAL_DURATION_MILLIS, PEAK_OCCUPANCY) values(?,?,?,?,?,?,?) on duplicate key update ENTRIES = ENTRIES + values(ENTRIES), EXITS = EXITS + values(EXITS), REVENUE = REVENUE + values(REVENUE), TOTAL_DURATION_MILLIS = TOTAL_DURATION_MILLIS + values(TOTAL_DURATION_MILLIS), PEAK_OCCUPANCY = greatest(PEAK_OCCUPANCY, values(PEAK_OCCUPANCY))";
+	public static final String ROLLUP_OVERWRITE = "insert into ticket_rollup_hourly(HOUR_START, TYPE, ENTRIES, EXITS, REVENUE, TOTAL_DURATION_MILLIS, PEAK_OCCUPANCY) values(?,?,?,?,?,?,?) on duplicate key update ENTRIES = values(ENTRIES), EXITS = values(EXITS), REVENUE = values(REVENUE), TOTAL_DURATION_MILLIS = values(TOTAL_DURATION_MILLIS), PEAK_OCCUPANCY = values(PEAK_OCCUPANCY)";
+	public static final String GET_ROLLUPS = "select HOUR_START, TYPE, ENTRIES, EXITS, REVENUE, TOTAL_DURATION_MILLIS, PEAK_OCCUPANCY from ticket_rollup_hourly where HOUR_START >= ? and HOUR_START < ? order by HOUR_START, TYPE";
+	// rollup backfill: the tickets parked at the start of the range, then every entry and
+	// exit of the range in time order, exits first at the same instant
+	public static final String COUNT_PARKED_AT = "select p.TYPE, count(*) from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER where t.IN_TIME < ? and (t.OUT_TIME is null or t.OUT_TIME >= ?) group by p.TYPE";
+	public static final String STREAM_TICKET_EVENTS = "select p.TYPE, t.IN_TIME as EVENT_TIME, 1 as DELTA, t.IN_TIME, t.PRICE from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER where t.IN_TIME >= ? and t.IN_TIME < ? "
+			+ "union all select p.TYPE, t.OUT_TIME as EVENT_TIME, -1 as DELTA, t.IN_TIME, t.PRICE from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER where t.OUT_TIME >= ? and t.OUT_TIME < ? order by EVENT_TIME, DELTA";
+
+	// ticket archival, see TicketArchiver: closed tickets leave the ticket table oldest first,
+	// one month of OUT_TIME at a time, walking idx_ticket_open
+	public static final String GET_OLDEST_CLOSED_TICKET = "select min(OUT_TIME) from ticket where OUT_TIME < ?";
+	public static final String GET_ARCHIVABLE_TICKETS = "select ID, VEHICLE_REG_NUMBER from ticket where OUT_TIME >= ? and OUT_TIME < ? order by OUT_TIME limit ?";
+	public static final String ADD_ARCHIVED_VISITS = "update vehicle_stats set ARCHIVED_COUNT = ARCHIVED_COUNT + ? where VEHICLE_REG_NUMBER = ?";
+
+	// warm start from a state snapshot, see StateSnapshotter: the tickets saved since its high-water mark,
+	// with the columns of GET_OPEN_TICKETS followed by OUT_TIME
+	public static final String GET_MAX_TICKET_ID = "select coalesce(max(ID), 0) from ticket";
+	public static final String GET_TICKETS_SINCE = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.VEHICLE_REG_NUMBER, p.TYPE, t.OUT_TIME from ticket t,parking p where p.parking_number = t.parking_number and t.ID > ? order by t.ID";
 }
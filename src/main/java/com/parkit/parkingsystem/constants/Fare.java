@@ -3,4 +3,10 @@ package com.parkit.parkingsystem.constants;
 public class Fare {
 	public static final double BIKE_RATE_PER_HOUR = 1.0;
 	public static final double CAR_RATE_PER_HOUR = 1.5;
+
+	// the same rates in whole cents, used by the TariffEngine
+	public static final long BIKE_RATE_CENTS_PER_HOUR = 100;
+	public static final long CAR_RATE_CENTS_PER_HOUR = 150;
+	public static final int FREE_MINUTES = 30;
+	public static final int LOYALTY_DISCOUNT_BASIS_POINTS = 500;
 }
@@ -0,0 +1,127 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link CompletableFuture} variants of the lookups of a spot and a ticket
+ * storage, run on an executor, so that the independent lookups of a gate
+ * transaction wait for the database at the same time instead of one after the
+ * other.
+ * <p>
+ * The {@link #shared()} executor is bounded: {@code parkit.dao.async.threads}
+ * threads (8 by default) and a queue of {@code parkit.dao.async.queueSize}
+ * lookups (64 by default). Once both are full, a lookup runs on the thread
+ * asking for it, which then simply waits for its lookups one after the other.
+ * Each lookup borrows its own connection, so the threads are taken from the
+ * same connection pool as the gates.
+ * </p>
+ */
+public class AsyncStorage {
+
+	private static final int THREADS = Integer.getInteger("parkit.dao.async.threads", 8);
+	private static final int QUEUE_SIZE = Integer.getInteger("parkit.dao.async.queueSize", 64);
+
+	private static volatile ThreadPoolExecutor sharedExecutor;
+
+	private final ParkingSpotStorage parkingSpotStorage;
+	private final TicketStorage ticketStorage;
+	private final Executor executor;
+
+	public AsyncStorage(ParkingSpotStorage parkingSpotStorage, TicketStorage ticketStorage, Executor executor) {
+		this.parkingSpotStorage = parkingSpotStorage;
+		this.ticketStorage = ticketStorage;
+		this.executor = executor;
+	}
+
+	/**
+	 * @return lookups run by the thread asking for them, for a storage held in
+	 *         memory, whose lookups take less time than handing them over to
+	 *         another thread
+	 */
+	public static AsyncStorage sameThread(ParkingSpotStorage parkingSpotStorage, TicketStorage ticketStorage) {
+		return new AsyncStorage(parkingSpotStorage, ticketStorage, Runnable::run);
+	}
+
+	/**
+	 * @return the bounded executor shared by the database lookups, created on
+	 *         first use
+	 */
+	public static ExecutorService shared() {
+		ThreadPoolExecutor executor = sharedExecutor;
+		if (executor == null) {
+			synchronized (AsyncStorage.class) {
+				executor = sharedExecutor;
+				if (executor == null) {
+					executor = newBoundedExecutor(THREADS, QUEUE_SIZE);
+					ThreadPoolExecutor queued = executor;
+					MetricsRegistry.getDefault().gauge("parkit_dao_async_queued", "Lookups waiting for a thread",
+							() -> queued.getQueue().size());
+					sharedExecutor = executor;
+				}
+			}
+		}
+		return executor;
+	}
+
+	/**
+	 * @return an executor of {@code threads} daemon threads and a queue of
+	 *         {@code queueSize} tasks, running a task on the calling thread once
+	 *         both are full
+	 */
+	public static ThreadPoolExecutor newBoundedExecutor(int threads, int queueSize) {
+		AtomicInteger threadCount = new AtomicInteger();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(queueSize), r -> {
+					Thread thread = new Thread(r, "dao-async-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * @see ParkingSpotStorage#getNextAvailableSlot(ParkingType)
+	 */
+	public CompletableFuture<Integer> getNextAvailableSlot(ParkingType parkingType) {
+		return CompletableFuture.supplyAsync(() -> parkingSpotStorage.getNextAvailableSlot(parkingType), executor);
+	}
+
+	/**
+	 * @see TicketStorage#getTicket(String)
+	 */
+	public CompletableFuture<Ticket> getTicket(String vehicleRegNumber) {
+		return CompletableFuture.supplyAsync(() -> ticketStorage.getTicket(vehicleRegNumber), executor);
+	}
+
+	/**
+	 * @see TicketStorage#getActiveTicket(String)
+	 */
+	public CompletableFuture<Ticket> getActiveTicket(String vehicleRegNumber) {
+		return CompletableFuture.supplyAsync(() -> ticketStorage.getActiveTicket(vehicleRegNumber), executor);
+	}
+
+	/**
+	 * @return the count cached by the storage, see
+	 *         {@link TicketStorage#getCachedNbTicket(String)}, without going
+	 *         through the executor, otherwise the count looked up on the executor
+	 * @see TicketStorage#getNbTicket(String)
+	 */
+	public CompletableFuture<Integer> getNbTicket(String vehicleRegNumber) {
+		int cached = ticketStorage.getCachedNbTicket(vehicleRegNumber);
+		if (cached > 0) {
+			return CompletableFuture.completedFuture(cached);
+		}
+		return CompletableFuture.supplyAsync(() -> ticketStorage.getNbTicket(vehicleRegNumber), executor);
+	}
+}
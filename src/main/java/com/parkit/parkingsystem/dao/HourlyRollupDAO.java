@@ -0,0 +1,410 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.cache.OccupancyCounters;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.HourlyRollup;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.util.Unbox;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hourly revenue and occupancy rollups per parking type, in the
+ * {@code ticket_rollup_hourly} table.
+ * <p>
+ * The rollups are counted in memory once a ticket is saved or closed, and the
+ * counts are added to the table every {@code parkit.rollup.flushIntervalMillis}
+ * (10 seconds by default) and on close, see {@link #start(long)}, so that the
+ * gates never wait for a rollup row: an entry counts in the hour of its in
+ * time, an exit, with its price and duration, in the hour of its out time. The
+ * peak occupancy of an hour is the most spots of the type taken after each
+ * entry and before each exit of the hour, as counted by the
+ * {@link #occupancyCounters} of the gates; it is not recorded until they are
+ * loaded. Hours without any entry or exit have no row. Reports read the rollups
+ * with {@link #getHourlyRollups(Date, Date)} instead of aggregating the ticket
+ * table; the counts of the last seconds are only there once flushed.
+ * </p>
+ * <p>
+ * The counts of each hour and type are kept apart, each updated under the lock
+ * of its own map entry, so that the gates only wait for each other on the same
+ * hour and type, and a flush only holds an entry while taking it out of the
+ * map.
+ * </p>
+ * <p>
+ * The counts not flushed yet, up to one flush interval of entries, exits and
+ * revenue, are lost if the process dies without closing this DAO, by a crash
+ * or a kill. {@link #recoverRecentHours()} recomputes the previous and the
+ * current hour from the ticket table at startup, which puts them back.
+ * {@link #backfill(Date, Date)} computes the rollups of any past hours from the
+ * ticket table.
+ * </p>
+ */
+public class HourlyRollupDAO implements AutoCloseable {
+
+	private static final Logger logger = LogManager.getLogger("HourlyRollupDAO");
+
+	public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = Long.getLong("parkit.rollup.flushIntervalMillis",
+			10000L);
+
+	private static final ParkingType[] TYPES = ParkingType.values();
+	private static final int BACKFILL_FETCH_SIZE = 1000;
+	private static final int BACKFILL_BATCH_SIZE = 500;
+	private static final long ONE_HOUR_MILLIS = 3600000L;
+
+	public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+	/**
+	 * The occupancy counted by the gates, which count a vehicle once its entry
+	 * or exit is stored.
+	 */
+	public OccupancyCounters occupancyCounters = new OccupancyCounters();
+
+	// the counts not flushed yet, by hour and parking type
+	private final ConcurrentMap<Long, Delta> pending = new ConcurrentHashMap<>();
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * Counts the entry of a ticket once it is committed.
+	 */
+	void recordEntry(Ticket ticket) {
+		ParkingType parkingType = ticket.getParkingSpot().getParkingType();
+		// the gates count the vehicle after this
+		int occupancy = occupancyCounters.getOccupied(parkingType);
+		long hour = hourStart(ticket.getInTime().getTime()).getTime();
+		pending.compute(key(hour, parkingType), (key, delta) -> {
+			Delta counted = delta == null ? new Delta(hour, parkingType) : delta;
+			counted.entries++;
+			if (occupancy >= 0) {
+				counted.peak = Math.max(counted.peak, occupancy + 1);
+			}
+			return counted;
+		});
+	}
+
+	/**
+	 * Counts the exit of a ticket once its closing is committed.
+	 */
+	void recordExit(Ticket ticket) {
+		ParkingType parkingType = ticket.getParkingSpot().getParkingType();
+		// the gates still count the vehicle
+		int occupancy = occupancyCounters.getOccupied(parkingType);
+		long outTime = ticket.getOutTime().getTime();
+		long hour = hourStart(outTime).getTime();
+		pending.compute(key(hour, parkingType), (key, delta) -> {
+			Delta counted = delta == null ? new Delta(hour, parkingType) : delta;
+			counted.exits++;
+			counted.revenue += ticket.getPrice();
+			counted.duration += outTime - ticket.getInTime().getTime();
+			counted.peak = Math.max(counted.peak, occupancy);
+			return counted;
+		});
+	}
+
+	private static long key(long hour, ParkingType parkingType) {
+		return hour * TYPES.length + parkingType.ordinal();
+	}
+
+	/**
+	 * Adds the counts recorded since the last flush to the table, in one
+	 * transaction. On error the counts are kept for the next flush.
+	 *
+	 * @return the number of rollup rows updated
+	 */
+	public int flush() {
+		// each entry is taken out on its own: a count recorded meanwhile starts a new one
+		List<Delta> flushed = new ArrayList<>();
+		for (Long key : pending.keySet()) {
+			Delta delta = pending.remove(key);
+			if (delta != null) {
+				flushed.add(delta);
+			}
+		}
+		if (flushed.isEmpty()) {
+			return 0;
+		}
+		Connection con = null;
+		PreparedStatement ps = null;
+		try {
+			con = dataBaseConfig.getConnection();
+			con.setAutoCommit(false);
+			ps = con.prepareStatement(DBConstants.ROLLUP_ADD);
+			for (Delta delta : flushed) {
+				addRollup(ps, delta.parkingType, delta.hour, delta.entries, delta.exits, delta.revenue,
+						delta.duration, delta.peak);
+			}
+			ps.executeBatch();
+			con.commit();
+			return flushed.size();
+		} catch (Exception ex) {
+			logger.error("Error flushing {} hourly rollup(s), retrying on the next flush", Unbox.box(flushed.size()),
+					ex);
+			rollback(con);
+			for (Delta delta : flushed) {
+				pending.merge(key(delta.hour, delta.parkingType), delta, Delta::add);
+			}
+			return 0;
+		} finally {
+			dataBaseConfig.closePreparedStatement(ps);
+			dataBaseConfig.closeConnection(con);
+		}
+	}
+
+	/**
+	 * Recomputes the rollups of the previous and the current hour from the
+	 * ticket table, see {@link #backfill(Date, Date)}, so that the counts not
+	 * flushed when the process last died are not lost. To be called at startup,
+	 * before the offline journal is replayed and the gates open: the rows of
+	 * those hours are overwritten, which would also lose the counts flushed
+	 * meanwhile by another process sharing the database.
+	 *
+	 * @return the number of rollup rows written, -1 on error
+	 */
+	public int recoverRecentHours() {
+		long now = System.currentTimeMillis();
+		Date from = hourStart(now - ONE_HOUR_MILLIS);
+		Date to = hourStart(now + ONE_HOUR_MILLIS);
+		try {
+			return backfill(from, to);
+		} catch (Exception ex) {
+			logger.error("Error recomputing the hourly rollups from {} to {}", from, to, ex);
+			return -1;
+		}
+	}
+
+	/**
+	 * Flushes the counts every {@code intervalMillis}.
+	 */
+	public synchronized void start(long intervalMillis) {
+		if (scheduler == null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "hourly-rollup-flusher");
+				thread.setDaemon(true);
+				return thread;
+			});
+			scheduler.scheduleWithFixedDelay(this::flush, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Stops the periodic flushes and flushes the last counts.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (scheduler != null) {
+				scheduler.shutdownNow();
+				scheduler = null;
+			}
+		}
+		flush();
+	}
+
+	private void rollback(Connection con) {
+		if (con != null) {
+			try {
+				con.rollback();
+			} catch (SQLException e) {
+				logger.error("Error while rolling back transaction", e);
+			}
+		}
+	}
+
+	/**
+	 * @return the rollups of the hours starting from {@code from}, inclusive, to
+	 *         {@code to}, exclusive, by hour then parking type; an empty list on
+	 *         error
+	 */
+	public List<HourlyRollup> getHourlyRollups(Date from, Date to) {
+		List<HourlyRollup> rollups = new ArrayList<>();
+		Connection con = null;
+		try {
+			con = dataBaseConfig.getConnection();
+			PreparedStatement ps = con.prepareStatement(DBConstants.GET_ROLLUPS);
+			ps.setTimestamp(1, new Timestamp(from.getTime()));
+			ps.setTimestamp(2, new Timestamp(to.getTime()));
+			ResultSet rs = ps.executeQuery();
+			while (rs.next()) {
+				rollups.add(new HourlyRollup(rs.getTimestamp(1), ParkingType.valueOf(rs.getString(2)), rs.getInt(3),
+						rs.getInt(4), rs.getDouble(5), rs.getLong(6), rs.getInt(7)));
+			}
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
+		} catch (Exception ex) {
+			logger.error("Error fetching hourly rollups", ex);
+		} finally {
+			dataBaseConfig.closeConnection(con);
+		}
+		return rollups;
+	}
+
+	/**
+	 * Recomputes the rollups of the hours from {@code from} to {@code to} from
+	 * the ticket table, overwriting the rows of those hours.
+	 * <p>
+	 * The entries and exits of the range are streamed in time order and swept
+	 * with the occupancy of each type, starting from the tickets parked at
+	 * {@code from}, so memory does not depend on the number of tickets. The
+	 * range should be made of whole hours and end before the rollups were kept
+	 * up to date by the application: an hour split across two backfills, or
+	 * with live updates, is overwritten with the part of it last computed.
+	 * </p>
+	 *
+	 * @return the number of rollup rows written
+	 */
+	public int backfill(Date from, Date to) throws Exception {
+		ParkingType[] types = ParkingType.values();
+		long[] bucketHour = new long[types.length];
+		int[] entries = new int[types.length];
+		int[] exits = new int[types.length];
+		double[] revenue = new double[types.length];
+		long[] duration = new long[types.length];
+		int[] peak = new int[types.length];
+		int[] occupancy = new int[types.length];
+		Arrays.fill(bucketHour, -1L);
+
+		Connection readCon = null;
+		Connection writeCon = null;
+		PreparedStatement write = null;
+		int written = 0;
+		try {
+			readCon = dataBaseConfig.getConnection();
+			writeCon = dataBaseConfig.getConnection();
+			writeCon.setAutoCommit(false);
+			write = writeCon.prepareStatement(DBConstants.ROLLUP_OVERWRITE);
+
+			PreparedStatement ps = readCon.prepareStatement(DBConstants.COUNT_PARKED_AT);
+			ps.setTimestamp(1, new Timestamp(from.getTime()));
+			ps.setTimestamp(2, new Timestamp(from.getTime()));
+			ResultSet rs = ps.executeQuery();
+			while (rs.next()) {
+				occupancy[ParkingType.valueOf(rs.getString(1)).ordinal()] = rs.getInt(2);
+			}
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
+
+			ps = readCon.prepareStatement(DBConstants.STREAM_TICKET_EVENTS, ResultSet.TYPE_FORWARD_ONLY,
+					ResultSet.CONCUR_READ_ONLY);
+			ps.setFetchSize(BACKFILL_FETCH_SIZE);
+			for (int i = 0; i < 2; i++) {
+				ps.setTimestamp(2 * i + 1, new Timestamp(from.getTime()));
+				ps.setTimestamp(2 * i + 2, new Timestamp(to.getTime()));
+			}
+			rs = ps.executeQuery();
+			while (rs.next()) {
+				int t = ParkingType.valueOf(rs.getString(1)).ordinal();
+				Timestamp eventTime = rs.getTimestamp(2);
+				long hour = hourStart(eventTime.getTime()).getTime();
+				if (bucketHour[t] != hour) {
+					if (bucketHour[t] >= 0) {
+						addRollup(write, types[t], bucketHour[t], entries[t], exits[t], revenue[t], duration[t],
+								peak[t]);
+						if (++written % BACKFILL_BATCH_SIZE == 0) {
+							write.executeBatch();
+							writeCon.commit();
+						}
+					}
+					bucketHour[t] = hour;
+					entries[t] = 0;
+					exits[t] = 0;
+					revenue[t] = 0.0;
+					duration[t] = 0L;
+					peak[t] = occupancy[t];
+				}
+				if (rs.getInt(3) > 0) {
+					entries[t]++;
+					occupancy[t]++;
+					peak[t] = Math.max(peak[t], occupancy[t]);
+				} else {
+					exits[t]++;
+					revenue[t] += rs.getDouble(5);
+					duration[t] += eventTime.getTime() - rs.getTimestamp(4).getTime();
+					occupancy[t] = Math.max(0, occupancy[t] - 1);
+				}
+			}
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
+
+			for (int t = 0; t < types.length; t++) {
+				if (bucketHour[t] >= 0) {
+					addRollup(write, types[t], bucketHour[t], entries[t], exits[t], revenue[t], duration[t],
+							peak[t]);
+					written++;
+				}
+			}
+			write.executeBatch();
+			writeCon.commit();
+			logger.info("Backfilled {} hourly rollup(s) from {} to {}", Unbox.box(written), from, to);
+			return written;
+		} catch (Exception ex) {
+			if (writeCon != null) {
+				writeCon.rollback();
+			}
+			throw ex;
+		} finally {
+			dataBaseConfig.closePreparedStatement(write);
+			dataBaseConfig.closeConnection(writeCon);
+			dataBaseConfig.closeConnection(readCon);
+		}
+	}
+
+	private static void addRollup(PreparedStatement write, ParkingType parkingType, long hour, int entries, int exits,
+			double revenue, long duration, int peak) throws Exception {
+		write.setTimestamp(1, new Timestamp(hour));
+		write.setString(2, parkingType.toString());
+		write.setInt(3, entries);
+		write.setInt(4, exits);
+		write.setDouble(5, revenue);
+		write.setLong(6, duration);
+		write.setInt(7, peak);
+		write.addBatch();
+	}
+
+	/**
+	 * @return the start of the hour of a time, in the time zone of the JVM as
+	 *         DATETIME columns are
+	 */
+	static Timestamp hourStart(long millis) {
+		return Timestamp.valueOf(new Timestamp(millis).toLocalDateTime().truncatedTo(ChronoUnit.HOURS));
+	}
+
+	private static final class Delta {
+		private final long hour;
+		private final ParkingType parkingType;
+		private int entries;
+		private int exits;
+		private double revenue;
+		private long duration;
+		private int peak;
+
+		private Delta(long hour, ParkingType parkingType) {
+			this.hour = hour;
+			this.parkingType = parkingType;
+		}
+
+		private Delta add(Delta other) {
+			entries += other.entries;
+			exits += other.exits;
+			revenue += other.revenue;
+			duration += other.duration;
+			peak = Math.max(peak, other.peak);
+			return this;
+		}
+	}
+}
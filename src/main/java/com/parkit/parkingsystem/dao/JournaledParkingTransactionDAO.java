@@ -0,0 +1,351 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.journal.JournalApplier;
+import com.parkit.parkingsystem.journal.JournalRecord;
+import com.parkit.parkingsystem.journal.JournalReplayer;
+import com.parkit.parkingsystem.journal.TicketJournal;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.util.Unbox;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps the gates open while the database is down: vehicle entries and exits
+ * go to the {@link ParkingTransactionDAO} as long as the database answers, and
+ * to a {@link TicketJournal} on local disk otherwise.
+ * <p>
+ * While offline, spots are taken from and given back to the in-memory free
+ * spot index, and the tickets of the vehicles entered meanwhile are registered
+ * as open with a negative id, the negated sequence of their journal record.
+ * A {@link JournalReplayer} applies the journal to the database in the
+ * background, each record in its own transaction together with the move of the
+ * checkpoint, so a record is applied exactly once even if the replay is
+ * interrupted. Once every record is applied, the spot and ticket caches are
+ * reloaded from the database and the gates go back to it.
+ * </p>
+ * <p>
+ * Spots taken offline are only known to this process: when several instances
+ * share the database, another one may give the same spot meanwhile. A record is
+ * durable once the journal is synced, at the next replay run.
+ * </p>
+ */
+public class JournaledParkingTransactionDAO implements ParkingTransactionStorage, JournalApplier {
+
+	private static final Logger logger = LogManager.getLogger("JournaledParkingTransactionDAO");
+
+	private static final long REPLAY_INTERVAL_MILLIS = Long.getLong("parkit.journal.replayMillis", 1000L);
+	private static final int SEGMENT_SIZE = Integer.getInteger("parkit.journal.segmentSize",
+			TicketJournal.DEFAULT_SEGMENT_SIZE);
+	private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+	private final ParkingTransactionDAO parkingTransactionDAO;
+	private final ParkingSpotDAO parkingSpotDAO;
+	private final TicketDAO ticketDAO;
+	private final DataBaseConfig dataBaseConfig;
+	private final TicketJournal journal;
+	private final JournalReplayer replayer;
+	// gate operations share the read lock, going back online takes the write lock
+	private final ReentrantReadWriteLock modeLock = new ReentrantReadWriteLock();
+	private volatile boolean offline;
+
+	public JournaledParkingTransactionDAO(ParkingTransactionDAO parkingTransactionDAO, TicketJournal journal) {
+		this.parkingTransactionDAO = parkingTransactionDAO;
+		this.parkingSpotDAO = parkingTransactionDAO.parkingSpotDAO;
+		this.ticketDAO = parkingTransactionDAO.ticketDAO;
+		this.dataBaseConfig = ticketDAO.dataBaseConfig;
+		this.journal = journal;
+		this.replayer = new JournalReplayer(journal, this, REPLAY_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * Opens the journal of a directory and starts replaying it.
+	 */
+	public static JournaledParkingTransactionDAO open(ParkingTransactionDAO parkingTransactionDAO, Path directory)
+			throws IOException {
+		JournaledParkingTransactionDAO dao = new JournaledParkingTransactionDAO(parkingTransactionDAO,
+				TicketJournal.open(directory, SEGMENT_SIZE));
+		dao.start();
+		return dao;
+	}
+
+	/**
+	 * Lines the journal numbering up with the database checkpoint, goes offline
+	 * if records are waiting for replay, and starts the replayer.
+	 */
+	public void start() {
+		try {
+			long checkpoint = getCheckpoint();
+			if (checkpoint > journal.getLastSequence()) {
+				// the journal was lost or replaced: its next records must not reuse applied sequences
+				journal.advanceTo(checkpoint);
+			}
+			if (journal.getLastSequence() > checkpoint) {
+				logger.info("Journal has records up to sequence {} not applied to the database, "
+						+ "gate operations are journaled until they are", Unbox.box(journal.getLastSequence()));
+				offline = true;
+			}
+		} catch (Exception e) {
+			logger.error("Database unreachable at startup, gate operations are journaled", e);
+			offline = true;
+		}
+		replayer.start();
+	}
+
+	/**
+	 * @return {@code true} while gate operations go to the journal
+	 */
+	public boolean isOffline() {
+		return offline;
+	}
+
+	public int enter(Ticket ticket) {
+		modeLock.readLock().lock();
+		try {
+			if (!offline) {
+				int visitCount = parkingTransactionDAO.enter(ticket);
+				if (visitCount > 0) {
+					return visitCount;
+				}
+				if (isDatabaseReachable()) {
+					return 0;
+				}
+				goOffline();
+			}
+			return journalEntry(ticket);
+		} finally {
+			modeLock.readLock().unlock();
+		}
+	}
+
+	public boolean exit(Ticket ticket) {
+		modeLock.readLock().lock();
+		try {
+			if (!offline) {
+				if (ticket.getId() < 0 && !resolveJournaledTicket(ticket)) {
+					return false;
+				}
+				if (parkingTransactionDAO.exit(ticket)) {
+					return true;
+				}
+				if (isDatabaseReachable()) {
+					return false;
+				}
+				goOffline();
+			}
+			return journalExit(ticket);
+		} finally {
+			modeLock.readLock().unlock();
+		}
+	}
+
+	private int journalEntry(Ticket ticket) {
+		ParkingSpot parkingSpot = ticket.getParkingSpot();
+		int parkingNumber = parkingSpotDAO.claimFromFreeSpotIndex(parkingSpot.getParkingType());
+		if (parkingNumber <= 0) {
+			return 0;
+		}
+		parkingSpot.setId(parkingNumber);
+		parkingSpot.setAvailable(false);
+		try {
+			long sequence = journal.append(JournalRecord.entry(ticket.getVehicleRegNumber(),
+					parkingSpot.getParkingType(), parkingNumber, ticket.getInTime().getTime()));
+			ticket.setId(-Math.toIntExact(sequence));
+		} catch (Exception e) {
+			logger.error("Error journaling vehicle entry", e);
+			parkingSpot.setAvailable(true);
+			parkingSpotDAO.updateFreeSpotIndex(parkingSpot, true);
+			return 0;
+		}
+		ticketDAO.ticketJournaled(ticket);
+		// the visit is only counted in vehicle_stats when the record is applied; the cached count
+		// only, the database is down
+		return ticketDAO.getCachedNbTicket(ticket.getVehicleRegNumber()) + 1;
+	}
+
+	private boolean journalExit(Ticket ticket) {
+		ParkingSpot parkingSpot = ticket.getParkingSpot();
+		try {
+			journal.append(JournalRecord.exit(ticket.getVehicleRegNumber(), parkingSpot.getParkingType(),
+					parkingSpot.getId(), ticket.getId(), ticket.getPrice(), ticket.getInTime().getTime(),
+					ticket.getOutTime().getTime()));
+		} catch (Exception e) {
+			logger.error("Error journaling vehicle exit", e);
+			return false;
+		}
+		ticketDAO.ticketClosed(ticket);
+		parkingSpot.setAvailable(true);
+		parkingSpotDAO.updateFreeSpotIndex(parkingSpot, true);
+		return true;
+	}
+
+	/**
+	 * Gives a ticket entered offline its database id: the vehicle was looked up
+	 * before the journal was replayed, and exits after.
+	 */
+	private boolean resolveJournaledTicket(Ticket ticket) {
+		Ticket saved = ticketDAO.getActiveTicket(ticket.getVehicleRegNumber());
+		if (saved == null || saved.getId() <= 0 || !saved.getInTime().equals(ticket.getInTime())) {
+			logger.error("Journaled ticket {} of {} not found in the database, vehicle exit ignored",
+					Unbox.box(ticket.getId()), ticket.getVehicleRegNumber());
+			return false;
+		}
+		ticket.setId(saved.getId());
+		return true;
+	}
+
+	private boolean isDatabaseReachable() {
+		Connection con = null;
+		try {
+			con = dataBaseConfig.getConnection();
+			return con.isValid(VALIDATION_TIMEOUT_SECONDS);
+		} catch (Exception e) {
+			return false;
+		} finally {
+			dataBaseConfig.closeConnection(con);
+		}
+	}
+
+	private void goOffline() {
+		if (!offline) {
+			offline = true;
+			logger.error("Database unreachable, gate operations are journaled until it is back");
+		}
+	}
+
+	public long getCheckpoint() throws Exception {
+		Connection con = null;
+		try {
+			con = dataBaseConfig.getConnection();
+			PreparedStatement ps = con.prepareStatement(DBConstants.GET_JOURNAL_CHECKPOINT);
+			ResultSet rs = ps.executeQuery();
+			long checkpoint = rs.next() ? rs.getLong(1) : 0L;
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
+			return checkpoint;
+		} finally {
+			dataBaseConfig.closeConnection(con);
+		}
+	}
+
+	/**
+	 * Applies a journal record in one transaction: the checkpoint is moved first,
+	 * so a record already applied changes nothing.
+	 */
+	public void apply(JournalRecord record) throws Exception {
+		Connection con = null;
+		try {
+			con = dataBaseConfig.getConnection();
+			con.setAutoCommit(false);
+			if (!moveCheckpoint(con, record.getSequence())) {
+				con.rollback();
+				return;
+			}
+			ParkingSpot parkingSpot = new ParkingSpot(record.getParkingNumber(), record.getParkingType(),
+					record.getKind() == JournalRecord.Kind.EXIT);
+			Ticket ticket = new Ticket();
+			ticket.setParkingSpot(parkingSpot);
+			ticket.setVehicleRegNumber(record.getVehicleRegNumber());
+			ticket.setPrice(record.getPrice());
+			ticket.setInTime(new Date(record.getInTime()));
+			boolean closed = false;
+			if (record.getKind() == JournalRecord.Kind.ENTRY) {
+				if (!parkingSpotDAO.updateParking(con, parkingSpot)) {
+					throw new SQLException("Parking spot " + parkingSpot.getId() + " not found");
+				}
+				if (ticketDAO.saveTicket(con, ticket, record.getSequence()) <= 0) {
+					throw new SQLException("Ticket was not saved");
+				}
+			} else {
+				ticket.setId(record.getTicketId());
+				ticket.setOutTime(new Date(record.getOutTime()));
+				closed = record.getTicketId() > 0 ? ticketDAO.closeTicket(con, ticket)
+						: ticketDAO.closeTicket(con, ticket, -record.getTicketId());
+				if (!closed) {
+					// closed by another instance meanwhile: the spot is freed all the same
+					logger.warn("Ticket of journal record {} was not open", record);
+				}
+				parkingSpotDAO.updateParking(con, parkingSpot);
+			}
+			con.commit();
+			if (record.getKind() == JournalRecord.Kind.ENTRY) {
+				ticketDAO.hourlyRollupDAO.recordEntry(ticket);
+			} else if (closed) {
+				ticketDAO.hourlyRollupDAO.recordExit(ticket);
+			}
+		} catch (Exception e) {
+			if (con != null) {
+				try {
+					con.rollback();
+				} catch (SQLException rollbackError) {
+					e.addSuppressed(rollbackError);
+				}
+			}
+			throw e;
+		} finally {
+			dataBaseConfig.closeConnection(con);
+		}
+	}
+
+	private boolean moveCheckpoint(Connection con, long sequence) throws Exception {
+		PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_JOURNAL_CHECKPOINT);
+		try {
+			ps.setLong(1, sequence);
+			ps.setLong(2, sequence);
+			return ps.executeUpdate() == 1;
+		} finally {
+			dataBaseConfig.closePreparedStatement(ps);
+		}
+	}
+
+	/**
+	 * Goes back online once the journal is applied, reloading the spot and
+	 * ticket caches that were kept up to date from the journal meanwhile.
+	 */
+	public boolean caughtUp(long checkpoint) {
+		if (!offline) {
+			return true;
+		}
+		modeLock.writeLock().lock();
+		try {
+			if (journal.getLastSequence() > checkpoint) {
+				return false;
+			}
+			if (!ticketDAO.loadActiveTickets() || !parkingSpotDAO.resyncFreeSpots()) {
+				// still offline: the records journaled meanwhile are replayed at the next run
+				return true;
+			}
+			ticketDAO.clearVisitCounts();
+			offline = false;
+			logger.info("Journal applied up to sequence {}, gate operations use the database again",
+					Unbox.box(checkpoint));
+			return true;
+		} finally {
+			modeLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Stops the replayer and closes the journal. Records not replayed yet are
+	 * replayed at the next start.
+	 */
+	public void close() {
+		replayer.close();
+		try {
+			journal.close();
+		} catch (IOException e) {
+			logger.error("Error while closing the journal", e);
+		}
+	}
+}
@@ -1,35 +1,63 @@
 package com.parkit.parkingsystem.dao;
 
+import com.parkit.parkingsystem.cache.FreeSpotIndex;
 import com.parkit.parkingsystem.config.DataBaseConfig;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.util.Unbox;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.Map;
 
-public class ParkingSpotDAO {
+public class ParkingSpotDAO implements ParkingSpotStorage {
 	private static final Logger logger = LogManager.getLogger("ParkingSpotDAO");
 
+	// how long the free spot index is trusted before it is reloaded from the parking table
+	private static final long FREE_SPOT_RESYNC_MILLIS = Long.getLong("parkit.freeSpots.resyncMillis", 60000L);
+
+	// how many candidate spots a claim tries before giving up
+	private static final int MAX_CLAIM_ATTEMPTS = 5;
+
 	public DataBaseConfig dataBaseConfig = new DataBaseConfig();
 
+	private final FreeSpotIndex freeSpotIndex = new FreeSpotIndex();
+	private volatile long freeSpotIndexLoadedAt = -1;
+	private volatile Map<ParkingType, Integer> spotCounts = new EnumMap<>(ParkingType.class);
+
+	/**
+	 * Returns the lowest free spot of the given type.
+	 * <p>
+	 * The spot is read from the in-memory {@link FreeSpotIndex}, loaded from the
+	 * {@code parking} table on first use and reloaded periodically; a connection
+	 * is only borrowed to load it. If the index cannot be loaded, the database is
+	 * queried directly.
+	 * </p>
+	 *
+	 * @param parkingType the type of vehicle to park
+	 * @return the spot number, 0 if every spot of that type is taken, -1 on error
+	 */
 	public int getNextAvailableSlot(ParkingType parkingType) {
 		Connection con = null;
 		int result = -1;
 		try {
+			// a fresh index answers without borrowing a connection
+			if (isFreeSpotIndexFresh()) {
+				return freeSpotIndex.lowestFree(parkingType);
+			}
 			con = dataBaseConfig.getConnection();
-			PreparedStatement ps = con.prepareStatement(DBConstants.GET_NEXT_PARKING_SPOT);
-			ps.setString(1, parkingType.toString());
-			ResultSet rs = ps.executeQuery();
-			if (rs.next()) {
-				result = rs.getInt(1);
-				;
+			if (ensureFreeSpotIndexLoaded(con)) {
+				result = freeSpotIndex.lowestFree(parkingType);
+			} else {
+				result = queryNextAvailableSlot(con, parkingType);
 			}
-			dataBaseConfig.closeResultSet(rs);
-			dataBaseConfig.closePreparedStatement(ps);
 		} catch (Exception ex) {
 			logger.error("Error fetching next available slot", ex);
 		} finally {
@@ -38,23 +66,283 @@ public class ParkingSpotDAO {
 		return result;
 	}
 
+	private int queryNextAvailableSlot(Connection con, ParkingType parkingType) throws Exception {
+		int result = 0;
+		PreparedStatement ps = con.prepareStatement(DBConstants.GET_NEXT_PARKING_SPOT);
+		ps.setString(1, parkingType.toString());
+		ResultSet rs = ps.executeQuery();
+		if (rs.next()) {
+			result = rs.getInt(1);
+		}
+		dataBaseConfig.closeResultSet(rs);
+		dataBaseConfig.closePreparedStatement(ps);
+		return result;
+	}
+
+	/**
+	 * Picks and reserves a free spot of the given type in one step.
+	 * <p>
+	 * Each attempt takes a candidate out of the free spot index, so concurrent
+	 * gates of this process try different spots, then marks it taken in the
+	 * database with an update conditional on {@code AVAILABLE = true}. If another
+	 * process took the spot first, the update changes no row and the next
+	 * candidate is tried, up to {@code MAX_CLAIM_ATTEMPTS} times.
+	 * </p>
+	 *
+	 * @param parkingType the type of vehicle to park
+	 * @return the reserved spot number, 0 if no free spot could be reserved, -1
+	 *         on error
+	 */
+	public int claimNextAvailableSlot(ParkingType parkingType) {
+		Connection con = null;
+		try {
+			con = dataBaseConfig.getConnection();
+			return claimNextAvailableSlot(con, parkingType);
+		} catch (Exception ex) {
+			logger.error("Error claiming next available slot", ex);
+			return -1;
+		} finally {
+			dataBaseConfig.closeConnection(con);
+		}
+	}
+
+	int claimNextAvailableSlot(Connection con, ParkingType parkingType) throws Exception {
+		boolean indexLoaded = ensureFreeSpotIndexLoaded(con);
+		for (int attempt = 0; attempt < MAX_CLAIM_ATTEMPTS; attempt++) {
+			int candidate = indexLoaded ? freeSpotIndex.claimLowest(parkingType)
+					: queryNextAvailableSlot(con, parkingType);
+			if (candidate <= 0) {
+				break;
+			}
+			int updateRowCount;
+			try {
+				PreparedStatement ps = con.prepareStatement(DBConstants.CLAIM_PARKING_SPOT);
+				ps.setInt(1, candidate);
+				ps.setString(2, parkingType.toString());
+				updateRowCount = ps.executeUpdate();
+				dataBaseConfig.closePreparedStatement(ps);
+			} catch (Exception ex) {
+				if (indexLoaded) {
+					freeSpotIndex.setAvailable(parkingType, candidate, true);
+				}
+				throw ex;
+			}
+			if (updateRowCount == 1) {
+				return candidate;
+			}
+			// taken by another process since the index was loaded: it stays out of the index
+			logger.debug("Parking spot {} was already taken, trying the next one", Unbox.box(candidate));
+		}
+		// the index may be missing spots freed by another process
+		invalidateFreeSpotIndex();
+		return 0;
+	}
+
+	/**
+	 * Takes the lowest free spot of the given type out of the free spot index,
+	 * without touching the database: used while the database is unavailable.
+	 *
+	 * @return the spot number, 0 if every spot of that type is taken or if the
+	 *         index was never loaded
+	 */
+	int claimFromFreeSpotIndex(ParkingType parkingType) {
+		if (spotCounts.isEmpty()) {
+			return 0;
+		}
+		return freeSpotIndex.claimLowest(parkingType);
+	}
+
 	public boolean updateParking(ParkingSpot parkingSpot) {
 		// update the availability fo that parking slot
 		Connection con = null;
 		try {
 			con = dataBaseConfig.getConnection();
-			PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
+			boolean updated = updateParking(con, parkingSpot);
+			updateFreeSpotIndex(parkingSpot, updated);
+			return updated;
+		} catch (Exception ex) {
+			logger.error("Error updating parking info", ex);
+			invalidateFreeSpotIndex();
+			return false;
+		} finally {
+			dataBaseConfig.closeConnection(con);
+		}
+	}
+
+	/**
+	 * Updates the availability of the spot using the given connection, without
+	 * touching the free spot index: call
+	 * {@link #updateFreeSpotIndex(ParkingSpot, boolean)} once the change is
+	 * committed.
+	 */
+	boolean updateParking(Connection con, ParkingSpot parkingSpot) throws Exception {
+		PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
+		try {
 			ps.setBoolean(1, parkingSpot.isAvailable());
 			ps.setInt(2, parkingSpot.getId());
-			int updateRowCount = ps.executeUpdate();
+			return (ps.executeUpdate() == 1);
+		} finally {
 			dataBaseConfig.closePreparedStatement(ps);
-			return (updateRowCount == 1);
+		}
+	}
+
+	void updateFreeSpotIndex(ParkingSpot parkingSpot, boolean updated) {
+		if (updated && parkingSpot.getParkingType() != null) {
+			freeSpotIndex.setAvailable(parkingSpot.getParkingType(), parkingSpot.getId(), parkingSpot.isAvailable());
+		} else {
+			// the spot is unknown to the database or its type is unknown: reload the index
+			invalidateFreeSpotIndex();
+		}
+	}
+
+	/**
+	 * Reloads the free spot index from the {@code parking} table. Called
+	 * periodically, and should be called after the table is changed outside of
+	 * this DAO.
+	 *
+	 * @return {@code true} if the index was reloaded, {@code false} on error
+	 */
+	public boolean resyncFreeSpots() {
+		Connection con = null;
+		try {
+			con = dataBaseConfig.getConnection();
+			loadFreeSpotIndex(con);
+			return true;
 		} catch (Exception ex) {
-			logger.error("Error updating parking info", ex);
+			logger.error("Error loading free parking spots", ex);
 			return false;
 		} finally {
 			dataBaseConfig.closeConnection(con);
 		}
 	}
 
+	/**
+	 * @return the number of free spots of that type, read from the free spot
+	 *         index, or -1 if the index cannot be loaded
+	 */
+	public int getFreeSpotCount(ParkingType parkingType) {
+		Connection con = null;
+		try {
+			if (!isFreeSpotIndexFresh()) {
+				con = dataBaseConfig.getConnection();
+				if (!ensureFreeSpotIndexLoaded(con)) {
+					return -1;
+				}
+			}
+			return freeSpotIndex.countFree(parkingType);
+		} catch (Exception ex) {
+			logger.error("Error counting free parking spots", ex);
+			return -1;
+		} finally {
+			dataBaseConfig.closeConnection(con);
+		}
+	}
+
+	/**
+	 * @return the number of spots of that type, free or not, as of the last load
+	 *         of the free spot index
+	 */
+	public int getSpotCount(ParkingType parkingType) {
+		return spotCounts.getOrDefault(parkingType, 0);
+	}
+
+	/**
+	 * Counts the spots of each type, and those taken, in the {@code parking}
+	 * table, without touching the free spot index.
+	 */
+	public boolean countSpots(int[] spots, int[] occupied) {
+		Connection con = null;
+		try {
+			con = dataBaseConfig.getConnection();
+			PreparedStatement ps = con.prepareStatement(DBConstants.COUNT_SPOTS_BY_TYPE);
+			ResultSet rs = ps.executeQuery();
+			Arrays.fill(spots, 0);
+			Arrays.fill(occupied, 0);
+			while (rs.next()) {
+				int t = ParkingType.valueOf(rs.getString(1)).ordinal();
+				spots[t] = rs.getInt(2);
+				occupied[t] = rs.getInt(3);
+			}
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
+			return true;
+		} catch (Exception ex) {
+			logger.error("Error counting parking spots", ex);
+			return false;
+		} finally {
+			dataBaseConfig.closeConnection(con);
+		}
+	}
+
+	public void invalidateFreeSpotIndex() {
+		freeSpotIndexLoadedAt = -1;
+	}
+
+	/**
+	 * Replaces the free spot index with spots restored from a state snapshot,
+	 * trusted until the next periodic reload.
+	 */
+	void restoreFreeSpots(Map<ParkingType, BitSet> freeSpots, Map<ParkingType, Integer> counts) {
+		spotCounts = new EnumMap<>(counts);
+		freeSpotIndex.reload(freeSpots);
+		freeSpotIndexLoadedAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * Reads the free spots and the number of spots of each type from the
+	 * {@code parking} table.
+	 */
+	void readFreeSpots(Connection con, Map<ParkingType, BitSet> freeSpots, Map<ParkingType, Integer> counts)
+			throws Exception {
+		PreparedStatement ps = con.prepareStatement(DBConstants.GET_PARKING_SPOTS);
+		try {
+			ResultSet rs = ps.executeQuery();
+			while (rs.next()) {
+				ParkingType parkingType = ParkingType.valueOf(rs.getString(3));
+				counts.merge(parkingType, 1, Integer::sum);
+				if (rs.getBoolean(2)) {
+					freeSpots.computeIfAbsent(parkingType, t -> new BitSet()).set(rs.getInt(1));
+				}
+			}
+			dataBaseConfig.closeResultSet(rs);
+		} finally {
+			dataBaseConfig.closePreparedStatement(ps);
+		}
+	}
+
+	private void loadFreeSpotIndex(Connection con) throws Exception {
+		Map<ParkingType, BitSet> freeSpots = new EnumMap<>(ParkingType.class);
+		Map<ParkingType, Integer> counts = new EnumMap<>(ParkingType.class);
+		readFreeSpots(con, freeSpots, counts);
+		spotCounts = counts;
+
+		int drift = freeSpotIndex.reload(freeSpots);
+		if (drift > 0 && freeSpotIndexLoadedAt >= 0) {
+			logger.warn("Free spot index was out of sync with the parking table on {} spot(s)", drift);
+		}
+		freeSpotIndexLoadedAt = System.currentTimeMillis();
+	}
+
+	private boolean isFreeSpotIndexFresh() {
+		long loadedAt = freeSpotIndexLoadedAt;
+		return loadedAt >= 0 && System.currentTimeMillis() - loadedAt < FREE_SPOT_RESYNC_MILLIS;
+	}
+
+	private boolean ensureFreeSpotIndexLoaded(Connection con) {
+		if (isFreeSpotIndexFresh()) {
+			return true;
+		}
+		synchronized (freeSpotIndex) {
+			if (isFreeSpotIndexFresh()) {
+				return true;
+			}
+			try {
+				loadFreeSpotIndex(con);
+				return true;
+			} catch (Exception ex) {
+				logger.error("Error loading free parking spots", ex);
+				return false;
+			}
+		}
+	}
 }
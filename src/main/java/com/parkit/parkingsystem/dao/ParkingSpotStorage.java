@@ -0,0 +1,65 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+/**
+ * Storage of the parking spots and of their availability.
+ *
+ * @see ParkingSpotDAO
+ * @see com.parkit.parkingsystem.dao.memory.InMemoryParkingSpotStorage
+ */
+public interface ParkingSpotStorage {
+
+	/**
+	 * @param parkingType the type of vehicle to park
+	 * @return the lowest free spot number of that type, 0 if every spot of that
+	 *         type is taken, -1 on error
+	 */
+	int getNextAvailableSlot(ParkingType parkingType);
+
+	/**
+	 * Picks and reserves a free spot of the given type in one step, so that two
+	 * concurrent callers never get the same spot.
+	 *
+	 * @param parkingType the type of vehicle to park
+	 * @return the reserved spot number, 0 if no free spot could be reserved, -1
+	 *         on error
+	 */
+	int claimNextAvailableSlot(ParkingType parkingType);
+
+	/**
+	 * Sets the availability of a spot to that of the given one.
+	 *
+	 * @return {@code true} if the spot exists and was updated
+	 */
+	boolean updateParking(ParkingSpot parkingSpot);
+
+	/**
+	 * Reloads any cached view of the spots from the storage.
+	 *
+	 * @return {@code true} if the view was reloaded, {@code false} on error
+	 */
+	boolean resyncFreeSpots();
+
+	/**
+	 * @return the number of free spots of that type, or -1 on error
+	 */
+	int getFreeSpotCount(ParkingType parkingType);
+
+	/**
+	 * @return the number of spots of that type, free or not
+	 */
+	int getSpotCount(ParkingType parkingType);
+
+	/**
+	 * Counts the spots of each type, and those taken, in the storage itself,
+	 * bypassing any cached view.
+	 *
+	 * @param spots    filled with the number of spots of each type, by ordinal
+	 * @param occupied filled with the number of taken spots of each type, by
+	 *                 ordinal
+	 * @return {@code true} if the spots were counted, {@code false} on error
+	 */
+	boolean countSpots(int[] spots, int[] occupied);
+}
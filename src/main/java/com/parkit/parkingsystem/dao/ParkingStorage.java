@@ -0,0 +1,170 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.memory.InMemoryParkingSpotStorage;
+import com.parkit.parkingsystem.dao.memory.InMemoryParkingTransactionStorage;
+import com.parkit.parkingsystem.dao.memory.InMemoryTicketStorage;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.TimedProxy;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The spot, ticket and transaction storages of one backend, as used together
+ * by the {@link com.parkit.parkingsystem.service.ParkingService}.
+ * <p>
+ * Two backends are available: {@value #JDBC}, the MySQL database through the
+ * DAOs, and {@value #MEMORY}, everything held in memory and lost on exit. The
+ * backend is chosen at startup with the {@code parkit.storage} system property
+ * or the {@code --storage} argument of the application. The in-memory lot has
+ * {@code parkit.memory.carSpots} car spots (3 by default) followed by
+ * {@code parkit.memory.bikeSpots} bike spots (2 by default).
+ * </p>
+ * <p>
+ * The {@value #JDBC} backend can keep the gates open while the database is
+ * down by journaling entries and exits on local disk, see
+ * {@link #withJournal(Path)}.
+ * </p>
+ */
+public class ParkingStorage {
+
+	public static final String JDBC = "jdbc";
+	public static final String MEMORY = "memory";
+
+	public final String backend;
+	public final ParkingSpotStorage parkingSpotStorage;
+	public final TicketStorage ticketStorage;
+	public final ParkingTransactionStorage parkingTransactionStorage;
+
+	public ParkingStorage(String backend, ParkingSpotStorage parkingSpotStorage, TicketStorage ticketStorage,
+			ParkingTransactionStorage parkingTransactionStorage) {
+		this.backend = backend;
+		this.parkingSpotStorage = parkingSpotStorage;
+		this.ticketStorage = ticketStorage;
+		this.parkingTransactionStorage = parkingTransactionStorage;
+	}
+
+	public static ParkingStorage jdbc(DataBaseConfig dataBaseConfig) {
+		ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+		parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+		TicketDAO ticketDAO = new TicketDAO();
+		ticketDAO.dataBaseConfig = dataBaseConfig;
+		ticketDAO.hourlyRollupDAO.dataBaseConfig = dataBaseConfig;
+		return new ParkingStorage(JDBC, parkingSpotDAO, ticketDAO, new ParkingTransactionDAO(parkingSpotDAO, ticketDAO));
+	}
+
+	public static ParkingStorage inMemory(int carSpots, int bikeSpots) {
+		Map<ParkingType, Integer> spotCounts = new EnumMap<>(ParkingType.class);
+		spotCounts.put(ParkingType.CAR, carSpots);
+		spotCounts.put(ParkingType.BIKE, bikeSpots);
+		InMemoryParkingSpotStorage parkingSpotStorage = new InMemoryParkingSpotStorage(spotCounts);
+		InMemoryTicketStorage ticketStorage = new InMemoryTicketStorage();
+		return new ParkingStorage(MEMORY, parkingSpotStorage, ticketStorage,
+				new InMemoryParkingTransactionStorage(parkingSpotStorage, ticketStorage));
+	}
+
+	/**
+	 * @param backend {@value #JDBC} or {@value #MEMORY}
+	 * @throws IllegalArgumentException if the backend is unknown
+	 */
+	public static ParkingStorage forBackend(String backend) {
+		switch (backend.trim().toLowerCase(Locale.ROOT)) {
+		case JDBC:
+			return jdbc(new DataBaseConfig());
+		case MEMORY:
+			return inMemory(Integer.getInteger("parkit.memory.carSpots", 3),
+					Integer.getInteger("parkit.memory.bikeSpots", 2));
+		default:
+			throw new IllegalArgumentException("Unknown storage backend: " + backend);
+		}
+	}
+
+	/**
+	 * @return the backend named by the {@code parkit.storage} system property,
+	 *         {@value #JDBC} by default
+	 */
+	public static ParkingStorage fromSystemProperties() {
+		return forBackend(System.getProperty("parkit.storage", JDBC));
+	}
+
+	/**
+	 * Routes vehicle entries and exits through a journal in the given directory
+	 * while the database is unavailable, see
+	 * {@link JournaledParkingTransactionDAO}. Should be called once the schema is
+	 * migrated.
+	 *
+	 * @return the storages of this backend with the journaled transactions
+	 * @throws IllegalStateException if the backend is not {@value #JDBC}
+	 */
+	public ParkingStorage withJournal(Path directory) throws IOException {
+		if (!(parkingTransactionStorage instanceof ParkingTransactionDAO)) {
+			throw new IllegalStateException("The " + backend + " backend cannot be journaled");
+		}
+		return new ParkingStorage(backend, parkingSpotStorage, ticketStorage, JournaledParkingTransactionDAO
+				.open((ParkingTransactionDAO) parkingTransactionStorage, directory));
+	}
+
+	/**
+	 * @return the snapshots of the in-memory state of these storages to the
+	 *         given file, see {@link StateSnapshotter}; to be created before the
+	 *         storages are {@link #instrumented(MetricsRegistry) instrumented}
+	 * @throws IllegalStateException if the backend is not {@value #JDBC}
+	 */
+	public StateSnapshotter snapshotter(Path file) {
+		if (!(parkingSpotStorage instanceof ParkingSpotDAO) || !(ticketStorage instanceof TicketDAO)) {
+			throw new IllegalStateException("The " + backend + " backend has no state to snapshot");
+		}
+		return new StateSnapshotter((ParkingSpotDAO) parkingSpotStorage, (TicketDAO) ticketStorage, file);
+	}
+
+	/**
+	 * @return the hourly rollups counted by these storages, see
+	 *         {@link HourlyRollupDAO}; to be started and closed with the gates
+	 * @throws IllegalStateException if the backend is not {@value #JDBC}
+	 */
+	public HourlyRollupDAO hourlyRollups() {
+		if (!(ticketStorage instanceof TicketDAO)) {
+			throw new IllegalStateException("The " + backend + " backend has no hourly rollups");
+		}
+		return ((TicketDAO) ticketStorage).hourlyRollupDAO;
+	}
+
+	/**
+	 * @return the same storages, each call of which is timed in the registry,
+	 *         see {@link TimedProxy}; to be applied last, as the other views of
+	 *         the storage need the DAOs themselves
+	 */
+	public ParkingStorage instrumented(MetricsRegistry registry) {
+		return new ParkingStorage(backend, TimedProxy.wrap(ParkingSpotStorage.class, parkingSpotStorage, registry),
+				TimedProxy.wrap(TicketStorage.class, ticketStorage, registry),
+				TimedProxy.wrap(ParkingTransactionStorage.class, parkingTransactionStorage, registry));
+	}
+
+	/**
+	 * @return the {@link java.util.concurrent.CompletableFuture} variants of the lookups of these
+	 *         storages: run on the {@link AsyncStorage#shared() shared executor}
+	 *         for the database, on the calling thread in memory
+	 */
+	public AsyncStorage async() {
+		return isPersistent() ? new AsyncStorage(parkingSpotStorage, ticketStorage, AsyncStorage.shared())
+				: AsyncStorage.sameThread(parkingSpotStorage, ticketStorage);
+	}
+
+	public boolean isPersistent() {
+		return JDBC.equals(backend);
+	}
+
+	/**
+	 * Loads the in-memory views of the spots and open tickets before the first
+	 * vehicle shows up.
+	 */
+	public void warmUp() {
+		parkingSpotStorage.resyncFreeSpots();
+		ticketStorage.loadActiveTickets();
+	}
+}
@@ -0,0 +1,133 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.util.Unbox;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Writes a whole vehicle entry or exit in a single transaction, so that a
+ * failure halfway can never leave a spot taken without a ticket or a ticket
+ * closed with its spot still taken.
+ * <p>
+ * Both operations use one pooled connection and one commit, with the
+ * statements of {@link ParkingSpotDAO} and {@link TicketDAO}.
+ * </p>
+ */
+public class ParkingTransactionDAO implements ParkingTransactionStorage {
+
+	private static final Logger logger = LogManager.getLogger("ParkingTransactionDAO");
+
+	public ParkingSpotDAO parkingSpotDAO;
+	public TicketDAO ticketDAO;
+
+	public ParkingTransactionDAO(ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO) {
+		this.parkingSpotDAO = parkingSpotDAO;
+		this.ticketDAO = ticketDAO;
+	}
+
+	/**
+	 * Reserves a spot of the ticket's parking type and saves the ticket, in one
+	 * transaction.
+	 * <p>
+	 * On success the parking spot of the ticket is updated with the reserved
+	 * spot number and marked unavailable, and the ticket id is set.
+	 * </p>
+	 *
+	 * @param ticket the new ticket, holding the vehicle registration number, the
+	 *               in time and a parking spot giving the parking type
+	 * @return the visit count of the vehicle including this ticket, read in the
+	 *         same transaction, or 0 if no spot is available or on error
+	 */
+	public int enter(Ticket ticket) {
+		ParkingSpot parkingSpot = ticket.getParkingSpot();
+		Connection con = null;
+		int parkingNumber = 0;
+		try {
+			con = ticketDAO.dataBaseConfig.getConnection();
+			con.setAutoCommit(false);
+
+			parkingNumber = parkingSpotDAO.claimNextAvailableSlot(con, parkingSpot.getParkingType());
+			if (parkingNumber <= 0) {
+				con.rollback();
+				return 0;
+			}
+			parkingSpot.setId(parkingNumber);
+			parkingSpot.setAvailable(false);
+
+			int visitCount = ticketDAO.saveTicket(con, ticket);
+			if (visitCount <= 0) {
+				throw new SQLException("Ticket was not saved");
+			}
+			con.commit();
+			ticketDAO.ticketSaved(ticket, visitCount);
+			return visitCount;
+		} catch (Exception ex) {
+			logger.error("Error processing vehicle entry, transaction rolled back", ex);
+			rollback(con);
+			if (parkingNumber > 0) {
+				// the claim was rolled back: the spot is free again
+				parkingSpot.setAvailable(true);
+				parkingSpotDAO.updateFreeSpotIndex(parkingSpot, true);
+			}
+			return 0;
+		} finally {
+			ticketDAO.dataBaseConfig.closeConnection(con);
+		}
+	}
+
+	/**
+	 * Closes the ticket with its price and out time and frees its spot, in one
+	 * transaction.
+	 *
+	 * @param ticket the open ticket, with its price and out time set
+	 * @return {@code true} if the ticket was closed and its spot freed,
+	 *         {@code false} if the ticket was already closed or on error
+	 */
+	public boolean exit(Ticket ticket) {
+		ParkingSpot parkingSpot = ticket.getParkingSpot();
+		Connection con = null;
+		try {
+			con = ticketDAO.dataBaseConfig.getConnection();
+			con.setAutoCommit(false);
+
+			if (!ticketDAO.closeTicket(con, ticket)) {
+				logger.error("Ticket {} is not open, vehicle exit ignored", Unbox.box(ticket.getId()));
+				con.rollback();
+				// the ticket was closed elsewhere: it must not be served as open anymore
+				ticketDAO.ticketClosed(ticket);
+				return false;
+			}
+			parkingSpot.setAvailable(true);
+			if (!parkingSpotDAO.updateParking(con, parkingSpot)) {
+				throw new SQLException("Parking spot " + parkingSpot.getId() + " was not freed");
+			}
+			con.commit();
+			ticketDAO.ticketClosed(ticket);
+			ticketDAO.hourlyRollupDAO.recordExit(ticket);
+			parkingSpotDAO.updateFreeSpotIndex(parkingSpot, true);
+			return true;
+		} catch (Exception ex) {
+			logger.error("Error processing vehicle exit, transaction rolled back", ex);
+			parkingSpot.setAvailable(false);
+			rollback(con);
+			return false;
+		} finally {
+			ticketDAO.dataBaseConfig.closeConnection(con);
+		}
+	}
+
+	private void rollback(Connection con) {
+		if (con != null) {
+			try {
+				con.rollback();
+			} catch (SQLException e) {
+				logger.error("Error while rolling back transaction", e);
+			}
+		}
+	}
+}
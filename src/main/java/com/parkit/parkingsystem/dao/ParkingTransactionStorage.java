@@ -0,0 +1,34 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.Ticket;
+
+/**
+ * Writes a whole vehicle entry or exit atomically, spot and ticket together.
+ *
+ * @see ParkingTransactionDAO
+ * @see com.parkit.parkingsystem.dao.memory.InMemoryParkingTransactionStorage
+ */
+public interface ParkingTransactionStorage {
+
+	/**
+	 * Reserves a spot of the ticket's parking type and saves the ticket.
+	 * <p>
+	 * On success the parking spot of the ticket is updated with the reserved
+	 * spot number and marked unavailable, and the ticket id is set. If no spot
+	 * could be reserved, the spot number of the ticket is left at 0.
+	 * </p>
+	 *
+	 * @return the visit count of the vehicle including this ticket, as saved
+	 *         with it, or 0 if no spot could be reserved or the ticket was not
+	 *         saved
+	 */
+	int enter(Ticket ticket);
+
+	/**
+	 * Closes an open ticket, with its price and out time, and frees its spot.
+	 *
+	 * @return {@code true} if the ticket was closed and its spot freed,
+	 *         {@code false} if the ticket was already closed or on error
+	 */
+	boolean exit(Ticket ticket);
+}
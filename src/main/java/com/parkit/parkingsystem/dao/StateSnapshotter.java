@@ -0,0 +1,285 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.snapshot.StateSnapshot;
+import com.parkit.parkingsystem.util.PlateCodec;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.util.Unbox;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves the in-memory state of the JDBC backend to a local
+ * {@link StateSnapshot} file every {@code parkit.snapshot.intervalMillis}
+ * (one minute by default) and on close, and restores it at startup.
+ * <p>
+ * The free spots, the open tickets and the highest ticket id are read in one
+ * transaction, so that they agree with each other; the visit counts
+ * are copied from the cache of the {@link TicketDAO} afterwards. A warm start
+ * loads the snapshot and only reads from the database the tickets of id above
+ * its high-water mark, less an overlap of {@code parkit.snapshot.overlapIds}
+ * ids (1000 by default) covering the tickets still being saved while the
+ * snapshot was taken, and which of its open tickets are still open. Each
+ * ticket read takes or frees its spot and registers or closes the ticket,
+ * which can be applied twice; the visit count of its vehicle is dropped, to be
+ * read again on its next visit. Without a usable snapshot, the state is loaded
+ * from the database as before.
+ * </p>
+ * <p>
+ * The free spot index and the occupancy counters are still reloaded from the
+ * {@code parking} table periodically, which corrects a spot changed by hand
+ * since the snapshot.
+ * </p>
+ */
+public class StateSnapshotter implements AutoCloseable {
+
+	private static final Logger logger = LogManager.getLogger("StateSnapshotter");
+
+	public static final long DEFAULT_INTERVAL_MILLIS = Long.getLong("parkit.snapshot.intervalMillis", 60000L);
+	private static final int OVERLAP_IDS = Integer.getInteger("parkit.snapshot.overlapIds", 1000);
+
+	private static final int ID_BATCH_SIZE = 500;
+	private static final String GET_STILL_OPEN_TICKETS = "select ID from ticket where OUT_TIME is null and ID in (%s)";
+
+	private final ParkingSpotDAO parkingSpotDAO;
+	private final TicketDAO ticketDAO;
+	private final DataBaseConfig dataBaseConfig;
+	private final Path file;
+	private final ScheduledExecutorService scheduler;
+
+	public StateSnapshotter(ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO, Path file) {
+		this.parkingSpotDAO = parkingSpotDAO;
+		this.ticketDAO = ticketDAO;
+		this.dataBaseConfig = ticketDAO.dataBaseConfig;
+		this.file = file;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "state-snapshotter");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Loads the in-memory state from the snapshot and the tickets saved since,
+	 * or from the database if there is no usable snapshot.
+	 *
+	 * @return {@code true} if the state was restored from the snapshot
+	 */
+	public boolean warmStart() {
+		long start = System.nanoTime();
+		StateSnapshot snapshot;
+		try {
+			snapshot = StateSnapshot.read(file);
+		} catch (IOException e) {
+			logger.warn("Ignoring the state snapshot, loading the state from the database", e);
+			snapshot = null;
+		}
+		if (snapshot != null) {
+			try {
+				int applied = restore(snapshot);
+				logger.info("Restored the state snapshot of ticket {} with {} newer ticket(s) in {} ms",
+						Unbox.box(snapshot.getMaxTicketId()), Unbox.box(applied),
+						Unbox.box((System.nanoTime() - start) / 1000000));
+				return true;
+			} catch (Exception e) {
+				logger.error("Error applying the tickets saved since the state snapshot", e);
+			}
+		}
+		parkingSpotDAO.resyncFreeSpots();
+		ticketDAO.loadActiveTickets();
+		return false;
+	}
+
+	/**
+	 * Writes a snapshot now, then every {@code intervalMillis}.
+	 */
+	public void start(long intervalMillis) {
+		scheduler.scheduleWithFixedDelay(this::snapshot, 0, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Reads the state and writes it to the snapshot file.
+	 *
+	 * @return {@code true} if the snapshot was written
+	 */
+	public synchronized boolean snapshot() {
+		try {
+			StateSnapshot snapshot = read();
+			ticketDAO.forEachVisitCount((plate, visitCount) -> snapshot.addVisitCount(plate, (int) visitCount));
+			long bytes = snapshot.write(file);
+			logger.debug("Wrote state snapshot of ticket {}, {} bytes", Unbox.box(snapshot.getMaxTicketId()),
+					Unbox.box(bytes));
+			return true;
+		} catch (Exception e) {
+			// never let an error cancel the next runs
+			logger.error("Error writing the state snapshot", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Stops the periodic snapshots and writes a last one.
+	 */
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+		snapshot();
+	}
+
+	private StateSnapshot read() throws Exception {
+		Connection con = null;
+		PreparedStatement ps = null;
+		try {
+			con = dataBaseConfig.getConnection();
+			con.setAutoCommit(false);
+			long takenAt = System.currentTimeMillis();
+			ps = con.prepareStatement(DBConstants.GET_MAX_TICKET_ID);
+			ResultSet rs = ps.executeQuery();
+			int maxTicketId = rs.next() ? rs.getInt(1) : 0;
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
+			ps = null;
+
+			Map<ParkingType, BitSet> freeSpots = new EnumMap<>(ParkingType.class);
+			Map<ParkingType, Integer> spotCounts = new EnumMap<>(ParkingType.class);
+			parkingSpotDAO.readFreeSpots(con, freeSpots, spotCounts);
+
+			ps = con.prepareStatement(DBConstants.GET_OPEN_TICKETS);
+			rs = ps.executeQuery();
+			List<Ticket> openTickets = new ArrayList<>();
+			while (rs.next()) {
+				openTickets.add(ticketDAO.readOpenTicket(rs));
+			}
+			dataBaseConfig.closeResultSet(rs);
+			con.commit();
+			return new StateSnapshot(takenAt, maxTicketId, freeSpots, spotCounts, openTickets);
+		} finally {
+			dataBaseConfig.closePreparedStatement(ps);
+			dataBaseConfig.closeConnection(con);
+		}
+	}
+
+	/**
+	 * Applies the tickets saved since the snapshot to its state, then installs
+	 * the state in the DAOs.
+	 *
+	 * @return the number of tickets saved or closed since the snapshot
+	 */
+	private int restore(StateSnapshot snapshot) throws Exception {
+		Map<ParkingType, BitSet> freeSpots = snapshot.getFreeSpots();
+		Map<Integer, Ticket> openTickets = new LinkedHashMap<>();
+		for (Ticket ticket : snapshot.getOpenTickets()) {
+			openTickets.put(ticket.getId(), ticket);
+		}
+		Set<Long> changedPlates = new HashSet<>();
+		int since = Math.max(0, snapshot.getMaxTicketId() - OVERLAP_IDS);
+		List<Ticket> newerTickets = new ArrayList<>();
+		List<Ticket> closedTickets = new ArrayList<>();
+
+		Connection con = null;
+		PreparedStatement ps = null;
+		try {
+			con = dataBaseConfig.getConnection();
+			ps = con.prepareStatement(DBConstants.GET_TICKETS_SINCE);
+			ps.setInt(1, since);
+			ResultSet rs = ps.executeQuery();
+			while (rs.next()) {
+				Ticket ticket = ticketDAO.readOpenTicket(rs);
+				ticket.setOutTime(rs.getTimestamp(7));
+				if (ticket.getOutTime() == null) {
+					openTickets.put(ticket.getId(), ticket);
+				} else {
+					openTickets.remove(ticket.getId());
+				}
+				newerTickets.add(ticket);
+				changedPlates.add(PlateCodec.encode(ticket.getVehicleRegNumber()));
+			}
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
+			ps = null;
+
+			// the older open tickets of the snapshot may have been closed since
+			List<Integer> ids = new ArrayList<>();
+			for (Ticket ticket : openTickets.values()) {
+				if (ticket.getId() <= since) {
+					ids.add(ticket.getId());
+				}
+			}
+			Set<Integer> stillOpen = new HashSet<>();
+			for (int from = 0; from < ids.size(); from += ID_BATCH_SIZE) {
+				List<Integer> batch = ids.subList(from, Math.min(ids.size(), from + ID_BATCH_SIZE));
+				ps = con.prepareStatement(String.format(GET_STILL_OPEN_TICKETS, placeholders(batch.size())));
+				for (int i = 0; i < batch.size(); i++) {
+					ps.setInt(i + 1, batch.get(i));
+				}
+				rs = ps.executeQuery();
+				while (rs.next()) {
+					stillOpen.add(rs.getInt(1));
+				}
+				dataBaseConfig.closeResultSet(rs);
+				dataBaseConfig.closePreparedStatement(ps);
+				ps = null;
+			}
+			for (Integer id : ids) {
+				if (!stillOpen.contains(id)) {
+					Ticket closed = openTickets.remove(id);
+					closedTickets.add(closed);
+					changedPlates.add(PlateCodec.encode(closed.getVehicleRegNumber()));
+				}
+			}
+		} finally {
+			dataBaseConfig.closePreparedStatement(ps);
+			dataBaseConfig.closeConnection(con);
+		}
+
+		// the spots of the closed tickets first, then the newer tickets in id order: the latest
+		// ticket of a spot decides whether it is free
+		for (Ticket closed : closedTickets) {
+			setFree(freeSpots, closed, true);
+		}
+		for (Ticket ticket : newerTickets) {
+			setFree(freeSpots, ticket, ticket.getOutTime() != null);
+		}
+
+		parkingSpotDAO.restoreFreeSpots(freeSpots, snapshot.getSpotCounts());
+		ticketDAO.restoreActiveTickets(openTickets.values());
+		for (int i = 0; i < snapshot.getVisitCountSize(); i++) {
+			if (!changedPlates.contains(snapshot.getPlate(i))) {
+				ticketDAO.restoreVisitCount(snapshot.getPlate(i), snapshot.getVisitCount(i));
+			}
+		}
+		return newerTickets.size() + closedTickets.size();
+	}
+
+	private static void setFree(Map<ParkingType, BitSet> freeSpots, Ticket ticket, boolean free) {
+		freeSpots.computeIfAbsent(ticket.getParkingSpot().getParkingType(), t -> new BitSet())
+				.set(ticket.getParkingSpot().getId(), free);
+	}
+
+	private static String placeholders(int count) {
+		StringBuilder sb = new StringBuilder(count * 2);
+		for (int i = 0; i < count; i++) {
+			sb.append(i == 0 ? "?" : ",?");
+		}
+		return sb.toString();
+	}
+}
@@ -1,5 +1,8 @@
 package com.parkit.parkingsystem.dao;
 
+import com.parkit.parkingsystem.cache.ActiveTicketRegistry;
+import com.parkit.parkingsystem.cache.PlateMap;
+import com.parkit.parkingsystem.cache.VisitCounterCache;
 import com.parkit.parkingsystem.config.DataBaseConfig;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
@@ -7,43 +10,219 @@ import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.util.Unbox;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
-public class TicketDAO {
+public class TicketDAO implements TicketStorage {
 
 	private static final Logger logger = LogManager.getLogger("TicketDAO");
 
+	private static final int VISIT_CACHE_MAX_ENTRIES = Integer.getInteger("parkit.visitCache.maxEntries", 100000);
+
 	public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+	public HourlyRollupDAO hourlyRollupDAO = new HourlyRollupDAO();
+
+	private final VisitCounterCache visitCounterCache = new VisitCounterCache(VISIT_CACHE_MAX_ENTRIES);
+	private final ActiveTicketRegistry activeTicketRegistry = new ActiveTicketRegistry();
+	private volatile boolean activeTicketsLoaded;
 
 	public boolean saveTicket(Ticket ticket) {
 		Connection con = null;
 		try {
 			con = dataBaseConfig.getConnection();
-			PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET);
+			con.setAutoCommit(false);
+			int visitCount = saveTicket(con, ticket);
+			if (visitCount <= 0) {
+				con.rollback();
+				return false;
+			}
+			con.commit();
+			ticketSaved(ticket, visitCount);
+			return true;
+		} catch (Exception ex) {
+			logger.error("Error saving ticket info", ex);
+			return false;
+		} finally {
+			dataBaseConfig.closeConnection(con);
+		}
+	}
+
+	/**
+	 * Inserts the ticket and counts the visit in {@code vehicle_stats} using the
+	 * given connection, and sets the ticket id to the generated one. Must be
+	 * called after the spot of the ticket is taken. Once the transaction is
+	 * committed, pass the returned count to {@link #ticketSaved(Ticket, int)}.
+	 *
+	 * @return the visit count of the vehicle including this ticket, or 0 if the
+	 *         ticket was not saved
+	 */
+	int saveTicket(Connection con, Ticket ticket) throws Exception {
+		return saveTicket(con, ticket, 0L);
+	}
+
+	/**
+	 * Same as {@link #saveTicket(Connection, Ticket)} for a ticket entered
+	 * through the offline journal, saved with the sequence of its journal record.
+	 *
+	 * @param journalSequence the sequence of the journal record, 0 for a ticket
+	 *                        not entered through the journal
+	 */
+	int saveTicket(Connection con, Ticket ticket, long journalSequence) throws Exception {
+		PreparedStatement ps = con.prepareStatement(
+				journalSequence > 0 ? DBConstants.SAVE_JOURNALED_TICKET : DBConstants.SAVE_TICKET,
+				Statement.RETURN_GENERATED_KEYS);
+		try {
 			ps.setInt(1, ticket.getParkingSpot().getId());
 			ps.setString(2, ticket.getVehicleRegNumber());
 			ps.setDouble(3, ticket.getPrice());
 			ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
 			ps.setTimestamp(5, (ticket.getOutTime() == null) ? null : (new Timestamp(ticket.getOutTime().getTime())));
-			return ps.execute();
-		} catch (Exception ex) {
-			logger.error("Error fetching next available slot", ex);
+			if (journalSequence > 0) {
+				ps.setLong(6, journalSequence);
+			}
+			if (ps.executeUpdate() != 1) {
+				return 0;
+			}
+			ResultSet rs = ps.getGeneratedKeys();
+			if (rs.next()) {
+				ticket.setId(rs.getInt(1));
+			}
+			dataBaseConfig.closeResultSet(rs);
 		} finally {
-			dataBaseConfig.closeConnection(con);
-			return false;
+			dataBaseConfig.closePreparedStatement(ps);
+		}
+		return incrementVisitCount(con, ticket.getVehicleRegNumber());
+	}
+
+	private int incrementVisitCount(Connection con, String vehicleRegNumber) throws Exception {
+		PreparedStatement ps = con.prepareStatement(DBConstants.INCREMENT_VISIT_COUNT,
+				Statement.RETURN_GENERATED_KEYS);
+		int visitCount = 0;
+		try {
+			ps.setString(1, vehicleRegNumber);
+			ps.executeUpdate();
+			// the new count, given to LAST_INSERT_ID() by the upsert itself
+			ResultSet rs = ps.getGeneratedKeys();
+			if (rs.next() && rs.getObject(1) instanceof Number) {
+				visitCount = rs.getInt(1);
+			}
+			dataBaseConfig.closeResultSet(rs);
+		} finally {
+			dataBaseConfig.closePreparedStatement(ps);
+		}
+		if (visitCount > 0) {
+			return visitCount;
 		}
+		// a driver that does not return it, like the H2 stand-in of the benchmarks: read back in
+		// the same transaction, the row is locked until commit
+		return queryVisitCount(con, vehicleRegNumber);
+	}
+
+	private int queryVisitCount(Connection con, String vehicleRegNumber) throws Exception {
+		int visitCount = 0;
+		PreparedStatement ps = con.prepareStatement(DBConstants.GET_VISIT_COUNT);
+		try {
+			ps.setString(1, vehicleRegNumber);
+			ResultSet rs = ps.executeQuery();
+			if (rs.next()) {
+				visitCount = rs.getInt(1);
+			}
+			dataBaseConfig.closeResultSet(rs);
+		} finally {
+			dataBaseConfig.closePreparedStatement(ps);
+		}
+		return visitCount;
+	}
+
+	/**
+	 * Updates the in-memory caches and counts the ticket in the hourly rollups
+	 * once a saved ticket is committed.
+	 */
+	void ticketSaved(Ticket ticket, int visitCount) {
+		hourlyRollupDAO.recordEntry(ticket);
+		if (ticket.getOutTime() != null) {
+			hourlyRollupDAO.recordExit(ticket);
+		}
+		visitCounterCache.update(ticket.getVehicleRegNumber(), visitCount);
+		if (ticket.getOutTime() == null && activeTicketsLoaded) {
+			activeTicketRegistry.register(ticket);
+		}
+	}
+
+	/**
+	 * Updates the in-memory caches once a closed ticket is committed.
+	 */
+	void ticketClosed(Ticket ticket) {
+		activeTicketRegistry.remove(ticket);
+	}
+
+	/**
+	 * Registers a ticket entered through the offline journal as open, so that
+	 * the vehicle can exit before the ticket reaches the database.
+	 */
+	void ticketJournaled(Ticket ticket) {
+		activeTicketRegistry.register(ticket);
+	}
+
+	/**
+	 * Forgets the cached visit counts, which miss the tickets saved by a journal
+	 * replay.
+	 */
+	void clearVisitCounts() {
+		visitCounterCache.clear();
+	}
+
+	/**
+	 * Replaces the registry of open tickets with tickets restored from a state
+	 * snapshot, which then counts as loaded.
+	 */
+	void restoreActiveTickets(Collection<Ticket> tickets) {
+		synchronized (activeTicketRegistry) {
+			activeTicketRegistry.reload(tickets);
+			activeTicketsLoaded = true;
+		}
+	}
+
+	/**
+	 * Caches a visit count restored from a state snapshot.
+	 */
+	void restoreVisitCount(long plate, int visitCount) {
+		visitCounterCache.update(plate, visitCount);
+	}
+
+	/**
+	 * Calls the consumer with every cached visit count, see
+	 * {@link VisitCounterCache#forEach(PlateMap.EntryConsumer)}.
+	 */
+	void forEachVisitCount(PlateMap.EntryConsumer consumer) {
+		visitCounterCache.forEach(consumer);
+	}
+
+	/**
+	 * Empties the in-memory caches of this DAO. Should be called after the ticket
+	 * tables are changed outside of this DAO.
+	 */
+	public void clearCaches() {
+		visitCounterCache.clear();
+		activeTicketsLoaded = false;
+		activeTicketRegistry.clear();
 	}
 
 	public Ticket getTicket(String vehicleRegNumber) {
 		Connection con = null;
+		PreparedStatement ps = null;
 		Ticket ticket = null;
 		try {
 			con = dataBaseConfig.getConnection();
-			PreparedStatement ps = con.prepareStatement(DBConstants.GET_TICKET);
+			ps = con.prepareStatement(DBConstants.GET_TICKET);
 			ps.setString(1, vehicleRegNumber);
 			ResultSet rs = ps.executeQuery();
 			if (rs.next()) {
@@ -57,41 +236,190 @@ public class TicketDAO {
 				ticket.setOutTime(rs.getTimestamp(5));
 			}
 			dataBaseConfig.closeResultSet(rs);
+		} catch (Exception ex) {
+			logger.error("Error fetching ticket", ex);
+		} finally {
 			dataBaseConfig.closePreparedStatement(ps);
+			dataBaseConfig.closeConnection(con);
+		}
+		return ticket;
+	}
+
+	/**
+	 * Returns the open ticket of a vehicle, that is the ticket of a vehicle
+	 * parked right now.
+	 * <p>
+	 * The ticket comes from the in-memory registry of open tickets, loaded from
+	 * the database on first use and kept up to date as tickets are saved and
+	 * closed. The database is only read for a vehicle missing from the registry.
+	 * An open ticket changed in the database outside of this DAO is only seen
+	 * once the registry is reloaded, with {@link #loadActiveTickets()} or
+	 * {@link #clearCaches()}.
+	 * </p>
+	 *
+	 * @param vehicleRegNumber the vehicle registration number
+	 * @return the open ticket, or {@code null} if the vehicle is not parked or in
+	 *         case of error
+	 */
+	public Ticket getActiveTicket(String vehicleRegNumber) {
+		ensureActiveTicketsLoaded();
+		Ticket ticket = activeTicketRegistry.find(vehicleRegNumber);
+		if (ticket != null) {
+			return ticket;
+		}
+
+		Connection con = null;
+		PreparedStatement ps = null;
+		try {
+			con = dataBaseConfig.getConnection();
+			ps = con.prepareStatement(DBConstants.GET_OPEN_TICKET);
+			ps.setString(1, vehicleRegNumber);
+			ResultSet rs = ps.executeQuery();
+			if (rs.next()) {
+				ticket = readOpenTicket(rs);
+				activeTicketRegistry.register(ticket);
+			}
+			dataBaseConfig.closeResultSet(rs);
+		} catch (Exception ex) {
+			logger.error("Error fetching open ticket", ex);
+		} finally {
+			dataBaseConfig.closePreparedStatement(ps);
+			dataBaseConfig.closeConnection(con);
+		}
+		return ticket;
+	}
+
+	/**
+	 * @return the open tickets, that is the vehicles parked right now, read from
+	 *         the in-memory registry
+	 */
+	public List<Ticket> getActiveTickets() {
+		ensureActiveTicketsLoaded();
+		return activeTicketRegistry.getAll();
+	}
+
+	/**
+	 * Rebuilds the registry of open tickets from the {@code OUT_TIME is null}
+	 * rows of the ticket table.
+	 *
+	 * @return {@code true} if the registry was loaded, {@code false} on error
+	 */
+	public boolean loadActiveTickets() {
+		Connection con = null;
+		PreparedStatement ps = null;
+		try {
+			con = dataBaseConfig.getConnection();
+			ps = con.prepareStatement(DBConstants.GET_OPEN_TICKETS);
+			ResultSet rs = ps.executeQuery();
+			List<Ticket> tickets = new ArrayList<>();
+			while (rs.next()) {
+				tickets.add(readOpenTicket(rs));
+			}
+			dataBaseConfig.closeResultSet(rs);
+			activeTicketRegistry.reload(tickets);
+			activeTicketsLoaded = true;
+			logger.info("Loaded {} open ticket(s)", tickets.size());
+			return true;
 		} catch (Exception ex) {
-			logger.error("Error fetching next available slot", ex);
+			logger.error("Error loading open tickets", ex);
+			return false;
 		} finally {
+			dataBaseConfig.closePreparedStatement(ps);
 			dataBaseConfig.closeConnection(con);
+		}
+	}
 
+	private void ensureActiveTicketsLoaded() {
+		if (!activeTicketsLoaded) {
+			synchronized (activeTicketRegistry) {
+				if (!activeTicketsLoaded) {
+					loadActiveTickets();
+				}
+			}
 		}
+	}
+
+	// columns of GET_OPEN_TICKET, GET_OPEN_TICKETS and the first ones of GET_TICKETS_SINCE
+	Ticket readOpenTicket(ResultSet rs) throws Exception {
+		Ticket ticket = new Ticket();
+		ticket.setParkingSpot(new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)), false));
+		ticket.setId(rs.getInt(2));
+		ticket.setPrice(rs.getDouble(3));
+		ticket.setInTime(rs.getTimestamp(4));
+		ticket.setVehicleRegNumber(rs.getString(5));
 		return ticket;
 	}
 
 	public boolean updateTicket(Ticket ticket) {
 		Connection con = null;
+		PreparedStatement ps = null;
 		try {
 			con = dataBaseConfig.getConnection();
-			PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_TICKET);
+			ps = con.prepareStatement(DBConstants.UPDATE_TICKET);
 			ps.setDouble(1, ticket.getPrice());
 			ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
 			ps.setInt(3, ticket.getId());
 			ps.execute();
+			ticketClosed(ticket);
 			return true;
 		} catch (Exception ex) {
 			logger.error("Error saving ticket info", ex);
 		} finally {
+			dataBaseConfig.closePreparedStatement(ps);
 			dataBaseConfig.closeConnection(con);
 		}
 		return false;
 	}
 
+	/**
+	 * Records the price and out time of a ticket using the given connection. The
+	 * update only applies to a ticket that is still open, so a ticket can never be
+	 * closed twice. Must be called before the spot of the ticket is freed. Once the
+	 * transaction is committed, count the exit with
+	 * {@link HourlyRollupDAO#recordExit(Ticket)}.
+	 *
+	 * @return {@code true} if the ticket was open and is now closed
+	 */
+	boolean closeTicket(Connection con, Ticket ticket) throws Exception {
+		PreparedStatement ps = con.prepareStatement(DBConstants.CLOSE_TICKET);
+		boolean closed;
+		try {
+			ps.setDouble(1, ticket.getPrice());
+			ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
+			ps.setInt(3, ticket.getId());
+			closed = (ps.executeUpdate() == 1);
+		} finally {
+			dataBaseConfig.closePreparedStatement(ps);
+		}
+		return closed;
+	}
+
+	/**
+	 * Same as {@link #closeTicket(Connection, Ticket)} for a ticket entered
+	 * through the offline journal, found by the sequence of its journal record
+	 * since its id was unknown when the vehicle exited.
+	 */
+	boolean closeTicket(Connection con, Ticket ticket, long journalSequence) throws Exception {
+		PreparedStatement ps = con.prepareStatement(DBConstants.CLOSE_JOURNALED_TICKET);
+		boolean closed;
+		try {
+			ps.setDouble(1, ticket.getPrice());
+			ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
+			ps.setLong(3, journalSequence);
+			closed = (ps.executeUpdate() == 1);
+		} finally {
+			dataBaseConfig.closePreparedStatement(ps);
+		}
+		return closed;
+	}
+
 	/**
 	 * Retrieves the number of tickets associated with a specific vehicle
-	 * registration number from the database.
+	 * registration number.
 	 * <p>
-	 * This method establishes a connection to the database, executes a query to
-	 * count the number of rows in the `ticket` table that match the provided
-	 * license plate number, and returns that count.
+	 * The count is maintained in the {@code vehicle_stats} table each time a
+	 * ticket is saved, and cached in memory, so this is a cache hit or a primary
+	 * key lookup however many tickets the vehicle has.
 	 * </p>
 	 *
 	 * @param vehicleRegNumber the vehicle registration number (license plate) to
@@ -100,23 +428,18 @@ public class TicketDAO {
 	 *         database; returns 0 if no ticket is found or in case of error
 	 */
 	public int getNbTicket(String vehicleRegNumber) {
-		Connection con = null;
-		int nbTicket = 0;
+		int nbTicket = visitCounterCache.get(vehicleRegNumber);
+		if (nbTicket >= 0) {
+			return nbTicket;
+		}
 
+		Connection con = null;
+		nbTicket = 0;
 		try {
 			con = dataBaseConfig.getConnection();
-			PreparedStatement ps = con.prepareStatement(DBConstants.COUNT_TICKET);
-			ps.setString(1, vehicleRegNumber);
-			ResultSet rs = ps.executeQuery();
-
-			while (rs.next()) {
-				nbTicket = rs.getInt(2);
-				logger.debug("vehicleRegNumber :" + vehicleRegNumber + "nbTicket :" + nbTicket);
-			}
-
-			dataBaseConfig.closeResultSet(rs);
-			dataBaseConfig.closePreparedStatement(ps);
-
+			nbTicket = queryVisitCount(con, vehicleRegNumber);
+			visitCounterCache.update(vehicleRegNumber, nbTicket);
+			logger.debug("vehicleRegNumber :{} nbTicket :{}", vehicleRegNumber, Unbox.box(nbTicket));
 		} catch (Exception ex) {
 			logger.error("Error fetching vehicle, count not available", ex);
 		} finally {
@@ -125,4 +448,11 @@ public class TicketDAO {
 		return nbTicket;
 
 	}
+
+	/**
+	 * @return the visit count of the vehicle if it is cached, 0 otherwise
+	 */
+	public int getCachedNbTicket(String vehicleRegNumber) {
+		return Math.max(0, visitCounterCache.get(vehicleRegNumber));
+	}
 }
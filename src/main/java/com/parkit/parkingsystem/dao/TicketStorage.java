@@ -0,0 +1,73 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.List;
+
+/**
+ * Storage of the parking tickets and of the visit count of each vehicle.
+ *
+ * @see TicketDAO
+ * @see com.parkit.parkingsystem.dao.memory.InMemoryTicketStorage
+ */
+public interface TicketStorage {
+
+	/**
+	 * Saves a new ticket, counts the visit of its vehicle and sets the ticket id
+	 * to the generated one.
+	 *
+	 * @return {@code true} if the ticket was saved
+	 */
+	boolean saveTicket(Ticket ticket);
+
+	/**
+	 * @return the latest ticket of the vehicle, open or closed, or {@code null}
+	 *         if the vehicle has no ticket or in case of error; the archived
+	 *         tickets are not read, see
+	 *         {@link com.parkit.parkingsystem.archive.TicketArchiver}
+	 */
+	Ticket getTicket(String vehicleRegNumber);
+
+	/**
+	 * @return the open ticket of the vehicle, or {@code null} if the vehicle is
+	 *         not parked or in case of error
+	 */
+	Ticket getActiveTicket(String vehicleRegNumber);
+
+	/**
+	 * @return the open tickets, that is the vehicles parked right now
+	 */
+	List<Ticket> getActiveTickets();
+
+	/**
+	 * Reloads any cached view of the open tickets from the storage.
+	 *
+	 * @return {@code true} if the view was reloaded, {@code false} on error
+	 */
+	boolean loadActiveTickets();
+
+	/**
+	 * Records the price and out time of a ticket.
+	 *
+	 * @return {@code true} if the ticket was updated
+	 */
+	boolean updateTicket(Ticket ticket);
+
+	/**
+	 * @return the number of tickets of the vehicle, 0 if it has none or in case
+	 *         of error
+	 */
+	int getNbTicket(String vehicleRegNumber);
+
+	/**
+	 * @return the number of tickets of the vehicle if it is known without
+	 *         reading the storage, 0 otherwise, to be read with
+	 *         {@link #getNbTicket(String)}
+	 */
+	int getCachedNbTicket(String vehicleRegNumber);
+
+	/**
+	 * Drops any cached data, to be read again from the storage.
+	 */
+	void clearCaches();
+}
@@ -0,0 +1,91 @@
+package com.parkit.parkingsystem.dao.memory;
+
+import com.parkit.parkingsystem.cache.FreeSpotIndex;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotStorage;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Parking spots held in memory only, for edge kiosks running without MySQL and
+ * for benchmarks of the service layer.
+ * <p>
+ * The type of each spot is kept in an array indexed by spot number and the
+ * free spots in a {@link FreeSpotIndex}, which is here the source of truth.
+ * Spots are numbered from 1, cars first, like in {@code Data.sql}.
+ * </p>
+ */
+public class InMemoryParkingSpotStorage implements ParkingSpotStorage {
+
+	private final ParkingType[] spotTypes;
+	private final int[] spotCounts = new int[ParkingType.values().length];
+	private final FreeSpotIndex freeSpotIndex = new FreeSpotIndex();
+
+	/**
+	 * @param spotCounts the number of spots of each type, all free
+	 */
+	public InMemoryParkingSpotStorage(Map<ParkingType, Integer> spotCounts) {
+		int total = 0;
+		for (int count : spotCounts.values()) {
+			total += count;
+		}
+		spotTypes = new ParkingType[total + 1];
+		Map<ParkingType, BitSet> freeSpots = new EnumMap<>(ParkingType.class);
+		int number = 1;
+		for (ParkingType parkingType : ParkingType.values()) {
+			int count = spotCounts.getOrDefault(parkingType, 0);
+			BitSet spots = new BitSet(number + count);
+			for (int i = 0; i < count; i++, number++) {
+				spotTypes[number] = parkingType;
+				spots.set(number);
+			}
+			this.spotCounts[parkingType.ordinal()] = count;
+			freeSpots.put(parkingType, spots);
+		}
+		freeSpotIndex.reload(freeSpots);
+	}
+
+	public int getNextAvailableSlot(ParkingType parkingType) {
+		return freeSpotIndex.lowestFree(parkingType);
+	}
+
+	public int claimNextAvailableSlot(ParkingType parkingType) {
+		return freeSpotIndex.claimLowest(parkingType);
+	}
+
+	public boolean updateParking(ParkingSpot parkingSpot) {
+		int number = parkingSpot.getId();
+		if (number <= 0 || number >= spotTypes.length) {
+			return false;
+		}
+		freeSpotIndex.setAvailable(spotTypes[number], number, parkingSpot.isAvailable());
+		return true;
+	}
+
+	/**
+	 * Nothing to reload, the spots are only held here.
+	 */
+	public boolean resyncFreeSpots() {
+		return true;
+	}
+
+	public int getFreeSpotCount(ParkingType parkingType) {
+		return freeSpotIndex.countFree(parkingType);
+	}
+
+	public int getSpotCount(ParkingType parkingType) {
+		return spotCounts[parkingType.ordinal()];
+	}
+
+	public boolean countSpots(int[] spots, int[] occupied) {
+		for (ParkingType parkingType : ParkingType.values()) {
+			int t = parkingType.ordinal();
+			spots[t] = spotCounts[t];
+			occupied[t] = spotCounts[t] - freeSpotIndex.countFree(parkingType);
+		}
+		return true;
+	}
+}
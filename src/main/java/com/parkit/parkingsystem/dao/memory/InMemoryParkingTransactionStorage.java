@@ -0,0 +1,54 @@
+package com.parkit.parkingsystem.dao.memory;
+
+import com.parkit.parkingsystem.dao.ParkingTransactionStorage;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Vehicle entries and exits over the in-memory storages. The spot is claimed
+ * before the ticket is saved and given back if saving fails; a ticket is closed
+ * with a compare-and-set before its spot is freed, so a vehicle can only leave
+ * once.
+ */
+public class InMemoryParkingTransactionStorage implements ParkingTransactionStorage {
+
+	private static final Logger logger = LogManager.getLogger("InMemoryParkingTransactionStorage");
+
+	private final InMemoryParkingSpotStorage parkingSpotStorage;
+	private final InMemoryTicketStorage ticketStorage;
+
+	public InMemoryParkingTransactionStorage(InMemoryParkingSpotStorage parkingSpotStorage,
+			InMemoryTicketStorage ticketStorage) {
+		this.parkingSpotStorage = parkingSpotStorage;
+		this.ticketStorage = ticketStorage;
+	}
+
+	public int enter(Ticket ticket) {
+		ParkingSpot parkingSpot = ticket.getParkingSpot();
+		int parkingNumber = parkingSpotStorage.claimNextAvailableSlot(parkingSpot.getParkingType());
+		if (parkingNumber <= 0) {
+			return 0;
+		}
+		parkingSpot.setId(parkingNumber);
+		parkingSpot.setAvailable(false);
+		if (!ticketStorage.saveTicket(ticket)) {
+			parkingSpotStorage
+					.updateParking(new ParkingSpot(parkingNumber, parkingSpot.getParkingType(), true));
+			return 0;
+		}
+		return ticketStorage.getNbTicket(ticket.getVehicleRegNumber());
+	}
+
+	public boolean exit(Ticket ticket) {
+		if (!ticketStorage.closeTicket(ticket)) {
+			logger.error("Ticket {} is not open, vehicle exit ignored", ticket.getId());
+			return false;
+		}
+		ParkingSpot parkingSpot = ticket.getParkingSpot();
+		parkingSpot.setAvailable(true);
+		parkingSpotStorage.updateParking(parkingSpot);
+		return true;
+	}
+}
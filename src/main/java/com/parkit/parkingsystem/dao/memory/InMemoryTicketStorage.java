@@ -0,0 +1,196 @@
+package com.parkit.parkingsystem.dao.memory;
+
+import com.parkit.parkingsystem.cache.ActiveTicketRegistry;
+import com.parkit.parkingsystem.cache.PlateMap;
+import com.parkit.parkingsystem.dao.TicketStorage;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.util.PlateCodec;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Tickets held in memory only, for edge kiosks running without MySQL and for
+ * benchmarks of the service layer.
+ * <p>
+ * Tickets are stored by id in chunks of an array, allocated as ids grow, and
+ * never change in place: closing a ticket swaps in a closed copy with a
+ * compare-and-set, so a ticket can never be closed twice. Each vehicle has its
+ * visit count and latest ticket id packed in a {@link PlateMap} entry, and the
+ * open tickets are kept in an {@link ActiveTicketRegistry}. Like the
+ * {@code VEHICLE_REG_NUMBER} column, only plates of at most ten characters are
+ * stored, and only those {@link PlateCodec} can encode.
+ * </p>
+ */
+public class InMemoryTicketStorage implements TicketStorage {
+
+	private static final Logger logger = LogManager.getLogger("InMemoryTicketStorage");
+
+	private static final int CHUNK_BITS = 14;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int MAX_CHUNKS = 1 << 12;
+
+	private final AtomicReferenceArray<AtomicReferenceArray<Ticket>> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+	private final AtomicInteger lastTicketId = new AtomicInteger();
+	// visit count in the high half, latest ticket id in the low half
+	private final PlateMap vehicles = new PlateMap();
+	private final ActiveTicketRegistry activeTicketRegistry = new ActiveTicketRegistry();
+
+	public boolean saveTicket(Ticket ticket) {
+		long plate = PlateCodec.encode(ticket.getVehicleRegNumber());
+		if (plate == PlateCodec.NOT_ENCODABLE) {
+			logger.error("Error saving ticket info, {} is not a registration number the store can hold",
+					ticket.getVehicleRegNumber());
+			return false;
+		}
+		int id = lastTicketId.incrementAndGet();
+		if ((id >>> CHUNK_BITS) >= MAX_CHUNKS) {
+			logger.error("Error saving ticket info, the in-memory ticket store is full");
+			return false;
+		}
+		Ticket stored = copy(ticket);
+		stored.setId(id);
+		chunk(id, true).set(id & (CHUNK_SIZE - 1), stored);
+		ticket.setId(id);
+
+		vehicles.compute(plate, history -> {
+			int visits = history == PlateMap.MISSING ? 0 : visits(history);
+			int latestTicketId = history == PlateMap.MISSING ? 0 : latestTicketId(history);
+			Ticket latest = find(latestTicketId);
+			if (latest == null || !stored.getInTime().before(latest.getInTime())) {
+				latestTicketId = id;
+			}
+			return history(visits + 1, latestTicketId);
+		});
+		if (stored.getOutTime() == null) {
+			activeTicketRegistry.register(stored);
+		}
+		return true;
+	}
+
+	public Ticket getTicket(String vehicleRegNumber) {
+		long history = vehicles.get(PlateCodec.encode(vehicleRegNumber));
+		if (history == PlateMap.MISSING) {
+			return null;
+		}
+		Ticket ticket = copy(find(latestTicketId(history)));
+		ticket.getParkingSpot().setAvailable(false);
+		return ticket;
+	}
+
+	public Ticket getActiveTicket(String vehicleRegNumber) {
+		return activeTicketRegistry.find(vehicleRegNumber);
+	}
+
+	public List<Ticket> getActiveTickets() {
+		return activeTicketRegistry.getAll();
+	}
+
+	/**
+	 * Nothing to reload, the tickets are only held here.
+	 */
+	public boolean loadActiveTickets() {
+		return true;
+	}
+
+	public boolean updateTicket(Ticket ticket) {
+		return close(ticket, false);
+	}
+
+	/**
+	 * Records the price and out time of a ticket that is still open.
+	 *
+	 * @return {@code true} if the ticket was open and is now closed
+	 */
+	boolean closeTicket(Ticket ticket) {
+		return close(ticket, true);
+	}
+
+	public int getNbTicket(String vehicleRegNumber) {
+		long history = vehicles.get(PlateCodec.encode(vehicleRegNumber));
+		return history == PlateMap.MISSING ? 0 : visits(history);
+	}
+
+	/**
+	 * Same as {@link #getNbTicket(String)}: the counts are all in memory.
+	 */
+	public int getCachedNbTicket(String vehicleRegNumber) {
+		return getNbTicket(vehicleRegNumber);
+	}
+
+	/**
+	 * Nothing to clear, there is no cache in front of this storage.
+	 */
+	public void clearCaches() {
+	}
+
+	private boolean close(Ticket ticket, boolean onlyIfOpen) {
+		AtomicReferenceArray<Ticket> chunk = ticket.getId() > 0 ? chunk(ticket.getId(), false) : null;
+		if (chunk == null) {
+			return false;
+		}
+		int index = ticket.getId() & (CHUNK_SIZE - 1);
+		while (true) {
+			Ticket current = chunk.get(index);
+			if (current == null || (onlyIfOpen && current.getOutTime() != null)) {
+				return false;
+			}
+			Ticket closed = copy(current);
+			closed.setPrice(ticket.getPrice());
+			closed.setOutTime(ticket.getOutTime());
+			if (chunk.compareAndSet(index, current, closed)) {
+				activeTicketRegistry.remove(ticket);
+				return true;
+			}
+		}
+	}
+
+	private Ticket find(int id) {
+		AtomicReferenceArray<Ticket> chunk = id > 0 ? chunk(id, false) : null;
+		return chunk == null ? null : chunk.get(id & (CHUNK_SIZE - 1));
+	}
+
+	private AtomicReferenceArray<Ticket> chunk(int id, boolean create) {
+		int chunkIndex = id >>> CHUNK_BITS;
+		if (chunkIndex >= MAX_CHUNKS) {
+			return null;
+		}
+		AtomicReferenceArray<Ticket> chunk = chunks.get(chunkIndex);
+		if (chunk == null && create) {
+			chunks.compareAndSet(chunkIndex, null, new AtomicReferenceArray<>(CHUNK_SIZE));
+			chunk = chunks.get(chunkIndex);
+		}
+		return chunk;
+	}
+
+	private static Ticket copy(Ticket ticket) {
+		Ticket copy = new Ticket();
+		copy.setId(ticket.getId());
+		ParkingSpot parkingSpot = ticket.getParkingSpot();
+		if (parkingSpot != null) {
+			copy.setParkingSpot(
+					new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), parkingSpot.isAvailable()));
+		}
+		copy.setVehicleRegNumber(ticket.getVehicleRegNumber());
+		copy.setPrice(ticket.getPrice());
+		copy.setInTime(ticket.getInTime());
+		copy.setOutTime(ticket.getOutTime());
+		return copy;
+	}
+
+	private static long history(int visits, int latestTicketId) {
+		return ((long) visits << 32) | (latestTicketId & 0xffffffffL);
+	}
+
+	private static int visits(long history) {
+		return (int) (history >>> 32);
+	}
+
+	private static int latestTicketId(long history) {
+		return (int) history;
+	}
+}
@@ -0,0 +1,26 @@
+package com.parkit.parkingsystem.journal;
+
+/**
+ * Destination of the records replayed by the {@link JournalReplayer}.
+ */
+public interface JournalApplier {
+
+	/**
+	 * @return the sequence of the last record applied, 0 if none
+	 */
+	long getCheckpoint() throws Exception;
+
+	/**
+	 * Applies a record and moves the checkpoint to its sequence, atomically. A
+	 * record at or before the checkpoint is ignored, so replaying a record twice
+	 * has no effect.
+	 */
+	void apply(JournalRecord record) throws Exception;
+
+	/**
+	 * Called when every record up to the given sequence is applied.
+	 *
+	 * @return {@code false} if records were appended meanwhile and need replaying
+	 */
+	boolean caughtUp(long checkpoint) throws Exception;
+}
@@ -0,0 +1,164 @@
+package com.parkit.parkingsystem.journal;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A vehicle entry or exit recorded in the {@link TicketJournal}.
+ * <p>
+ * An entry holds the spot given to the vehicle and its in time. An exit holds
+ * the ticket it closes, the price and the out time. The ticket of an exit is
+ * either a ticket of the database, by its positive id, or a ticket entered
+ * through the journal, by the negated sequence of its entry.
+ * </p>
+ */
+public class JournalRecord {
+
+	public enum Kind {
+		ENTRY, EXIT
+	}
+
+	private static final int MAX_PLATE_BYTES = 255;
+
+	private final long sequence;
+	private final Kind kind;
+	private final String vehicleRegNumber;
+	private final ParkingType parkingType;
+	private final int parkingNumber;
+	private final int ticketId;
+	private final double price;
+	private final long inTime;
+	private final long outTime;
+
+	private JournalRecord(long sequence, Kind kind, String vehicleRegNumber, ParkingType parkingType,
+			int parkingNumber, int ticketId, double price, long inTime, long outTime) {
+		this.sequence = sequence;
+		this.kind = kind;
+		this.vehicleRegNumber = vehicleRegNumber;
+		this.parkingType = parkingType;
+		this.parkingNumber = parkingNumber;
+		this.ticketId = ticketId;
+		this.price = price;
+		this.inTime = inTime;
+		this.outTime = outTime;
+	}
+
+	public static JournalRecord entry(String vehicleRegNumber, ParkingType parkingType, int parkingNumber,
+			long inTime) {
+		return new JournalRecord(0L, Kind.ENTRY, vehicleRegNumber, parkingType, parkingNumber, 0, 0.0, inTime, -1L);
+	}
+
+	public static JournalRecord exit(String vehicleRegNumber, ParkingType parkingType, int parkingNumber,
+			int ticketId, double price, long inTime, long outTime) {
+		return new JournalRecord(0L, Kind.EXIT, vehicleRegNumber, parkingType, parkingNumber, ticketId, price, inTime,
+				outTime);
+	}
+
+	/**
+	 * @return the sequence given by the journal, 0 for a record not appended yet
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public String getVehicleRegNumber() {
+		return vehicleRegNumber;
+	}
+
+	public ParkingType getParkingType() {
+		return parkingType;
+	}
+
+	public int getParkingNumber() {
+		return parkingNumber;
+	}
+
+	/**
+	 * @return for an exit, the id of the closed ticket, negative for a ticket
+	 *         entered through the journal; 0 for an entry
+	 */
+	public int getTicketId() {
+		return ticketId;
+	}
+
+	public double getPrice() {
+		return price;
+	}
+
+	public long getInTime() {
+		return inTime;
+	}
+
+	/**
+	 * @return the out time of an exit, -1 for an entry
+	 */
+	public long getOutTime() {
+		return outTime;
+	}
+
+	byte[] plateBytes() {
+		byte[] plate = vehicleRegNumber.getBytes(StandardCharsets.UTF_8);
+		if (plate.length > MAX_PLATE_BYTES) {
+			throw new IllegalArgumentException("Vehicle registration number too long: " + vehicleRegNumber);
+		}
+		return plate;
+	}
+
+	static int encodedLength(byte[] plate) {
+		// sequence, kind, plate length and bytes, type, spot, ticket, price, in and out time
+		return 8 + 1 + 1 + plate.length + 1 + 4 + 4 + 8 + 8 + 8;
+	}
+
+	void encode(ByteBuffer buffer, long recordSequence, byte[] plate) {
+		buffer.putLong(recordSequence);
+		buffer.put((byte) kind.ordinal());
+		buffer.put((byte) plate.length);
+		buffer.put(plate);
+		buffer.put((byte) parkingType.ordinal());
+		buffer.putInt(parkingNumber);
+		buffer.putInt(ticketId);
+		buffer.putDouble(price);
+		buffer.putLong(inTime);
+		buffer.putLong(outTime);
+	}
+
+	/**
+	 * Reads a record written by {@link #encode(ByteBuffer, long, byte[])} at the
+	 * current position of the buffer.
+	 *
+	 * @throws IllegalArgumentException if the bytes are not a valid record
+	 */
+	static JournalRecord decode(ByteBuffer buffer) {
+		long sequence = buffer.getLong();
+		Kind kind = Kind.values()[checkedOrdinal(buffer.get(), Kind.values().length)];
+		byte[] plate = new byte[buffer.get() & 0xFF];
+		buffer.get(plate);
+		ParkingType parkingType = ParkingType.values()[checkedOrdinal(buffer.get(), ParkingType.values().length)];
+		int parkingNumber = buffer.getInt();
+		int ticketId = buffer.getInt();
+		double price = buffer.getDouble();
+		long inTime = buffer.getLong();
+		long outTime = buffer.getLong();
+		return new JournalRecord(sequence, kind, new String(plate, StandardCharsets.UTF_8), parkingType,
+				parkingNumber, ticketId, price, inTime, outTime);
+	}
+
+	private static int checkedOrdinal(byte value, int count) {
+		if (value < 0 || value >= count) {
+			throw new IllegalArgumentException("Invalid ordinal " + value);
+		}
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return kind + " #" + sequence + " " + vehicleRegNumber + " spot " + parkingNumber
+				+ (kind == Kind.EXIT ? " ticket " + ticketId : "");
+	}
+}
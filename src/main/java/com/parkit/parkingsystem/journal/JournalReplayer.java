@@ -0,0 +1,108 @@
+package com.parkit.parkingsystem.journal;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.util.Unbox;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background task draining the {@link TicketJournal} into the database, in
+ * sequence order, once it is reachable again.
+ * <p>
+ * Every {@code intervalMillis} it forces the journal to disk, then applies the
+ * records following the checkpoint one by one until none is left. When a
+ * record cannot be applied, the database is assumed to be still down and the
+ * drain resumes at the next run from the same record. Once the journal is
+ * drained, the segments it no longer needs are deleted.
+ * </p>
+ */
+public class JournalReplayer implements AutoCloseable {
+
+	private static final Logger logger = LogManager.getLogger("JournalReplayer");
+
+	private static final int BATCH_SIZE = 256;
+
+	private final TicketJournal journal;
+	private final JournalApplier applier;
+	private final long intervalMillis;
+	private final ScheduledExecutorService scheduler;
+	private volatile long appliedUpTo = -1;
+	private boolean failing;
+
+	public JournalReplayer(TicketJournal journal, JournalApplier applier, long intervalMillis) {
+		this.journal = journal;
+		this.applier = applier;
+		this.intervalMillis = intervalMillis;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "journal-replayer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public void start() {
+		scheduler.scheduleWithFixedDelay(this::drain, 0, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Applies every record not applied yet.
+	 *
+	 * @return the number of records applied, or -1 if the drain stopped on an
+	 *         error
+	 */
+	public synchronized int drain() {
+		journal.sync();
+		// nothing appended since the last drain: no need to ask the database
+		if (appliedUpTo >= 0 && journal.getLastSequence() <= appliedUpTo) {
+			return 0;
+		}
+		int applied = 0;
+		try {
+			long checkpoint = applier.getCheckpoint();
+			while (true) {
+				List<JournalRecord> records = journal.readAfter(checkpoint, BATCH_SIZE);
+				if (records.isEmpty()) {
+					if (applier.caughtUp(checkpoint)) {
+						break;
+					}
+					continue;
+				}
+				for (JournalRecord record : records) {
+					applier.apply(record);
+					checkpoint = record.getSequence();
+					applied++;
+				}
+			}
+			appliedUpTo = checkpoint;
+			int deleted = journal.deleteUpTo(checkpoint);
+			if (applied > 0 || failing) {
+				logger.info("Journal replayed {} record(s) up to sequence {}, deleted {} segment(s)",
+						Unbox.box(applied), Unbox.box(checkpoint), Unbox.box(deleted));
+			}
+			failing = false;
+			return applied;
+		} catch (Exception e) {
+			// logged once per outage, not at every run
+			if (!failing) {
+				logger.error("Journal replay stopped after {} record(s), retrying every {} ms", Unbox.box(applied),
+						Unbox.box(intervalMillis), e);
+			}
+			failing = true;
+			return -1;
+		}
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdown();
+		try {
+			scheduler.awaitTermination(intervalMillis + 5000, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
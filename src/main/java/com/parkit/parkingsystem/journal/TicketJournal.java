@@ -0,0 +1,355 @@
+package com.parkit.parkingsystem.journal;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.util.Unbox;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of vehicle entries and exits on local disk, used while
+ * the database is unavailable.
+ * <p>
+ * The journal is a series of fixed-size segment files, each mapped in memory
+ * whole: appending a record is a copy into the mapping, with no system call,
+ * and the operating system writes the pages back. {@link #sync()} forces them
+ * to disk. When a record does not fit in the active segment, a new segment is
+ * started.
+ * </p>
+ * <p>
+ * A segment starts with a header giving the sequence of its first record.
+ * Each record is framed by its length and the CRC32 of its content, and
+ * records are numbered without gaps. When the journal is opened, the segments
+ * are scanned and the scan of a segment stops at the first record that is
+ * truncated, fails its checksum or breaks the numbering: in the last segment
+ * this is the tail of a write interrupted by a crash, which is erased so the
+ * next record goes in its place.
+ * </p>
+ * <p>
+ * Segments whose records are all applied to the database are deleted with
+ * {@link #deleteUpTo(long)}. The active segment is never deleted, so the
+ * numbering goes on across restarts.
+ * </p>
+ */
+public class TicketJournal implements Closeable {
+
+	private static final Logger logger = LogManager.getLogger("TicketJournal");
+
+	public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	private static final String SEGMENT_PREFIX = "journal-";
+	private static final String SEGMENT_SUFFIX = ".seg";
+	private static final int MAGIC = 0x504B4A31; // "PKJ1"
+	private static final int SEGMENT_HEADER_SIZE = 16;
+	private static final int RECORD_HEADER_SIZE = 8;
+
+	private final Path directory;
+	private final int segmentSize;
+	private final List<Segment> segments = new ArrayList<>();
+	private final CRC32 appendCrc = new CRC32();
+	private Segment active;
+	private long lastSequence;
+
+	private TicketJournal(Path directory, int segmentSize) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * Opens the journal of a directory, creating it if needed, and recovers its
+	 * records.
+	 */
+	public static TicketJournal open(Path directory, int segmentSize) throws IOException {
+		Files.createDirectories(directory);
+		TicketJournal journal = new TicketJournal(directory, segmentSize);
+		journal.recover();
+		return journal;
+	}
+
+	private void recover() throws IOException {
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+				SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			for (Path file : stream) {
+				files.add(file);
+			}
+		}
+		// the file names hold the zero-padded first sequence, so they sort in order
+		files.sort(null);
+		for (int i = 0; i < files.size(); i++) {
+			Segment segment = Segment.map(files.get(i));
+			if (segment == null) {
+				logger.error("Ignoring journal segment {} with an invalid header", files.get(i));
+				continue;
+			}
+			boolean last = i == files.size() - 1;
+			scan(segment, last);
+			segments.add(segment);
+		}
+		if (segments.isEmpty()) {
+			roll(1L);
+		} else {
+			active = segments.get(segments.size() - 1);
+			lastSequence = active.lastSequence;
+		}
+		logger.info("Journal opened in {} with {} segment(s), last sequence {}", directory,
+				Unbox.box(segments.size()), Unbox.box(lastSequence));
+	}
+
+	/**
+	 * Finds the valid records of a segment and, for the last segment, erases what
+	 * follows them.
+	 */
+	private void scan(Segment segment, boolean last) {
+		ByteBuffer buffer = segment.buffer.duplicate();
+		CRC32 crc = new CRC32();
+		int position = SEGMENT_HEADER_SIZE;
+		long expected = segment.firstSequence;
+		while (true) {
+			ByteBuffer record = readFrame(buffer, position, crc);
+			if (record == null || record.getLong(record.position()) != expected) {
+				break;
+			}
+			position += RECORD_HEADER_SIZE + record.remaining();
+			expected++;
+		}
+		segment.writePosition = position;
+		segment.lastSequence = expected - 1;
+		if (position + RECORD_HEADER_SIZE <= buffer.capacity() && buffer.getInt(position) != 0) {
+			if (last) {
+				logger.warn("Erasing the torn tail of journal segment {} after sequence {}", segment.path,
+						Unbox.box(segment.lastSequence));
+				// a torn record is far smaller than 64 KB
+				for (int i = position; i < buffer.capacity() && i < position + 64 * 1024; i++) {
+					segment.buffer.put(i, (byte) 0);
+				}
+				segment.buffer.force();
+			} else {
+				logger.error("Journal segment {} is corrupt after sequence {}, the following records of the "
+						+ "segment are lost", segment.path, Unbox.box(segment.lastSequence));
+			}
+		}
+	}
+
+	/**
+	 * @return the content of the record framed at that position, or {@code null}
+	 *         if there is no complete record with a valid checksum there
+	 */
+	private static ByteBuffer readFrame(ByteBuffer buffer, int position, CRC32 crc) {
+		if (position + RECORD_HEADER_SIZE > buffer.capacity()) {
+			return null;
+		}
+		int length = buffer.getInt(position);
+		if (length <= 0 || length > buffer.capacity() - position - RECORD_HEADER_SIZE) {
+			return null;
+		}
+		int checksum = buffer.getInt(position + 4);
+		ByteBuffer content = buffer.duplicate();
+		content.limit(position + RECORD_HEADER_SIZE + length).position(position + RECORD_HEADER_SIZE);
+		crc.reset();
+		crc.update(content.duplicate());
+		return (int) crc.getValue() == checksum ? content : null;
+	}
+
+	/**
+	 * Appends a record.
+	 *
+	 * @return the sequence given to the record
+	 */
+	public synchronized long append(JournalRecord record) throws IOException {
+		if (active == null) {
+			throw new IOException("Journal is closed");
+		}
+		byte[] plate = record.plateBytes();
+		int length = JournalRecord.encodedLength(plate);
+		// keep room for the zero length that ends the segment
+		if (active.writePosition + RECORD_HEADER_SIZE + length + 4 > active.buffer.capacity()) {
+			roll(lastSequence + 1);
+		}
+		long sequence = lastSequence + 1;
+		MappedByteBuffer buffer = active.buffer;
+		int position = active.writePosition;
+		ByteBuffer content = buffer.duplicate();
+		content.position(position + RECORD_HEADER_SIZE);
+		record.encode(content, sequence, plate);
+
+		ByteBuffer written = buffer.duplicate();
+		written.limit(position + RECORD_HEADER_SIZE + length).position(position + RECORD_HEADER_SIZE);
+		appendCrc.reset();
+		appendCrc.update(written);
+		buffer.putInt(position + 4, (int) appendCrc.getValue());
+		// the length goes last: a record is only seen once it is complete
+		buffer.putInt(position, length);
+
+		active.writePosition = position + RECORD_HEADER_SIZE + length;
+		active.lastSequence = sequence;
+		lastSequence = sequence;
+		return sequence;
+	}
+
+	/**
+	 * Reads the records following a sequence, in order.
+	 *
+	 * @param afterSequence the sequence of the last record already read
+	 * @param maxRecords    the maximum number of records to return
+	 */
+	public List<JournalRecord> readAfter(long afterSequence, int maxRecords) {
+		List<Segment> candidates = new ArrayList<>();
+		List<Integer> limits = new ArrayList<>();
+		synchronized (this) {
+			for (Segment segment : segments) {
+				if (segment.lastSequence > afterSequence) {
+					candidates.add(segment);
+					limits.add(segment.writePosition);
+				}
+			}
+		}
+		List<JournalRecord> records = new ArrayList<>();
+		CRC32 crc = new CRC32();
+		for (int i = 0; i < candidates.size() && records.size() < maxRecords; i++) {
+			// a view up to the end of the records written so far, appends go on meanwhile
+			ByteBuffer buffer = candidates.get(i).buffer.duplicate();
+			buffer.limit(limits.get(i));
+			int position = SEGMENT_HEADER_SIZE;
+			while (records.size() < maxRecords && position < limits.get(i)) {
+				ByteBuffer content = readFrame(buffer, position, crc);
+				if (content == null) {
+					break;
+				}
+				position += RECORD_HEADER_SIZE + content.remaining();
+				if (content.getLong(content.position()) > afterSequence) {
+					records.add(JournalRecord.decode(content));
+				}
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * @return the sequence of the last appended record, 0 if the journal never
+	 *         had any
+	 */
+	public synchronized long getLastSequence() {
+		return lastSequence;
+	}
+
+	/**
+	 * Makes the next record follow the given sequence, if the journal is behind
+	 * it: used when the records up to that sequence were applied but their
+	 * segments are gone.
+	 */
+	public synchronized void advanceTo(long sequence) throws IOException {
+		if (sequence > lastSequence) {
+			logger.warn("Journal advanced from sequence {} to {}", Unbox.box(lastSequence), Unbox.box(sequence));
+			roll(sequence + 1);
+		}
+	}
+
+	/**
+	 * Deletes the segments, other than the active one, whose records all have a
+	 * sequence up to the given one.
+	 *
+	 * @return the number of deleted segments
+	 */
+	public synchronized int deleteUpTo(long sequence) throws IOException {
+		int deleted = 0;
+		while (segments.size() > 1 && segments.get(0).lastSequence <= sequence) {
+			Segment segment = segments.remove(0);
+			segment.close();
+			Files.deleteIfExists(segment.path);
+			deleted++;
+		}
+		return deleted;
+	}
+
+	/**
+	 * Forces the appended records to disk.
+	 */
+	public synchronized void sync() {
+		if (active != null) {
+			active.buffer.force();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		sync();
+		for (Segment segment : segments) {
+			segment.close();
+		}
+		segments.clear();
+		active = null;
+	}
+
+	private void roll(long firstSequence) throws IOException {
+		if (active != null) {
+			active.buffer.force();
+		}
+		Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+		active = Segment.create(path, segmentSize, firstSequence);
+		segments.add(active);
+		lastSequence = firstSequence - 1;
+	}
+
+	private static final class Segment {
+		private final Path path;
+		private final FileChannel channel;
+		private final MappedByteBuffer buffer;
+		private final long firstSequence;
+		private int writePosition = SEGMENT_HEADER_SIZE;
+		private long lastSequence;
+
+		private Segment(Path path, FileChannel channel, MappedByteBuffer buffer, long firstSequence) {
+			this.path = path;
+			this.channel = channel;
+			this.buffer = buffer;
+			this.firstSequence = firstSequence;
+			this.lastSequence = firstSequence - 1;
+		}
+
+		static Segment create(Path path, int size, long firstSequence) throws IOException {
+			FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, SEGMENT_HEADER_SIZE);
+			buffer.putLong(8, firstSequence);
+			buffer.force();
+			return new Segment(path, channel, buffer, firstSequence);
+		}
+
+		/**
+		 * @return the mapped segment, or {@code null} if its header is invalid
+		 */
+		static Segment map(Path path) throws IOException {
+			FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			long size = channel.size();
+			if (size < SEGMENT_HEADER_SIZE || size > Integer.MAX_VALUE) {
+				channel.close();
+				return null;
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != SEGMENT_HEADER_SIZE) {
+				channel.close();
+				return null;
+			}
+			return new Segment(path, channel, buffer, buffer.getLong(8));
+		}
+
+		void close() throws IOException {
+			buffer.force();
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package com.parkit.parkingsystem.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event of one connection borrowed from the pool by
+ * {@link com.parkit.parkingsystem.config.DataBaseConfig#getConnection()},
+ * waiting for a free connection included.
+ */
+@Name("parkit.ConnectionBorrow")
+@Label("Connection Borrow")
+@Category({ "Parking System", "Database" })
+@Description("A connection borrowed from the pool")
+@StackTrace(false)
+public class ConnectionBorrowEvent extends jdk.jfr.Event {
+
+	@Label("Active Connections")
+	@Description("Connections handed out once the borrow completed")
+	public int activeConnections;
+
+	@Label("Failed")
+	public boolean failed;
+}
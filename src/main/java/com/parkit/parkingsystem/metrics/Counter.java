@@ -0,0 +1,37 @@
+package com.parkit.parkingsystem.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count of events since startup. Incrementing it is lock-free.
+ */
+public final class Counter extends Metric {
+
+	private final LongAdder count = new LongAdder();
+
+	Counter(String name, String help, String labels) {
+		super(name, help, labels);
+	}
+
+	public void increment() {
+		count.increment();
+	}
+
+	public void add(long n) {
+		count.add(n);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	@Override
+	String getType() {
+		return "counter";
+	}
+
+	@Override
+	void writeSamples(StringBuilder out) {
+		writeSample(out, getName(), getLabels(), null, count.sum());
+	}
+}
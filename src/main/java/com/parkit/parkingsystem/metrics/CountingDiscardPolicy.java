@@ -0,0 +1,38 @@
+package com.parkit.parkingsystem.metrics;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.async.DiscardingAsyncQueueFullPolicy;
+import org.apache.logging.log4j.core.async.EventRoute;
+import org.apache.logging.log4j.util.PropertiesUtil;
+
+/**
+ * What the asynchronous loggers do when their ring buffer is full: like the
+ * {@code Discard} policy of Log4j 2, drop the events at
+ * {@code log4j2.discardThreshold} (INFO by default) and below and wait for a
+ * free slot for the others, and also count the dropped events in the
+ * {@code parkit_log_discarded_total} counter of the default
+ * {@link MetricsRegistry}.
+ * <p>
+ * Set as {@code log4j2.asyncQueueFullPolicy} in
+ * {@code log4j2.component.properties}; Log4j 2 creates it when the first
+ * asynchronous logger starts.
+ * </p>
+ */
+public class CountingDiscardPolicy extends DiscardingAsyncQueueFullPolicy {
+
+	private static final Counter discarded = MetricsRegistry.getDefault().counter("parkit_log_discarded_total",
+			"Log events dropped because the asynchronous logging ring buffer was full");
+
+	public CountingDiscardPolicy() {
+		super(Level.toLevel(PropertiesUtil.getProperties().getStringProperty("log4j2.DiscardThreshold"), Level.INFO));
+	}
+
+	@Override
+	public EventRoute getRoute(long backgroundThreadId, Level level) {
+		EventRoute route = super.getRoute(backgroundThreadId, level);
+		if (route == EventRoute.DISCARD) {
+			discarded.increment();
+		}
+		return route;
+	}
+}
@@ -0,0 +1,46 @@
+package com.parkit.parkingsystem.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event of one vehicle entry or exit through the
+ * {@link com.parkit.parkingsystem.service.ParkingService}, from the request to
+ * the result. The statements and connection borrows of the transaction are
+ * recorded as {@link StatementEvent}s and {@link ConnectionBorrowEvent}s on the
+ * same thread within its duration.
+ */
+@Name("parkit.GateTransaction")
+@Label("Gate Transaction")
+@Category({ "Parking System", "Gate" })
+@Description("A vehicle entry or exit")
+@StackTrace(false)
+public class GateTransactionEvent extends jdk.jfr.Event {
+
+	@Label("Operation")
+	public String operation;
+
+	@Label("Vehicle Registration Number")
+	public String vehicleRegNumber;
+
+	@Label("Parking Type")
+	public String parkingType;
+
+	@Label("Parking Number")
+	public int parkingNumber;
+
+	@Label("Ticket Id")
+	public int ticketId;
+
+	@Label("Status")
+	public String status;
+
+	@Label("Fare Calculation")
+	@Description("Time spent calculating the fare of an exit")
+	@Timespan(Timespan.NANOSECONDS)
+	public long fareCalculation;
+}
@@ -0,0 +1,31 @@
+package com.parkit.parkingsystem.metrics;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Value read from its source each time the metrics are exported, such as the
+ * number of active pooled connections.
+ */
+public final class Gauge extends Metric {
+
+	private final DoubleSupplier value;
+
+	Gauge(String name, String help, String labels, DoubleSupplier value) {
+		super(name, help, labels);
+		this.value = value;
+	}
+
+	public double getValue() {
+		return value.getAsDouble();
+	}
+
+	@Override
+	String getType() {
+		return "gauge";
+	}
+
+	@Override
+	void writeSamples(StringBuilder out) {
+		writeSample(out, getName(), getLabels(), null, getValue());
+	}
+}
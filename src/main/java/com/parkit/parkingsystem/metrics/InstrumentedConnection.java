@@ -0,0 +1,239 @@
+package com.parkit.parkingsystem.metrics;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Times the statements run on a connection, per query, in the
+ * {@code parkit_db_query} timers of the default {@link MetricsRegistry}.
+ * <p>
+ * A query is named after its {@link DBConstants} field, such as
+ * {@code GET_OPEN_TICKET}; any other SQL is counted as {@code other}. Each
+ * {@code execute*} call of a statement is timed, a call throwing an exception
+ * being counted as failed, and so are {@code commit} and {@code rollback}.
+ * Each of these calls is also recorded as a JFR {@link StatementEvent} while a
+ * flight recording is running. Like the pooled connections, the wrappers are
+ * dynamic proxies; a result set is only wrapped while its event is recorded.
+ * </p>
+ */
+public final class InstrumentedConnection {
+
+	private static final String OTHER = "other";
+
+	private static final Map<String, String> queryNames = loadQueryNames();
+	private static final Map<String, Timer> queryTimers = new ConcurrentHashMap<>();
+
+	private InstrumentedConnection() {
+	}
+
+	public static Connection wrap(Connection connection) {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new ConnectionHandler(connection));
+	}
+
+	/**
+	 * @return the {@link DBConstants} field holding that SQL, or {@code other}
+	 */
+	public static String queryName(String sql) {
+		return sql == null ? OTHER : queryNames.getOrDefault(sql, OTHER);
+	}
+
+	static Timer queryTimer(String queryName) {
+		Timer timer = queryTimers.get(queryName);
+		if (timer == null) {
+			timer = queryTimers.computeIfAbsent(queryName, name -> MetricsRegistry.getDefault()
+					.timer("parkit_db_query", "Database statements by query", "query", name));
+		}
+		return timer;
+	}
+
+	private static Map<String, String> loadQueryNames() {
+		Map<String, String> names = new HashMap<>();
+		for (Field field : DBConstants.class.getFields()) {
+			if (Modifier.isStatic(field.getModifiers()) && field.getType() == String.class) {
+				try {
+					names.put((String) field.get(null), field.getName());
+				} catch (IllegalAccessException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}
+		return names;
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Runs a statement call, timing it and recording its {@link StatementEvent}.
+	 *
+	 * @param handler the statement, to which the event of a query is handed
+	 *                until its result set is closed; null for a commit or
+	 *                rollback
+	 */
+	private static Object execute(String queryName, StatementHandler handler, Object target, Method method,
+			Object[] args) throws Throwable {
+		Timer timer = queryTimer(queryName);
+		StatementEvent event = new StatementEvent();
+		event.begin();
+		long start = System.nanoTime();
+		Object result;
+		try {
+			result = invoke(target, method, args);
+		} catch (Throwable e) {
+			timer.stop(start, true);
+			event.end();
+			if (event.shouldCommit()) {
+				event.query = queryName;
+				event.failed = true;
+				event.commit();
+			}
+			throw e;
+		}
+		timer.stop(start, false);
+		event.end();
+		if (!event.shouldCommit()) {
+			return result;
+		}
+		event.query = queryName;
+		if (result instanceof ResultSet && handler != null) {
+			return handler.holdUntilClosed(event, (ResultSet) result);
+		}
+		if (result instanceof Integer || result instanceof Long) {
+			event.rowCount = ((Number) result).longValue();
+		} else if (result instanceof int[]) {
+			event.rowCount = 0;
+			for (int count : (int[]) result) {
+				event.rowCount += Math.max(0, count);
+			}
+		}
+		event.commit();
+		return result;
+	}
+
+	private static final class ConnectionHandler implements InvocationHandler {
+		private final Connection connection;
+
+		private ConnectionHandler(Connection connection) {
+			this.connection = connection;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "prepareStatement":
+				PreparedStatement ps = (PreparedStatement) InstrumentedConnection.invoke(connection, method, args);
+				return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+						new Class<?>[] { PreparedStatement.class },
+						new StatementHandler(ps, queryName((String) args[0])));
+			case "createStatement":
+				Statement statement = (Statement) InstrumentedConnection.invoke(connection, method, args);
+				return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { Statement.class },
+						new StatementHandler(statement, null));
+			case "commit":
+			case "rollback":
+				return execute(method.getName(), null, connection, method, args);
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			default:
+				return InstrumentedConnection.invoke(connection, method, args);
+			}
+		}
+	}
+
+	private static final class StatementHandler implements InvocationHandler {
+		private final Statement statement;
+		// null for a plain statement, whose SQL is only known at execution
+		private final String queryName;
+		// the event of the last query, committed once its rows are read
+		private StatementEvent openQuery;
+		private long openQueryRows;
+
+		private StatementHandler(Statement statement, String queryName) {
+			this.statement = statement;
+			this.queryName = queryName;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.startsWith("execute")) {
+				// running the statement again closes the result set of the last query
+				commitOpenQuery();
+				String query = queryName;
+				if (query == null) {
+					boolean hasSql = args != null && args.length > 0 && args[0] instanceof String;
+					query = hasSql ? queryName((String) args[0]) : OTHER;
+				}
+				return execute(query, this, statement, method, args);
+			}
+			switch (name) {
+			case "close":
+				commitOpenQuery();
+				return InstrumentedConnection.invoke(statement, method, args);
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			default:
+				return InstrumentedConnection.invoke(statement, method, args);
+			}
+		}
+
+		private ResultSet holdUntilClosed(StatementEvent event, ResultSet resultSet) {
+			openQuery = event;
+			openQueryRows = 0;
+			return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+					new Class<?>[] { ResultSet.class }, (proxy, method, args) -> {
+						switch (method.getName()) {
+						case "next":
+							Object hasRow = InstrumentedConnection.invoke(resultSet, method, args);
+							if ((Boolean) hasRow && openQuery == event) {
+								openQueryRows++;
+							}
+							return hasRow;
+						case "close":
+							if (openQuery == event) {
+								commitOpenQuery();
+							}
+							return InstrumentedConnection.invoke(resultSet, method, args);
+						case "equals":
+							return proxy == args[0];
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						default:
+							return InstrumentedConnection.invoke(resultSet, method, args);
+						}
+					});
+		}
+
+		private void commitOpenQuery() {
+			StatementEvent event = openQuery;
+			if (event != null) {
+				openQuery = null;
+				event.rowCount = openQueryRows;
+				event.commit();
+			}
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package com.parkit.parkingsystem.metrics;
+
+/**
+ * One time series of a {@link MetricsRegistry}: a metric name and a set of
+ * labels. Series sharing a name form a family, exported together.
+ */
+public abstract class Metric {
+
+	private final String name;
+	private final String help;
+	private final String labels;
+
+	Metric(String name, String help, String labels) {
+		this.name = name;
+		this.help = help;
+		this.labels = labels;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getHelp() {
+		return help;
+	}
+
+	/**
+	 * @return the labels in Prometheus syntax without the braces, such as
+	 *         {@code query="GET_TICKET"}, empty if the series has none
+	 */
+	public String getLabels() {
+		return labels;
+	}
+
+	/**
+	 * @return the Prometheus type of the family: counter, gauge or summary
+	 */
+	abstract String getType();
+
+	/**
+	 * Appends the samples of this series in the Prometheus text format.
+	 */
+	abstract void writeSamples(StringBuilder out);
+
+	static void writeSample(StringBuilder out, String name, String labels, String extraLabel, double value) {
+		out.append(name);
+		if (!labels.isEmpty() || extraLabel != null) {
+			out.append('{').append(labels);
+			if (extraLabel != null) {
+				if (!labels.isEmpty()) {
+					out.append(',');
+				}
+				out.append(extraLabel);
+			}
+			out.append('}');
+		}
+		out.append(' ');
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			out.append((long) value);
+		} else if (Double.isNaN(value)) {
+			out.append("NaN");
+		} else {
+			out.append(value);
+		}
+		out.append('\n');
+	}
+}
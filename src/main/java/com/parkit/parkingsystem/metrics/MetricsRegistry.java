@@ -0,0 +1,106 @@
+package com.parkit.parkingsystem.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Timers, counters and gauges of the application, exported in the Prometheus
+ * text format by {@link PrometheusExporter}.
+ * <p>
+ * A series is identified by its name and labels, given as name/value pairs:
+ * asking twice for the same series returns the same instance, so callers on a
+ * hot path should keep it rather than look it up on each call. The
+ * {@link #getDefault() default registry} is shared by the whole process, like
+ * the connection pools.
+ * </p>
+ */
+public class MetricsRegistry {
+
+	private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+	private final Map<String, Metric> metrics = new ConcurrentHashMap<>();
+
+	public static MetricsRegistry getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * @param name       the base name of the series: the latencies are exported
+	 *                   as {@code <name>_seconds} and the failures as
+	 *                   {@code <name>_errors_total}
+	 * @param labelPairs label names and values, alternating
+	 */
+	public Timer timer(String name, String help, String... labelPairs) {
+		String labels = labels(labelPairs);
+		Counter errors = counter(name + "_errors_total", "Failed calls: " + help, labelPairs);
+		return register(new Timer(name + "_seconds", help, labels, errors), Timer.class);
+	}
+
+	public Counter counter(String name, String help, String... labelPairs) {
+		return register(new Counter(name, help, labels(labelPairs)), Counter.class);
+	}
+
+	/**
+	 * Registers a gauge reading its value from {@code value} at each export,
+	 * replacing any gauge of the same series.
+	 */
+	public Gauge gauge(String name, String help, DoubleSupplier value, String... labelPairs) {
+		Gauge gauge = new Gauge(name, help, labels(labelPairs), value);
+		Metric previous = metrics.put(key(gauge), gauge);
+		if (previous != null && !(previous instanceof Gauge)) {
+			metrics.put(key(previous), previous);
+			throw new IllegalArgumentException(key(gauge) + " is already registered as a " + previous.getType());
+		}
+		return gauge;
+	}
+
+	/**
+	 * @return every series, grouped by name then sorted by labels
+	 */
+	public List<Metric> getMetrics() {
+		return new ArrayList<>(new TreeMap<>(metrics).values());
+	}
+
+	private <M extends Metric> M register(M metric, Class<M> type) {
+		Metric registered = metrics.computeIfAbsent(key(metric), k -> metric);
+		if (!type.isInstance(registered)) {
+			throw new IllegalArgumentException(key(metric) + " is already registered as a " + registered.getType());
+		}
+		return type.cast(registered);
+	}
+
+	private static String key(Metric metric) {
+		// a space sorts before '_', so the series of a family stay together
+		return metric.getName() + " " + metric.getLabels();
+	}
+
+	private static String labels(String... labelPairs) {
+		if (labelPairs.length % 2 != 0) {
+			throw new IllegalArgumentException("Labels must be given as name/value pairs");
+		}
+		StringBuilder labels = new StringBuilder();
+		for (int i = 0; i < labelPairs.length; i += 2) {
+			if (i > 0) {
+				labels.append(',');
+			}
+			labels.append(labelPairs[i]).append("=\"");
+			String value = labelPairs[i + 1];
+			for (int c = 0; c < value.length(); c++) {
+				char ch = value.charAt(c);
+				if (ch == '\\' || ch == '"') {
+					labels.append('\\').append(ch);
+				} else if (ch == '\n') {
+					labels.append("\\n");
+				} else {
+					labels.append(ch);
+				}
+			}
+			labels.append('"');
+		}
+		return labels.toString();
+	}
+}
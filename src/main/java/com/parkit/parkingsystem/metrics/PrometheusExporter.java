@@ -0,0 +1,91 @@
+package com.parkit.parkingsystem.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a {@link MetricsRegistry} in the Prometheus text exposition format,
+ * served by the gate server on {@code GET /metrics} or, with
+ * {@link #startFileExport(Path, long)}, written periodically to a file for the
+ * node exporter's textfile collector.
+ */
+public class PrometheusExporter implements AutoCloseable {
+
+	private static final Logger logger = LogManager.getLogger("PrometheusExporter");
+
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final MetricsRegistry registry;
+	private ScheduledExecutorService scheduler;
+
+	public PrometheusExporter(MetricsRegistry registry) {
+		this.registry = registry;
+	}
+
+	/**
+	 * @return every series of the registry, one family after the other, each
+	 *         with its {@code HELP} and {@code TYPE} lines
+	 */
+	public String scrape() {
+		StringBuilder out = new StringBuilder(8192);
+		String family = null;
+		for (Metric metric : registry.getMetrics()) {
+			if (!metric.getName().equals(family)) {
+				family = metric.getName();
+				out.append("# HELP ").append(family).append(' ')
+						.append(metric.getHelp().replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+				out.append("# TYPE ").append(family).append(' ').append(metric.getType()).append('\n');
+			}
+			metric.writeSamples(out);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Writes the metrics to {@code file}, through a temporary file renamed over
+	 * it so that a reader never sees a partial export.
+	 */
+	public void writeTo(Path file) throws IOException {
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		Files.write(temporary, scrape().getBytes(StandardCharsets.UTF_8));
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Writes the metrics to {@code file} every {@code intervalMillis}, until
+	 * this exporter is closed.
+	 */
+	public synchronized void startFileExport(Path file, long intervalMillis) {
+		if (scheduler != null) {
+			throw new IllegalStateException("The file export is already started");
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "metrics-file-export");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				writeTo(file);
+			} catch (IOException | RuntimeException ex) {
+				logger.error("Unable to write the metrics to {}", file, ex);
+			}
+		}, 0, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public synchronized void close() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+}
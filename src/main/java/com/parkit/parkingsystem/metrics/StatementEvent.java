@@ -0,0 +1,36 @@
+package com.parkit.parkingsystem.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event of one execution of a statement, or of a commit or rollback,
+ * recorded by {@link InstrumentedConnection}.
+ * <p>
+ * Its duration is that of the {@code execute*} call. The row count is the
+ * number of rows changed by an update or batch, or, for a query, the number
+ * of rows read before its result set was closed: the event of a query is
+ * committed when its result set or statement is closed.
+ * </p>
+ */
+@Name("parkit.Statement")
+@Label("Database Statement")
+@Category({ "Parking System", "Database" })
+@Description("A statement run on a pooled connection")
+@StackTrace(false)
+public class StatementEvent extends jdk.jfr.Event {
+
+	@Label("Query")
+	@Description("The DBConstants field of the SQL, or other")
+	public String query;
+
+	@Label("Row Count")
+	@Description("Rows changed or read, -1 if unknown")
+	public long rowCount = -1;
+
+	@Label("Failed")
+	public boolean failed;
+}
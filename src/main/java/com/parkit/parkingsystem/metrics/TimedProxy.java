@@ -0,0 +1,69 @@
+package com.parkit.parkingsystem.metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Times every call made through an interface, per method, in the
+ * {@code parkit_dao_call} timers.
+ * <p>
+ * The DAOs log and swallow the errors of the database, returning an error
+ * value instead, so a call is counted as failed when it throws or when a timed
+ * call it made on the same thread failed, such as a statement or a connection
+ * borrow.
+ * </p>
+ */
+public final class TimedProxy implements InvocationHandler {
+
+	private final Object target;
+	private final Map<Method, Timer> timers = new HashMap<>();
+
+	private TimedProxy(Object target, Class<?> type, MetricsRegistry registry) {
+		this.target = target;
+		String component = target.getClass().getSimpleName();
+		for (Method method : type.getMethods()) {
+			timers.put(method, registry.timer("parkit_dao_call", "Storage calls by component and method",
+					"component", component, "method", method.getName()));
+		}
+	}
+
+	/**
+	 * @return a proxy of {@code target} timing each call of the methods of
+	 *         {@code type}, labelled with the class of the target
+	 */
+	public static <T> T wrap(Class<T> type, T target, MetricsRegistry registry) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+				new TimedProxy(target, type, registry)));
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		Timer timer = timers.get(method);
+		if (timer == null) {
+			// equals, hashCode and toString of Object
+			return invokeTarget(method, args);
+		}
+		long failuresBefore = Timer.failuresOnThisThread();
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			Object result = invokeTarget(method, args);
+			failed = Timer.failuresOnThisThread() != failuresBefore;
+			return result;
+		} finally {
+			timer.stop(start, failed);
+		}
+	}
+
+	private Object invokeTarget(Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package com.parkit.parkingsystem.metrics;
+
+import com.parkit.parkingsystem.util.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and failures of one kind of call, exported as a Prometheus summary
+ * in seconds, with its p50, p90 and p99, and a counter of the failed calls.
+ * <p>
+ * The count and sum cover every call since startup. The quantiles cover the
+ * calls of the last one to two windows of {@code parkit.metrics.windowMillis}
+ * (one minute by default): the values are recorded in a
+ * {@link LatencyHistogram} replaced at the end of each window, so recording is
+ * lock-free and allocates nothing.
+ * </p>
+ * <p>
+ * A failed call is also counted against the calling thread, which lets an
+ * enclosing call find out that one of the calls it made failed, see
+ * {@link #failuresOnThisThread()}.
+ * </p>
+ */
+public final class Timer extends Metric {
+
+	static final long WINDOW_NANOS = Long.getLong("parkit.metrics.windowMillis", 60000L) * 1_000_000L;
+
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+
+	private static final ThreadLocal<long[]> threadFailures = ThreadLocal.withInitial(() -> new long[1]);
+
+	private final Counter errors;
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private volatile LatencyHistogram current = new LatencyHistogram();
+	private volatile LatencyHistogram previous = new LatencyHistogram();
+	private volatile long windowStart = System.nanoTime();
+
+	Timer(String name, String help, String labels, Counter errors) {
+		super(name, help, labels);
+		this.errors = errors;
+	}
+
+	/**
+	 * Records a successful call started at {@code startNanos}, as given by
+	 * {@link System#nanoTime()}.
+	 */
+	public void stop(long startNanos) {
+		record(System.nanoTime() - startNanos, false);
+	}
+
+	/**
+	 * Records a call started at {@code startNanos}, as given by
+	 * {@link System#nanoTime()}.
+	 */
+	public void stop(long startNanos, boolean failed) {
+		record(System.nanoTime() - startNanos, failed);
+	}
+
+	public void record(long nanos, boolean failed) {
+		long now = System.nanoTime();
+		if (now - windowStart >= WINDOW_NANOS) {
+			rotate(now);
+		}
+		current.record(nanos);
+		count.increment();
+		totalNanos.add(nanos);
+		if (failed) {
+			errors.increment();
+			threadFailures.get()[0]++;
+		}
+	}
+
+	private synchronized void rotate(long now) {
+		if (now - windowStart >= WINDOW_NANOS) {
+			previous = current;
+			current = new LatencyHistogram();
+			windowStart = now;
+		}
+	}
+
+	/**
+	 * @return the number of failed calls recorded by any timer on the calling
+	 *         thread since it started, to be compared before and after a call
+	 */
+	static long failuresOnThisThread() {
+		return threadFailures.get()[0];
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getErrorCount() {
+		return errors.getCount();
+	}
+
+	/**
+	 * @param quantile between 0 and 1
+	 * @return the latency at that quantile over the last one to two windows, in
+	 *         nanoseconds, 0 if no call was recorded
+	 */
+	public long getNanosAtQuantile(double quantile) {
+		LatencyHistogram recent = new LatencyHistogram();
+		recent.add(previous);
+		recent.add(current);
+		return recent.getValueAtPercentile(quantile * 100.0);
+	}
+
+	@Override
+	String getType() {
+		return "summary";
+	}
+
+	@Override
+	void writeSamples(StringBuilder out) {
+		LatencyHistogram recent = new LatencyHistogram();
+		recent.add(previous);
+		recent.add(current);
+		for (double quantile : QUANTILES) {
+			writeSample(out, getName(), getLabels(), "quantile=\"" + quantile + "\"",
+					recent.getValueAtPercentile(quantile * 100.0) / 1e9);
+		}
+		writeSample(out, getName() + "_sum", getLabels(), null, totalNanos.sum() / 1e9);
+		writeSample(out, getName() + "_count", getLabels(), null, count.sum());
+	}
+}
@@ -0,0 +1,82 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.time.Instant;
+
+/**
+ * Outcome of a vehicle entry, as returned by
+ * {@link com.parkit.parkingsystem.service.ParkingService#enter(String, ParkingType, Instant)}.
+ */
+public class EntryResult {
+
+	public enum Status {
+		/** A spot was allotted and the ticket saved. */
+		OK,
+		/** Every spot of the requested type is taken. */
+		NO_SPOT_AVAILABLE,
+		/** The registration number or the parking type is missing. */
+		INVALID_REQUEST,
+		/** The entry could not be recorded, nothing was written. */
+		ERROR
+	}
+
+	private final Status status;
+	private final String vehicleRegNumber;
+	private final ParkingType parkingType;
+	private final int parkingNumber;
+	private final int ticketId;
+	private final Instant inTime;
+	private final boolean recurringUser;
+
+	public EntryResult(Status status, String vehicleRegNumber, ParkingType parkingType, int parkingNumber,
+			int ticketId, Instant inTime, boolean recurringUser) {
+		this.status = status;
+		this.vehicleRegNumber = vehicleRegNumber;
+		this.parkingType = parkingType;
+		this.parkingNumber = parkingNumber;
+		this.ticketId = ticketId;
+		this.inTime = inTime;
+		this.recurringUser = recurringUser;
+	}
+
+	public static EntryResult failed(Status status, String vehicleRegNumber, ParkingType parkingType) {
+		return new EntryResult(status, vehicleRegNumber, parkingType, 0, 0, null, false);
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public boolean isSuccess() {
+		return status == Status.OK;
+	}
+
+	public String getVehicleRegNumber() {
+		return vehicleRegNumber;
+	}
+
+	public ParkingType getParkingType() {
+		return parkingType;
+	}
+
+	public int getParkingNumber() {
+		return parkingNumber;
+	}
+
+	public int getTicketId() {
+		return ticketId;
+	}
+
+	public Instant getInTime() {
+		return inTime;
+	}
+
+	/**
+	 * @return {@code true} if the vehicle has parked before, and so will get the
+	 *         loyalty discount on exit
+	 */
+	public boolean isRecurringUser() {
+		return recurringUser;
+	}
+}
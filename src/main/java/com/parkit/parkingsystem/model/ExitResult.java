@@ -0,0 +1,85 @@
+package com.parkit.parkingsystem.model;
+
+import java.time.Instant;
+
+/**
+ * Outcome of a vehicle exit, as returned by
+ * {@link com.parkit.parkingsystem.service.ParkingService#exit(String, Instant)}.
+ */
+public class ExitResult {
+
+	public enum Status {
+		/** The ticket was closed and its spot freed. */
+		OK,
+		/** The vehicle has no open ticket. */
+		NOT_PARKED,
+		/** The registration number is missing or the exit time is before the entry time. */
+		INVALID_REQUEST,
+		/** The exit could not be recorded, nothing was written. */
+		ERROR
+	}
+
+	private final Status status;
+	private final String vehicleRegNumber;
+	private final int parkingNumber;
+	private final int ticketId;
+	private final Instant inTime;
+	private final Instant outTime;
+	private final double price;
+	private final boolean discounted;
+
+	public ExitResult(Status status, String vehicleRegNumber, int parkingNumber, int ticketId, Instant inTime,
+			Instant outTime, double price, boolean discounted) {
+		this.status = status;
+		this.vehicleRegNumber = vehicleRegNumber;
+		this.parkingNumber = parkingNumber;
+		this.ticketId = ticketId;
+		this.inTime = inTime;
+		this.outTime = outTime;
+		this.price = price;
+		this.discounted = discounted;
+	}
+
+	public static ExitResult failed(Status status, String vehicleRegNumber) {
+		return new ExitResult(status, vehicleRegNumber, 0, 0, null, null, 0, false);
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public boolean isSuccess() {
+		return status == Status.OK;
+	}
+
+	public String getVehicleRegNumber() {
+		return vehicleRegNumber;
+	}
+
+	public int getParkingNumber() {
+		return parkingNumber;
+	}
+
+	public int getTicketId() {
+		return ticketId;
+	}
+
+	public Instant getInTime() {
+		return inTime;
+	}
+
+	public Instant getOutTime() {
+		return outTime;
+	}
+
+	public double getPrice() {
+		return price;
+	}
+
+	/**
+	 * @return {@code true} if the loyalty discount was applied to the price
+	 */
+	public boolean isDiscounted() {
+		return discounted;
+	}
+}
@@ -0,0 +1,85 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.Date;
+
+/**
+ * Activity of one parking type over one hour, as read from the
+ * {@code ticket_rollup_hourly} table.
+ */
+public class HourlyRollup {
+
+	private final Date hourStart;
+	private final ParkingType parkingType;
+	private final int entries;
+	private final int exits;
+	private final double revenue;
+	private final long totalDurationMillis;
+	private final int peakOccupancy;
+
+	public HourlyRollup(Date hourStart, ParkingType parkingType, int entries, int exits, double revenue,
+			long totalDurationMillis, int peakOccupancy) {
+		this.hourStart = hourStart;
+		this.parkingType = parkingType;
+		this.entries = entries;
+		this.exits = exits;
+		this.revenue = revenue;
+		this.totalDurationMillis = totalDurationMillis;
+		this.peakOccupancy = peakOccupancy;
+	}
+
+	public Date getHourStart() {
+		return hourStart;
+	}
+
+	public ParkingType getParkingType() {
+		return parkingType;
+	}
+
+	/**
+	 * @return the vehicles entered during the hour
+	 */
+	public int getEntries() {
+		return entries;
+	}
+
+	/**
+	 * @return the vehicles exited during the hour
+	 */
+	public int getExits() {
+		return exits;
+	}
+
+	/**
+	 * @return the sum of the prices of the tickets closed during the hour
+	 */
+	public double getRevenue() {
+		return revenue;
+	}
+
+	public long getTotalDurationMillis() {
+		return totalDurationMillis;
+	}
+
+	/**
+	 * @return the average stay of the vehicles exited during the hour, 0 if none
+	 */
+	public long getAverageDurationMillis() {
+		return exits == 0 ? 0 : totalDurationMillis / exits;
+	}
+
+	/**
+	 * @return the most spots of the type taken at once during the hour, as seen at
+	 *         its entries and exits
+	 */
+	public int getPeakOccupancy() {
+		return peakOccupancy;
+	}
+
+	@Override
+	public String toString() {
+		return hourStart + " " + parkingType + ": " + entries + " in, " + exits + " out, revenue " + revenue
+				+ ", average stay " + getAverageDurationMillis() / 60000 + " min, peak " + peakOccupancy;
+	}
+}
@@ -0,0 +1,291 @@
+package com.parkit.parkingsystem.server;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.PrometheusExporter;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.util.Unbox;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP/JSON front end of the {@link ParkingService} for the barrier
+ * controllers, built on the JDK's {@code com.sun.net.httpserver}.
+ * <p>
+ * Every request runs on its own virtual thread, so thousands of gate calls can
+ * wait at the same time without as many platform threads. The calls reaching
+ * the database are bounded by a semaphore sized like the connection pool: a
+ * call that cannot get a permit in time is answered {@code 503} instead of
+ * queuing on the pool. A request body larger than
+ * {@code parkit.server.maxBodyBytes} (8 KB by default) is answered {@code 413}
+ * without being read further, and a known endpoint called with another method
+ * {@code 405}.
+ * </p>
+ * <table>
+ * <caption>Endpoints</caption>
+ * <tr><td>POST /entries</td><td>{"vehicleRegNumber":"AB123","parkingType":"CAR","at":"2024-01-01T10:00:00Z"}, at is optional</td></tr>
+ * <tr><td>POST /exits</td><td>{"vehicleRegNumber":"AB123","at":"..."}, at is optional</td></tr>
+ * <tr><td>GET /tickets/{plate}</td><td>open ticket of the vehicle</td></tr>
+ * <tr><td>GET /occupancy</td><td>free and occupied spots per parking type, from the live counters</td></tr>
+ * <tr><td>GET /metrics</td><td>the default metrics registry, in the Prometheus text format</td></tr>
+ * <tr><td>GET /health</td><td>liveness</td></tr>
+ * </table>
+ */
+public class GateHttpServer {
+
+	private static final Logger logger = LogManager.getLogger("GateHttpServer");
+
+	private static final long DB_PERMIT_TIMEOUT_MILLIS = Long.getLong("parkit.server.dbPermitTimeoutMillis", 2000L);
+	// a gate request is a few fields: a larger body is refused with 413 before it is parsed
+	private static final int MAX_BODY_BYTES = Integer.getInteger("parkit.server.maxBodyBytes", 8192);
+
+	private final ParkingService parkingService;
+	private final HttpServer httpServer;
+	private final ExecutorService executor;
+	private final Semaphore dbPermits;
+	private final PrometheusExporter metricsExporter = new PrometheusExporter(MetricsRegistry.getDefault());
+
+	public GateHttpServer(ParkingService parkingService, InetSocketAddress address, int maxConcurrentDbCalls)
+			throws IOException {
+		this.parkingService = parkingService;
+		this.dbPermits = new Semaphore(maxConcurrentDbCalls, true);
+		this.executor = Executors.newVirtualThreadPerTaskExecutor();
+		this.httpServer = HttpServer.create(address, 1024);
+		httpServer.setExecutor(executor);
+		httpServer.createContext("/", this::handle);
+	}
+
+	public void start() {
+		httpServer.start();
+		logger.info("Gate server listening on port {}", Unbox.box(getPort()));
+	}
+
+	/**
+	 * Stops accepting requests, waits up to {@code delaySeconds} for the running
+	 * ones to complete, then stops the server.
+	 */
+	public void stop(int delaySeconds) {
+		httpServer.stop(delaySeconds);
+		executor.shutdown();
+	}
+
+	public int getPort() {
+		return httpServer.getAddress().getPort();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		Response response;
+		try {
+			response = route(exchange.getRequestMethod(), exchange.getRequestURI().getRawPath(), exchange);
+		} catch (BodyTooLargeException e) {
+			response = error(413, "Request body larger than " + MAX_BODY_BYTES + " bytes");
+		} catch (IllegalArgumentException e) {
+			response = error(400, e.getMessage());
+		} catch (Exception e) {
+			logger.error("Error handling {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+			response = error(500, "Internal error");
+		}
+		byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", response.contentType);
+		exchange.sendResponseHeaders(response.status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private Response route(String method, String path, HttpExchange exchange) throws Exception {
+		switch (path) {
+		case "/entries":
+			return "POST".equals(method) ? enter(readBody(exchange)) : methodNotAllowed(method, path);
+		case "/exits":
+			return "POST".equals(method) ? exit(readBody(exchange)) : methodNotAllowed(method, path);
+		case "/occupancy":
+			return "GET".equals(method) ? occupancy() : methodNotAllowed(method, path);
+		case "/metrics":
+			return "GET".equals(method) ? new Response(200, metricsExporter.scrape(), PrometheusExporter.CONTENT_TYPE)
+					: methodNotAllowed(method, path);
+		case "/health":
+			return "GET".equals(method) ? new Response(200, new Json().field("status", "UP").toString())
+					: methodNotAllowed(method, path);
+		default:
+			if (path.startsWith("/tickets/")) {
+				return "GET".equals(method)
+						? ticket(URLDecoder.decode(path.substring("/tickets/".length()), StandardCharsets.UTF_8))
+						: methodNotAllowed(method, path);
+			}
+			return error(404, "No such endpoint: " + method + " " + path);
+		}
+	}
+
+	private Response enter(Map<String, String> request) throws InterruptedException {
+		String vehicleRegNumber = request.get("vehicleRegNumber");
+		String parkingType = request.get("parkingType");
+		if (parkingType == null) {
+			throw new IllegalArgumentException("parkingType is required");
+		}
+		ParkingType type = ParkingType.valueOf(parkingType.toUpperCase(Locale.ROOT));
+		Instant at = parseInstant(request.get("at"));
+		if (!dbPermits.tryAcquire(DB_PERMIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+			return error(503, "Too many concurrent requests");
+		}
+		EntryResult result;
+		try {
+			result = parkingService.enter(vehicleRegNumber, type, at);
+		} finally {
+			dbPermits.release();
+		}
+		Json json = new Json().field("status", result.getStatus().name())
+				.field("vehicleRegNumber", result.getVehicleRegNumber())
+				.field("parkingType", result.getParkingType().name());
+		if (result.isSuccess()) {
+			json.field("parkingNumber", result.getParkingNumber()).field("ticketId", result.getTicketId())
+					.field("inTime", result.getInTime().toString())
+					.field("recurringUser", result.isRecurringUser());
+		}
+		switch (result.getStatus()) {
+		case OK:
+			return new Response(201, json.toString());
+		case NO_SPOT_AVAILABLE:
+			return new Response(409, json.toString());
+		case INVALID_REQUEST:
+			return new Response(400, json.toString());
+		default:
+			return new Response(500, json.toString());
+		}
+	}
+
+	private Response exit(Map<String, String> request) throws InterruptedException {
+		String vehicleRegNumber = request.get("vehicleRegNumber");
+		Instant at = parseInstant(request.get("at"));
+		if (!dbPermits.tryAcquire(DB_PERMIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+			return error(503, "Too many concurrent requests");
+		}
+		ExitResult result;
+		try {
+			result = parkingService.exit(vehicleRegNumber, at);
+		} finally {
+			dbPermits.release();
+		}
+		Json json = new Json().field("status", result.getStatus().name()).field("vehicleRegNumber",
+				result.getVehicleRegNumber());
+		if (result.isSuccess()) {
+			json.field("parkingNumber", result.getParkingNumber()).field("ticketId", result.getTicketId())
+					.field("inTime", result.getInTime().toString()).field("outTime", result.getOutTime().toString())
+					.field("price", result.getPrice()).field("discounted", result.isDiscounted());
+		}
+		switch (result.getStatus()) {
+		case OK:
+			return new Response(200, json.toString());
+		case NOT_PARKED:
+			return new Response(404, json.toString());
+		case INVALID_REQUEST:
+			return new Response(400, json.toString());
+		default:
+			return new Response(500, json.toString());
+		}
+	}
+
+	private Response ticket(String vehicleRegNumber) throws InterruptedException {
+		if (!dbPermits.tryAcquire(DB_PERMIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+			return error(503, "Too many concurrent requests");
+		}
+		Ticket ticket;
+		try {
+			ticket = parkingService.ticketDAO.getActiveTicket(vehicleRegNumber);
+		} finally {
+			dbPermits.release();
+		}
+		if (ticket == null) {
+			return error(404, "No parked vehicle with registration number " + vehicleRegNumber);
+		}
+		return new Response(200, new Json().field("ticketId", ticket.getId())
+				.field("vehicleRegNumber", ticket.getVehicleRegNumber())
+				.field("parkingNumber", ticket.getParkingSpot().getId())
+				.field("parkingType", ticket.getParkingSpot().getParkingType().name())
+				.field("inTime", ticket.getInTime().toInstant().toString()).toString());
+	}
+
+	private Response occupancy() {
+		StringBuilder types = new StringBuilder("[");
+		for (ParkingType parkingType : ParkingType.values()) {
+			int free = parkingService.occupancyCounters.getFree(parkingType);
+			int total = parkingService.occupancyCounters.getSpotCount(parkingType);
+			if (types.length() > 1) {
+				types.append(',');
+			}
+			types.append(new Json().field("parkingType", parkingType.name()).field("total", total)
+					.field("free", free).field("occupied", parkingService.occupancyCounters.getOccupied(parkingType)));
+		}
+		types.append(']');
+		return new Response(200, new Json().raw("occupancy", types.toString()).toString());
+	}
+
+	private static Map<String, String> readBody(HttpExchange exchange) throws IOException {
+		try (InputStream in = exchange.getRequestBody()) {
+			byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+			if (body.length > MAX_BODY_BYTES) {
+				throw new BodyTooLargeException();
+			}
+			return Json.parseObject(new String(body, StandardCharsets.UTF_8));
+		}
+	}
+
+	private static Instant parseInstant(String value) {
+		if (value == null) {
+			return Instant.now();
+		}
+		try {
+			return Instant.parse(value);
+		} catch (DateTimeParseException e) {
+			throw new IllegalArgumentException("Invalid time, expected ISO-8601: " + value);
+		}
+	}
+
+	private static Response error(int status, String message) {
+		return new Response(status, new Json().field("error", message).toString());
+	}
+
+	private static Response methodNotAllowed(String method, String path) {
+		return error(405, "Method " + method + " not allowed on " + path);
+	}
+
+	private static final class BodyTooLargeException extends IOException {
+		private static final long serialVersionUID = 1L;
+	}
+
+	private static final class Response {
+		private final int status;
+		private final String body;
+		private final String contentType;
+
+		private Response(int status, String body) {
+			this(status, body, "application/json; charset=utf-8");
+		}
+
+		private Response(int status, String body, String contentType) {
+			this.status = status;
+			this.body = body;
+			this.contentType = contentType;
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package com.parkit.parkingsystem.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Minimal JSON support for the gate server: writes flat objects and reads flat
+ * objects whose values are strings, numbers, booleans or null. Nested objects
+ * and arrays are only supported when writing, as pre-rendered values.
+ */
+class Json {
+
+	private final StringBuilder json = new StringBuilder("{");
+
+	Json field(String name, String value) {
+		name(name);
+		if (value == null) {
+			json.append("null");
+		} else {
+			quote(json, value);
+		}
+		return this;
+	}
+
+	Json field(String name, long value) {
+		name(name);
+		json.append(value);
+		return this;
+	}
+
+	Json field(String name, double value) {
+		name(name);
+		json.append(value);
+		return this;
+	}
+
+	Json field(String name, boolean value) {
+		name(name);
+		json.append(value);
+		return this;
+	}
+
+	/**
+	 * Adds a field whose value is already rendered JSON.
+	 */
+	Json raw(String name, String renderedValue) {
+		name(name);
+		json.append(renderedValue);
+		return this;
+	}
+
+	private void name(String name) {
+		if (json.length() > 1) {
+			json.append(',');
+		}
+		quote(json, name);
+		json.append(':');
+	}
+
+	@Override
+	public String toString() {
+		return json.toString() + "}";
+	}
+
+	static void quote(StringBuilder out, String value) {
+		out.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				out.append("\\\"");
+				break;
+			case '\\':
+				out.append("\\\\");
+				break;
+			case '\n':
+				out.append("\\n");
+				break;
+			case '\r':
+				out.append("\\r");
+				break;
+			case '\t':
+				out.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					out.append(String.format("\\u%04x", (int) c));
+				} else {
+					out.append(c);
+				}
+			}
+		}
+		out.append('"');
+	}
+
+	/**
+	 * Parses a flat JSON object. Values are returned as strings, {@code null}
+	 * for a JSON null.
+	 *
+	 * @throws IllegalArgumentException if the text is not a flat JSON object
+	 */
+	static Map<String, String> parseObject(String text) {
+		Parser parser = new Parser(text);
+		Map<String, String> fields = new LinkedHashMap<>();
+		parser.expect('{');
+		if (!parser.consume('}')) {
+			do {
+				String name = parser.string();
+				parser.expect(':');
+				fields.put(name, parser.value());
+			} while (parser.consume(','));
+			parser.expect('}');
+		}
+		parser.end();
+		return fields;
+	}
+
+	private static final class Parser {
+		private final String text;
+		private int pos;
+
+		private Parser(String text) {
+			this.text = text == null ? "" : text;
+		}
+
+		private void skipWhitespace() {
+			while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+				pos++;
+			}
+		}
+
+		private boolean consume(char c) {
+			skipWhitespace();
+			if (pos < text.length() && text.charAt(pos) == c) {
+				pos++;
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(char c) {
+			if (!consume(c)) {
+				throw new IllegalArgumentException("Expected '" + c + "' at position " + pos);
+			}
+		}
+
+		private void end() {
+			skipWhitespace();
+			if (pos != text.length()) {
+				throw new IllegalArgumentException("Unexpected content at position " + pos);
+			}
+		}
+
+		private String value() {
+			skipWhitespace();
+			if (pos < text.length() && text.charAt(pos) == '"') {
+				return string();
+			}
+			int start = pos;
+			while (pos < text.length() && ",}".indexOf(text.charAt(pos)) < 0
+					&& !Character.isWhitespace(text.charAt(pos))) {
+				pos++;
+			}
+			String literal = text.substring(start, pos);
+			if (literal.isEmpty() || literal.startsWith("{") || literal.startsWith("[")) {
+				throw new IllegalArgumentException("Unsupported value at position " + start);
+			}
+			return "null".equals(literal) ? null : literal;
+		}
+
+		private String string() {
+			expect('"');
+			StringBuilder value = new StringBuilder();
+			while (pos < text.length()) {
+				char c = text.charAt(pos++);
+				if (c == '"') {
+					return value.toString();
+				}
+				if (c == '\\') {
+					if (pos >= text.length()) {
+						break;
+					}
+					char escaped = text.charAt(pos++);
+					switch (escaped) {
+					case 'n':
+						value.append('\n');
+						break;
+					case 'r':
+						value.append('\r');
+						break;
+					case 't':
+						value.append('\t');
+						break;
+					case 'b':
+						value.append('\b');
+						break;
+					case 'f':
+						value.append('\f');
+						break;
+					case 'u':
+						if (pos + 4 > text.length()) {
+							throw new IllegalArgumentException("Truncated unicode escape");
+						}
+						value.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+						pos += 4;
+						break;
+					default:
+						value.append(escaped);
+					}
+				} else {
+					value.append(c);
+				}
+			}
+			throw new IllegalArgumentException("Unterminated string");
+		}
+	}
+}
@@ -1,10 +1,19 @@
 package com.parkit.parkingsystem.service;
 
-import com.parkit.parkingsystem.constants.Fare;
 import com.parkit.parkingsystem.model.Ticket;
 
 public class FareCalculatorService {
 
+	private final TariffEngine tariffEngine;
+
+	public FareCalculatorService() {
+		this(TariffEngine.defaultTariffs());
+	}
+
+	public FareCalculatorService(TariffEngine tariffEngine) {
+		this.tariffEngine = tariffEngine;
+	}
+
 	/**
 	 * Calculates the fare for a given ticket without applying any discount.
 	 * <p>
@@ -22,52 +31,43 @@ public class FareCalculatorService {
 	/**
 	 * Calculates the fare for a given ticket, with optional discount.
 	 * <p>
-	 * The method computes the parking duration in hours and determines the price
-	 * based on the vehicle type and the duration. If the duration is less than or
-	 * equal to 30 minutes, parking is free. If a discount is requested, a 5%
-	 * reduction is applied to the calculated fare.
+	 * The price is quoted by the {@link TariffEngine}: with the default tariffs,
+	 * parking is free up to 30 minutes, longer stays pay the hourly rate of the
+	 * vehicle type for their whole duration, and a discount takes 5% off. The
+	 * price is the exact amount, not rounded to the cent; see
+	 * {@link #calculateFareCents(Ticket, boolean)} for the rounded one.
 	 * </p>
 	 *
 	 * @param ticket the ticket containing entry and exit times, and parking spot details
 	 * @param discount {@code true} to apply a 5% discount to the fare, {@code false} otherwise
 	 * @throws IllegalArgumentException if the out time is null or occurs before the in time,
-	 *                                  or if the parking type is unknown
+	 *                                  or if the parking type has no tariff
 	 */
 	public void calculateFare(Ticket ticket, boolean discount) {
-		if ((ticket.getOutTime() == null) || (ticket.getOutTime().before(ticket.getInTime()))) {
-			throw new IllegalArgumentException("Out time provided is incorrect:" + ticket.getOutTime().toString());
-		}
-
-		// Retrieve timestamps in milliseconds
-		long inTime = ticket.getInTime().getTime();
-		long outTime = ticket.getOutTime().getTime();
-
-		// Calculate the duration in hours
-		double duration = (double) (outTime - inTime) / (1000 * 60 * 60);
+		checkOutTime(ticket);
+		long units = tariffEngine.quoteUnits(ticket.getParkingSpot().getParkingType(), ticket.getInTime().getTime(),
+				ticket.getOutTime().getTime(), discount);
+		ticket.setPrice(TariffEngine.toPrice(units));
+	}
 
-		// Free if parking for 30 minutes or less
-		if (duration <= 0.5) {
-			ticket.setPrice(0);
-		} else {
-			switch (ticket.getParkingSpot().getParkingType()) {
-			case CAR: {
-				ticket.setPrice(duration * Fare.CAR_RATE_PER_HOUR);
-				break;
-			}
-			case BIKE: {
-				ticket.setPrice(duration * Fare.BIKE_RATE_PER_HOUR);
-				break;
-			}
-			default:
-				throw new IllegalArgumentException("Unkown Parking Type");
-			}
+	/**
+	 * Calculates the fare for a given ticket in whole cents, rounded half to even,
+	 * without setting the price of the ticket.
+	 *
+	 * @param ticket the ticket containing entry and exit times, and parking spot details
+	 * @param discount {@code true} to apply the loyalty discount
+	 * @throws IllegalArgumentException if the out time is null or occurs before the in time,
+	 *                                  or if the parking type has no tariff
+	 */
+	public long calculateFareCents(Ticket ticket, boolean discount) {
+		checkOutTime(ticket);
+		return tariffEngine.quote(ticket.getParkingSpot().getParkingType(), ticket.getInTime().getTime(),
+				ticket.getOutTime().getTime(), discount);
+	}
 
-			// Application of the reduction if discount
-			if (discount) {
-				double Fare = 0;
-				Fare += ticket.getPrice();
-				ticket.setPrice(Fare * 0.95);// 5% reduction
-			}
+	private static void checkOutTime(Ticket ticket) {
+		if ((ticket.getOutTime() == null) || (ticket.getOutTime().before(ticket.getInTime()))) {
+			throw new IllegalArgumentException("Out time provided is incorrect:" + ticket.getOutTime().toString());
 		}
 	}
-}
\ No newline at end of file
+}
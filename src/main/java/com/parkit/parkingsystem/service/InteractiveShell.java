@@ -1,7 +1,6 @@
 package com.parkit.parkingsystem.service;
 
-import com.parkit.parkingsystem.dao.ParkingSpotDAO;
-import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.ParkingStorage;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -11,14 +10,17 @@ public class InteractiveShell {
 	private static final Logger logger = LogManager.getLogger("InteractiveShell");
 
 	public static void loadInterface() {
+		loadInterface(ParkingStorage.fromSystemProperties());
+	}
+
+	public static void loadInterface(ParkingStorage parkingStorage) {
 		logger.info("App initialized!!!");
 		System.out.println("Welcome to Parking System!");
 
 		boolean continueApp = true;
 		InputReaderUtil inputReaderUtil = new InputReaderUtil();
-		ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
-		TicketDAO ticketDAO = new TicketDAO();
-		ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+		ParkingService parkingService = new ParkingService(inputReaderUtil, parkingStorage);
+		parkingStorage.warmUp();
 
 		while (continueApp) {
 			loadMenu();
@@ -0,0 +1,77 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.cache.OccupancyCounters;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotStorage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background task correcting the {@link OccupancyCounters} of a
+ * {@link ParkingService} with the spots counted in its storage, every
+ * {@code intervalMillis} ({@code parkit.occupancy.reconcileMillis}, 30 seconds
+ * by default).
+ */
+public class OccupancyReconciler implements AutoCloseable {
+
+	private static final Logger logger = LogManager.getLogger("OccupancyReconciler");
+
+	public static final long DEFAULT_INTERVAL_MILLIS = Long.getLong("parkit.occupancy.reconcileMillis", 30000L);
+
+	private final ParkingSpotStorage parkingSpotStorage;
+	private final OccupancyCounters occupancyCounters;
+	private final long intervalMillis;
+	private final ScheduledExecutorService scheduler;
+	private final int[] spots = new int[ParkingType.values().length];
+	private final int[] occupied = new int[ParkingType.values().length];
+
+	public OccupancyReconciler(ParkingService parkingService, long intervalMillis) {
+		this.parkingSpotStorage = parkingService.parkingSpotDAO;
+		this.occupancyCounters = parkingService.occupancyCounters;
+		this.intervalMillis = intervalMillis;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "occupancy-reconciler");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Loads the counters, then reconciles them periodically.
+	 */
+	public void start() {
+		reconcile();
+		scheduler.scheduleWithFixedDelay(this::reconcile, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return the sum of the corrections made to the counters, or -1 if the
+	 *         spots could not be counted
+	 */
+	public synchronized long reconcile() {
+		try {
+			if (!parkingSpotStorage.countSpots(spots, occupied)) {
+				return -1;
+			}
+			boolean loaded = occupancyCounters.isLoaded();
+			long corrected = occupancyCounters.reconcile(spots, occupied);
+			if (corrected > 0 && loaded) {
+				logger.warn("Occupancy counters were out of sync with the parking spots by {}", corrected);
+			}
+			return corrected;
+		} catch (RuntimeException ex) {
+			// never let an error cancel the next runs
+			logger.error("Error reconciling the occupancy counters", ex);
+			return -1;
+		}
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+	}
+}
@@ -1,64 +1,290 @@
 package com.parkit.parkingsystem.service;
 
+import com.parkit.parkingsystem.cache.OccupancyCounters;
 import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.AsyncStorage;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingSpotStorage;
+import com.parkit.parkingsystem.dao.ParkingStorage;
+import com.parkit.parkingsystem.dao.ParkingTransactionDAO;
+import com.parkit.parkingsystem.dao.ParkingTransactionStorage;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketStorage;
+import com.parkit.parkingsystem.metrics.Counter;
+import com.parkit.parkingsystem.metrics.GateTransactionEvent;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.Timer;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 import com.parkit.parkingsystem.util.InputReaderUtil;
+import com.parkit.parkingsystem.util.PlateCodec;
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.util.Unbox;
 
+import java.time.Instant;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
 
+/**
+ * Vehicle entries and exits.
+ * <p>
+ * {@link #enter(String, ParkingType, Instant)} and
+ * {@link #exit(String, Instant)} are the request/response API used by gate
+ * controllers; {@link #processIncomingVehicle()} and
+ * {@link #processExitingVehicle()} are their console front ends used by the
+ * {@link InteractiveShell}.
+ * </p>
+ * <p>
+ * The spots taken by the vehicles entered and exited through this service are
+ * counted live in {@link #occupancyCounters}, kept in line with the storage by
+ * an {@link OccupancyReconciler}. Entries and exits are timed, and counted by
+ * result status, in the default {@link MetricsRegistry}: an entry or exit
+ * failing with {@code ERROR} is counted as failed. Each is also recorded as a
+ * JFR {@link GateTransactionEvent}, with the time spent on the fare of an exit,
+ * and summed up in one line of key=value pairs on the {@code GateTransaction}
+ * logger, at the {@code TRANSACTION} level, just above INFO, so that the line
+ * is kept when the other INFO events are dropped under load.
+ * </p>
+ * <p>
+ * The lookups of an exit that do not depend on each other run at the same time
+ * through {@link #asyncStorage}: on the executor of the database backend, or
+ * on the calling thread when the storages are given one by one.
+ * </p>
+ */
 public class ParkingService {
 
 	private static final Logger logger = LogManager.getLogger("ParkingService");
+	// one structured line per entry or exit, see log4j2.properties
+	private static final Logger transactionLogger = LogManager.getLogger("GateTransaction");
+	// between WARN and INFO: never dropped when the logging ring buffer is full
+	private static final Level TRANSACTION = Level.forName("TRANSACTION", 350);
 
-	private static FareCalculatorService fareCalculatorService = new FareCalculatorService();
+	private static final Timer entryTimer = MetricsRegistry.getDefault().timer("parkit_service_call",
+			"Vehicle entries and exits", "operation", "enter");
+	private static final Timer exitTimer = MetricsRegistry.getDefault().timer("parkit_service_call",
+			"Vehicle entries and exits", "operation", "exit");
+	private static final Counter[] entryResults = resultCounters("enter", EntryResult.Status.values());
+	private static final Counter[] exitResults = resultCounters("exit", ExitResult.Status.values());
+
+	private final FareCalculatorService fareCalculatorService = new FareCalculatorService();
 
 	public InputReaderUtil inputReaderUtil;
-	public ParkingSpotDAO parkingSpotDAO;
-	public TicketDAO ticketDAO;
+	public ParkingSpotStorage parkingSpotDAO;
+	public TicketStorage ticketDAO;
+	public ParkingTransactionStorage parkingTransactionDAO;
+	public AsyncStorage asyncStorage;
+	public final OccupancyCounters occupancyCounters = new OccupancyCounters();
 
 	public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO) {
+		this(inputReaderUtil, parkingSpotDAO, ticketDAO, new ParkingTransactionDAO(parkingSpotDAO, ticketDAO));
+	}
+
+	public ParkingService(InputReaderUtil inputReaderUtil, ParkingStorage parkingStorage) {
+		this(inputReaderUtil, parkingStorage.parkingSpotStorage, parkingStorage.ticketStorage,
+				parkingStorage.parkingTransactionStorage);
+		this.asyncStorage = parkingStorage.async();
+	}
+
+	public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotStorage parkingSpotDAO, TicketStorage ticketDAO,
+			ParkingTransactionStorage parkingTransactionDAO) {
 		this.inputReaderUtil = inputReaderUtil;
 		this.parkingSpotDAO = parkingSpotDAO;
 		this.ticketDAO = ticketDAO;
+		this.parkingTransactionDAO = parkingTransactionDAO;
+		this.asyncStorage = AsyncStorage.sameThread(parkingSpotDAO, ticketDAO);
 	}
 
-	public void processIncomingVehicle() {
+	/**
+	 * Records the entry of a vehicle: allots the lowest free spot of its type and
+	 * saves an open ticket, in one transaction.
+	 * <p>
+	 * This method does no console input or output and is safe to call from many
+	 * threads at once.
+	 * </p>
+	 *
+	 * @param vehicleRegNumber the vehicle registration number, trimmed and
+	 *                         upper-cased before use; one that
+	 *                         {@link PlateCodec} cannot encode is an
+	 *                         {@code INVALID_REQUEST}
+	 * @param parkingType      the type of vehicle
+	 * @param at               the entry time
+	 * @return the allotted spot and ticket, or the reason why the vehicle could
+	 *         not enter
+	 */
+	public EntryResult enter(String vehicleRegNumber, ParkingType parkingType, Instant at) {
+		GateTransactionEvent event = new GateTransactionEvent();
+		event.begin();
+		long start = System.nanoTime();
+		EntryResult result = enterVehicle(vehicleRegNumber, parkingType, at);
+		long nanos = System.nanoTime() - start;
+		entryTimer.record(nanos, result.getStatus() == EntryResult.Status.ERROR);
+		entryResults[result.getStatus().ordinal()].increment();
+		transactionLogger.log(TRANSACTION, "operation=enter vehicle={} type={} spot={} ticket={} status={} micros={}",
+				vehicleRegNumber, parkingType, Unbox.box(result.getParkingNumber()), Unbox.box(result.getTicketId()),
+				result.getStatus(), Unbox.box(nanos / 1000));
+		event.end();
+		if (event.shouldCommit()) {
+			event.operation = "enter";
+			event.vehicleRegNumber = vehicleRegNumber;
+			event.parkingType = parkingType == null ? null : parkingType.name();
+			event.parkingNumber = result.getParkingNumber();
+			event.ticketId = result.getTicketId();
+			event.status = result.getStatus().name();
+			event.commit();
+		}
+		return result;
+	}
+
+	private EntryResult enterVehicle(String vehicleRegNumber, ParkingType parkingType, Instant at) {
+		if (PlateCodec.encode(vehicleRegNumber) == PlateCodec.NOT_ENCODABLE || parkingType == null || at == null) {
+			return EntryResult.failed(EntryResult.Status.INVALID_REQUEST, vehicleRegNumber, parkingType);
+		}
+		// the same plate sent in lower case or with spaces around is the same vehicle
+		vehicleRegNumber = PlateCodec.normalize(vehicleRegNumber);
 		try {
-			ParkingSpot parkingSpot = getNextParkingNumberIfAvailable();
-			if (parkingSpot != null && parkingSpot.getId() > 0) {
-				String vehicleRegNumber = getVehichleRegNumber();
+			ParkingSpot parkingSpot = new ParkingSpot(0, parkingType, true);
+			Ticket ticket = new Ticket();
+			ticket.setParkingSpot(parkingSpot);
+			ticket.setVehicleRegNumber(vehicleRegNumber);
+			ticket.setPrice(0);
+			ticket.setInTime(Date.from(at));
+			ticket.setOutTime(null);
 
-				// Check if the vehicle has already used the parking lot before
-				int ticketCount = ticketDAO.getNbTicket(vehicleRegNumber);
-				if (ticketCount > 0) {
-					System.out.println(
-							"Glad to see you again! As a regular user of our parking lot,you will get a 5% discount");
-				}
+			// allot a parking space, mark it's availability as false and save the ticket in one
+			// transaction, so that concurrent gates never get the same spot
+			int visitCount = parkingTransactionDAO.enter(ticket);
+			if (visitCount <= 0) {
+				// no spot number means no spot could be reserved, otherwise saving the ticket failed
+				EntryResult.Status status = parkingSpot.getId() > 0 ? EntryResult.Status.ERROR
+						: EntryResult.Status.NO_SPOT_AVAILABLE;
+				return EntryResult.failed(status, vehicleRegNumber, parkingType);
+			}
+			occupancyCounters.vehicleEntered(parkingType);
+			// the vehicle has already used the parking lot before if this is not its first visit
+			boolean recurringUser = visitCount > 1;
+			return new EntryResult(EntryResult.Status.OK, vehicleRegNumber, parkingType, parkingSpot.getId(),
+					ticket.getId(), at, recurringUser);
+		} catch (Exception e) {
+			logger.error("Unable to process incoming vehicle", e);
+			return EntryResult.failed(EntryResult.Status.ERROR, vehicleRegNumber, parkingType);
+		}
+	}
 
-				parkingSpot.setAvailable(false);
+	/**
+	 * Records the exit of a vehicle: calculates the fare of its open ticket,
+	 * applying the loyalty discount to recurring users, closes the ticket and
+	 * frees its spot, in one transaction.
+	 * <p>
+	 * This method does no console input or output and is safe to call from many
+	 * threads at once.
+	 * </p>
+	 *
+	 * @param vehicleRegNumber the vehicle registration number, trimmed and
+	 *                         upper-cased before use; one that
+	 *                         {@link PlateCodec} cannot encode is an
+	 *                         {@code INVALID_REQUEST}
+	 * @param at               the exit time
+	 * @return the fare to pay, or the reason why the exit could not be recorded
+	 */
+	public ExitResult exit(String vehicleRegNumber, Instant at) {
+		GateTransactionEvent event = new GateTransactionEvent();
+		event.begin();
+		long start = System.nanoTime();
+		ExitResult result = exitVehicle(vehicleRegNumber, at, event);
+		long nanos = System.nanoTime() - start;
+		exitTimer.record(nanos, result.getStatus() == ExitResult.Status.ERROR);
+		exitResults[result.getStatus().ordinal()].increment();
+		transactionLogger.log(TRANSACTION,
+				"operation=exit vehicle={} spot={} ticket={} status={} price={} discounted={} fareMicros={} micros={}",
+				vehicleRegNumber, Unbox.box(result.getParkingNumber()), Unbox.box(result.getTicketId()),
+				result.getStatus(), Unbox.box(result.getPrice()), Unbox.box(result.isDiscounted()),
+				Unbox.box(event.fareCalculation / 1000), Unbox.box(nanos / 1000));
+		event.end();
+		if (event.shouldCommit()) {
+			event.operation = "exit";
+			event.vehicleRegNumber = vehicleRegNumber;
+			event.parkingNumber = result.getParkingNumber();
+			event.ticketId = result.getTicketId();
+			event.status = result.getStatus().name();
+			event.commit();
+		}
+		return result;
+	}
 
-				// allot this parking space and mark it's availability as false
-				parkingSpotDAO.updateParking(parkingSpot);
+	private ExitResult exitVehicle(String vehicleRegNumber, Instant at, GateTransactionEvent event) {
+		if (PlateCodec.encode(vehicleRegNumber) == PlateCodec.NOT_ENCODABLE || at == null) {
+			return ExitResult.failed(ExitResult.Status.INVALID_REQUEST, vehicleRegNumber);
+		}
+		vehicleRegNumber = PlateCodec.normalize(vehicleRegNumber);
+		try {
+			// unless it is cached, the visit count is read on another thread while this one looks up the ticket
+			CompletableFuture<Integer> nbTicket = asyncStorage.getNbTicket(vehicleRegNumber);
+			Ticket ticket = ticketDAO.getActiveTicket(vehicleRegNumber);
+			if (ticket == null) {
+				return ExitResult.failed(ExitResult.Status.NOT_PARKED, vehicleRegNumber);
+			}
+			ticket.setOutTime(Date.from(at));
 
-				Date inTime = new Date();
-				Ticket ticket = new Ticket();
+			int ticketCount = nbTicket.join();
 
-				ticket.setParkingSpot(parkingSpot);
-				ticket.setVehicleRegNumber(vehicleRegNumber);
-				ticket.setPrice(0);
-				ticket.setInTime(inTime);
-				ticket.setOutTime(null);
+			// If the vehicle has used the parking lot more than once, apply a discount
+			boolean discount = ticketCount > 1;
+			long fareStart = System.nanoTime();
+			try {
+				fareCalculatorService.calculateFare(ticket, discount);
+			} catch (IllegalArgumentException e) {
+				logger.error("Unable to calculate the fare of ticket {}", Unbox.box(ticket.getId()), e);
+				return ExitResult.failed(ExitResult.Status.INVALID_REQUEST, vehicleRegNumber);
+			} finally {
+				event.fareCalculation = System.nanoTime() - fareStart;
+			}
 
-				ticketDAO.saveTicket(ticket);
+			// close the ticket and free its parking spot in one transaction
+			if (!parkingTransactionDAO.exit(ticket)) {
+				return ExitResult.failed(ExitResult.Status.ERROR, vehicleRegNumber);
+			}
+			occupancyCounters.vehicleExited(ticket.getParkingSpot().getParkingType());
+			return new ExitResult(ExitResult.Status.OK, ticket.getVehicleRegNumber(),
+					ticket.getParkingSpot().getId(), ticket.getId(), ticket.getInTime().toInstant(), at,
+					ticket.getPrice(), discount);
+		} catch (Exception e) {
+			logger.error("Unable to process exiting vehicle", e);
+			return ExitResult.failed(ExitResult.Status.ERROR, vehicleRegNumber);
+		}
+	}
 
-				System.out.println("Generated Ticket and saved in DB");
-				System.out.println("Please park your vehicle in spot number:" + parkingSpot.getId());
-				System.out.println("Recorded in-time for vehicle number:" + vehicleRegNumber + " is:" + inTime);
+	/**
+	 * Console front end of {@link #enter(String, ParkingType, Instant)}: reads the
+	 * vehicle type and registration number from the shell and prints the result.
+	 */
+	public void processIncomingVehicle() {
+		try {
+			ParkingSpot parkingSpot = getNextParkingNumberIfAvailable();
+			if (parkingSpot != null && parkingSpot.getId() > 0) {
+				String vehicleRegNumber = getVehichleRegNumber();
+
+				EntryResult result = enter(vehicleRegNumber, parkingSpot.getParkingType(), Instant.now());
+				switch (result.getStatus()) {
+				case OK:
+					if (result.isRecurringUser()) {
+						System.out.println(
+								"Glad to see you again! As a regular user of our parking lot,you will get a 5% discount");
+					}
+					System.out.println("Generated Ticket and saved in DB");
+					System.out.println("Please park your vehicle in spot number:" + result.getParkingNumber());
+					System.out.println("Recorded in-time for vehicle number:" + vehicleRegNumber + " is:"
+							+ Date.from(result.getInTime()));
+					break;
+				case NO_SPOT_AVAILABLE:
+					System.out.println("Sorry, no parking spot could be allotted for this type of vehicle");
+					break;
+				default:
+					System.out.println("Unable to register the vehicle entry. Error occurred");
+				}
 			}
 		} catch (Exception e) {
 			logger.error("Unable to process incoming vehicle", e);
@@ -108,39 +334,38 @@ public class ParkingService {
 		}
 	}
 
+	/**
+	 * Console front end of {@link #exit(String, Instant)}: reads the vehicle
+	 * registration number from the shell and prints the fare to pay.
+	 */
 	public void processExitingVehicle() {
 		try {
 			String vehicleRegNumber = getVehichleRegNumber();
 
-			Ticket ticket = ticketDAO.getTicket(vehicleRegNumber);
-
-			Date outTime = new Date();
-
-			ticket.setOutTime(outTime);
-
-			int ticketCount = ticketDAO.getNbTicket(vehicleRegNumber);
-
-			// If the vehicle has used the parking lot more than once, apply a discount
-			if (ticketCount > 1) {
-				fareCalculatorService.calculateFare(ticket, true);
-			} else {
-				// Otherwise, calculate the fare without discount
-				fareCalculatorService.calculateFare(ticket);
-			}
-
-			if (ticketDAO.updateTicket(ticket)) {
-				ParkingSpot parkingSpot = ticket.getParkingSpot();
-				parkingSpot.setAvailable(true);
-				parkingSpotDAO.updateParking(parkingSpot);
-
-				System.out.println("Please pay the parking fare:" + ticket.getPrice());
-				System.out.println(
-						"Recorded out-time for vehicle number:" + ticket.getVehicleRegNumber() + " is:" + outTime);
-			} else {
+			ExitResult result = exit(vehicleRegNumber, Instant.now());
+			switch (result.getStatus()) {
+			case OK:
+				System.out.println("Please pay the parking fare:" + result.getPrice());
+				System.out.println("Recorded out-time for vehicle number:" + result.getVehicleRegNumber() + " is:"
+						+ Date.from(result.getOutTime()));
+				break;
+			case NOT_PARKED:
+				System.out.println("No parked vehicle found with registration number:" + vehicleRegNumber);
+				break;
+			default:
 				System.out.println("Unable to update ticket information. Error occurred");
 			}
 		} catch (Exception e) {
 			logger.error("Unable to process exiting vehicle", e);
 		}
 	}
+
+	private static Counter[] resultCounters(String operation, Enum<?>[] statuses) {
+		Counter[] counters = new Counter[statuses.length];
+		for (Enum<?> status : statuses) {
+			counters[status.ordinal()] = MetricsRegistry.getDefault().counter("parkit_service_results_total",
+					"Vehicle entries and exits by result status", "operation", operation, "status", status.name());
+		}
+		return counters;
+	}
 }
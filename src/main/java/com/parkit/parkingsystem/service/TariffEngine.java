@@ -0,0 +1,157 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Quotes parking stays in whole cents from the {@link TariffTable} of each
+ * parking type.
+ * <p>
+ * The tables are compiled into flat primitive arrays indexed by parking type
+ * ordinal, so a quote only does integer arithmetic and allocates nothing. The
+ * amount of a stay is computed exactly, in units of 1/{@value #UNITS_PER_CENT}
+ * of a cent (an hourly rate in cents times a duration in milliseconds, times
+ * the discount factor in basis points), and rounded once, half to even, to the
+ * cent.
+ * </p>
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ * </p>
+ */
+public class TariffEngine {
+
+	public static final long UNITS_PER_CENT = TariffTable.MILLIS_PER_HOUR * 10_000L;
+
+	private static final long MILLIS_PER_DAY = 24L * TariffTable.MILLIS_PER_HOUR;
+	private static final long NO_DISCOUNT = 10_000L;
+
+	private final long[] freeMillis;
+	// the bands of type t are bandStartMillis[bandOffset[t]] to bandStartMillis[bandOffset[t + 1] - 1]
+	private final int[] bandOffset;
+	private final long[] bandStartMillis;
+	private final long[] bandCentsPerHour;
+	// in cents times milliseconds per hour, 0 for no cap
+	private final long[] dailyCap;
+	private final long[] loyaltyFactor;
+
+	/**
+	 * @param tables the tariff of each parking type; a type without a table
+	 *               cannot be quoted
+	 */
+	public TariffEngine(Map<ParkingType, TariffTable> tables) {
+		ParkingType[] types = ParkingType.values();
+		freeMillis = new long[types.length];
+		bandOffset = new int[types.length + 1];
+		dailyCap = new long[types.length];
+		loyaltyFactor = new long[types.length];
+		int bandCount = 0;
+		for (TariffTable table : tables.values()) {
+			bandCount += table.bandStartMillis.length;
+		}
+		bandStartMillis = new long[bandCount];
+		bandCentsPerHour = new long[bandCount];
+
+		int band = 0;
+		for (ParkingType type : types) {
+			int t = type.ordinal();
+			bandOffset[t] = band;
+			TariffTable table = tables.get(type);
+			if (table != null) {
+				freeMillis[t] = table.freeMillis;
+				dailyCap[t] = Math.multiplyExact(table.dailyCapCents, TariffTable.MILLIS_PER_HOUR);
+				loyaltyFactor[t] = NO_DISCOUNT - table.loyaltyDiscountBasisPoints;
+				System.arraycopy(table.bandStartMillis, 0, bandStartMillis, band, table.bandStartMillis.length);
+				System.arraycopy(table.bandCentsPerHour, 0, bandCentsPerHour, band, table.bandCentsPerHour.length);
+				band += table.bandStartMillis.length;
+			}
+		}
+		bandOffset[types.length] = band;
+	}
+
+	/**
+	 * The current tariff: the {@link Fare} hourly rates after a free half hour,
+	 * no daily cap and 5% off for recurring users.
+	 */
+	public static TariffEngine defaultTariffs() {
+		long freeMillis = Fare.FREE_MINUTES * 60L * 1000L;
+		Map<ParkingType, TariffTable> tables = new EnumMap<>(ParkingType.class);
+		tables.put(ParkingType.CAR, TariffTable.hourly(freeMillis, Fare.CAR_RATE_CENTS_PER_HOUR,
+				Fare.LOYALTY_DISCOUNT_BASIS_POINTS));
+		tables.put(ParkingType.BIKE, TariffTable.hourly(freeMillis, Fare.BIKE_RATE_CENTS_PER_HOUR,
+				Fare.LOYALTY_DISCOUNT_BASIS_POINTS));
+		return new TariffEngine(tables);
+	}
+
+	/**
+	 * @return the price of the stay in cents, rounded half to even
+	 * @throws IllegalArgumentException if the out time is before the in time or
+	 *                                  the parking type has no tariff
+	 */
+	public long quote(ParkingType parkingType, long inMillis, long outMillis, boolean loyal) {
+		long units = quoteUnits(parkingType, inMillis, outMillis, loyal);
+		long cents = units / UNITS_PER_CENT;
+		long remainder = units % UNITS_PER_CENT;
+		if (remainder * 2 > UNITS_PER_CENT || (remainder * 2 == UNITS_PER_CENT && (cents & 1) == 1)) {
+			cents++;
+		}
+		return cents;
+	}
+
+	/**
+	 * @return the exact price of the stay, in units of 1/{@value #UNITS_PER_CENT}
+	 *         of a cent
+	 * @throws IllegalArgumentException if the out time is before the in time or
+	 *                                  the parking type has no tariff
+	 */
+	public long quoteUnits(ParkingType parkingType, long inMillis, long outMillis, boolean loyal) {
+		int t = parkingType.ordinal();
+		if (bandOffset[t] == bandOffset[t + 1]) {
+			throw new IllegalArgumentException("No tariff for parking type " + parkingType);
+		}
+		long duration = outMillis - inMillis;
+		if (duration < 0) {
+			throw new IllegalArgumentException("Out time is before in time");
+		}
+		if (duration <= freeMillis[t]) {
+			return 0L;
+		}
+		long amount;
+		if (dailyCap[t] == 0) {
+			amount = charge(t, 0L, duration);
+		} else {
+			amount = 0L;
+			for (long dayStart = 0L; dayStart < duration; dayStart += MILLIS_PER_DAY) {
+				amount += Math.min(charge(t, dayStart, Math.min(dayStart + MILLIS_PER_DAY, duration)), dailyCap[t]);
+			}
+		}
+		return Math.multiplyExact(amount, loyal ? loyaltyFactor[t] : NO_DISCOUNT);
+	}
+
+	/**
+	 * @return the price, as stored on tickets, of an amount in units of
+	 *         1/{@value #UNITS_PER_CENT} of a cent: the nearest double
+	 */
+	public static double toPrice(long units) {
+		return units / (UNITS_PER_CENT * 100.0);
+	}
+
+	/**
+	 * @return the charge of the part of the stay from {@code from} to {@code to}
+	 *         after entry, in cents times milliseconds per hour
+	 */
+	private long charge(int t, long from, long to) {
+		long amount = 0L;
+		int end = bandOffset[t + 1];
+		for (int i = bandOffset[t]; i < end && bandStartMillis[i] < to; i++) {
+			long bandEnd = (i + 1 < end) ? bandStartMillis[i + 1] : Long.MAX_VALUE;
+			long overlap = Math.min(to, bandEnd) - Math.max(from, bandStartMillis[i]);
+			if (overlap > 0) {
+				amount += Math.multiplyExact(overlap, bandCentsPerHour[i]);
+			}
+		}
+		return amount;
+	}
+}
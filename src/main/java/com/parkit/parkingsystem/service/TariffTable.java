@@ -0,0 +1,67 @@
+package com.parkit.parkingsystem.service;
+
+import java.util.Arrays;
+
+/**
+ * The tariff of one parking type, in whole cents and milliseconds, as compiled
+ * by the {@link TariffEngine}.
+ * <p>
+ * Stays up to the free period cost nothing; longer stays pay for their whole
+ * duration. The hourly rate is stepped: band {@code i} applies to the part of
+ * the stay from {@code bandStartMillis[i]} after entry up to the start of the
+ * next band, the last band having no end. Each 24 hour period from entry is
+ * charged at most the daily cap, if any. The loyalty discount is taken off the
+ * total.
+ * </p>
+ */
+public class TariffTable {
+
+	public static final long MILLIS_PER_HOUR = 60L * 60L * 1000L;
+
+	final long freeMillis;
+	final long[] bandStartMillis;
+	final long[] bandCentsPerHour;
+	final long dailyCapCents;
+	final int loyaltyDiscountBasisPoints;
+
+	/**
+	 * @param freeMillis                 longest free stay
+	 * @param bandStartMillis            start of each rate band from entry,
+	 *                                   increasing, the first one 0
+	 * @param bandCentsPerHour           hourly rate of each band
+	 * @param dailyCapCents              most charged per 24 hours, 0 for no cap
+	 * @param loyaltyDiscountBasisPoints discount of recurring users, in
+	 *                                   hundredths of a percent
+	 * @throws IllegalArgumentException if the bands are inconsistent or a value
+	 *                                  is out of range
+	 */
+	public TariffTable(long freeMillis, long[] bandStartMillis, long[] bandCentsPerHour, long dailyCapCents,
+			int loyaltyDiscountBasisPoints) {
+		if (bandStartMillis.length == 0 || bandStartMillis.length != bandCentsPerHour.length
+				|| bandStartMillis[0] != 0) {
+			throw new IllegalArgumentException("Rate bands must start at 0 and have one rate each");
+		}
+		for (int i = 0; i < bandStartMillis.length; i++) {
+			if ((i > 0 && bandStartMillis[i] <= bandStartMillis[i - 1]) || bandCentsPerHour[i] < 0) {
+				throw new IllegalArgumentException("Invalid rate band " + i);
+			}
+		}
+		if (freeMillis < 0 || dailyCapCents < 0 || loyaltyDiscountBasisPoints < 0
+				|| loyaltyDiscountBasisPoints > 10_000) {
+			throw new IllegalArgumentException("Invalid free period, daily cap or loyalty discount");
+		}
+		this.freeMillis = freeMillis;
+		this.bandStartMillis = Arrays.copyOf(bandStartMillis, bandStartMillis.length);
+		this.bandCentsPerHour = Arrays.copyOf(bandCentsPerHour, bandCentsPerHour.length);
+		this.dailyCapCents = dailyCapCents;
+		this.loyaltyDiscountBasisPoints = loyaltyDiscountBasisPoints;
+	}
+
+	/**
+	 * A single hourly rate with no daily cap.
+	 */
+	public static TariffTable hourly(long freeMillis, long centsPerHour, int loyaltyDiscountBasisPoints) {
+		return new TariffTable(freeMillis, new long[] { 0L }, new long[] { centsPerHour }, 0L,
+				loyaltyDiscountBasisPoints);
+	}
+}
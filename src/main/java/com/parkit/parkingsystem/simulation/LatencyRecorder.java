@@ -0,0 +1,90 @@
+package com.parkit.parkingsystem.simulation;
+
+import com.parkit.parkingsystem.util.LatencyHistogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Named latency histograms and outcome counters of a simulation run, with
+ * their JSON rendering.
+ */
+class LatencyRecorder {
+
+	private static final double[] PERCENTILES = { 50.0, 90.0, 99.0, 99.9, 99.99 };
+
+	private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+	void record(String name, long nanos) {
+		histograms.computeIfAbsent(name, n -> new LatencyHistogram()).record(nanos);
+	}
+
+	void count(String name) {
+		counters.computeIfAbsent(name, n -> new LongAdder()).increment();
+	}
+
+	long getCount(String name) {
+		LongAdder counter = counters.get(name);
+		return counter == null ? 0L : counter.sum();
+	}
+
+	LatencyHistogram getHistogram(String name) {
+		return histograms.get(name);
+	}
+
+	/**
+	 * Renders the counters and the summary of every histogram, latencies in
+	 * microseconds, as JSON object fields.
+	 */
+	void appendJson(StringBuilder json) {
+		json.append("\"counters\":{");
+		boolean first = true;
+		for (Map.Entry<String, LongAdder> counter : new TreeMap<>(counters).entrySet()) {
+			if (!first) {
+				json.append(',');
+			}
+			first = false;
+			json.append('"').append(counter.getKey()).append("\":").append(counter.getValue().sum());
+		}
+		json.append("},\"latenciesMicros\":{");
+		first = true;
+		for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+			if (!first) {
+				json.append(',');
+			}
+			first = false;
+			LatencyHistogram histogram = entry.getValue();
+			json.append('"').append(entry.getKey()).append("\":{\"count\":").append(histogram.getCount())
+					.append(",\"min\":").append(micros(histogram.getMinNanos())).append(",\"mean\":")
+					.append(micros(histogram.getMeanNanos()));
+			for (double percentile : PERCENTILES) {
+				json.append(",\"p").append(String.valueOf(percentile).replace(".0", "").replace('.', '_'))
+						.append("\":").append(micros(histogram.getValueAtPercentile(percentile)));
+			}
+			json.append(",\"max\":").append(micros(histogram.getMaxNanos())).append('}');
+		}
+		json.append('}');
+	}
+
+	/**
+	 * One line per histogram, for the console.
+	 */
+	String summary() {
+		StringBuilder summary = new StringBuilder();
+		for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+			LatencyHistogram histogram = entry.getValue();
+			summary.append(String.format("%-40s n=%-8d p50=%9.1f us  p99=%9.1f us  p99.9=%9.1f us  max=%9.1f us%n",
+					entry.getKey(), histogram.getCount(), micros(histogram.getValueAtPercentile(50.0)),
+					micros(histogram.getValueAtPercentile(99.0)), micros(histogram.getValueAtPercentile(99.9)),
+					micros(histogram.getMaxNanos())));
+		}
+		return summary.toString();
+	}
+
+	private static double micros(double nanos) {
+		return Math.round(nanos / 100.0) / 10.0;
+	}
+}
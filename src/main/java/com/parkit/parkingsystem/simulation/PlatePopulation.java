@@ -0,0 +1,66 @@
+package com.parkit.parkingsystem.simulation;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * The vehicles of a synthetic stream: a fixed number of plates, among which
+ * arrivals are either first visits or returns of vehicles that already came
+ * and left, in a configured ratio.
+ */
+class PlatePopulation {
+
+	private final int size;
+	private final double repeatVisitorRatio;
+	private final Random random;
+
+	private int nextNewPlate;
+	// plates that visited before and are not parked right now
+	private final List<String> returning = new ArrayList<>();
+	private final Set<String> parked = new HashSet<>();
+
+	PlatePopulation(int size, double repeatVisitorRatio, long seed) {
+		this.size = size;
+		this.repeatVisitorRatio = repeatVisitorRatio;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Picks the vehicle of the next arrival and marks it parked.
+	 *
+	 * @return the plate, or {@code null} if every vehicle is parked already
+	 */
+	synchronized String nextArrival() {
+		boolean repeat = random.nextDouble() < repeatVisitorRatio;
+		String plate;
+		if ((repeat || nextNewPlate >= size) && !returning.isEmpty()) {
+			int i = random.nextInt(returning.size());
+			// swap-remove, the order of the returning vehicles does not matter
+			plate = returning.get(i);
+			returning.set(i, returning.get(returning.size() - 1));
+			returning.remove(returning.size() - 1);
+		} else if (nextNewPlate < size) {
+			plate = plate(nextNewPlate++);
+		} else {
+			return null;
+		}
+		parked.add(plate);
+		return plate;
+	}
+
+	/**
+	 * Makes a vehicle that left, or could not enter, available to come back.
+	 */
+	synchronized void departed(String plate) {
+		if (parked.remove(plate)) {
+			returning.add(plate);
+		}
+	}
+
+	static String plate(int i) {
+		return String.format("S%07d", i);
+	}
+}
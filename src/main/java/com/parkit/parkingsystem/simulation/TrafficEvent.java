@@ -0,0 +1,68 @@
+package com.parkit.parkingsystem.simulation;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.Locale;
+
+/**
+ * One vehicle showing up at a gate, to enter or to leave, at an offset from
+ * the start of the simulation.
+ */
+public class TrafficEvent {
+
+	public enum Kind {
+		ENTRY, EXIT
+	}
+
+	private final long offsetNanos;
+	private final Kind kind;
+	private final String vehicleRegNumber;
+	private final ParkingType parkingType;
+
+	public TrafficEvent(long offsetNanos, Kind kind, String vehicleRegNumber, ParkingType parkingType) {
+		this.offsetNanos = offsetNanos;
+		this.kind = kind;
+		this.vehicleRegNumber = vehicleRegNumber;
+		this.parkingType = parkingType;
+	}
+
+	/**
+	 * Parses a line of a recorded stream:
+	 * {@code offset_millis,ENTRY|EXIT,vehicle_reg_number[,CAR|BIKE]}. The parking
+	 * type is only read for an entry.
+	 *
+	 * @throws IllegalArgumentException if the line is malformed
+	 */
+	public static TrafficEvent parse(String line) {
+		String[] fields = line.split(",");
+		if (fields.length < 3) {
+			throw new IllegalArgumentException("Expected offset_millis,ENTRY|EXIT,vehicle_reg_number[,type]: " + line);
+		}
+		long offsetMillis = Long.parseLong(fields[0].trim());
+		Kind kind = Kind.valueOf(fields[1].trim().toUpperCase(Locale.ROOT));
+		ParkingType parkingType = null;
+		if (kind == Kind.ENTRY) {
+			if (fields.length < 4) {
+				throw new IllegalArgumentException("Missing parking type of entry: " + line);
+			}
+			parkingType = ParkingType.valueOf(fields[3].trim().toUpperCase(Locale.ROOT));
+		}
+		return new TrafficEvent(offsetMillis * 1000000L, kind, fields[2].trim(), parkingType);
+	}
+
+	public long getOffsetNanos() {
+		return offsetNanos;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public String getVehicleRegNumber() {
+		return vehicleRegNumber;
+	}
+
+	public ParkingType getParkingType() {
+		return parkingType;
+	}
+}
@@ -0,0 +1,489 @@
+package com.parkit.parkingsystem.simulation;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.JdbcUrlDataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.AsyncStorage;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingTransactionDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.util.Unbox;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator replaying a stream of vehicle arrivals and departures against
+ * the {@link ParkingService}, to find the arrival rate one node can take
+ * before gate latency degrades.
+ * <p>
+ * The stream is either synthetic, Poisson arrivals of a plate population
+ * staying an exponentially distributed time, or recorded, read from a file of
+ * {@code offset_millis,ENTRY|EXIT,vehicle_reg_number[,CAR|BIKE]} lines. Events
+ * are queued at their time and taken by a fixed number of gates, each handling
+ * one vehicle at a time like a barrier.
+ * </p>
+ * <p>
+ * Latencies are recorded per operation and per DAO call in
+ * {@link com.parkit.parkingsystem.util.LatencyHistogram histograms}. The
+ * {@code .response} latency of an operation is measured from the time the
+ * vehicle showed up, so it includes the wait for a free gate and does not hide
+ * queuing when the gates fall behind; the {@code .service} latency is the call
+ * alone. The report is written as JSON.
+ * </p>
+ * <p>
+ * Simulated time runs {@code --time-scale} times faster than the wall clock, so
+ * the tickets get realistic durations and fares. Run it against a scratch
+ * database, the lot capacity being that of its {@code parking} table. Usage:
+ * </p>
+ *
+ * <pre>
+ * java ... TrafficSimulator [--gates 8] [--arrival-rate 50] [--duration 60] [--plates 100000]
+ *     [--bike-ratio 0.25] [--repeat-ratio 0.5] [--mean-stay 5] [--time-scale 720] [--seed 42]
+ *     [--replay stream.csv] [--speed 1.0] [--report simulation-report.json]
+ *     [--jdbc-url jdbc:mysql://localhost:3306/test] [--user root] [--password rootroot]
+ * </pre>
+ */
+public class TrafficSimulator {
+
+	private static final Logger logger = LogManager.getLogger("TrafficSimulator");
+
+	private int gates = 8;
+	private double arrivalRate = 50.0;
+	private int durationSeconds = 60;
+	private int plates = 100000;
+	private double bikeRatio = 0.25;
+	private double repeatVisitorRatio = 0.5;
+	private double meanStaySeconds = 5.0;
+	private double timeScale = 720.0;
+	private long seed = 42L;
+	private String replayFile;
+	private double speed = 1.0;
+	private String reportFile = "simulation-report.json";
+	private String jdbcUrl = "jdbc:mysql://localhost:3306/test";
+	private String user = "root";
+	private String password = "rootroot";
+
+	private final LatencyRecorder recorder = new LatencyRecorder();
+	private final BlockingQueue<GateCall> queue = new LinkedBlockingQueue<>();
+	private final AtomicInteger outstanding = new AtomicInteger();
+	private final Map<String, ScheduledFuture<?>> pendingDepartures = new ConcurrentHashMap<>();
+	private final Object departureLock = new Object();
+	private boolean draining;
+
+	private ParkingService parkingService;
+	private PlatePopulation population;
+	private ScheduledExecutorService departureScheduler;
+	private long startNanos;
+	private Instant simulationStart;
+
+	public static void main(String[] args) throws Exception {
+		TrafficSimulator simulator = new TrafficSimulator();
+		simulator.parseOptions(args);
+		simulator.run();
+	}
+
+	void parseOptions(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value of " + option);
+			}
+			String value = args[++i];
+			switch (option) {
+			case "--gates":
+				gates = Integer.parseInt(value);
+				break;
+			case "--arrival-rate":
+				arrivalRate = Double.parseDouble(value);
+				break;
+			case "--duration":
+				durationSeconds = Integer.parseInt(value);
+				break;
+			case "--plates":
+				plates = Integer.parseInt(value);
+				break;
+			case "--bike-ratio":
+				bikeRatio = Double.parseDouble(value);
+				break;
+			case "--repeat-ratio":
+				repeatVisitorRatio = Double.parseDouble(value);
+				break;
+			case "--mean-stay":
+				meanStaySeconds = Double.parseDouble(value);
+				break;
+			case "--time-scale":
+				timeScale = Double.parseDouble(value);
+				break;
+			case "--seed":
+				seed = Long.parseLong(value);
+				break;
+			case "--replay":
+				replayFile = value;
+				break;
+			case "--speed":
+				speed = Double.parseDouble(value);
+				break;
+			case "--report":
+				reportFile = value;
+				break;
+			case "--jdbc-url":
+				jdbcUrl = value;
+				break;
+			case "--user":
+				user = value;
+				break;
+			case "--password":
+				password = value;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + option);
+			}
+		}
+	}
+
+	void run() throws Exception {
+		DataBaseConfig dataBaseConfig = new JdbcUrlDataBaseConfig(jdbcUrl, user, password);
+		ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+		parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+		TicketDAO ticketDAO = new TimedTicketDAO(recorder);
+		ticketDAO.dataBaseConfig = dataBaseConfig;
+		parkingService = new ParkingService(null, parkingSpotDAO, ticketDAO,
+				new TimedParkingTransactionDAO(parkingSpotDAO, ticketDAO, recorder));
+		parkingService.asyncStorage = new AsyncStorage(parkingSpotDAO, ticketDAO, AsyncStorage.shared());
+		parkingSpotDAO.resyncFreeSpots();
+		ticketDAO.loadActiveTickets();
+
+		population = new PlatePopulation(plates, repeatVisitorRatio, seed);
+		departureScheduler = Executors.newSingleThreadScheduledExecutor();
+		List<Thread> gateThreads = new ArrayList<>();
+		for (int gate = 0; gate < gates; gate++) {
+			Thread thread = new Thread(this::runGate, "gate-" + gate);
+			thread.start();
+			gateThreads.add(thread);
+		}
+
+		startNanos = System.nanoTime();
+		simulationStart = Instant.now();
+		logger.info("Simulation started with {} gates", Unbox.box(gates));
+		if (replayFile != null) {
+			replay(Paths.get(replayFile));
+		} else {
+			generate();
+		}
+		awaitIdle();
+		drainDepartures();
+		awaitIdle();
+		double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+
+		departureScheduler.shutdownNow();
+		for (int gate = 0; gate < gates; gate++) {
+			queue.put(GateCall.STOP);
+		}
+		for (Thread thread : gateThreads) {
+			thread.join();
+		}
+		dataBaseConfig.getConnectionPool().close();
+
+		String report = report(elapsedSeconds);
+		Files.write(Paths.get(reportFile), report.getBytes(StandardCharsets.UTF_8));
+		System.out.println(recorder.summary());
+		System.out.println("Report written to " + reportFile);
+	}
+
+	/**
+	 * Poisson arrivals at {@code arrivalRate} per second for
+	 * {@code durationSeconds}. Departures are scheduled as the vehicles enter.
+	 */
+	private void generate() throws InterruptedException {
+		Random random = new Random(seed);
+		long durationNanos = durationSeconds * 1000000000L;
+		long offsetNanos = 0;
+		while (true) {
+			offsetNanos += (long) (-Math.log(1.0 - random.nextDouble()) / arrivalRate * 1e9);
+			if (offsetNanos > durationNanos) {
+				break;
+			}
+			long stayNanos = (long) (-Math.log(1.0 - random.nextDouble()) * meanStaySeconds * 1e9);
+			sleepUntil(startNanos + offsetNanos);
+			String plate = population.nextArrival();
+			if (plate == null) {
+				recorder.count("arrival.skipped.allVehiclesParked");
+				continue;
+			}
+			enqueue(new GateCall(new TrafficEvent(offsetNanos, TrafficEvent.Kind.ENTRY, plate, typeOf(plate)),
+					startNanos + offsetNanos, stayNanos));
+		}
+	}
+
+	/**
+	 * Events of a recorded stream, at their offset divided by {@code speed}.
+	 */
+	private void replay(Path file) throws IOException, InterruptedException {
+		List<TrafficEvent> events = new ArrayList<>();
+		for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+			String trimmed = line.trim();
+			// blank lines, comments and a header line are skipped
+			if (trimmed.isEmpty() || trimmed.startsWith("#") || !Character.isDigit(trimmed.charAt(0))) {
+				continue;
+			}
+			events.add(TrafficEvent.parse(trimmed));
+		}
+		events.sort(Comparator.comparingLong(TrafficEvent::getOffsetNanos));
+		logger.info("Replaying {} events from {}", Unbox.box(events.size()), file);
+		for (TrafficEvent event : events) {
+			long intendedNanos = startNanos + (long) (event.getOffsetNanos() / speed);
+			sleepUntil(intendedNanos);
+			enqueue(new GateCall(event, intendedNanos, -1L));
+		}
+	}
+
+	private void runGate() {
+		try {
+			while (true) {
+				GateCall call = queue.take();
+				if (call == GateCall.STOP) {
+					return;
+				}
+				try {
+					handle(call);
+				} catch (Exception e) {
+					logger.error("Gate call failed", e);
+					recorder.count("gate.failure");
+				} finally {
+					outstanding.decrementAndGet();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void handle(GateCall call) {
+		TrafficEvent event = call.event;
+		String plate = event.getVehicleRegNumber();
+		Instant at = simulationStart.plusNanos((long) ((call.intendedNanos - startNanos) * timeScale));
+		long start = System.nanoTime();
+		if (event.getKind() == TrafficEvent.Kind.ENTRY) {
+			EntryResult result = parkingService.enter(plate, event.getParkingType(), at);
+			long end = System.nanoTime();
+			recorder.record("entry.service", end - start);
+			recorder.record("entry.response", end - call.intendedNanos);
+			recorder.count("entry." + result.getStatus());
+			if (call.stayNanos >= 0) {
+				if (result.isSuccess()) {
+					scheduleDeparture(plate, call.stayNanos);
+				} else {
+					population.departed(plate);
+				}
+			}
+		} else {
+			ExitResult result = parkingService.exit(plate, at);
+			long end = System.nanoTime();
+			recorder.record("exit.service", end - start);
+			recorder.record("exit.response", end - call.intendedNanos);
+			recorder.count("exit." + result.getStatus());
+			if (call.stayNanos >= 0) {
+				population.departed(plate);
+			}
+		}
+	}
+
+	private void scheduleDeparture(String plate, long stayNanos) {
+		synchronized (departureLock) {
+			if (draining) {
+				enqueueDeparture(plate, System.nanoTime());
+				return;
+			}
+			long intendedNanos = System.nanoTime() + stayNanos;
+			pendingDepartures.put(plate, departureScheduler.schedule(() -> {
+				pendingDepartures.remove(plate);
+				enqueueDeparture(plate, intendedNanos);
+			}, stayNanos, TimeUnit.NANOSECONDS));
+		}
+	}
+
+	/**
+	 * Sends every vehicle still parked to the exit right away, so the run ends
+	 * with the lot as it started.
+	 */
+	private void drainDepartures() {
+		synchronized (departureLock) {
+			draining = true;
+			for (Map.Entry<String, ScheduledFuture<?>> departure : pendingDepartures.entrySet()) {
+				if (departure.getValue().cancel(false)) {
+					enqueueDeparture(departure.getKey(), System.nanoTime());
+				}
+			}
+			pendingDepartures.clear();
+		}
+	}
+
+	private void enqueueDeparture(String plate, long intendedNanos) {
+		// a departure stays 0: the vehicle goes back to the population once it left
+		enqueue(new GateCall(new TrafficEvent(intendedNanos - startNanos, TrafficEvent.Kind.EXIT, plate, null),
+				intendedNanos, 0L));
+	}
+
+	private void enqueue(GateCall call) {
+		outstanding.incrementAndGet();
+		queue.add(call);
+	}
+
+	private void awaitIdle() throws InterruptedException {
+		// departures still scheduled are not outstanding yet, they are drained afterwards
+		while (outstanding.get() > 0) {
+			Thread.sleep(10);
+		}
+	}
+
+	private ParkingType typeOf(String plate) {
+		// the same vehicle always comes back with the same type
+		int bucket = Math.floorMod(plate.hashCode() * 0x9E3779B9, 10000);
+		return bucket < bikeRatio * 10000 ? ParkingType.BIKE : ParkingType.CAR;
+	}
+
+	private static void sleepUntil(long deadlineNanos) throws InterruptedException {
+		long remaining;
+		while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(remaining);
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+	}
+
+	private String report(double elapsedSeconds) {
+		long entries = 0;
+		long exits = 0;
+		for (EntryResult.Status status : EntryResult.Status.values()) {
+			entries += recorder.getCount("entry." + status);
+		}
+		for (ExitResult.Status status : ExitResult.Status.values()) {
+			exits += recorder.getCount("exit." + status);
+		}
+		StringBuilder json = new StringBuilder("{");
+		json.append("\"mode\":\"").append(replayFile == null ? "synthetic" : "replay").append("\",");
+		json.append("\"config\":{\"gates\":").append(gates);
+		if (replayFile == null) {
+			json.append(",\"arrivalRate\":").append(arrivalRate).append(",\"durationSeconds\":")
+					.append(durationSeconds).append(",\"plates\":").append(plates).append(",\"bikeRatio\":")
+					.append(bikeRatio).append(",\"repeatVisitorRatio\":").append(repeatVisitorRatio)
+					.append(",\"meanStaySeconds\":").append(meanStaySeconds).append(",\"seed\":").append(seed);
+		} else {
+			json.append(",\"replayFile\":\"").append(replayFile.replace("\\", "\\\\").replace("\"", "\\\""))
+					.append("\",\"speed\":").append(speed);
+		}
+		json.append(",\"timeScale\":").append(timeScale).append("},");
+		json.append("\"elapsedSeconds\":").append(Math.round(elapsedSeconds * 1000.0) / 1000.0).append(',');
+		json.append("\"entries\":").append(entries).append(",\"exits\":").append(exits).append(',');
+		json.append("\"operationsPerSecond\":").append(Math.round((entries + exits) / elapsedSeconds * 10.0) / 10.0)
+				.append(',');
+		recorder.appendJson(json);
+		return json.append('}').toString();
+	}
+
+	private static final class GateCall {
+		static final GateCall STOP = new GateCall(null, 0L, 0L);
+
+		private final TrafficEvent event;
+		private final long intendedNanos;
+		// -1 for a recorded event, whose departure is part of the stream
+		private final long stayNanos;
+
+		private GateCall(TrafficEvent event, long intendedNanos, long stayNanos) {
+			this.event = event;
+			this.intendedNanos = intendedNanos;
+			this.stayNanos = stayNanos;
+		}
+	}
+
+	/**
+	 * Times the {@link TicketDAO} calls made by the {@link ParkingService}.
+	 */
+	private static final class TimedTicketDAO extends TicketDAO {
+		private final LatencyRecorder recorder;
+
+		private TimedTicketDAO(LatencyRecorder recorder) {
+			this.recorder = recorder;
+		}
+
+		@Override
+		public int getNbTicket(String vehicleRegNumber) {
+			long start = System.nanoTime();
+			try {
+				return super.getNbTicket(vehicleRegNumber);
+			} finally {
+				recorder.record("dao.TicketDAO.getNbTicket", System.nanoTime() - start);
+			}
+		}
+
+		@Override
+		public Ticket getActiveTicket(String vehicleRegNumber) {
+			long start = System.nanoTime();
+			try {
+				return super.getActiveTicket(vehicleRegNumber);
+			} finally {
+				recorder.record("dao.TicketDAO.getActiveTicket", System.nanoTime() - start);
+			}
+		}
+	}
+
+	/**
+	 * Times the {@link ParkingTransactionDAO} calls made by the
+	 * {@link ParkingService}.
+	 */
+	private static final class TimedParkingTransactionDAO extends ParkingTransactionDAO {
+		private final LatencyRecorder recorder;
+
+		private TimedParkingTransactionDAO(ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO,
+				LatencyRecorder recorder) {
+			super(parkingSpotDAO, ticketDAO);
+			this.recorder = recorder;
+		}
+
+		@Override
+		public int enter(Ticket ticket) {
+			long start = System.nanoTime();
+			try {
+				return super.enter(ticket);
+			} finally {
+				recorder.record("dao.ParkingTransactionDAO.enter", System.nanoTime() - start);
+			}
+		}
+
+		@Override
+		public boolean exit(Ticket ticket) {
+			long start = System.nanoTime();
+			try {
+				return super.exit(ticket);
+			} finally {
+				recorder.record("dao.ParkingTransactionDAO.exit", System.nanoTime() - start);
+			}
+		}
+	}
+}
@@ -0,0 +1,282 @@
+package com.parkit.parkingsystem.snapshot;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * The in-memory state of the gates at one point in time: the free spots, the
+ * open tickets and the cached visit counts, with the high-water mark of the
+ * ticket table they reflect, so that a restart can load it and only read the
+ * tickets saved since.
+ * <p>
+ * A snapshot is written to a memory-mapped file: a header of a magic number,
+ * the format {@link #VERSION}, the length of the payload and its CRC-32C, then
+ * the payload. It is written to a temporary file first and moved over the
+ * previous one, so that a crash while writing leaves the previous snapshot. A
+ * file with another version, a wrong length or a wrong checksum is refused.
+ * </p>
+ */
+public class StateSnapshot {
+
+	public static final int VERSION = 1;
+
+	// "PKSN"
+	private static final int MAGIC = 0x504b534e;
+	private static final int HEADER_BYTES = 4 + 4 + 4 + 4;
+
+	private final long takenAt;
+	private final int maxTicketId;
+	private final Map<ParkingType, BitSet> freeSpots;
+	private final Map<ParkingType, Integer> spotCounts;
+	private final List<Ticket> openTickets;
+	private long[] plates = new long[64];
+	private int[] visitCounts = new int[64];
+	private int visitCountSize;
+
+	/**
+	 * @param takenAt     when the state was read, in epoch milliseconds
+	 * @param maxTicketId the highest ticket id when the state was read
+	 */
+	public StateSnapshot(long takenAt, int maxTicketId, Map<ParkingType, BitSet> freeSpots,
+			Map<ParkingType, Integer> spotCounts, List<Ticket> openTickets) {
+		this.takenAt = takenAt;
+		this.maxTicketId = maxTicketId;
+		this.freeSpots = freeSpots;
+		this.spotCounts = spotCounts;
+		this.openTickets = openTickets;
+	}
+
+	/**
+	 * @param plate a plate encoded by
+	 *              {@link com.parkit.parkingsystem.util.PlateCodec}
+	 */
+	public void addVisitCount(long plate, int visitCount) {
+		if (visitCountSize == plates.length) {
+			plates = Arrays.copyOf(plates, visitCountSize * 2);
+			visitCounts = Arrays.copyOf(visitCounts, visitCountSize * 2);
+		}
+		plates[visitCountSize] = plate;
+		visitCounts[visitCountSize] = visitCount;
+		visitCountSize++;
+	}
+
+	public long getTakenAt() {
+		return takenAt;
+	}
+
+	public int getMaxTicketId() {
+		return maxTicketId;
+	}
+
+	public Map<ParkingType, BitSet> getFreeSpots() {
+		return freeSpots;
+	}
+
+	public Map<ParkingType, Integer> getSpotCounts() {
+		return spotCounts;
+	}
+
+	public List<Ticket> getOpenTickets() {
+		return openTickets;
+	}
+
+	public int getVisitCountSize() {
+		return visitCountSize;
+	}
+
+	public long getPlate(int i) {
+		return plates[i];
+	}
+
+	public int getVisitCount(int i) {
+		return visitCounts[i];
+	}
+
+	/**
+	 * Writes the snapshot to the file, replacing the previous one in one step.
+	 *
+	 * @return the size of the file
+	 */
+	public long write(Path file) throws IOException {
+		List<byte[]> plateBytes = new ArrayList<>(openTickets.size());
+		long payloadBytes = 8 + 4 + 4;
+		for (ParkingType parkingType : ParkingType.values()) {
+			long[] words = freeSpots.getOrDefault(parkingType, new BitSet()).toLongArray();
+			payloadBytes += 2 + parkingType.name().length() + 4 + 4 + 8L * words.length;
+		}
+		payloadBytes += 4;
+		for (Ticket ticket : openTickets) {
+			byte[] plate = ticket.getVehicleRegNumber().getBytes(StandardCharsets.UTF_8);
+			plateBytes.add(plate);
+			payloadBytes += 4 + 4 + 2 + ticket.getParkingSpot().getParkingType().name().length() + 8 + 8 + 2
+					+ plate.length;
+		}
+		payloadBytes += 4 + 12L * visitCountSize;
+		if (HEADER_BYTES + payloadBytes > Integer.MAX_VALUE) {
+			throw new IOException("State snapshot of " + payloadBytes + " bytes is too large");
+		}
+
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + payloadBytes);
+			buffer.position(HEADER_BYTES);
+			buffer.putLong(takenAt);
+			buffer.putInt(maxTicketId);
+			buffer.putInt(ParkingType.values().length);
+			for (ParkingType parkingType : ParkingType.values()) {
+				long[] words = freeSpots.getOrDefault(parkingType, new BitSet()).toLongArray();
+				putName(buffer, parkingType.name());
+				buffer.putInt(spotCounts.getOrDefault(parkingType, 0));
+				buffer.putInt(words.length);
+				for (long word : words) {
+					buffer.putLong(word);
+				}
+			}
+			buffer.putInt(openTickets.size());
+			for (int i = 0; i < openTickets.size(); i++) {
+				Ticket ticket = openTickets.get(i);
+				buffer.putInt(ticket.getId());
+				buffer.putInt(ticket.getParkingSpot().getId());
+				putName(buffer, ticket.getParkingSpot().getParkingType().name());
+				buffer.putDouble(ticket.getPrice());
+				buffer.putLong(ticket.getInTime().getTime());
+				buffer.putShort((short) plateBytes.get(i).length);
+				buffer.put(plateBytes.get(i));
+			}
+			buffer.putInt(visitCountSize);
+			for (int i = 0; i < visitCountSize; i++) {
+				buffer.putLong(plates[i]);
+				buffer.putInt(visitCounts[i]);
+			}
+
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			buffer.putInt(8, (int) payloadBytes);
+			buffer.putInt(12, checksum(buffer, (int) payloadBytes));
+			buffer.force();
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return HEADER_BYTES + payloadBytes;
+	}
+
+	/**
+	 * @return the snapshot in the file, or {@code null} if there is none
+	 * @throws IOException if the file cannot be read, or is not a snapshot of
+	 *                     this version with the right checksum
+	 */
+	public static StateSnapshot read(Path file) throws IOException {
+		if (!Files.exists(file)) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+				throw new IOException("Not a state snapshot: " + file);
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (buffer.getInt(0) != MAGIC) {
+				throw new IOException("Not a state snapshot: " + file);
+			}
+			if (buffer.getInt(4) != VERSION) {
+				throw new IOException("State snapshot " + file + " has version " + buffer.getInt(4) + ", expected "
+						+ VERSION);
+			}
+			int payloadBytes = buffer.getInt(8);
+			if (payloadBytes != size - HEADER_BYTES || buffer.getInt(12) != checksum(buffer, payloadBytes)) {
+				throw new IOException("State snapshot " + file + " is truncated or corrupted");
+			}
+			return read(buffer);
+		} catch (RuntimeException e) {
+			// a payload that does not parse although its checksum matched
+			throw new IOException("Unable to read state snapshot " + file, e);
+		}
+	}
+
+	private static StateSnapshot read(ByteBuffer buffer) throws IOException {
+		buffer.position(HEADER_BYTES);
+		long takenAt = buffer.getLong();
+		int maxTicketId = buffer.getInt();
+		Map<ParkingType, BitSet> freeSpots = new EnumMap<>(ParkingType.class);
+		Map<ParkingType, Integer> spotCounts = new EnumMap<>(ParkingType.class);
+		int typeCount = buffer.getInt();
+		for (int t = 0; t < typeCount; t++) {
+			ParkingType parkingType = parkingType(getName(buffer));
+			spotCounts.put(parkingType, buffer.getInt());
+			long[] words = new long[buffer.getInt()];
+			for (int i = 0; i < words.length; i++) {
+				words[i] = buffer.getLong();
+			}
+			freeSpots.put(parkingType, BitSet.valueOf(words));
+		}
+		int ticketCount = buffer.getInt();
+		List<Ticket> openTickets = new ArrayList<>(ticketCount);
+		for (int i = 0; i < ticketCount; i++) {
+			Ticket ticket = new Ticket();
+			ticket.setId(buffer.getInt());
+			int parkingNumber = buffer.getInt();
+			ticket.setParkingSpot(new ParkingSpot(parkingNumber, parkingType(getName(buffer)), false));
+			ticket.setPrice(buffer.getDouble());
+			ticket.setInTime(new Date(buffer.getLong()));
+			byte[] plate = new byte[buffer.getShort()];
+			buffer.get(plate);
+			ticket.setVehicleRegNumber(new String(plate, StandardCharsets.UTF_8));
+			openTickets.add(ticket);
+		}
+		StateSnapshot snapshot = new StateSnapshot(takenAt, maxTicketId, freeSpots, spotCounts, openTickets);
+		int visitCountSize = buffer.getInt();
+		snapshot.plates = new long[Math.max(64, visitCountSize)];
+		snapshot.visitCounts = new int[snapshot.plates.length];
+		for (int i = 0; i < visitCountSize; i++) {
+			snapshot.plates[i] = buffer.getLong();
+			snapshot.visitCounts[i] = buffer.getInt();
+		}
+		snapshot.visitCountSize = visitCountSize;
+		return snapshot;
+	}
+
+	private static int checksum(ByteBuffer buffer, int payloadBytes) {
+		CRC32C crc = new CRC32C();
+		crc.update(buffer.duplicate().position(HEADER_BYTES).limit(HEADER_BYTES + payloadBytes));
+		return (int) crc.getValue();
+	}
+
+	// parking type names are ASCII
+	private static void putName(ByteBuffer buffer, String name) {
+		buffer.putShort((short) name.length());
+		buffer.put(name.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	private static String getName(ByteBuffer buffer) {
+		byte[] name = new byte[buffer.getShort()];
+		buffer.get(name);
+		return new String(name, StandardCharsets.US_ASCII);
+	}
+
+	private static ParkingType parkingType(String name) throws IOException {
+		try {
+			return ParkingType.valueOf(name);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("State snapshot has an unknown parking type " + name, e);
+		}
+	}
+}
@@ -24,10 +24,12 @@ public class InputReaderUtil {
 	public String readVehicleRegistrationNumber() throws Exception {
 		try {
 			String vehicleRegNumber = scan.nextLine();
-			if (vehicleRegNumber == null || vehicleRegNumber.trim().length() == 0) {
+			if (vehicleRegNumber == null || vehicleRegNumber.trim().length() == 0
+					|| vehicleRegNumber.trim().length() > PlateCodec.MAX_LENGTH) {
 				throw new IllegalArgumentException("Invalid input provided");
 			}
-			return vehicleRegNumber;
+			// the same plate typed in lower case or with spaces around is the same vehicle
+			return PlateCodec.normalize(vehicleRegNumber);
 		} catch (Exception e) {
 			logger.error("Error while reading user input from Shell", e);
 			System.out.println("Error reading input. Please enter a valid string for vehicle registration number");
@@ -0,0 +1,112 @@
+package com.parkit.parkingsystem.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe histogram of latencies in nanoseconds with a bounded relative
+ * error, in the manner of HdrHistogram.
+ * <p>
+ * Values below 128 are counted exactly. Above, each power of two range is
+ * split into 64 linear buckets, so a value is known within 1/64 (about 1.6%)
+ * whatever its magnitude, and the histogram has a fixed size of
+ * {@value #BUCKET_COUNT} buckets. Recording is lock-free and allocates nothing.
+ * </p>
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final LongAdder totalCount = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final AtomicLong minNanos = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong maxNanos = new AtomicLong(0L);
+
+	/**
+	 * Records one latency. A negative value is recorded as 0.
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0L, nanos);
+		counts.incrementAndGet(bucketIndex(value));
+		totalCount.increment();
+		totalNanos.add(value);
+		minNanos.accumulateAndGet(value, Math::min);
+		maxNanos.accumulateAndGet(value, Math::max);
+	}
+
+	/**
+	 * Adds every value recorded by another histogram to this one.
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			long count = other.counts.get(i);
+			if (count > 0) {
+				counts.addAndGet(i, count);
+			}
+		}
+		totalCount.add(other.totalCount.sum());
+		totalNanos.add(other.totalNanos.sum());
+		minNanos.accumulateAndGet(other.minNanos.get(), Math::min);
+		maxNanos.accumulateAndGet(other.maxNanos.get(), Math::max);
+	}
+
+	public long getCount() {
+		return totalCount.sum();
+	}
+
+	/**
+	 * @return the lowest recorded value, or 0 if nothing was recorded
+	 */
+	public long getMinNanos() {
+		return getCount() == 0 ? 0L : minNanos.get();
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	public double getMeanNanos() {
+		long count = getCount();
+		return count == 0 ? 0.0 : (double) totalNanos.sum() / count;
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the value below or at which the given percentage of the recorded
+	 *         values fall, as the upper bound of its bucket, never above the
+	 *         highest recorded value; 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long count = getCount();
+		if (count == 0) {
+			return 0L;
+		}
+		long rank = Math.max(1L, (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(bucketUpperBound(i), getMaxNanos());
+			}
+		}
+		return getMaxNanos();
+	}
+
+	static int bucketIndex(long value) {
+		int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+		return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+	}
+
+	static long bucketUpperBound(int index) {
+		if (index < 2 * SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = (index >>> SUB_BUCKET_BITS) - 1;
+		long subBucket = index - ((long) shift << SUB_BUCKET_BITS);
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
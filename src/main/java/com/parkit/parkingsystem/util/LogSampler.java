@@ -0,0 +1,25 @@
+package com.parkit.parkingsystem.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sampling of the log messages emitted on every call of a hot path, such as
+ * each connection borrowed: only about one call in {@code rate} is logged.
+ * <p>
+ * The choice is random rather than counted, so the threads of the gates share
+ * no counter and sampling allocates nothing.
+ * </p>
+ */
+public final class LogSampler {
+
+	private LogSampler() {
+	}
+
+	/**
+	 * @return {@code true} for about one call in {@code rate}, always if
+	 *         {@code rate} is 1 or less
+	 */
+	public static boolean sample(int rate) {
+		return rate <= 1 || ThreadLocalRandom.current().nextInt(rate) == 0;
+	}
+}
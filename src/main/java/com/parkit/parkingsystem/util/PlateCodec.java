@@ -0,0 +1,96 @@
+package com.parkit.parkingsystem.util;
+
+import java.util.Locale;
+
+/**
+ * Normalizes vehicle registration numbers and packs them into a single
+ * {@code long}, so that the in-memory structures indexed by plate can hold
+ * primitive keys instead of strings.
+ * <p>
+ * A plate is normalized by trimming it and upper-casing it, which is how the
+ * {@code VEHICLE_REG_NUMBER} column already compares plates. A normalized plate
+ * of at most {@link #MAX_LENGTH} characters, each from space to {@code ^} in
+ * ASCII (the letters, the digits and the usual separators), is encoded in
+ * 6 bits per character, the first character in the highest bits: codes are
+ * positive, never 0, and sort like the plates they encode. Any other plate is
+ * {@link #NOT_ENCODABLE}.
+ * </p>
+ */
+public final class PlateCodec {
+
+	/**
+	 * The length of the {@code VEHICLE_REG_NUMBER} column.
+	 */
+	public static final int MAX_LENGTH = 10;
+
+	public static final long NOT_ENCODABLE = -1L;
+
+	private static final int BITS = 6;
+	private static final char FIRST = ' ';
+	private static final char LAST = '^';
+
+	private PlateCodec() {
+	}
+
+	/**
+	 * @return the plate trimmed and upper-cased, so that the same plate typed
+	 *         with a different case or surrounding spaces is the same key
+	 */
+	public static String normalize(String vehicleRegNumber) {
+		return vehicleRegNumber.trim().toUpperCase(Locale.ROOT);
+	}
+
+	/**
+	 * @return the code of the normalized plate, or {@link #NOT_ENCODABLE} if it
+	 *         is empty, too long or has a character outside the alphabet
+	 */
+	public static long encode(String vehicleRegNumber) {
+		if (vehicleRegNumber == null) {
+			return NOT_ENCODABLE;
+		}
+		// trim and upper-case while encoding, rather than allocating the normalized string
+		int start = 0;
+		int end = vehicleRegNumber.length();
+		while (start < end && vehicleRegNumber.charAt(start) <= ' ') {
+			start++;
+		}
+		while (end > start && vehicleRegNumber.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		int length = end - start;
+		if (length == 0 || length > MAX_LENGTH) {
+			return NOT_ENCODABLE;
+		}
+		long code = 0;
+		for (int i = start; i < end; i++) {
+			char c = vehicleRegNumber.charAt(i);
+			if (c >= 'a' && c <= 'z') {
+				c -= 'a' - 'A';
+			} else if (c < FIRST || c > LAST) {
+				return NOT_ENCODABLE;
+			}
+			code = (code << BITS) | (c - FIRST + 1);
+		}
+		// pad on the right, so that a shorter plate sorts before the longer ones it starts
+		return code << (BITS * (MAX_LENGTH - length));
+	}
+
+	/**
+	 * @return the normalized plate of a code returned by {@link #encode(String)}
+	 */
+	public static String decode(long code) {
+		if (code <= 0 || code >>> (BITS * MAX_LENGTH) != 0) {
+			throw new IllegalArgumentException("Not a plate code: " + code);
+		}
+		char[] chars = new char[MAX_LENGTH];
+		int length = 0;
+		for (int shift = BITS * (MAX_LENGTH - 1); shift >= 0; shift -= BITS) {
+			int c = (int) (code >>> shift) & ((1 << BITS) - 1);
+			if (c == 0) {
+				break;
+			}
+			chars[length++] = (char) (FIRST + c - 1);
+		}
+		return new String(chars, 0, length);
+	}
+}
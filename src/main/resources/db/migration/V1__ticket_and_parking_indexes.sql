@@ -0,0 +1,10 @@
+-- GET_TICKET: latest ticket of a vehicle (where VEHICLE_REG_NUMBER = ? order by IN_TIME desc limit 1),
+-- and COUNT_TICKET, become index range reads instead of full scans
+create index idx_ticket_vehicle_in_time on ticket (VEHICLE_REG_NUMBER, IN_TIME);
+
+-- open tickets (OUT_TIME is null), overall or for one vehicle. MySQL has no partial
+-- index, but an index leading with OUT_TIME serves the "is null" lookup
+create index idx_ticket_open on ticket (OUT_TIME, VEHICLE_REG_NUMBER);
+
+-- GET_NEXT_PARKING_SPOT: min(PARKING_NUMBER) for a type among the available spots
+create index idx_parking_type_available on parking (TYPE, AVAILABLE, PARKING_NUMBER);
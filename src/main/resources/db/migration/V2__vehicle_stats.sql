@@ -0,0 +1,9 @@
+-- per vehicle visit counter read by TicketDAO.getNbTicket, for databases created
+-- before the table was added to Data.sql
+create table if not exists vehicle_stats(
+ VEHICLE_REG_NUMBER varchar(10) PRIMARY KEY,
+ VISIT_COUNT int NOT NULL);
+
+insert into vehicle_stats(VEHICLE_REG_NUMBER, VISIT_COUNT)
+ select VEHICLE_REG_NUMBER, count(*) from ticket group by VEHICLE_REG_NUMBER
+ on duplicate key update VISIT_COUNT = values(VISIT_COUNT);
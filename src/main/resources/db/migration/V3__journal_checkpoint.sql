@@ -0,0 +1,12 @@
+-- tickets entered through the offline journal carry the sequence of their journal
+-- record: replaying a record twice hits the unique index instead of a second ticket
+alter table ticket add column JOURNAL_SEQUENCE bigint;
+create unique index idx_ticket_journal_sequence on ticket (JOURNAL_SEQUENCE);
+
+-- sequence of the last journal record applied to the database, moved in the same
+-- transaction as the record itself
+create table if not exists journal_checkpoint(
+ ID int PRIMARY KEY,
+ SEQUENCE bigint NOT NULL);
+
+insert ignore into journal_checkpoint(ID, SEQUENCE) values(1, 0);
@@ -0,0 +1,14 @@
+-- per hour and parking type activity, maintained by TicketDAO in the transaction that
+-- saves or closes a ticket, so that reports do not aggregate the ticket table.
+-- Entries count in the hour of their IN_TIME, exits with their revenue and duration
+-- in the hour of their OUT_TIME. Hours before this table existed are filled in with
+-- the RollupBackfill tool
+create table if not exists ticket_rollup_hourly(
+ HOUR_START DATETIME NOT NULL,
+ TYPE varchar(10) NOT NULL,
+ ENTRIES int NOT NULL DEFAULT 0,
+ EXITS int NOT NULL DEFAULT 0,
+ REVENUE double NOT NULL DEFAULT 0,
+ TOTAL_DURATION_MILLIS bigint NOT NULL DEFAULT 0,
+ PEAK_OCCUPANCY int NOT NULL DEFAULT 0,
+ PRIMARY KEY (HOUR_START, TYPE));
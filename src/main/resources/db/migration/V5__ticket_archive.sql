@@ -0,0 +1,5 @@
+-- closed tickets older than parkit.archive.maxAgeDays leave the ticket table for the
+-- monthly ticket_archive_YYYYMM tables, see TicketArchiver. VISIT_COUNT keeps counting
+-- them for the loyalty discount; ARCHIVED_COUNT tells how many of them were archived,
+-- for the billing run, which only reads the ticket table
+alter table vehicle_stats add column ARCHIVED_COUNT int NOT NULL DEFAULT 0;
@@ -0,0 +1,75 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.cache.ActiveTicketRegistry;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ActiveTicketRegistryTest {
+
+	private ActiveTicketRegistry activeTicketRegistry;
+
+	@BeforeEach
+	public void setUpPerTest() {
+		activeTicketRegistry = new ActiveTicketRegistry();
+	}
+
+	private Ticket openTicket(int id, String vehicleRegNumber) {
+		Ticket ticket = new Ticket();
+		ticket.setId(id);
+		ticket.setVehicleRegNumber(vehicleRegNumber);
+		ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+		ticket.setInTime(new Date());
+		return ticket;
+	}
+
+	/**
+	 * The same plate typed with another case or surrounding spaces finds the
+	 * ticket.
+	 */
+	@Test
+	public void findNormalizesRegistrationNumber() {
+		activeTicketRegistry.register(openTicket(1, "ab-123-cd"));
+
+		Ticket ticket = activeTicketRegistry.find("  AB-123-CD ");
+
+		assertNotNull(ticket);
+		assertEquals(1, ticket.getId());
+	}
+
+	/**
+	 * Changing a ticket got from the registry does not change the registry.
+	 */
+	@Test
+	public void findReturnsCopy() {
+		activeTicketRegistry.register(openTicket(1, "ABCDEF"));
+
+		Ticket ticket = activeTicketRegistry.find("ABCDEF");
+		ticket.setOutTime(new Date());
+		ticket.getParkingSpot().setAvailable(true);
+
+		assertNull(activeTicketRegistry.find("ABCDEF").getOutTime());
+		assertFalse(activeTicketRegistry.find("ABCDEF").getParkingSpot().isAvailable());
+	}
+
+	/**
+	 * Closing an older ticket of the vehicle does not remove its current one.
+	 */
+	@Test
+	public void removeOnlyRemovesSameTicket() {
+		activeTicketRegistry.register(openTicket(2, "ABCDEF"));
+
+		activeTicketRegistry.remove(openTicket(1, "ABCDEF"));
+		assertNotNull(activeTicketRegistry.find("ABCDEF"));
+
+		activeTicketRegistry.remove(openTicket(2, "ABCDEF"));
+		assertNull(activeTicketRegistry.find("ABCDEF"));
+		assertEquals(0, activeTicketRegistry.size());
+	}
+}
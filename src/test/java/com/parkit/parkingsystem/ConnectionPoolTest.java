@@ -0,0 +1,322 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.ConnectionPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConnectionPoolTest {
+
+	private List<FakeConnection> openedConnections;
+	private ConnectionPool connectionPool;
+
+	@BeforeEach
+	public void setUpPerTest() {
+		openedConnections = new ArrayList<>();
+		connectionPool = new ConnectionPool(this::openConnection, 2, 50, 60000, 1);
+	}
+
+	@AfterEach
+	public void tearDownPerTest() {
+		connectionPool.close();
+	}
+
+	private Connection openConnection() {
+		FakeConnection fake = new FakeConnection();
+		openedConnections.add(fake);
+		return fake.connection;
+	}
+
+	/**
+	 * A connection given back to the pool is handed out again instead of
+	 * opening a new one.
+	 */
+	@Test
+	public void borrowReusesReleasedConnection() throws Exception {
+		Connection first = connectionPool.borrow();
+		first.close();
+		Connection second = connectionPool.borrow();
+
+		assertEquals(1, openedConnections.size());
+		assertFalse(openedConnections.get(0).closed.get());
+		assertEquals(1, connectionPool.getActiveCount());
+		assertEquals(0, connectionPool.getIdleCount());
+		assertEquals(2, connectionPool.getBorrowCount());
+		second.close();
+		assertEquals(1, connectionPool.getIdleCount());
+	}
+
+	/**
+	 * Once every connection is borrowed, the next borrow gives up after the max
+	 * wait and the exhaustion counter is incremented.
+	 */
+	@Test
+	public void borrowTimesOutWhenPoolExhausted() throws Exception {
+		connectionPool.borrow();
+		connectionPool.borrow();
+
+		assertThrows(SQLTimeoutException.class, () -> connectionPool.borrow());
+		assertEquals(1, connectionPool.getExhaustedCount());
+		assertEquals(1, connectionPool.getWaitedBorrowCount());
+		assertEquals(2, connectionPool.getActiveCount());
+	}
+
+	/**
+	 * An idle connection that fails validation is closed and replaced by a new
+	 * one on the next borrow.
+	 */
+	@Test
+	public void borrowReplacesInvalidIdleConnection() throws Exception {
+		connectionPool.borrow().close();
+		openedConnections.get(0).valid.set(false);
+
+		connectionPool.borrow();
+
+		assertEquals(2, openedConnections.size());
+		assertTrue(openedConnections.get(0).closed.get());
+		assertEquals(1, connectionPool.getValidationFailureCount());
+	}
+
+	/**
+	 * Idle connections older than the idle timeout are closed by the eviction.
+	 */
+	@Test
+	public void evictIdleConnectionsClosesExpiredConnections() throws Exception {
+		ConnectionPool shortIdlePool = new ConnectionPool(this::openConnection, 2, 50, 1, 1);
+		shortIdlePool.borrow().close();
+		Thread.sleep(10);
+
+		shortIdlePool.evictIdleConnections();
+
+		assertEquals(0, shortIdlePool.getIdleCount());
+		assertTrue(openedConnections.get(0).closed.get());
+		shortIdlePool.close();
+	}
+
+	/**
+	 * A connection used after being given back to the pool is rejected, and
+	 * closing it twice does not release it twice.
+	 */
+	@Test
+	public void closedLeaseCannotBeReused() throws Exception {
+		Connection connection = connectionPool.borrow();
+		connection.close();
+		connection.close();
+
+		assertTrue(connection.isClosed());
+		assertThrows(java.sql.SQLException.class, () -> connection.prepareStatement("select 1"));
+		assertEquals(1, connectionPool.getIdleCount());
+		assertEquals(0, connectionPool.getActiveCount());
+	}
+
+	/**
+	 * A statement closed by the borrower stays prepared on its connection and is
+	 * handed out again on the next borrow.
+	 */
+	@Test
+	public void preparedStatementIsCachedPerConnection() throws Exception {
+		ConnectionPool cachingPool = new ConnectionPool(this::openConnection, 2, 50, 60000, 1, 8);
+		for (int i = 0; i < 3; i++) {
+			Connection connection = cachingPool.borrow();
+			PreparedStatement ps = connection.prepareStatement("select 1");
+			ps.setInt(1, i);
+			ps.close();
+			assertTrue(ps.isClosed());
+			assertThrows(java.sql.SQLException.class, () -> ps.setInt(1, 0));
+			connection.close();
+		}
+
+		FakeConnection fake = openedConnections.get(0);
+		assertEquals(1, fake.prepared.get());
+		assertEquals(0, fake.closedStatements.get());
+		assertEquals(2, cachingPool.getStatementCacheHits());
+		assertEquals(1, cachingPool.getStatementCacheMisses());
+		cachingPool.close();
+		assertEquals(1, fake.closedStatements.get());
+	}
+
+	/**
+	 * The same SQL prepared twice in a lease gets a second statement, and the
+	 * statements left open are reclaimed when the connection is given back.
+	 */
+	@Test
+	public void leakedStatementsAreReclaimedOnRelease() throws Exception {
+		ConnectionPool cachingPool = new ConnectionPool(this::openConnection, 2, 50, 60000, 1, 8);
+		Connection connection = cachingPool.borrow();
+		PreparedStatement cached = connection.prepareStatement("select 1");
+		connection.prepareStatement("select 1");
+		connection.close();
+
+		FakeConnection fake = openedConnections.get(0);
+		assertEquals(2, cachingPool.getLeakedStatementCount());
+		assertEquals(1, fake.closedStatements.get());
+		assertTrue(cached.isClosed());
+
+		Connection next = cachingPool.borrow();
+		next.prepareStatement("select 1").close();
+		next.close();
+		assertEquals(1, cachingPool.getStatementCacheHits());
+		assertEquals(2, cachingPool.getStatementCacheMisses());
+		assertEquals(2, fake.prepared.get());
+		cachingPool.close();
+	}
+
+	/**
+	 * A statement closed with a pending batch and changed settings is handed out
+	 * again without the batch, with the settings it was prepared with.
+	 */
+	@Test
+	public void cachedStatementIsResetOnClose() throws Exception {
+		ConnectionPool cachingPool = new ConnectionPool(this::openConnection, 2, 50, 60000, 1, 8);
+		Connection connection = cachingPool.borrow();
+		PreparedStatement ps = connection.prepareStatement("insert into t values(?)");
+		ps.setInt(1, 1);
+		ps.addBatch();
+		ps.setInt(1, 2);
+		ps.setFetchSize(1000);
+		ps.setMaxRows(10);
+		ps.setQueryTimeout(5);
+		ps.close();
+		connection.close();
+
+		Connection next = cachingPool.borrow();
+		PreparedStatement reused = next.prepareStatement("insert into t values(?)");
+		FakeStatement fake = openedConnections.get(0).statements.get(0);
+		assertEquals(1, cachingPool.getStatementCacheHits());
+		assertEquals(0, fake.batch.get());
+		assertEquals(0, fake.parameters.get());
+		assertEquals(0, reused.getFetchSize());
+		assertEquals(0, reused.getMaxRows());
+		assertEquals(0, reused.getQueryTimeout());
+		reused.close();
+		next.close();
+		cachingPool.close();
+	}
+
+	/**
+	 * A statement that cannot be reset is closed and prepared again on the next
+	 * borrow.
+	 */
+	@Test
+	public void cachedStatementIsEvictedWhenResetFails() throws Exception {
+		ConnectionPool cachingPool = new ConnectionPool(this::openConnection, 2, 50, 60000, 1, 8);
+		Connection connection = cachingPool.borrow();
+		PreparedStatement ps = connection.prepareStatement("select 1");
+		openedConnections.get(0).statements.get(0).failReset.set(true);
+		ps.close();
+		connection.close();
+
+		Connection next = cachingPool.borrow();
+		next.prepareStatement("select 1").close();
+		next.close();
+
+		FakeConnection fake = openedConnections.get(0);
+		assertEquals(1, fake.closedStatements.get());
+		assertEquals(2, fake.prepared.get());
+		assertEquals(0, cachingPool.getStatementCacheHits());
+		cachingPool.close();
+	}
+
+	private static class FakeConnection {
+		private final AtomicBoolean closed = new AtomicBoolean();
+		private final AtomicBoolean valid = new AtomicBoolean(true);
+		private final AtomicInteger prepared = new AtomicInteger();
+		private final AtomicInteger closedStatements = new AtomicInteger();
+		private final List<FakeStatement> statements = new ArrayList<>();
+		private final Connection connection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "close":
+						closed.set(true);
+						return null;
+					case "isClosed":
+						return closed.get();
+					case "isValid":
+						return valid.get();
+					case "getAutoCommit":
+						return true;
+					case "prepareStatement":
+						prepared.incrementAndGet();
+						return statement();
+					default:
+						return null;
+					}
+				});
+
+		private PreparedStatement statement() {
+			FakeStatement statement = new FakeStatement(closedStatements);
+			statements.add(statement);
+			return statement.statement;
+		}
+	}
+
+	private static class FakeStatement {
+		private final AtomicBoolean closed = new AtomicBoolean();
+		private final AtomicBoolean failReset = new AtomicBoolean();
+		private final AtomicInteger parameters = new AtomicInteger();
+		private final AtomicInteger batch = new AtomicInteger();
+		private final AtomicInteger fetchSize = new AtomicInteger();
+		private final AtomicInteger maxRows = new AtomicInteger();
+		private final AtomicInteger queryTimeout = new AtomicInteger();
+		private final PreparedStatement statement;
+
+		private FakeStatement(AtomicInteger closedStatements) {
+			statement = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+						switch (method.getName()) {
+						case "close":
+							if (closed.compareAndSet(false, true)) {
+								closedStatements.incrementAndGet();
+							}
+							return null;
+						case "isClosed":
+							return closed.get();
+						case "setInt":
+							parameters.incrementAndGet();
+							return null;
+						case "clearParameters":
+							parameters.set(0);
+							return null;
+						case "addBatch":
+							batch.incrementAndGet();
+							return null;
+						case "clearBatch":
+							if (failReset.get()) {
+								throw new SQLException("Statement is broken");
+							}
+							batch.set(0);
+							return null;
+						case "setFetchSize":
+							fetchSize.set((Integer) args[0]);
+							return null;
+						case "getFetchSize":
+							return fetchSize.get();
+						case "setMaxRows":
+							maxRows.set((Integer) args[0]);
+							return null;
+						case "getMaxRows":
+							return maxRows.get();
+						case "setQueryTimeout":
+							queryTimeout.set((Integer) args[0]);
+							return null;
+						case "getQueryTimeout":
+							return queryTimeout.get();
+						default:
+							return null;
+						}
+					});
+		}
+	}
+}
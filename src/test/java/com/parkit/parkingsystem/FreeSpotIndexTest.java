@@ -0,0 +1,125 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.cache.FreeSpotIndex;
+import com.parkit.parkingsystem.constants.ParkingType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FreeSpotIndexTest {
+
+	private FreeSpotIndex freeSpotIndex;
+
+	@BeforeEach
+	public void setUpPerTest() {
+		// same layout as Data.sql: spots 1 to 3 for cars, 4 and 5 for bikes
+		Map<ParkingType, BitSet> spots = new EnumMap<>(ParkingType.class);
+		BitSet carSpots = new BitSet();
+		carSpots.set(1, 4);
+		BitSet bikeSpots = new BitSet();
+		bikeSpots.set(4, 6);
+		spots.put(ParkingType.CAR, carSpots);
+		spots.put(ParkingType.BIKE, bikeSpots);
+		freeSpotIndex = new FreeSpotIndex();
+		freeSpotIndex.reload(spots);
+	}
+
+	@Test
+	public void lowestFreeReturnsLowestSpotOfType() {
+		assertEquals(1, freeSpotIndex.lowestFree(ParkingType.CAR));
+		assertEquals(4, freeSpotIndex.lowestFree(ParkingType.BIKE));
+	}
+
+	/**
+	 * Taking a spot moves the lowest free spot to the next one, releasing it
+	 * makes it the lowest again.
+	 */
+	@Test
+	public void lowestFreeFollowsUpdates() {
+		freeSpotIndex.setAvailable(ParkingType.CAR, 1, false);
+		assertEquals(2, freeSpotIndex.lowestFree(ParkingType.CAR));
+
+		freeSpotIndex.setAvailable(ParkingType.CAR, 1, true);
+		assertEquals(1, freeSpotIndex.lowestFree(ParkingType.CAR));
+	}
+
+	@Test
+	public void lowestFreeReturnsZeroWhenFull() {
+		freeSpotIndex.setAvailable(ParkingType.BIKE, 4, false);
+		freeSpotIndex.setAvailable(ParkingType.BIKE, 5, false);
+
+		assertEquals(0, freeSpotIndex.lowestFree(ParkingType.BIKE));
+		assertEquals(0, freeSpotIndex.countFree(ParkingType.BIKE));
+	}
+
+	/**
+	 * Reloading reports how many spots differed from the database content.
+	 */
+	@Test
+	public void reloadReportsDrift() {
+		freeSpotIndex.setAvailable(ParkingType.CAR, 1, false);
+		freeSpotIndex.setAvailable(ParkingType.CAR, 2, false);
+
+		Map<ParkingType, BitSet> spots = new EnumMap<>(ParkingType.class);
+		BitSet carSpots = new BitSet();
+		carSpots.set(1, 4);
+		spots.put(ParkingType.CAR, carSpots);
+
+		assertEquals(4, freeSpotIndex.reload(spots)); // 2 car spots freed, 2 bike spots gone
+		assertEquals(1, freeSpotIndex.lowestFree(ParkingType.CAR));
+		assertEquals(0, freeSpotIndex.lowestFree(ParkingType.BIKE));
+	}
+
+	/**
+	 * Many threads claiming at the same time never get the same spot, and get
+	 * exactly as many spots as there are free ones.
+	 */
+	@Test
+	public void claimLowestNeverHandsOutTheSameSpotTwice() throws Exception {
+		Map<ParkingType, BitSet> spots = new EnumMap<>(ParkingType.class);
+		BitSet carSpots = new BitSet();
+		carSpots.set(1, 1001);
+		spots.put(ParkingType.CAR, carSpots);
+		freeSpotIndex.reload(spots);
+
+		int threads = 16;
+		Set<Integer> claimed = ConcurrentHashMap.newKeySet();
+		AtomicInteger duplicates = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int i = 0; i < threads; i++) {
+			executor.execute(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				int number;
+				while ((number = freeSpotIndex.claimLowest(ParkingType.CAR)) > 0) {
+					if (!claimed.add(number)) {
+						duplicates.incrementAndGet();
+					}
+				}
+			});
+		}
+		start.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		assertEquals(0, duplicates.get());
+		assertEquals(1000, claimed.size());
+		assertEquals(0, freeSpotIndex.lowestFree(ParkingType.CAR));
+	}
+}
@@ -0,0 +1,11 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.dao.ParkingStorage;
+
+public class InMemoryParkingStorageTest extends ParkingStorageContract {
+
+	@Override
+	protected ParkingStorage createEmptyStorage() {
+		return ParkingStorage.inMemory(3, 2);
+	}
+}
@@ -0,0 +1,113 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingStorage;
+import com.parkit.parkingsystem.metrics.InstrumentedConnection;
+import com.parkit.parkingsystem.service.ParkingService;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class JfrEventsTest {
+
+	private Recording recording;
+	private Path file;
+
+	@BeforeEach
+	public void setUpPerTest() throws Exception {
+		file = Files.createTempFile("parkit", ".jfr");
+		recording = new Recording();
+		recording.enable("parkit.GateTransaction");
+		recording.enable("parkit.Statement");
+		recording.enable("parkit.ConnectionBorrow");
+		recording.start();
+	}
+
+	@AfterEach
+	public void tearDownPerTest() throws Exception {
+		recording.close();
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	public void entryAndExitAreRecorded() throws Exception {
+		ParkingService parkingService = new ParkingService(null, ParkingStorage.inMemory(3, 2));
+		Instant in = Instant.parse("2024-01-01T10:00:00Z");
+		parkingService.enter("ABCDEF", ParkingType.CAR, in);
+		parkingService.exit("ABCDEF", in.plusSeconds(3600));
+
+		List<RecordedEvent> events = stop("parkit.GateTransaction");
+
+		assertEquals(2, events.size());
+		assertEquals("enter", events.get(0).getString("operation"));
+		assertEquals("ABCDEF", events.get(0).getString("vehicleRegNumber"));
+		assertEquals("CAR", events.get(0).getString("parkingType"));
+		assertEquals(1, events.get(0).getInt("parkingNumber"));
+		assertEquals("OK", events.get(0).getString("status"));
+		assertEquals("exit", events.get(1).getString("operation"));
+		assertTrue(events.get(1).getDuration("fareCalculation").toNanos() > 0);
+	}
+
+	/**
+	 * An update is recorded with the rows it changed, a query with the rows read
+	 * before its result set was closed.
+	 */
+	@Test
+	public void statementsAreRecordedWithTheirRowCount() throws Exception {
+		Connection physical = mock(Connection.class);
+		PreparedStatement update = mock(PreparedStatement.class);
+		PreparedStatement query = mock(PreparedStatement.class);
+		ResultSet rs = mock(ResultSet.class);
+		when(physical.prepareStatement(DBConstants.UPDATE_PARKING_SPOT)).thenReturn(update);
+		when(physical.prepareStatement(DBConstants.GET_OPEN_TICKETS)).thenReturn(query);
+		when(update.executeUpdate()).thenReturn(1);
+		when(query.executeQuery()).thenReturn(rs);
+		when(rs.next()).thenReturn(true, true, false);
+
+		Connection con = InstrumentedConnection.wrap(physical);
+		con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT).executeUpdate();
+		ResultSet tickets = con.prepareStatement(DBConstants.GET_OPEN_TICKETS).executeQuery();
+		while (tickets.next()) {
+			// read every row
+		}
+		tickets.close();
+
+		List<RecordedEvent> events = stop("parkit.Statement");
+
+		assertEquals(2, events.size());
+		assertEquals("UPDATE_PARKING_SPOT", events.get(0).getString("query"));
+		assertEquals(1L, events.get(0).getLong("rowCount"));
+		assertEquals("GET_OPEN_TICKETS", events.get(1).getString("query"));
+		assertEquals(2L, events.get(1).getLong("rowCount"));
+		assertFalse(events.get(1).getBoolean("failed"));
+	}
+
+	private List<RecordedEvent> stop(String eventName) throws Exception {
+		recording.stop();
+		recording.dump(file);
+		List<RecordedEvent> events = new ArrayList<>();
+		for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+			if (event.getEventType().getName().equals(eventName)) {
+				events.add(event);
+			}
+		}
+		events.sort((a, b) -> a.getStartTime().compareTo(b.getStartTime()));
+		return events;
+	}
+}
@@ -0,0 +1,137 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.journal.JournalApplier;
+import com.parkit.parkingsystem.journal.JournalRecord;
+import com.parkit.parkingsystem.journal.JournalReplayer;
+import com.parkit.parkingsystem.journal.TicketJournal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class JournalReplayerTest {
+
+	@Mock
+	private JournalApplier applier;
+
+	private Path directory;
+	private TicketJournal journal;
+	private JournalReplayer replayer;
+
+	@BeforeEach
+	public void setUpPerTest() throws IOException {
+		directory = Files.createTempDirectory("journal");
+		journal = TicketJournal.open(directory, 4096);
+		// not started: the tests drain it themselves
+		replayer = new JournalReplayer(journal, applier, 1000L);
+	}
+
+	@AfterEach
+	public void tearDownPerTest() throws IOException {
+		journal.close();
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	/**
+	 * The records after the checkpoint are applied in sequence order, then the
+	 * applier is told the journal is caught up.
+	 */
+	@Test
+	public void drainAppliesRecordsAfterCheckpoint() throws Exception {
+		appendEntries(3);
+		when(applier.getCheckpoint()).thenReturn(1L);
+		when(applier.caughtUp(3L)).thenReturn(true);
+
+		assertEquals(2, replayer.drain());
+
+		ArgumentCaptor<JournalRecord> applied = ArgumentCaptor.forClass(JournalRecord.class);
+		InOrder inOrder = inOrder(applier);
+		inOrder.verify(applier, times(2)).apply(applied.capture());
+		inOrder.verify(applier).caughtUp(3L);
+		assertEquals(2L, applied.getAllValues().get(0).getSequence());
+		assertEquals(3L, applied.getAllValues().get(1).getSequence());
+	}
+
+	/**
+	 * A drain stopped by an error resumes from the checkpoint at the next run,
+	 * so the record that failed is applied again and those before it are not.
+	 */
+	@Test
+	public void drainResumesFromCheckpointAfterError() throws Exception {
+		appendEntries(3);
+		when(applier.getCheckpoint()).thenReturn(0L, 1L);
+		doNothing().doThrow(new SQLException("Connection lost")).doNothing().when(applier)
+				.apply(any(JournalRecord.class));
+		when(applier.caughtUp(3L)).thenReturn(true);
+
+		assertEquals(-1, replayer.drain());
+		assertEquals(2, replayer.drain());
+
+		ArgumentCaptor<JournalRecord> applied = ArgumentCaptor.forClass(JournalRecord.class);
+		verify(applier, times(4)).apply(applied.capture());
+		assertEquals(2L, applied.getAllValues().get(1).getSequence());
+		assertEquals(2L, applied.getAllValues().get(2).getSequence());
+		assertEquals(3L, applied.getAllValues().get(3).getSequence());
+	}
+
+	/**
+	 * Records appended while the applier was catching up are applied before the
+	 * drain ends.
+	 */
+	@Test
+	public void drainAppliesRecordsAppendedWhileCatchingUp() throws Exception {
+		appendEntries(1);
+		when(applier.getCheckpoint()).thenReturn(0L);
+		when(applier.caughtUp(anyLong())).thenAnswer(invocation -> {
+			if ((Long) invocation.getArgument(0) == 1L) {
+				journal.append(JournalRecord.entry("GHIJKL", ParkingType.CAR, 2, 2000L));
+				return false;
+			}
+			return true;
+		});
+
+		assertEquals(2, replayer.drain());
+
+		verify(applier, times(2)).apply(any(JournalRecord.class));
+		verify(applier).caughtUp(2L);
+	}
+
+	/**
+	 * Once drained, a run with nothing appended does not ask the database.
+	 */
+	@Test
+	public void drainSkipsDatabaseWhenNothingAppended() throws Exception {
+		appendEntries(1);
+		when(applier.getCheckpoint()).thenReturn(0L);
+		when(applier.caughtUp(1L)).thenReturn(true);
+		assertEquals(1, replayer.drain());
+
+		assertEquals(0, replayer.drain());
+
+		verify(applier, times(1)).getCheckpoint();
+	}
+
+	private void appendEntries(int count) throws IOException {
+		for (int i = 1; i <= count; i++) {
+			journal.append(JournalRecord.entry("PLATE" + i, ParkingType.CAR, i, 1000L * i));
+		}
+	}
+}
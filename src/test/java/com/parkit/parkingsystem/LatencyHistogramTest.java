@@ -0,0 +1,75 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.util.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void emptyHistogramReportsZero() {
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMinNanos());
+		assertEquals(0, histogram.getValueAtPercentile(99.0));
+	}
+
+	@Test
+	public void smallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 100; value++) {
+			histogram.record(value);
+		}
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(1, histogram.getMinNanos());
+		assertEquals(100, histogram.getMaxNanos());
+		assertEquals(50, histogram.getValueAtPercentile(50.0));
+		assertEquals(99, histogram.getValueAtPercentile(99.0));
+		assertEquals(50.5, histogram.getMeanNanos(), 0.001);
+	}
+
+	@Test
+	public void largeValuesStayWithinRelativeError() {
+		for (long value = 1000; value <= 1000000000L; value *= 7) {
+			LatencyHistogram single = new LatencyHistogram();
+			single.record(value);
+			single.record(Long.MAX_VALUE);
+			long reported = single.getValueAtPercentile(50.0);
+			assertTrue(reported >= value && reported <= value + value / 64, value + " reported as " + reported);
+		}
+	}
+
+	@Test
+	public void percentilesFollowTheDistribution() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		// 990 fast calls of 1 ms and 10 slow ones of 100 ms
+		for (int i = 0; i < 990; i++) {
+			histogram.record(1000000L);
+		}
+		for (int i = 0; i < 10; i++) {
+			histogram.record(100000000L);
+		}
+
+		assertEquals(1000000L, histogram.getValueAtPercentile(50.0), 1000000L / 64);
+		assertEquals(1000000L, histogram.getValueAtPercentile(99.0), 1000000L / 64);
+		assertEquals(100000000L, histogram.getValueAtPercentile(99.9));
+	}
+
+	@Test
+	public void addMergesHistograms() {
+		LatencyHistogram first = new LatencyHistogram();
+		LatencyHistogram second = new LatencyHistogram();
+		first.record(10);
+		second.record(20);
+		second.record(5000);
+
+		first.add(second);
+
+		assertEquals(3, first.getCount());
+		assertEquals(10, first.getMinNanos());
+		assertEquals(5000, first.getMaxNanos());
+	}
+}
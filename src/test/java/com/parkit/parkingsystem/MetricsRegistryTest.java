@@ -0,0 +1,104 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.dao.TicketStorage;
+import com.parkit.parkingsystem.metrics.Counter;
+import com.parkit.parkingsystem.metrics.InstrumentedConnection;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.PrometheusExporter;
+import com.parkit.parkingsystem.metrics.TimedProxy;
+import com.parkit.parkingsystem.metrics.Timer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class MetricsRegistryTest {
+
+	private MetricsRegistry registry;
+
+	@BeforeEach
+	public void setUpPerTest() {
+		registry = new MetricsRegistry();
+	}
+
+	@Test
+	public void sameSeriesIsReturnedTwice() {
+		Counter counter = registry.counter("parkit_test_total", "Test", "kind", "a");
+
+		assertSame(counter, registry.counter("parkit_test_total", "Test", "kind", "a"));
+		assertNotSame(counter, registry.counter("parkit_test_total", "Test", "kind", "b"));
+		assertThrows(IllegalArgumentException.class, () -> registry.gauge("parkit_test_total", "Test", () -> 1.0,
+				"kind", "a"));
+		assertSame(counter, registry.counter("parkit_test_total", "Test", "kind", "a"));
+	}
+
+	@Test
+	public void timerCountsCallsFailuresAndQuantiles() {
+		Timer timer = registry.timer("parkit_test", "Test");
+		for (int i = 1; i <= 100; i++) {
+			timer.record(i * 1000L, i > 98);
+		}
+
+		assertEquals(100, timer.getCount());
+		assertEquals(2, timer.getErrorCount());
+		assertEquals(50000L, timer.getNanosAtQuantile(0.5), 50000L / 64);
+		assertEquals(99000L, timer.getNanosAtQuantile(0.99), 99000L / 64);
+	}
+
+	@Test
+	public void scrapeWritesEachFamilyOnce() {
+		registry.timer("parkit_test", "Test calls", "query", "GET_TICKET").record(2_000_000L, false);
+		registry.timer("parkit_test", "Test calls", "query", "SAVE_TICKET").record(1_000_000L, true);
+		registry.gauge("parkit_test_free", "Free \"spots\"", () -> 3, "type", "CAR");
+
+		String scrape = new PrometheusExporter(registry).scrape();
+
+		assertEquals(1, count(scrape, "# TYPE parkit_test_seconds summary"));
+		assertEquals(1, count(scrape, "# TYPE parkit_test_errors_total counter"));
+		assertTrue(scrape.contains("parkit_test_seconds{query=\"GET_TICKET\",quantile=\"0.5\"} 0.002"));
+		assertTrue(scrape.contains("parkit_test_seconds_count{query=\"SAVE_TICKET\"} 1\n"));
+		assertTrue(scrape.contains("parkit_test_errors_total{query=\"SAVE_TICKET\"} 1\n"));
+		assertTrue(scrape.contains("parkit_test_errors_total{query=\"GET_TICKET\"} 0\n"));
+		assertTrue(scrape.contains("parkit_test_free{type=\"CAR\"} 3\n"));
+	}
+
+	@Test
+	public void queryIsNamedAfterItsConstant() {
+		assertEquals("GET_OPEN_TICKET", InstrumentedConnection.queryName(DBConstants.GET_OPEN_TICKET));
+		assertEquals("other", InstrumentedConnection.queryName("select 1"));
+	}
+
+	/**
+	 * A DAO swallowing the error of a statement returns normally: the call is
+	 * still counted as failed.
+	 */
+	@Test
+	public void proxyCountsCallFailedWhenNestedCallFailed() {
+		Timer statement = registry.timer("parkit_test_statement", "Test");
+		TicketStorage ticketDAO = mock(TicketStorage.class);
+		when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(2);
+		when(ticketDAO.getNbTicket("GHIJKL")).thenAnswer(invocation -> {
+			statement.record(1000L, true);
+			return 0;
+		});
+		TicketStorage timed = TimedProxy.wrap(TicketStorage.class, ticketDAO, registry);
+
+		assertEquals(2, timed.getNbTicket("ABCDEF"));
+		assertEquals(0, timed.getNbTicket("GHIJKL"));
+
+		Timer getNbTicket = registry.timer("parkit_dao_call", "", "component", ticketDAO.getClass().getSimpleName(),
+				"method", "getNbTicket");
+		assertEquals(2, getNbTicket.getCount());
+		assertEquals(1, getNbTicket.getErrorCount());
+	}
+
+	private static int count(String text, String part) {
+		int count = 0;
+		for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+			count++;
+		}
+		return count;
+	}
+}
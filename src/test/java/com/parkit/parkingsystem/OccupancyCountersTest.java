@@ -0,0 +1,104 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.cache.OccupancyCounters;
+import com.parkit.parkingsystem.constants.ParkingType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OccupancyCountersTest {
+
+	// same layout as Data.sql: 3 car spots and 2 bike spots
+	private static final int[] SPOTS = { 3, 2 };
+
+	private OccupancyCounters occupancyCounters;
+
+	@BeforeEach
+	public void setUpPerTest() {
+		occupancyCounters = new OccupancyCounters();
+	}
+
+	@Test
+	public void countsAreUnknownUntilLoaded() {
+		occupancyCounters.vehicleEntered(ParkingType.CAR);
+
+		assertFalse(occupancyCounters.isLoaded());
+		assertEquals(-1, occupancyCounters.getFree(ParkingType.CAR));
+		assertEquals(-1, occupancyCounters.getOccupied(ParkingType.CAR));
+		assertEquals(-1, occupancyCounters.getSpotCount(ParkingType.CAR));
+	}
+
+	@Test
+	public void countsFollowEntriesAndExits() {
+		occupancyCounters.reconcile(SPOTS, new int[] { 1, 0 });
+
+		occupancyCounters.vehicleEntered(ParkingType.CAR);
+		occupancyCounters.vehicleEntered(ParkingType.BIKE);
+		occupancyCounters.vehicleExited(ParkingType.CAR);
+		occupancyCounters.vehicleEntered(ParkingType.CAR);
+
+		assertEquals(2, occupancyCounters.getOccupied(ParkingType.CAR));
+		assertEquals(1, occupancyCounters.getFree(ParkingType.CAR));
+		assertEquals(1, occupancyCounters.getOccupied(ParkingType.BIKE));
+		assertEquals(1, occupancyCounters.getFree(ParkingType.BIKE));
+		assertEquals(3, occupancyCounters.getSpotCount(ParkingType.CAR));
+	}
+
+	/**
+	 * A drift seen once may be a gate between its commit and its count: it is
+	 * only corrected when the next round sees it too.
+	 */
+	@Test
+	public void driftIsCorrectedWhenSeenTwice() {
+		occupancyCounters.reconcile(SPOTS, new int[] { 0, 0 });
+		occupancyCounters.vehicleEntered(ParkingType.CAR);
+
+		assertEquals(0, occupancyCounters.reconcile(SPOTS, new int[] { 2, 0 }));
+		assertEquals(1, occupancyCounters.getOccupied(ParkingType.CAR));
+
+		assertEquals(1, occupancyCounters.reconcile(SPOTS, new int[] { 2, 0 }));
+		assertEquals(2, occupancyCounters.getOccupied(ParkingType.CAR));
+
+		assertEquals(0, occupancyCounters.reconcile(SPOTS, new int[] { 2, 0 }));
+	}
+
+	@Test
+	public void freeNeverGoesNegative() {
+		occupancyCounters.reconcile(SPOTS, new int[] { 3, 0 });
+		occupancyCounters.vehicleEntered(ParkingType.CAR);
+
+		assertEquals(0, occupancyCounters.getFree(ParkingType.CAR));
+	}
+
+	@Test
+	public void concurrentGatesLoseNoCount() throws Exception {
+		occupancyCounters.reconcile(new int[] { 100000, 2 }, new int[] { 0, 0 });
+		int threads = 8;
+		int perThread = 10000;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		for (int i = 0; i < threads; i++) {
+			executor.submit(() -> {
+				start.await();
+				for (int j = 0; j < perThread; j++) {
+					occupancyCounters.vehicleEntered(ParkingType.CAR);
+					if (j % 2 == 0) {
+						occupancyCounters.vehicleExited(ParkingType.CAR);
+					}
+				}
+				return null;
+			});
+		}
+		start.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+		assertEquals(threads * perThread / 2, occupancyCounters.getOccupied(ParkingType.CAR));
+	}
+}
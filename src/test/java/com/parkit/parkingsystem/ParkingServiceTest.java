@@ -1,8 +1,12 @@
 package com.parkit.parkingsystem;
 
 import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.AsyncStorage;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingTransactionDAO;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 import com.parkit.parkingsystem.service.ParkingService;
@@ -14,7 +18,11 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Instant;
 import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -30,6 +38,8 @@ public class ParkingServiceTest {
     private static ParkingSpotDAO parkingSpotDAO;
     @Mock
     private static TicketDAO ticketDAO;
+    @Mock
+    private static ParkingTransactionDAO parkingTransactionDAO;
 
     @BeforeEach
     public void setUpPerTest() {
@@ -39,10 +49,10 @@ public class ParkingServiceTest {
             ticket.setInTime(new Date(System.currentTimeMillis() - (60*60*1000)));
             ticket.setParkingSpot(parkingSpot);
             ticket.setVehicleRegNumber("ABCDEF");
-            lenient().when(ticketDAO.getTicket(anyString())).thenReturn(ticket);
+            lenient().when(ticketDAO.getActiveTicket(anyString())).thenReturn(ticket);
             lenient().when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(true);
             lenient().when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true);
-            parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+            parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO, parkingTransactionDAO);
         } catch (Exception e) {
             e.printStackTrace();
             throw  new RuntimeException("Failed to set up test mock objects");
@@ -55,10 +65,9 @@ public class ParkingServiceTest {
      * This test simulates the exit process of a vehicle that has been parked for 1 hour.
      * It verifies that:
      * - The vehicle's registration number is correctly read.
-     * - The associated ticket is retrieved from the database.
+     * - The associated open ticket is retrieved.
      * - The number of previous tickets is checked (to determine if a discount should apply).
-     * - The ticket is updated with the fare and out-time.
-     * - The parking spot is marked as available and updated.
+     * - The ticket is closed with the fare and out-time, and its parking spot freed, in one transaction.
      *
      * This scenario simulates a new user (first-time parking, so no discount applied).
      *
@@ -77,23 +86,22 @@ public class ParkingServiceTest {
         
         // GIVEN
     	when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
-    	when(ticketDAO.getTicket(anyString())).thenReturn(ticket);
+    	when(ticketDAO.getActiveTicket(anyString())).thenReturn(ticket);
     	when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(1); //simulating new user
-    	when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(true);
-    	when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true);
+    	when(parkingTransactionDAO.exit(any(Ticket.class))).thenReturn(true);
 
     	// WHEN
         parkingService.processExitingVehicle();
 
         // THEN
      // Verify that the ticket for the vehicle was retrieved once from the database
-        verify(ticketDAO, times(1)).getTicket(anyString());
+        verify(ticketDAO, times(1)).getActiveTicket(anyString());
 
         // Verify that the system checked how many times this vehicle has parked before
         verify(ticketDAO, times(1)).getNbTicket("ABCDEF");
 
-        // Verify that the system attempted to update the ticket (even though it failed)
-        verify(ticketDAO, times(1)).updateTicket(any(Ticket.class));
+        // Verify that the system closed the ticket and freed the spot in one transaction
+        verify(parkingTransactionDAO, times(1)).exit(ticket);
 
         // Check that the parking spot remains marked as unavailable
         assertFalse(parkingSpot.isAvailable());
@@ -107,8 +115,7 @@ public class ParkingServiceTest {
      * - The correct parking spot is allocated based on the vehicle type.
      * - The vehicle registration number is correctly read.
      * - The system identifies that it's a new user (no discount).
-     * - The parking spot is marked as unavailable.
-     * - A ticket is generated and saved in the database.
+     * - A parking spot is reserved and the ticket saved in the database, in one transaction.
      *
      * @throws Exception if any error occurs during test execution or mocking
      */
@@ -126,21 +133,17 @@ public class ParkingServiceTest {
         when(inputReaderUtil.readSelection()).thenReturn(1); // user selects "CAR"
         when(parkingSpotDAO.getNextAvailableSlot(any(ParkingType.class))).thenReturn(1); // spot 1 available
         when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
-        when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(0); // new user
-        when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true); // update is successful
+        when(parkingTransactionDAO.enter(any(Ticket.class))).thenReturn(1); // spot reserved, ticket saved, new user
 
     	// WHEN
         parkingService.processIncomingVehicle();
 
         // THEN
-        // Verify that the system checked if the vehicle was a returning user
-        verify(ticketDAO, times(1)).getNbTicket("ABCDEF");
+        // Verify that the visit count saved with the ticket was used, without another lookup
+        verify(ticketDAO, never()).getNbTicket(anyString());
 
-        // Verify that the parking spot was marked as unavailable
-        verify(parkingSpotDAO, times(1)).updateParking(any(ParkingSpot.class));
-
-        // Verify that a new ticket was saved into the database
-        verify(ticketDAO, times(1)).saveTicket(any(Ticket.class));
+        // Verify that a parking spot was reserved and a new ticket saved into the database
+        verify(parkingTransactionDAO, times(1)).enter(any(Ticket.class));
 
         // Check that the parking spot is no longer available
         assertFalse(parkingSpot.isAvailable());
@@ -155,6 +158,32 @@ public class ParkingServiceTest {
         assertNull(ticket.getOutTime());
     }
     
+    /**
+     * Unit test for the processIncomingVehicle() method of the ParkingService class,
+     * testing the scenario where the free spot is taken by another gate before it can be reserved.
+     *
+     * This test verifies that:
+     * - The entry transaction is attempted.
+     * - Nothing else is written when it could not reserve a spot.
+     *
+     * @throws Exception if any error occurs during test execution or mocking
+     */
+    @Test
+    public void testProcessIncomingVehicleSpotTakenByAnotherGate() throws Exception {
+        when(inputReaderUtil.readSelection()).thenReturn(1);
+        when(parkingSpotDAO.getNextAvailableSlot(any(ParkingType.class))).thenReturn(1); // last spot looks free
+        when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
+        when(parkingTransactionDAO.enter(any(Ticket.class))).thenReturn(0); // but another gate took it
+
+        // WHEN
+        parkingService.processIncomingVehicle();
+
+        // THEN
+        verify(parkingTransactionDAO, times(1)).enter(any(Ticket.class));
+        verify(ticketDAO, never()).saveTicket(any(Ticket.class));
+        verify(parkingSpotDAO, never()).updateParking(any(ParkingSpot.class));
+    }
+
     /**
      * Unit test for the processExitingVehicle() method of the ParkingService class,
      * testing the scenario where the system fails to update the ticket in the database.
@@ -162,9 +191,9 @@ public class ParkingServiceTest {
      * This test simulates a regular user (more than one ticket already exists),
      * and verifies that:
      * - The vehicle's registration number is correctly read.
-     * - The associated ticket is retrieved.
+     * - The associated open ticket is retrieved.
      * - The fare is calculated with a discount.
-     * - The ticket update fails (returns false).
+     * - The exit transaction fails (returns false).
      * - As a result, the parking spot is not marked as available.
      *
      * @throws Exception if an error occurs during test execution or mocking
@@ -181,17 +210,17 @@ public class ParkingServiceTest {
         ticket.setPrice(0);
     	// GIVEN
     	when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
-    	when(ticketDAO.getTicket(anyString())).thenReturn(ticket);
+    	when(ticketDAO.getActiveTicket(anyString())).thenReturn(ticket);
     	when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(3); // regular user
-        when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(false); // simulate DB update failure
+        when(parkingTransactionDAO.exit(any(Ticket.class))).thenReturn(false); // simulate DB update failure
 
     	// WHEN
         parkingService.processExitingVehicle();
 
         // THEN
-        verify(ticketDAO, times(1)).getTicket(anyString());
+        verify(ticketDAO, times(1)).getActiveTicket(anyString());
         verify(ticketDAO, times(1)).getNbTicket("ABCDEF");
-        verify(ticketDAO, times(1)).updateTicket(any(Ticket.class));
+        verify(parkingTransactionDAO, times(1)).exit(ticket);
         
         // Verify that the parking spot is NOT updated since ticket update failed
         verify(parkingSpotDAO, never()).updateParking(any(ParkingSpot.class)); 
@@ -200,6 +229,29 @@ public class ParkingServiceTest {
         assertFalse(parkingSpot.isAvailable());
     }
 
+    /**
+     * Unit test for the processExitingVehicle() method of the ParkingService class,
+     * testing the scenario where the vehicle has no open ticket.
+     *
+     * This test verifies that nothing is written when the vehicle is not parked. The visit count
+     * is looked up at the same time as the ticket, so it is read even then.
+     *
+     * @throws Exception if an error occurs during test execution or mocking
+     */
+    @Test
+    public void processExitingVehicleTestNotParked() throws Exception {
+        // GIVEN
+        when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("UNKNOWN");
+        when(ticketDAO.getActiveTicket("UNKNOWN")).thenReturn(null);
+
+        // WHEN
+        parkingService.processExitingVehicle();
+
+        // THEN
+        verify(ticketDAO, times(1)).getNbTicket("UNKNOWN");
+        verify(parkingTransactionDAO, never()).exit(any(Ticket.class));
+    }
+
     /**
      * Unit test for the getNextParkingNumberIfAvailable() method of the ParkingService class.
      *
@@ -274,4 +326,224 @@ public class ParkingServiceTest {
     	// Check that the method returned null because the user's selection was invalid
         assertNull(parkingSpot);
     }
+
+    /**
+     * Unit test for the enter() method of the ParkingService class.
+     *
+     * This test verifies that the result gives the spot and ticket allotted by the
+     * entry transaction, and flags a vehicle that has parked before from the visit count
+     * saved with the ticket.
+     */
+    @Test
+    public void testEnterReturnsAllottedSpot() {
+        Instant inTime = Instant.now();
+        when(parkingTransactionDAO.enter(any(Ticket.class))).thenAnswer(invocation -> {
+            Ticket ticket = invocation.getArgument(0);
+            ticket.getParkingSpot().setId(2);
+            ticket.setId(7);
+            return 2; // regular user: second visit
+        });
+
+        // WHEN
+        EntryResult result = parkingService.enter("ABCDEF", ParkingType.CAR, inTime);
+
+        // THEN
+        assertEquals(EntryResult.Status.OK, result.getStatus());
+        assertEquals(2, result.getParkingNumber());
+        assertEquals(7, result.getTicketId());
+        assertEquals(inTime, result.getInTime());
+        assertTrue(result.isRecurringUser());
+        verify(ticketDAO, never()).getNbTicket(anyString());
+    }
+
+    /**
+     * Unit test for the enter() method of the ParkingService class, when no spot of the type is free.
+     */
+    @Test
+    public void testEnterNoSpotAvailable() {
+        when(parkingTransactionDAO.enter(any(Ticket.class))).thenReturn(0); // no spot could be reserved
+
+        // WHEN
+        EntryResult result = parkingService.enter("ABCDEF", ParkingType.BIKE, Instant.now());
+
+        // THEN
+        assertEquals(EntryResult.Status.NO_SPOT_AVAILABLE, result.getStatus());
+        assertFalse(result.isSuccess());
+    }
+
+    /**
+     * Unit test for the enter() method of the ParkingService class, with a blank registration number.
+     */
+    @Test
+    public void testEnterInvalidRegistrationNumber() {
+        // WHEN
+        EntryResult result = parkingService.enter("  ", ParkingType.CAR, Instant.now());
+
+        // THEN
+        assertEquals(EntryResult.Status.INVALID_REQUEST, result.getStatus());
+        verify(parkingTransactionDAO, never()).enter(any(Ticket.class));
+    }
+
+    /**
+     * Unit test for the enter() method of the ParkingService class, with a registration number
+     * padded with spaces and in lower case: the ticket is saved under the normalized plate.
+     */
+    @Test
+    public void testEnterNormalizesRegistrationNumber() {
+        when(parkingTransactionDAO.enter(any(Ticket.class))).thenReturn(1);
+
+        // WHEN
+        EntryResult result = parkingService.enter(" ab-123 ", ParkingType.CAR, Instant.now());
+
+        // THEN
+        assertEquals(EntryResult.Status.OK, result.getStatus());
+        verify(parkingTransactionDAO).enter(argThat(ticket -> "AB-123".equals(ticket.getVehicleRegNumber())));
+    }
+
+    /**
+     * Unit test for the enter() method of the ParkingService class, with a registration number
+     * longer than the column: it is rejected before any lookup or spot claim.
+     */
+    @Test
+    public void testEnterTooLongRegistrationNumber() {
+        // WHEN
+        EntryResult result = parkingService.enter("ABCDEFGHIJK", ParkingType.CAR, Instant.now());
+
+        // THEN
+        assertEquals(EntryResult.Status.INVALID_REQUEST, result.getStatus());
+        verifyZeroInteractions(ticketDAO, parkingTransactionDAO);
+    }
+
+    /**
+     * Unit test for the exit() method of the ParkingService class, with a registration number
+     * padded with spaces and in lower case: the open ticket is looked up under the normalized plate.
+     */
+    @Test
+    public void testExitNormalizesRegistrationNumber() {
+        Ticket ticket = new Ticket();
+        ticket.setVehicleRegNumber("AB-123");
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setInTime(new Date(System.currentTimeMillis() - (60 * 60 * 1000)));
+        when(ticketDAO.getActiveTicket("AB-123")).thenReturn(ticket);
+        when(parkingTransactionDAO.exit(ticket)).thenReturn(true);
+
+        // WHEN
+        ExitResult result = parkingService.exit("  ab-123", Instant.now());
+
+        // THEN
+        assertEquals(ExitResult.Status.OK, result.getStatus());
+        assertEquals("AB-123", result.getVehicleRegNumber());
+        verify(ticketDAO).getNbTicket("AB-123");
+    }
+
+    /**
+     * Unit test for the exit() method of the ParkingService class, with a registration number
+     * that cannot be encoded: it is rejected before any lookup.
+     */
+    @Test
+    public void testExitInvalidRegistrationNumber() {
+        // WHEN
+        ExitResult tooLong = parkingService.exit("ABCDEFGHIJK", Instant.now());
+        ExitResult badCharacter = parkingService.exit("AB_123", Instant.now());
+
+        // THEN
+        assertEquals(ExitResult.Status.INVALID_REQUEST, tooLong.getStatus());
+        assertEquals(ExitResult.Status.INVALID_REQUEST, badCharacter.getStatus());
+        verifyZeroInteractions(ticketDAO, parkingTransactionDAO);
+    }
+
+    /**
+     * Unit test for the exit() method of the ParkingService class.
+     *
+     * This test simulates a regular user leaving after 1 hour and verifies that the result gives
+     * the discounted fare.
+     */
+    @Test
+    public void testExitReturnsDiscountedFare() {
+        Instant outTime = Instant.now();
+        Ticket ticket = new Ticket();
+        ticket.setId(7);
+        ticket.setVehicleRegNumber("ABCDEF");
+        ticket.setParkingSpot(new ParkingSpot(2, ParkingType.CAR, false));
+        ticket.setInTime(Date.from(outTime.minusSeconds(60 * 60)));
+        when(ticketDAO.getActiveTicket("ABCDEF")).thenReturn(ticket);
+        when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(2); // regular user
+        when(parkingTransactionDAO.exit(ticket)).thenReturn(true);
+
+        // WHEN
+        ExitResult result = parkingService.exit("ABCDEF", outTime);
+
+        // THEN
+        assertEquals(ExitResult.Status.OK, result.getStatus());
+        assertEquals(2, result.getParkingNumber());
+        assertEquals(7, result.getTicketId());
+        assertEquals(outTime, result.getOutTime());
+        assertEquals(1.425, result.getPrice()); // 95% of the hourly car fare, exactly
+        assertTrue(result.isDiscounted());
+    }
+
+    /**
+     * Unit test for the exit() method of the ParkingService class.
+     *
+     * This test verifies that a visit count that is not cached is looked up through the
+     * asynchronous storage, on its executor, while the open ticket is looked up on the calling
+     * thread.
+     */
+    @Test
+    public void testExitLooksUpVisitCountAsynchronously() {
+        Ticket ticket = new Ticket();
+        ticket.setVehicleRegNumber("ABCDEF");
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setInTime(new Date(System.currentTimeMillis() - (60 * 60 * 1000)));
+        when(ticketDAO.getActiveTicket("ABCDEF")).thenReturn(ticket);
+        when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(2);
+        when(parkingTransactionDAO.exit(ticket)).thenReturn(true);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AtomicInteger submitted = new AtomicInteger();
+        parkingService.asyncStorage = new AsyncStorage(parkingSpotDAO, ticketDAO, task -> {
+            submitted.incrementAndGet();
+            executor.execute(task);
+        });
+
+        // WHEN
+        ExitResult result = parkingService.exit("ABCDEF", Instant.now());
+        executor.shutdown();
+
+        // THEN
+        assertEquals(ExitResult.Status.OK, result.getStatus());
+        assertTrue(result.isDiscounted());
+        assertEquals(1, submitted.get());
+        verify(ticketDAO, times(1)).getNbTicket("ABCDEF");
+    }
+
+    /**
+     * Unit test for the exit() method of the ParkingService class.
+     *
+     * This test verifies that a cached visit count is used on the calling thread, without handing
+     * the lookup over to the executor.
+     */
+    @Test
+    public void testExitUsesCachedVisitCountOnCallingThread() {
+        Ticket ticket = new Ticket();
+        ticket.setVehicleRegNumber("ABCDEF");
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setInTime(new Date(System.currentTimeMillis() - (60 * 60 * 1000)));
+        when(ticketDAO.getActiveTicket("ABCDEF")).thenReturn(ticket);
+        when(ticketDAO.getCachedNbTicket("ABCDEF")).thenReturn(2);
+        when(parkingTransactionDAO.exit(ticket)).thenReturn(true);
+        AtomicInteger submitted = new AtomicInteger();
+        parkingService.asyncStorage = new AsyncStorage(parkingSpotDAO, ticketDAO, task -> {
+            submitted.incrementAndGet();
+            task.run();
+        });
+
+        // WHEN
+        ExitResult result = parkingService.exit("ABCDEF", Instant.now());
+
+        // THEN
+        assertEquals(ExitResult.Status.OK, result.getStatus());
+        assertTrue(result.isDiscounted());
+        assertEquals(0, submitted.get());
+        verify(ticketDAO, never()).getNbTicket("ABCDEF");
+    }
 }
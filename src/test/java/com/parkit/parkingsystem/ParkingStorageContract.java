@@ -0,0 +1,178 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingStorage;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Behavior every storage backend must have, run against each of them by a
+ * subclass.
+ */
+public abstract class ParkingStorageContract {
+
+	protected ParkingStorage parkingStorage;
+
+	/**
+	 * @return a storage holding three free car spots numbered 1 to 3, two free
+	 *         bike spots numbered 4 and 5, and no ticket
+	 */
+	protected abstract ParkingStorage createEmptyStorage() throws Exception;
+
+	@BeforeEach
+	public void setUpStorage() throws Exception {
+		parkingStorage = createEmptyStorage();
+		parkingStorage.warmUp();
+	}
+
+	@Test
+	public void nextAvailableSlotIsLowestFreeSpotOfType() {
+		assertEquals(1, parkingStorage.parkingSpotStorage.getNextAvailableSlot(ParkingType.CAR));
+		assertEquals(4, parkingStorage.parkingSpotStorage.getNextAvailableSlot(ParkingType.BIKE));
+		assertEquals(3, parkingStorage.parkingSpotStorage.getSpotCount(ParkingType.CAR));
+		assertEquals(2, parkingStorage.parkingSpotStorage.getFreeSpotCount(ParkingType.BIKE));
+	}
+
+	@Test
+	public void claimTakesEachSpotOnceUntilFull() {
+		assertEquals(1, parkingStorage.parkingSpotStorage.claimNextAvailableSlot(ParkingType.CAR));
+		assertEquals(2, parkingStorage.parkingSpotStorage.claimNextAvailableSlot(ParkingType.CAR));
+		assertEquals(3, parkingStorage.parkingSpotStorage.claimNextAvailableSlot(ParkingType.CAR));
+		assertEquals(0, parkingStorage.parkingSpotStorage.claimNextAvailableSlot(ParkingType.CAR));
+		assertEquals(0, parkingStorage.parkingSpotStorage.getFreeSpotCount(ParkingType.CAR));
+		assertEquals(2, parkingStorage.parkingSpotStorage.getFreeSpotCount(ParkingType.BIKE));
+	}
+
+	@Test
+	public void updateParkingReleasesSpot() {
+		parkingStorage.parkingSpotStorage.claimNextAvailableSlot(ParkingType.CAR);
+		parkingStorage.parkingSpotStorage.claimNextAvailableSlot(ParkingType.CAR);
+
+		assertTrue(parkingStorage.parkingSpotStorage.updateParking(new ParkingSpot(1, ParkingType.CAR, true)));
+
+		assertEquals(1, parkingStorage.parkingSpotStorage.getNextAvailableSlot(ParkingType.CAR));
+		assertEquals(2, parkingStorage.parkingSpotStorage.getFreeSpotCount(ParkingType.CAR));
+	}
+
+	@Test
+	public void countSpotsCountsTakenSpotsPerType() {
+		parkingStorage.parkingSpotStorage.claimNextAvailableSlot(ParkingType.CAR);
+		parkingStorage.parkingSpotStorage.claimNextAvailableSlot(ParkingType.CAR);
+		int[] spots = new int[ParkingType.values().length];
+		int[] occupied = new int[ParkingType.values().length];
+
+		assertTrue(parkingStorage.parkingSpotStorage.countSpots(spots, occupied));
+
+		assertEquals(3, spots[ParkingType.CAR.ordinal()]);
+		assertEquals(2, occupied[ParkingType.CAR.ordinal()]);
+		assertEquals(2, spots[ParkingType.BIKE.ordinal()]);
+		assertEquals(0, occupied[ParkingType.BIKE.ordinal()]);
+	}
+
+	@Test
+	public void savedTicketIsFoundOpen() {
+		Ticket ticket = ticket("ABCDEF", 1, new Date(System.currentTimeMillis() - 3600000L), null);
+
+		assertTrue(parkingStorage.ticketStorage.saveTicket(ticket));
+
+		assertTrue(ticket.getId() > 0);
+		Ticket active = parkingStorage.ticketStorage.getActiveTicket("ABCDEF");
+		assertNotNull(active);
+		assertEquals(ticket.getId(), active.getId());
+		assertEquals(1, active.getParkingSpot().getId());
+		assertEquals(ParkingType.CAR, active.getParkingSpot().getParkingType());
+		assertEquals(1, parkingStorage.ticketStorage.getActiveTickets().size());
+		assertEquals(ticket.getId(), parkingStorage.ticketStorage.getTicket("ABCDEF").getId());
+		assertEquals(1, parkingStorage.ticketStorage.getNbTicket("ABCDEF"));
+	}
+
+	@Test
+	public void updatedTicketIsClosed() {
+		long now = System.currentTimeMillis() / 1000 * 1000;
+		Ticket ticket = ticket("ABCDEF", 1, new Date(now - 3600000L), null);
+		parkingStorage.ticketStorage.saveTicket(ticket);
+		ticket.setPrice(1.5);
+		ticket.setOutTime(new Date(now));
+
+		assertTrue(parkingStorage.ticketStorage.updateTicket(ticket));
+
+		assertNull(parkingStorage.ticketStorage.getActiveTicket("ABCDEF"));
+		assertTrue(parkingStorage.ticketStorage.getActiveTickets().isEmpty());
+		Ticket latest = parkingStorage.ticketStorage.getTicket("ABCDEF");
+		assertEquals(1.5, latest.getPrice());
+		assertEquals(now, latest.getOutTime().getTime());
+	}
+
+	@Test
+	public void getTicketReturnsLatestTicket() {
+		long now = System.currentTimeMillis();
+		Ticket older = ticket("ABCDEF", 1, new Date(now - 7200000L), new Date(now - 5400000L));
+		Ticket latest = ticket("ABCDEF", 2, new Date(now - 3600000L), null);
+		parkingStorage.ticketStorage.saveTicket(older);
+		parkingStorage.ticketStorage.saveTicket(latest);
+
+		assertEquals(latest.getId(), parkingStorage.ticketStorage.getTicket("ABCDEF").getId());
+		assertEquals(2, parkingStorage.ticketStorage.getNbTicket("ABCDEF"));
+		assertEquals(0, parkingStorage.ticketStorage.getNbTicket("GHIJKL"));
+		assertNull(parkingStorage.ticketStorage.getTicket("GHIJKL"));
+	}
+
+	@Test
+	public void enterClaimsSpotAndSavesTicket() {
+		Ticket ticket = ticket("ABCDEF", 0, new Date(), null);
+
+		assertEquals(1, parkingStorage.parkingTransactionStorage.enter(ticket));
+
+		assertEquals(1, ticket.getParkingSpot().getId());
+		assertFalse(ticket.getParkingSpot().isAvailable());
+		assertTrue(ticket.getId() > 0);
+		assertEquals(2, parkingStorage.parkingSpotStorage.getNextAvailableSlot(ParkingType.CAR));
+		assertEquals(ticket.getId(), parkingStorage.ticketStorage.getActiveTicket("ABCDEF").getId());
+	}
+
+	@Test
+	public void enterFailsWhenFull() {
+		for (int i = 0; i < 3; i++) {
+			assertEquals(1, parkingStorage.parkingTransactionStorage.enter(ticket("CAR" + i, 0, new Date(), null)));
+		}
+		Ticket ticket = ticket("ABCDEF", 0, new Date(), null);
+
+		assertEquals(0, parkingStorage.parkingTransactionStorage.enter(ticket));
+
+		assertEquals(0, ticket.getParkingSpot().getId());
+		assertNull(parkingStorage.ticketStorage.getActiveTicket("ABCDEF"));
+	}
+
+	@Test
+	public void exitClosesTicketAndFreesSpotOnce() {
+		long now = System.currentTimeMillis();
+		Ticket ticket = ticket("ABCDEF", 0, new Date(now - 3600000L), null);
+		parkingStorage.parkingTransactionStorage.enter(ticket);
+		Ticket active = parkingStorage.ticketStorage.getActiveTicket("ABCDEF");
+		active.setPrice(1.5);
+		active.setOutTime(new Date(now));
+
+		assertTrue(parkingStorage.parkingTransactionStorage.exit(active));
+
+		assertTrue(active.getParkingSpot().isAvailable());
+		assertNull(parkingStorage.ticketStorage.getActiveTicket("ABCDEF"));
+		assertEquals(3, parkingStorage.parkingSpotStorage.getFreeSpotCount(ParkingType.CAR));
+		assertFalse(parkingStorage.parkingTransactionStorage.exit(active));
+	}
+
+	private static Ticket ticket(String vehicleRegNumber, int parkingNumber, Date inTime, Date outTime) {
+		Ticket ticket = new Ticket();
+		ticket.setParkingSpot(new ParkingSpot(parkingNumber, ParkingType.CAR, parkingNumber == 0));
+		ticket.setVehicleRegNumber(vehicleRegNumber);
+		ticket.setPrice(0);
+		ticket.setInTime(inTime);
+		ticket.setOutTime(outTime);
+		return ticket;
+	}
+}
@@ -0,0 +1,45 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.util.PlateCodec;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PlateCodecTest {
+
+	@Test
+	public void encodeNormalizesCaseAndSurroundingSpaces() {
+		long code = PlateCodec.encode("AB-123-CD");
+
+		assertTrue(code > 0);
+		assertEquals(code, PlateCodec.encode("  ab-123-cd "));
+		assertEquals("AB-123-CD", PlateCodec.decode(code));
+	}
+
+	@Test
+	public void decodeRestoresTheNormalizedPlate() {
+		for (String plate : new String[] { "A", "ABCDEF", "ZZZZZZZZZZ", "0000000000", "AB 12 CD", "S0000042" }) {
+			assertEquals(plate, PlateCodec.decode(PlateCodec.encode(plate)));
+		}
+	}
+
+	/**
+	 * Codes compare like the plates, a shorter plate before the longer ones it
+	 * starts.
+	 */
+	@Test
+	public void codesSortLikePlates() {
+		assertTrue(PlateCodec.encode("AB") < PlateCodec.encode("ABC"));
+		assertTrue(PlateCodec.encode("ABC") < PlateCodec.encode("ABD"));
+		assertTrue(PlateCodec.encode("AB-1") < PlateCodec.encode("AB1"));
+	}
+
+	@Test
+	public void encodeRejectsPlatesOutsideTheAlphabetOrTooLong() {
+		assertEquals(PlateCodec.NOT_ENCODABLE, PlateCodec.encode(null));
+		assertEquals(PlateCodec.NOT_ENCODABLE, PlateCodec.encode("   "));
+		assertEquals(PlateCodec.NOT_ENCODABLE, PlateCodec.encode("ABCDEFGHIJK"));
+		assertEquals(PlateCodec.NOT_ENCODABLE, PlateCodec.encode("ÉCOLE1"));
+		assertEquals(PlateCodec.NOT_ENCODABLE, PlateCodec.encode("AB_12"));
+	}
+}
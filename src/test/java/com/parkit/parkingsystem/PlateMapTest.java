@@ -0,0 +1,76 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.cache.PlateMap;
+import com.parkit.parkingsystem.util.PlateCodec;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PlateMapTest {
+
+	@Test
+	public void getReturnsMissingWhenAbsent() {
+		PlateMap plateMap = new PlateMap();
+
+		assertEquals(PlateMap.MISSING, plateMap.get(PlateCodec.encode("ABCDEF")));
+		assertEquals(PlateMap.MISSING, plateMap.get(PlateCodec.NOT_ENCODABLE));
+	}
+
+	@Test
+	public void mergeAndComputeUpdateTheEntry() {
+		PlateMap plateMap = new PlateMap();
+		long plate = PlateCodec.encode("ABCDEF");
+
+		plateMap.merge(plate, 3, Math::max);
+		plateMap.merge(plate, 2, Math::max);
+		assertEquals(3, plateMap.get(plate));
+
+		plateMap.compute(plate, value -> value + 1);
+		assertEquals(4, plateMap.get(plate));
+
+		plateMap.compute(plate, value -> PlateMap.MISSING);
+		assertEquals(PlateMap.MISSING, plateMap.get(plate));
+		assertEquals(0, plateMap.size());
+	}
+
+	/**
+	 * Growing and removing entries, which shifts the entries after them back,
+	 * keeps every other entry reachable.
+	 */
+	@Test
+	public void matchesHashMapThroughGrowthAndRemovals() {
+		PlateMap plateMap = new PlateMap();
+		Map<Long, Long> expected = new HashMap<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 50000; i++) {
+			long plate = PlateCodec.encode("S" + random.nextInt(20000));
+			if (random.nextInt(3) == 0) {
+				Long removed = expected.remove(plate);
+				assertEquals(removed == null ? PlateMap.MISSING : removed, plateMap.remove(plate));
+			} else {
+				expected.put(plate, (long) i);
+				plateMap.merge(plate, i, (current, value) -> value);
+			}
+		}
+
+		assertEquals(expected.size(), plateMap.size());
+		for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+			assertEquals((long) entry.getValue(), plateMap.get(entry.getKey()));
+		}
+	}
+
+	@Test
+	public void boundedMapDropsEntriesWhenFull() {
+		PlateMap plateMap = new PlateMap(8, 8);
+		for (int i = 0; i < 20; i++) {
+			plateMap.merge(PlateCodec.encode("PLATE" + i), i, Math::max);
+		}
+
+		assertTrue(plateMap.size() <= 8);
+		assertEquals(19, plateMap.get(PlateCodec.encode("PLATE19")));
+	}
+}
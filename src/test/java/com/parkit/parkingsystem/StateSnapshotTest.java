@@ -0,0 +1,112 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.snapshot.StateSnapshot;
+import com.parkit.parkingsystem.util.PlateCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StateSnapshotTest {
+
+	private Path directory;
+	private Path file;
+
+	@BeforeEach
+	public void setUpPerTest() throws IOException {
+		directory = Files.createTempDirectory("snapshot");
+		file = directory.resolve("state.snapshot");
+	}
+
+	@AfterEach
+	public void tearDownPerTest() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Test
+	public void readReturnsNullWithoutFile() throws IOException {
+		assertNull(StateSnapshot.read(file));
+	}
+
+	@Test
+	public void writtenSnapshotIsReadBack() throws IOException {
+		snapshot().write(file);
+
+		StateSnapshot read = StateSnapshot.read(file);
+
+		assertEquals(1000L, read.getTakenAt());
+		assertEquals(42, read.getMaxTicketId());
+		assertEquals(BitSet.valueOf(new long[] { 0b1100 }), read.getFreeSpots().get(ParkingType.CAR));
+		assertTrue(read.getFreeSpots().get(ParkingType.BIKE).isEmpty());
+		assertEquals(3, (int) read.getSpotCounts().get(ParkingType.CAR));
+		assertEquals(1, read.getOpenTickets().size());
+		Ticket ticket = read.getOpenTickets().get(0);
+		assertEquals(41, ticket.getId());
+		assertEquals(1, ticket.getParkingSpot().getId());
+		assertEquals(ParkingType.CAR, ticket.getParkingSpot().getParkingType());
+		assertEquals("ABCDEF", ticket.getVehicleRegNumber());
+		assertEquals(500L, ticket.getInTime().getTime());
+		assertEquals(2, read.getVisitCountSize());
+		assertEquals(PlateCodec.encode("ABCDEF"), read.getPlate(0));
+		assertEquals(3, read.getVisitCount(0));
+		assertEquals(1, read.getVisitCount(1));
+	}
+
+	@Test
+	public void corruptedSnapshotIsRefused() throws IOException {
+		long size = snapshot().write(file);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 0x7f }), size - 1);
+		}
+
+		assertThrows(IOException.class, () -> StateSnapshot.read(file));
+	}
+
+	@Test
+	public void otherVersionIsRefused() throws IOException {
+		snapshot().write(file);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.allocate(4).putInt(0, StateSnapshot.VERSION + 1), 4);
+		}
+
+		assertThrows(IOException.class, () -> StateSnapshot.read(file));
+	}
+
+	private static StateSnapshot snapshot() {
+		Map<ParkingType, BitSet> freeSpots = new EnumMap<>(ParkingType.class);
+		freeSpots.put(ParkingType.CAR, BitSet.valueOf(new long[] { 0b1100 }));
+		Map<ParkingType, Integer> spotCounts = new EnumMap<>(ParkingType.class);
+		spotCounts.put(ParkingType.CAR, 3);
+		spotCounts.put(ParkingType.BIKE, 2);
+		Ticket ticket = new Ticket();
+		ticket.setId(41);
+		ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+		ticket.setVehicleRegNumber("ABCDEF");
+		ticket.setInTime(new Date(500L));
+		StateSnapshot snapshot = new StateSnapshot(1000L, 42, freeSpots, spotCounts,
+				Collections.singletonList(ticket));
+		snapshot.addVisitCount(PlateCodec.encode("ABCDEF"), 3);
+		snapshot.addVisitCount(PlateCodec.encode("GHIJKL"), 1);
+		return snapshot;
+	}
+}
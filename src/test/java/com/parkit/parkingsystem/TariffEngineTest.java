@@ -0,0 +1,76 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.service.TariffEngine;
+import com.parkit.parkingsystem.service.TariffTable;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TariffEngineTest {
+
+	private static final long MINUTE = 60L * 1000L;
+	private static final long HOUR = 60L * MINUTE;
+
+	private final TariffEngine defaultTariffs = TariffEngine.defaultTariffs();
+
+	@Test
+	public void defaultTariffsMatchFareRates() {
+		assertEquals(0, defaultTariffs.quote(ParkingType.CAR, 0L, 30 * MINUTE, false));
+		assertEquals(150, defaultTariffs.quote(ParkingType.CAR, 0L, HOUR, false));
+		assertEquals(100, defaultTariffs.quote(ParkingType.BIKE, 0L, HOUR, false));
+		assertEquals(3600, defaultTariffs.quote(ParkingType.CAR, 0L, 24 * HOUR, false));
+		assertEquals(95, defaultTariffs.quote(ParkingType.BIKE, 0L, HOUR, true));
+	}
+
+	/**
+	 * Half a cent is rounded to the even cent: 112.5 down to 112, 142.5 down to
+	 * 142, 187.5 up to 188.
+	 */
+	@Test
+	public void quoteRoundsHalfToEven() {
+		assertEquals(112, defaultTariffs.quote(ParkingType.CAR, 0L, 45 * MINUTE, false));
+		assertEquals(142, defaultTariffs.quote(ParkingType.CAR, 0L, HOUR, true));
+		assertEquals(188, defaultTariffs.quote(ParkingType.CAR, 0L, 75 * MINUTE, false));
+	}
+
+	/**
+	 * The first two hours at 2 euros, then 1 euro an hour, at most 10 euros a day.
+	 */
+	@Test
+	public void steppedRatesAndDailyCap() {
+		Map<ParkingType, TariffTable> tables = new EnumMap<>(ParkingType.class);
+		tables.put(ParkingType.CAR,
+				new TariffTable(0L, new long[] { 0L, 2 * HOUR }, new long[] { 200L, 100L }, 1000L, 1000));
+		TariffEngine engine = new TariffEngine(tables);
+
+		assertEquals(300, engine.quote(ParkingType.CAR, 0L, 90 * MINUTE, false));
+		assertEquals(500, engine.quote(ParkingType.CAR, 0L, 3 * HOUR, false));
+		assertEquals(1000, engine.quote(ParkingType.CAR, 0L, 20 * HOUR, false));
+		// a capped first day, then two hours at the second band rate
+		assertEquals(1200, engine.quote(ParkingType.CAR, 0L, 26 * HOUR, false));
+		assertEquals(1080, engine.quote(ParkingType.CAR, 0L, 26 * HOUR, true));
+	}
+
+	@Test
+	public void quoteRejectsInvalidStays() {
+		Map<ParkingType, TariffTable> tables = new EnumMap<>(ParkingType.class);
+		tables.put(ParkingType.CAR, TariffTable.hourly(0L, 150L, 0));
+		TariffEngine engine = new TariffEngine(tables);
+
+		assertThrows(IllegalArgumentException.class, () -> engine.quote(ParkingType.CAR, HOUR, 0L, false));
+		assertThrows(IllegalArgumentException.class, () -> engine.quote(ParkingType.BIKE, 0L, HOUR, false));
+	}
+
+	@Test
+	public void tariffTableRejectsInconsistentBands() {
+		assertThrows(IllegalArgumentException.class,
+				() -> new TariffTable(0L, new long[] { HOUR }, new long[] { 100L }, 0L, 0));
+		assertThrows(IllegalArgumentException.class,
+				() -> new TariffTable(0L, new long[] { 0L, HOUR, HOUR }, new long[] { 100L, 50L, 25L }, 0L, 0));
+		assertThrows(IllegalArgumentException.class, () -> TariffTable.hourly(0L, 100L, 10_001));
+	}
+}
@@ -0,0 +1,179 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.journal.JournalRecord;
+import com.parkit.parkingsystem.journal.TicketJournal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TicketJournalTest {
+
+	// room for a few dozen records per segment
+	private static final int SEGMENT_SIZE = 4096;
+
+	private Path directory;
+	private TicketJournal journal;
+
+	@BeforeEach
+	public void setUpPerTest() throws IOException {
+		directory = Files.createTempDirectory("journal");
+		journal = TicketJournal.open(directory, SEGMENT_SIZE);
+	}
+
+	@AfterEach
+	public void tearDownPerTest() throws IOException {
+		journal.close();
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Test
+	public void appendedRecordsAreReadBackInOrder() throws IOException {
+		assertEquals(1, journal.append(JournalRecord.entry("ABCDEF", ParkingType.CAR, 1, 1000L)));
+		assertEquals(2, journal.append(JournalRecord.exit("ABCDEF", ParkingType.CAR, 1, -1, 1.5, 1000L, 2000L)));
+
+		List<JournalRecord> records = journal.readAfter(0L, 10);
+
+		assertEquals(2, records.size());
+		JournalRecord entry = records.get(0);
+		assertEquals(1, entry.getSequence());
+		assertEquals(JournalRecord.Kind.ENTRY, entry.getKind());
+		assertEquals("ABCDEF", entry.getVehicleRegNumber());
+		assertEquals(ParkingType.CAR, entry.getParkingType());
+		assertEquals(1, entry.getParkingNumber());
+		assertEquals(1000L, entry.getInTime());
+		JournalRecord exit = records.get(1);
+		assertEquals(JournalRecord.Kind.EXIT, exit.getKind());
+		assertEquals(-1, exit.getTicketId());
+		assertEquals(1.5, exit.getPrice());
+		assertEquals(2000L, exit.getOutTime());
+		assertEquals(1, journal.readAfter(1L, 10).size());
+	}
+
+	/**
+	 * Records go on in a new segment when the active one is full, and the
+	 * numbering goes on across segments.
+	 */
+	@Test
+	public void segmentsRollWhenFull() throws IOException {
+		appendEntries(200);
+
+		assertTrue(segmentFiles().size() > 1);
+		List<JournalRecord> records = journal.readAfter(0L, 1000);
+		assertEquals(200, records.size());
+		for (int i = 0; i < records.size(); i++) {
+			assertEquals(i + 1, records.get(i).getSequence());
+		}
+	}
+
+	@Test
+	public void deleteUpToKeepsSegmentsWithUnappliedRecords() throws IOException {
+		appendEntries(200);
+		int segments = segmentFiles().size();
+
+		assertTrue(journal.deleteUpTo(100L) > 0);
+
+		assertTrue(segmentFiles().size() < segments);
+		List<JournalRecord> records = journal.readAfter(100L, 1000);
+		assertEquals(100, records.size());
+		assertEquals(101, records.get(0).getSequence());
+	}
+
+	@Test
+	public void activeSegmentIsNeverDeleted() throws IOException {
+		appendEntries(3);
+
+		assertEquals(0, journal.deleteUpTo(3L));
+
+		assertEquals(1, segmentFiles().size());
+		assertEquals(4, journal.append(JournalRecord.entry("ABCDEF", ParkingType.CAR, 1, 1000L)));
+	}
+
+	@Test
+	public void reopenedJournalRecoversItsRecords() throws IOException {
+		appendEntries(50);
+		journal.close();
+
+		journal = TicketJournal.open(directory, SEGMENT_SIZE);
+
+		assertEquals(50, journal.getLastSequence());
+		assertEquals(50, journal.readAfter(0L, 1000).size());
+		assertEquals(51, journal.append(JournalRecord.entry("ABCDEF", ParkingType.CAR, 1, 1000L)));
+	}
+
+	/**
+	 * A record whose checksum no longer matches, as left by a write interrupted
+	 * by a crash, is erased at recovery with everything after it, and the next
+	 * record takes its sequence.
+	 */
+	@Test
+	public void tornRecordIsErasedAtRecovery() throws IOException {
+		appendEntries(3);
+		journal.close();
+		Path segment = segmentFiles().get(0);
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			// the last byte of the third record, the records all have the same length
+			long offset = 16 + 3L * (8 + recordLength(channel)) - 1;
+			channel.write(ByteBuffer.wrap(new byte[] { 0x7F }), offset);
+		}
+
+		journal = TicketJournal.open(directory, SEGMENT_SIZE);
+
+		assertEquals(2, journal.getLastSequence());
+		assertEquals(2, journal.readAfter(0L, 10).size());
+		assertEquals(3, journal.append(JournalRecord.entry("GHIJKL", ParkingType.BIKE, 4, 3000L)));
+		List<JournalRecord> records = journal.readAfter(2L, 10);
+		assertEquals(1, records.size());
+		assertEquals("GHIJKL", records.get(0).getVehicleRegNumber());
+	}
+
+	@Test
+	public void advanceToSkipsAppliedSequences() throws IOException {
+		journal.advanceTo(41L);
+
+		assertEquals(42, journal.append(JournalRecord.entry("ABCDEF", ParkingType.CAR, 1, 1000L)));
+		assertEquals(1, journal.readAfter(41L, 10).size());
+	}
+
+	private void appendEntries(int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			journal.append(JournalRecord.entry("PLATE" + i % 10, ParkingType.CAR, 1 + i % 3, 1000L * i));
+		}
+	}
+
+	/**
+	 * @return the length of the first record of a segment, from its frame
+	 */
+	private static int recordLength(FileChannel channel) throws IOException {
+		ByteBuffer length = ByteBuffer.allocate(4);
+		channel.read(length, 16);
+		return length.getInt(0);
+	}
+
+	private List<Path> segmentFiles() throws IOException {
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "journal-*.seg")) {
+			for (Path file : stream) {
+				files.add(file);
+			}
+		}
+		files.sort(null);
+		return files;
+	}
+}
@@ -0,0 +1,54 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.cache.VisitCounterCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VisitCounterCacheTest {
+
+	private VisitCounterCache visitCounterCache;
+
+	@BeforeEach
+	public void setUpPerTest() {
+		visitCounterCache = new VisitCounterCache(8);
+	}
+
+	@Test
+	public void getReturnsMinusOneWhenNotCached() {
+		assertEquals(-1, visitCounterCache.get("ABCDEF"));
+	}
+
+	/**
+	 * A count read before a concurrent visit was committed must not replace the
+	 * newer count.
+	 */
+	@Test
+	public void updateKeepsHighestCount() {
+		visitCounterCache.update("ABCDEF", 3);
+		visitCounterCache.update("ABCDEF", 2);
+
+		assertEquals(3, visitCounterCache.get("ABCDEF"));
+
+		visitCounterCache.update("ABCDEF", 4);
+		assertEquals(4, visitCounterCache.get("ABCDEF"));
+	}
+
+	@Test
+	public void getFindsThePlateTypedDifferently() {
+		visitCounterCache.update("AB-123-CD", 2);
+
+		assertEquals(2, visitCounterCache.get(" ab-123-cd"));
+	}
+
+	@Test
+	public void updateEvictsWhenFull() {
+		for (int i = 0; i < 20; i++) {
+			visitCounterCache.update("PLATE" + i, 1);
+		}
+
+		assertTrue(visitCounterCache.size() <= 8);
+		assertEquals(1, visitCounterCache.get("PLATE19"));
+	}
+}
@@ -0,0 +1,347 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.journal.JournalRecord;
+import com.parkit.parkingsystem.journal.TicketJournal;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * The switch between the database and the journal, and the replay of journal
+ * records, with the DAOs and the database mocked and a journal on disk.
+ */
+@ExtendWith(MockitoExtension.class)
+public class JournaledParkingTransactionDAOTest {
+
+	private static final long IN_TIME = 1709280000000L;
+	private static final long OUT_TIME = IN_TIME + 90 * 60 * 1000L;
+
+	@Mock
+	private ParkingTransactionDAO parkingTransactionDAO;
+	@Mock
+	private ParkingSpotDAO parkingSpotDAO;
+	@Mock
+	private TicketDAO ticketDAO;
+	@Mock
+	private HourlyRollupDAO hourlyRollupDAO;
+	@Mock
+	private DataBaseConfig dataBaseConfig;
+	@Mock
+	private Connection connection;
+	@Mock
+	private PreparedStatement checkpointStatement;
+
+	private Path directory;
+	private TicketJournal journal;
+	private JournaledParkingTransactionDAO journaledDAO;
+
+	@BeforeEach
+	public void setUpPerTest() throws IOException {
+		parkingTransactionDAO.parkingSpotDAO = parkingSpotDAO;
+		parkingTransactionDAO.ticketDAO = ticketDAO;
+		ticketDAO.dataBaseConfig = dataBaseConfig;
+		ticketDAO.hourlyRollupDAO = hourlyRollupDAO;
+		directory = Files.createTempDirectory("journal");
+		journal = TicketJournal.open(directory, 4096);
+		// not started: the tests drive the replay themselves
+		journaledDAO = new JournaledParkingTransactionDAO(parkingTransactionDAO, journal);
+	}
+
+	@AfterEach
+	public void tearDownPerTest() throws IOException {
+		journal.close();
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	/**
+	 * An entry the database cannot take while it is unreachable is journaled on
+	 * a spot of the free spot index, with the negated sequence of its record as
+	 * ticket id.
+	 */
+	@Test
+	public void entryIsJournaledWhenDatabaseUnreachable() throws Exception {
+		when(parkingTransactionDAO.enter(any(Ticket.class))).thenReturn(0);
+		when(dataBaseConfig.getConnection()).thenThrow(new SQLException("Connection refused"));
+		when(parkingSpotDAO.claimFromFreeSpotIndex(ParkingType.CAR)).thenReturn(3);
+		Ticket ticket = newTicket("ABCDEF");
+
+		assertTrue(journaledDAO.enter(ticket) > 0);
+
+		assertTrue(journaledDAO.isOffline());
+		assertEquals(-1, ticket.getId());
+		assertEquals(3, ticket.getParkingSpot().getId());
+		assertFalse(ticket.getParkingSpot().isAvailable());
+		verify(ticketDAO).ticketJournaled(ticket);
+		List<JournalRecord> records = journal.readAfter(0L, 10);
+		assertEquals(1, records.size());
+		assertEquals(JournalRecord.Kind.ENTRY, records.get(0).getKind());
+		assertEquals(3, records.get(0).getParkingNumber());
+		assertEquals("ABCDEF", records.get(0).getVehicleRegNumber());
+	}
+
+	/**
+	 * The visit count of an entry journaled offline comes from the cache only,
+	 * without waiting for the database.
+	 */
+	@Test
+	public void journaledEntryCountsVisitFromCacheOnly() throws Exception {
+		when(parkingTransactionDAO.enter(any(Ticket.class))).thenReturn(0);
+		when(dataBaseConfig.getConnection()).thenThrow(new SQLException("Connection refused"));
+		when(parkingSpotDAO.claimFromFreeSpotIndex(ParkingType.CAR)).thenReturn(3);
+		when(ticketDAO.getCachedNbTicket("ABCDEF")).thenReturn(2);
+
+		// the third visit of the vehicle
+		assertEquals(3, journaledDAO.enter(newTicket("ABCDEF")));
+
+		verify(ticketDAO, never()).getNbTicket(anyString());
+	}
+
+	/**
+	 * An entry refused by a database that answers, for lack of a spot, is not
+	 * journaled.
+	 */
+	@Test
+	public void entryIsNotJournaledWhenDatabaseReachable() throws Exception {
+		when(parkingTransactionDAO.enter(any(Ticket.class))).thenReturn(0);
+		when(dataBaseConfig.getConnection()).thenReturn(connection);
+		when(connection.isValid(anyInt())).thenReturn(true);
+
+		assertEquals(0, journaledDAO.enter(newTicket("ABCDEF")));
+
+		assertFalse(journaledDAO.isOffline());
+		assertEquals(0L, journal.getLastSequence());
+		verify(parkingSpotDAO, never()).claimFromFreeSpotIndex(any(ParkingType.class));
+	}
+
+	/**
+	 * Once offline, the exit of a vehicle entered offline is journaled with the
+	 * negative id of its ticket and frees its spot in memory, without trying the
+	 * database.
+	 */
+	@Test
+	public void exitOfTicketEnteredOfflineIsJournaled() throws Exception {
+		Ticket ticket = enterOffline("ABCDEF", 3);
+		ticket.setOutTime(new Date(OUT_TIME));
+		ticket.setPrice(2.25);
+
+		assertTrue(journaledDAO.exit(ticket));
+
+		verify(parkingTransactionDAO, never()).exit(any(Ticket.class));
+		verify(ticketDAO).ticketClosed(ticket);
+		verify(parkingSpotDAO).updateFreeSpotIndex(ticket.getParkingSpot(), true);
+		assertTrue(ticket.getParkingSpot().isAvailable());
+		JournalRecord exit = journal.readAfter(1L, 10).get(0);
+		assertEquals(JournalRecord.Kind.EXIT, exit.getKind());
+		assertEquals(-1, exit.getTicketId());
+		assertEquals(2.25, exit.getPrice());
+		assertEquals(OUT_TIME, exit.getOutTime());
+	}
+
+	/**
+	 * Back online, a vehicle entered offline and looked up before the replay
+	 * exits with the database id of its ticket.
+	 */
+	@Test
+	public void exitResolvesTicketEnteredOffline() {
+		Ticket ticket = newTicket("ABCDEF");
+		ticket.setId(-1);
+		Ticket saved = newTicket("ABCDEF");
+		saved.setId(42);
+		when(ticketDAO.getActiveTicket("ABCDEF")).thenReturn(saved);
+		when(parkingTransactionDAO.exit(ticket)).thenReturn(true);
+
+		assertTrue(journaledDAO.exit(ticket));
+
+		assertEquals(42, ticket.getId());
+	}
+
+	/**
+	 * A vehicle entered offline whose ticket is not in the database yet, or is
+	 * another one, cannot exit.
+	 */
+	@Test
+	public void exitIgnoresUnresolvedTicketEnteredOffline() {
+		Ticket ticket = newTicket("ABCDEF");
+		ticket.setId(-1);
+		Ticket other = newTicket("ABCDEF");
+		other.setId(42);
+		other.setInTime(new Date(IN_TIME + 1000L));
+		when(ticketDAO.getActiveTicket("ABCDEF")).thenReturn(null, other);
+
+		assertFalse(journaledDAO.exit(ticket));
+		assertFalse(journaledDAO.exit(ticket));
+
+		assertEquals(-1, ticket.getId());
+		verify(parkingTransactionDAO, never()).exit(any(Ticket.class));
+	}
+
+	/**
+	 * An entry record takes its spot and saves its ticket with the sequence of
+	 * the record, in the transaction that moves the checkpoint.
+	 */
+	@Test
+	public void applySavesEntryWithCheckpoint() throws Exception {
+		enterOffline("ABCDEF", 3);
+		JournalRecord entry = journal.readAfter(0L, 1).get(0);
+		mockCheckpointUpdate(1);
+		when(parkingSpotDAO.updateParking(eq(connection), any(ParkingSpot.class))).thenReturn(true);
+		when(ticketDAO.saveTicket(eq(connection), any(Ticket.class), eq(1L))).thenReturn(1);
+
+		journaledDAO.apply(entry);
+
+		verify(checkpointStatement).setLong(1, 1L);
+		verify(ticketDAO).saveTicket(eq(connection), argThat(ticket -> ticket.getParkingSpot().getId() == 3
+				&& "ABCDEF".equals(ticket.getVehicleRegNumber()) && ticket.getInTime().getTime() == IN_TIME),
+				eq(1L));
+		verify(connection).commit();
+		verify(hourlyRollupDAO).recordEntry(any(Ticket.class));
+	}
+
+	/**
+	 * The exit record of a ticket entered offline closes it by the sequence of
+	 * its entry record, and frees its spot.
+	 */
+	@Test
+	public void applyClosesTicketEnteredOfflineBySequence() throws Exception {
+		Ticket ticket = enterOffline("ABCDEF", 3);
+		ticket.setOutTime(new Date(OUT_TIME));
+		ticket.setPrice(2.25);
+		journaledDAO.exit(ticket);
+		JournalRecord exit = journal.readAfter(1L, 1).get(0);
+		mockCheckpointUpdate(1);
+		when(ticketDAO.closeTicket(eq(connection), any(Ticket.class), eq(1L))).thenReturn(true);
+		when(parkingSpotDAO.updateParking(eq(connection), any(ParkingSpot.class))).thenReturn(true);
+
+		journaledDAO.apply(exit);
+
+		verify(ticketDAO).closeTicket(eq(connection),
+				argThat(closed -> closed.getPrice() == 2.25 && closed.getOutTime().getTime() == OUT_TIME), eq(1L));
+		verify(ticketDAO, never()).closeTicket(eq(connection), any(Ticket.class));
+		verify(parkingSpotDAO).updateParking(eq(connection),
+				argThat(spot -> spot.getId() == 3 && spot.isAvailable()));
+		verify(connection).commit();
+		verify(hourlyRollupDAO).recordExit(any(Ticket.class));
+	}
+
+	/**
+	 * A record applied twice only changes the database the first time: the
+	 * second time the checkpoint is already at its sequence, and the
+	 * transaction is rolled back.
+	 */
+	@Test
+	public void applyIgnoresRecordAlreadyApplied() throws Exception {
+		enterOffline("ABCDEF", 3);
+		JournalRecord entry = journal.readAfter(0L, 1).get(0);
+		mockCheckpointUpdate(1, 0);
+		when(parkingSpotDAO.updateParking(eq(connection), any(ParkingSpot.class))).thenReturn(true);
+		when(ticketDAO.saveTicket(eq(connection), any(Ticket.class), eq(1L))).thenReturn(1);
+
+		journaledDAO.apply(entry);
+		journaledDAO.apply(entry);
+
+		verify(ticketDAO, times(1)).saveTicket(eq(connection), any(Ticket.class), eq(1L));
+		verify(connection, times(1)).commit();
+		verify(connection, times(1)).rollback();
+		verify(hourlyRollupDAO, times(1)).recordEntry(any(Ticket.class));
+	}
+
+	/**
+	 * A record that fails halfway is rolled back with its checkpoint move, so
+	 * that it is applied again by the next replay.
+	 */
+	@Test
+	public void applyRollsBackOnError() throws Exception {
+		enterOffline("ABCDEF", 3);
+		JournalRecord entry = journal.readAfter(0L, 1).get(0);
+		mockCheckpointUpdate(1);
+		when(parkingSpotDAO.updateParking(eq(connection), any(ParkingSpot.class))).thenReturn(true);
+		when(ticketDAO.saveTicket(eq(connection), any(Ticket.class), eq(1L))).thenReturn(0);
+
+		assertThrows(SQLException.class, () -> journaledDAO.apply(entry));
+
+		verify(connection).rollback();
+		verify(connection, never()).commit();
+		verify(hourlyRollupDAO, never()).recordEntry(any(Ticket.class));
+	}
+
+	/**
+	 * Once the journal is applied up to its last record, the caches are
+	 * reloaded from the database and the gates go back online.
+	 */
+	@Test
+	public void caughtUpReloadsCachesAndGoesOnline() throws Exception {
+		enterOffline("ABCDEF", 3);
+		when(ticketDAO.loadActiveTickets()).thenReturn(true);
+		when(parkingSpotDAO.resyncFreeSpots()).thenReturn(true);
+
+		assertFalse(journaledDAO.caughtUp(0L));
+		assertTrue(journaledDAO.isOffline());
+
+		assertTrue(journaledDAO.caughtUp(1L));
+		assertFalse(journaledDAO.isOffline());
+		verify(ticketDAO).clearVisitCounts();
+	}
+
+	/**
+	 * The gates stay offline while the caches cannot be reloaded.
+	 */
+	@Test
+	public void caughtUpStaysOfflineWhenReloadFails() throws Exception {
+		enterOffline("ABCDEF", 3);
+		when(ticketDAO.loadActiveTickets()).thenReturn(false);
+
+		assertTrue(journaledDAO.caughtUp(1L));
+
+		assertTrue(journaledDAO.isOffline());
+		verify(ticketDAO, never()).clearVisitCounts();
+	}
+
+	private Ticket enterOffline(String vehicleRegNumber, int parkingNumber) throws Exception {
+		when(parkingTransactionDAO.enter(any(Ticket.class))).thenReturn(0);
+		when(dataBaseConfig.getConnection()).thenThrow(new SQLException("Connection refused"));
+		when(parkingSpotDAO.claimFromFreeSpotIndex(ParkingType.CAR)).thenReturn(parkingNumber);
+		Ticket ticket = newTicket(vehicleRegNumber);
+		assertTrue(journaledDAO.enter(ticket) > 0);
+		// the database is back for the replay
+		reset(dataBaseConfig);
+		lenient().when(dataBaseConfig.getConnection()).thenReturn(connection);
+		return ticket;
+	}
+
+	private void mockCheckpointUpdate(Integer first, Integer... next) throws Exception {
+		when(connection.prepareStatement(DBConstants.UPDATE_JOURNAL_CHECKPOINT)).thenReturn(checkpointStatement);
+		when(checkpointStatement.executeUpdate()).thenReturn(first, next);
+	}
+
+	private static Ticket newTicket(String vehicleRegNumber) {
+		Ticket ticket = new Ticket();
+		ticket.setParkingSpot(new ParkingSpot(0, ParkingType.CAR, true));
+		ticket.setVehicleRegNumber(vehicleRegNumber);
+		ticket.setInTime(new Date(IN_TIME));
+		return ticket;
+	}
+}
@@ -0,0 +1,118 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.billing.BillingReconciliation;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BillingReconciliationIT {
+
+	private static final long HOUR = 60L * 60L * 1000L;
+	private static final long DAY_START = 1_700_000_000_000L;
+
+	private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+	private static DataBasePrepareService dataBasePrepareService = new DataBasePrepareService();
+
+	private Path report;
+
+	@BeforeEach
+	private void setUpPerTest() throws Exception {
+		dataBasePrepareService.clearDataBaseEntries();
+		report = Files.createTempFile("reconciliation", ".csv");
+	}
+
+	@AfterEach
+	private void tearDownPerTest() throws Exception {
+		Files.deleteIfExists(report);
+	}
+
+	/**
+	 * A first visit billed 1.5 and a second one, discounted, billed 1.425 are
+	 * right. A third visit billed without the discount, and a bike visit billed
+	 * at the car rate, are corrected. The open ticket is left alone.
+	 */
+	@Test
+	public void testMismatchesAreCorrected() throws Exception {
+		int first = insertTicket(1, "ABCDEF", 1.5, DAY_START, DAY_START + HOUR);
+		int second = insertTicket(2, "ABCDEF", 1.425, DAY_START + 2 * HOUR, DAY_START + 3 * HOUR);
+		int third = insertTicket(3, "ABCDEF", 3.0, DAY_START + 4 * HOUR, DAY_START + 6 * HOUR);
+		int bike = insertTicket(4, "GHIJKL", 1.5, DAY_START, DAY_START + HOUR);
+		int open = insertTicket(5, "MNOPQR", 0.0, DAY_START, -1L);
+
+		BillingReconciliation reconciliation = new BillingReconciliation();
+		reconciliation.parseOptions(new String[] { "--chunk-size", "2", "--parallelism", "2", "--batch-size", "1",
+				"--report", report.toString() });
+		BillingReconciliation.Summary summary = reconciliation.run(dataBaseTestConfig);
+
+		assertEquals(5, summary.getTicketsRead());
+		assertEquals(4, summary.getClosedTickets());
+		assertEquals(2, summary.getMismatches());
+		assertEquals(2, summary.getCorrected());
+		assertEquals(1.5, getPrice(first));
+		assertEquals(1.425, getPrice(second));
+		assertEquals(2.85, getPrice(third));
+		assertEquals(1.0, getPrice(bike));
+		assertEquals(0.0, getPrice(open));
+		// the header and one line per mismatch
+		assertEquals(3, Files.readAllLines(report).size());
+	}
+
+	@Test
+	public void testDryRunOnlyReports() throws Exception {
+		int bike = insertTicket(4, "GHIJKL", 1.5, DAY_START, DAY_START + HOUR);
+
+		BillingReconciliation reconciliation = new BillingReconciliation();
+		reconciliation.parseOptions(new String[] { "--dry-run", "true", "--report", report.toString() });
+		BillingReconciliation.Summary summary = reconciliation.run(dataBaseTestConfig);
+
+		assertEquals(1, summary.getMismatches());
+		assertEquals(0, summary.getCorrected());
+		assertEquals(1.5, getPrice(bike));
+		assertEquals(2, Files.readAllLines(report).size());
+	}
+
+	private int insertTicket(int parkingNumber, String vehicleRegNumber, double price, long inTime, long outTime)
+			throws Exception {
+		Connection con = dataBaseTestConfig.getConnection();
+		try {
+			PreparedStatement ps = con.prepareStatement(
+					"insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?)",
+					PreparedStatement.RETURN_GENERATED_KEYS);
+			ps.setInt(1, parkingNumber);
+			ps.setString(2, vehicleRegNumber);
+			ps.setDouble(3, price);
+			ps.setTimestamp(4, new Timestamp(inTime));
+			ps.setTimestamp(5, outTime < 0 ? null : new Timestamp(outTime));
+			ps.executeUpdate();
+			ResultSet keys = ps.getGeneratedKeys();
+			keys.next();
+			return keys.getInt(1);
+		} finally {
+			dataBaseTestConfig.closeConnection(con);
+		}
+	}
+
+	private double getPrice(int id) throws Exception {
+		Connection con = dataBaseTestConfig.getConnection();
+		try {
+			PreparedStatement ps = con.prepareStatement("select PRICE from ticket where ID = ?");
+			ps.setInt(1, id);
+			ResultSet rs = ps.executeQuery();
+			assertTrue(rs.next());
+			return rs.getDouble(1);
+		} finally {
+			dataBaseTestConfig.closeConnection(con);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.cache.OccupancyCounters;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.HourlyRollupDAO;
+import com.parkit.parkingsystem.dao.ParkingStorage;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.HourlyRollup;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HourlyRollupIT {
+
+	private static final LocalDateTime DAY = LocalDateTime.of(2024, 3, 1, 0, 0);
+
+	private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+	private static DataBasePrepareService dataBasePrepareService = new DataBasePrepareService();
+
+	private ParkingStorage parkingStorage;
+	private OccupancyCounters occupancyCounters;
+	private HourlyRollupDAO hourlyRollupDAO;
+
+	@BeforeEach
+	private void setUpPerTest() {
+		dataBasePrepareService.clearDataBaseEntries();
+		parkingStorage = ParkingStorage.jdbc(dataBaseTestConfig);
+		// counted as the gates do, starting from an empty lot
+		occupancyCounters = new OccupancyCounters();
+		occupancyCounters.reconcile(new int[ParkingType.values().length], new int[ParkingType.values().length]);
+		parkingStorage.hourlyRollups().occupancyCounters = occupancyCounters;
+		hourlyRollupDAO = new HourlyRollupDAO();
+		hourlyRollupDAO.dataBaseConfig = dataBaseTestConfig;
+	}
+
+	/**
+	 * Two cars enter at 10:10 and 10:20, one leaves at 11:40 paying 2.25. The
+	 * 10:00 rollup has the two entries and a peak of 2, the 11:00 rollup the exit,
+	 * once flushed.
+	 */
+	@Test
+	public void testRollupsFollowEntriesAndExits() {
+		Ticket first = enter("ABCDEF", at(10, 10));
+		enter("GHIJKL", at(10, 20));
+		exit(first, at(11, 40), 2.25);
+		assertEquals(2, parkingStorage.hourlyRollups().flush());
+
+		List<HourlyRollup> rollups = hourlyRollupDAO.getHourlyRollups(at(0, 0), at(23, 0));
+
+		assertEquals(2, rollups.size());
+		HourlyRollup tenOClock = rollups.get(0);
+		assertEquals(at(10, 0), tenOClock.getHourStart());
+		assertEquals(ParkingType.CAR, tenOClock.getParkingType());
+		assertEquals(2, tenOClock.getEntries());
+		assertEquals(0, tenOClock.getExits());
+		assertEquals(2, tenOClock.getPeakOccupancy());
+		HourlyRollup elevenOClock = rollups.get(1);
+		assertEquals(at(11, 0), elevenOClock.getHourStart());
+		assertEquals(1, elevenOClock.getExits());
+		assertEquals(2.25, elevenOClock.getRevenue());
+		assertEquals(90 * 60 * 1000L, elevenOClock.getAverageDurationMillis());
+		assertEquals(2, elevenOClock.getPeakOccupancy());
+	}
+
+	/**
+	 * The backfill computes the same rollups from the ticket table as the ones
+	 * maintained by the entries and exits.
+	 */
+	@Test
+	public void testBackfillMatchesLiveRollups() throws Exception {
+		Ticket first = enter("ABCDEF", at(10, 10));
+		enter("GHIJKL", at(10, 20));
+		exit(first, at(11, 40), 2.25);
+		parkingStorage.hourlyRollups().flush();
+		List<HourlyRollup> live = hourlyRollupDAO.getHourlyRollups(at(0, 0), at(23, 0));
+
+		assertEquals(2, hourlyRollupDAO.backfill(at(0, 0), at(23, 0)));
+
+		List<HourlyRollup> backfilled = hourlyRollupDAO.getHourlyRollups(at(0, 0), at(23, 0));
+		assertEquals(live.toString(), backfilled.toString());
+	}
+
+	/**
+	 * The counts of a process that died before flushing them are recomputed from
+	 * the ticket table at the next startup.
+	 */
+	@Test
+	public void testRecoverRecentHoursPutsBackUnflushedCounts() {
+		long now = System.currentTimeMillis();
+		Ticket first = enter("ABCDEF", new Date(now - 60 * 1000L));
+		enter("GHIJKL", new Date(now - 30 * 1000L));
+		exit(first, new Date(now), 1.5);
+		// never flushed: the process died
+
+		assertTrue(hourlyRollupDAO.recoverRecentHours() > 0);
+
+		List<HourlyRollup> rollups = hourlyRollupDAO.getHourlyRollups(new Date(now - 7200 * 1000L),
+				new Date(now + 7200 * 1000L));
+		assertEquals(2, rollups.stream().mapToInt(HourlyRollup::getEntries).sum());
+		assertEquals(1, rollups.stream().mapToInt(HourlyRollup::getExits).sum());
+		assertEquals(1.5, rollups.stream().mapToDouble(HourlyRollup::getRevenue).sum());
+	}
+
+	private Ticket enter(String vehicleRegNumber, Date inTime) {
+		Ticket ticket = new Ticket();
+		ticket.setParkingSpot(new ParkingSpot(0, ParkingType.CAR, true));
+		ticket.setVehicleRegNumber(vehicleRegNumber);
+		ticket.setInTime(inTime);
+		assertTrue(parkingStorage.parkingTransactionStorage.enter(ticket) > 0);
+		occupancyCounters.vehicleEntered(ParkingType.CAR);
+		return ticket;
+	}
+
+	private void exit(Ticket ticket, Date outTime, double price) {
+		ticket.setOutTime(outTime);
+		ticket.setPrice(price);
+		assertTrue(parkingStorage.parkingTransactionStorage.exit(ticket));
+		occupancyCounters.vehicleExited(ParkingType.CAR);
+	}
+
+	private static Date at(int hour, int minute) {
+		return Date.from(DAY.withHour(hour).withMinute(minute).atZone(ZoneId.systemDefault()).toInstant());
+	}
+}
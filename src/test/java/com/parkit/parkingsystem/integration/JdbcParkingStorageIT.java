@@ -0,0 +1,22 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.ParkingStorageContract;
+import com.parkit.parkingsystem.dao.ParkingStorage;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+
+/**
+ * The storage contract against the test database, which holds the spots of
+ * {@code Data.sql}.
+ */
+public class JdbcParkingStorageIT extends ParkingStorageContract {
+
+	private static final DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+	private static final DataBasePrepareService dataBasePrepareService = new DataBasePrepareService();
+
+	@Override
+	protected ParkingStorage createEmptyStorage() {
+		dataBasePrepareService.clearDataBaseEntries();
+		return ParkingStorage.jdbc(dataBaseTestConfig);
+	}
+}
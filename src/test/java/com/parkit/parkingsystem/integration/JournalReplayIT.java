@@ -0,0 +1,142 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.JournaledParkingTransactionDAO;
+import com.parkit.parkingsystem.dao.ParkingStorage;
+import com.parkit.parkingsystem.dao.ParkingTransactionDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.journal.JournalRecord;
+import com.parkit.parkingsystem.journal.TicketJournal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JournalReplayIT {
+
+	private static final long IN_TIME = 1709280000000L;
+	private static final long OUT_TIME = IN_TIME + 90 * 60 * 1000L;
+
+	private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+	private static DataBasePrepareService dataBasePrepareService = new DataBasePrepareService();
+
+	private Path directory;
+	private TicketJournal journal;
+	private JournaledParkingTransactionDAO journaledDAO;
+
+	@BeforeEach
+	private void setUpPerTest() throws Exception {
+		dataBasePrepareService.clearDataBaseEntries();
+		directory = Files.createTempDirectory("journal");
+		journal = TicketJournal.open(directory, 4096);
+		// not started: the tests apply the records themselves
+		journaledDAO = new JournaledParkingTransactionDAO(
+				(ParkingTransactionDAO) ParkingStorage.jdbc(dataBaseTestConfig).parkingTransactionStorage, journal);
+	}
+
+	@AfterEach
+	private void tearDownPerTest() throws Exception {
+		journal.close();
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	/**
+	 * An entry record takes its spot and saves its ticket, and moves the
+	 * checkpoint; applied a second time, it changes nothing.
+	 */
+	@Test
+	public void testEntryRecordIsAppliedOnce() throws Exception {
+		JournalRecord entry = append(JournalRecord.entry("ABCDEF", ParkingType.CAR, 1, IN_TIME));
+
+		journaledDAO.apply(entry);
+		journaledDAO.apply(entry);
+
+		assertEquals(1L, journaledDAO.getCheckpoint());
+		assertEquals(1, queryInt("select count(*) from ticket where VEHICLE_REG_NUMBER = 'ABCDEF'"));
+		assertEquals(1, queryInt("select JOURNAL_SEQUENCE from ticket where VEHICLE_REG_NUMBER = 'ABCDEF'"));
+		assertEquals(0, queryInt("select AVAILABLE from parking where PARKING_NUMBER = 1"));
+		assertEquals(1, queryInt("select VISIT_COUNT from vehicle_stats where VEHICLE_REG_NUMBER = 'ABCDEF'"));
+	}
+
+	/**
+	 * The exit record of a vehicle entered offline closes the ticket saved from
+	 * its entry record and frees the spot; applied a second time, it changes
+	 * nothing.
+	 */
+	@Test
+	public void testExitRecordClosesTicketEnteredOffline() throws Exception {
+		JournalRecord entry = append(JournalRecord.entry("ABCDEF", ParkingType.CAR, 1, IN_TIME));
+		JournalRecord exit = append(
+				JournalRecord.exit("ABCDEF", ParkingType.CAR, 1, (int) -entry.getSequence(), 2.25, IN_TIME, OUT_TIME));
+
+		journaledDAO.apply(entry);
+		journaledDAO.apply(exit);
+		// the spot taken again by another vehicle must not be freed by a replayed exit
+		execute("update parking set AVAILABLE = false where PARKING_NUMBER = 1");
+		journaledDAO.apply(exit);
+
+		assertEquals(2L, journaledDAO.getCheckpoint());
+		assertEquals(1, queryInt("select count(*) from ticket where OUT_TIME is not null and PRICE = 2.25"));
+		assertEquals(0, queryInt("select AVAILABLE from parking where PARKING_NUMBER = 1"));
+	}
+
+	/**
+	 * A record the checkpoint has already passed is ignored.
+	 */
+	@Test
+	public void testRecordBeforeCheckpointIsIgnored() throws Exception {
+		JournalRecord entry = append(JournalRecord.entry("ABCDEF", ParkingType.CAR, 1, IN_TIME));
+		execute("update journal_checkpoint set SEQUENCE = 5 where ID = 1");
+
+		journaledDAO.apply(entry);
+
+		assertEquals(5L, journaledDAO.getCheckpoint());
+		assertEquals(0, queryInt("select count(*) from ticket"));
+		assertEquals(1, queryInt("select AVAILABLE from parking where PARKING_NUMBER = 1"));
+	}
+
+	private JournalRecord append(JournalRecord record) throws Exception {
+		long sequence = journal.append(record);
+		return journal.readAfter(sequence - 1, 1).get(0);
+	}
+
+	private static int queryInt(String sql) throws Exception {
+		Connection con = null;
+		try {
+			con = dataBaseTestConfig.getConnection();
+			PreparedStatement ps = con.prepareStatement(sql);
+			ResultSet rs = ps.executeQuery();
+			assertTrue(rs.next());
+			int value = rs.getInt(1);
+			dataBaseTestConfig.closeResultSet(rs);
+			dataBaseTestConfig.closePreparedStatement(ps);
+			return value;
+		} finally {
+			dataBaseTestConfig.closeConnection(con);
+		}
+	}
+
+	private static void execute(String sql) throws Exception {
+		Connection con = null;
+		try {
+			con = dataBaseTestConfig.getConnection();
+			PreparedStatement ps = con.prepareStatement(sql);
+			ps.execute();
+			dataBaseTestConfig.closePreparedStatement(ps);
+		} finally {
+			dataBaseTestConfig.closeConnection(con);
+		}
+	}
+}
@@ -60,6 +60,8 @@ public class ParkingDataBaseIT {
 		when(inputReaderUtil.readSelection()).thenReturn(1);
 		when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
 		dataBasePrepareService.clearDataBaseEntries();
+		parkingSpotDAO.resyncFreeSpots();
+		ticketDAO.clearCaches();
 	}
 
 	@AfterAll
@@ -192,6 +194,9 @@ public class ParkingDataBaseIT {
 	        ps2.setTimestamp(1, new Timestamp(timestampinTimeTicket2.getTime()));
 	        ps2.execute();
 
+	        // The exit reads the open ticket from the registry of the DAO, reload it to see the new in-time
+	        ticketDAO.loadActiveTickets();
+
 	        // Process exit for the second ticket (should apply discount)
 	        parkingService.processExitingVehicle();
 	    } catch (Exception ex) {
@@ -0,0 +1,84 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParkingSpotClaimIT {
+
+	private static final int GATES = 16;
+	private static final int CLAIMS_PER_GATE = 10;
+
+	private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+	private static DataBasePrepareService dataBasePrepareService = new DataBasePrepareService();
+
+	@BeforeEach
+	private void setUpPerTest() {
+		dataBasePrepareService.clearDataBaseEntries();
+	}
+
+	/**
+	 * Contention test for claimNextAvailableSlot().
+	 *
+	 * Each gate has its own ParkingSpotDAO, and so its own free spot index, like
+	 * separate application instances sharing the database. All gates try to
+	 * claim car spots at the same time.
+	 *
+	 * It verifies that:
+	 * - No spot is handed out to two gates.
+	 * - Every car spot of the test database (1 to 3) ends up claimed.
+	 * - Claims once the lot is full return 0.
+	 */
+	@Test
+	public void testConcurrentClaimsNeverDoubleAllocate() throws Exception {
+		List<Integer> claimed = Collections.synchronizedList(new ArrayList<>());
+		List<Integer> failures = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(GATES);
+
+		for (int gate = 0; gate < GATES; gate++) {
+			ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+			parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
+			executor.execute(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < CLAIMS_PER_GATE; i++) {
+					int parkingNumber = parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR);
+					if (parkingNumber > 0) {
+						claimed.add(parkingNumber);
+					} else if (parkingNumber < 0) {
+						failures.add(parkingNumber);
+					}
+				}
+			});
+		}
+		start.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+		assertTrue(failures.isEmpty(), "claims failed with an error: " + failures.size());
+		assertEquals(claimed.size(), new HashSet<>(claimed).size(), "a spot was claimed twice: " + claimed);
+		assertEquals(new HashSet<>(List.of(1, 2, 3)), new HashSet<>(claimed));
+
+		ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+		parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
+		assertEquals(0, parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR));
+	}
+}
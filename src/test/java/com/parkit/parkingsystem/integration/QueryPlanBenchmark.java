@@ -0,0 +1,152 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * Shows the query plans and timings of the hot ticket queries on a large
+ * ticket table, before and after the indexes of migration V1.
+ * <p>
+ * Runs against the test database, on a scratch {@code bench_ticket} table with
+ * the columns of {@code ticket}, filled with random tickets. The table is
+ * dropped at the end. Usage:
+ * </p>
+ *
+ * <pre>
+ * java ... QueryPlanBenchmark [rows, default 2000000]
+ * </pre>
+ */
+public class QueryPlanBenchmark {
+
+	private static final int PLATES = 200000;
+	private static final int RUNS = 20;
+
+	private static final String LATEST_TICKET = "select ID, PARKING_NUMBER, PRICE, IN_TIME, OUT_TIME from bench_ticket where VEHICLE_REG_NUMBER=? order by IN_TIME DESC limit 1";
+	private static final String COUNT_TICKET = "select count(*) from bench_ticket where VEHICLE_REG_NUMBER=?";
+	private static final String OPEN_TICKETS = "select ID, VEHICLE_REG_NUMBER from bench_ticket where OUT_TIME is null";
+
+	// same indexes as V1__ticket_and_parking_indexes.sql
+	private static final String[] INDEXES = {
+			"create index idx_bench_vehicle_in_time on bench_ticket (VEHICLE_REG_NUMBER, IN_TIME)",
+			"create index idx_bench_open on bench_ticket (OUT_TIME, VEHICLE_REG_NUMBER)" };
+
+	public static void main(String[] args) throws Exception {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+		DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+		Connection con = dataBaseTestConfig.getConnection();
+		try {
+			populate(con, rows);
+			String plate = samplePlate(con);
+
+			System.out.println("=== Without indexes");
+			report(con, plate);
+
+			long start = System.nanoTime();
+			for (String index : INDEXES) {
+				execute(con, index);
+			}
+			System.out.println("=== Indexes built in " + (System.nanoTime() - start) / 1000000 + " ms");
+			execute(con, "analyze table bench_ticket");
+
+			System.out.println("=== With indexes");
+			report(con, plate);
+		} finally {
+			execute(con, "drop table if exists bench_ticket");
+			dataBaseTestConfig.closeConnection(con);
+			dataBaseTestConfig.getConnectionPool().close();
+		}
+	}
+
+	private static void populate(Connection con, int rows) throws SQLException {
+		execute(con, "drop table if exists bench_ticket");
+		execute(con, "create table bench_ticket(ID int PRIMARY KEY AUTO_INCREMENT, PARKING_NUMBER int NOT NULL, "
+				+ "VEHICLE_REG_NUMBER varchar(10) NOT NULL, PRICE double, IN_TIME DATETIME NOT NULL, OUT_TIME DATETIME)");
+		execute(con, "insert into bench_ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(1, 'P000000', 0, now(), null)");
+
+		// double the table with fresh random rows until it is big enough; about 0.1% stay open
+		String randomRows = "insert into bench_ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) "
+				+ "select PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, "
+				+ "if(rand() < 0.001, null, IN_TIME + interval floor(rand() * 600) minute) from ("
+				+ "select 1 + floor(rand() * 5) PARKING_NUMBER, concat('P', lpad(floor(rand() * " + PLATES
+				+ "), 6, '0')) VEHICLE_REG_NUMBER, rand() * 30 PRICE, "
+				+ "now() - interval floor(rand() * 1576800) minute IN_TIME from bench_ticket limit ?) r";
+		long start = System.nanoTime();
+		int count = 1;
+		while (count < rows) {
+			PreparedStatement ps = con.prepareStatement(randomRows);
+			ps.setInt(1, Math.min(count, rows - count));
+			count += ps.executeUpdate();
+			ps.close();
+		}
+		execute(con, "analyze table bench_ticket");
+		System.out.println("=== Inserted " + count + " tickets in " + (System.nanoTime() - start) / 1000000 + " ms");
+	}
+
+	private static String samplePlate(Connection con) throws SQLException {
+		Statement statement = con.createStatement();
+		ResultSet rs = statement.executeQuery("select VEHICLE_REG_NUMBER from bench_ticket where ID = "
+				+ "(select floor(max(ID) / 2) from bench_ticket)");
+		rs.next();
+		String plate = rs.getString(1);
+		statement.close();
+		return plate;
+	}
+
+	private static void report(Connection con, String plate) throws SQLException {
+		plan("latest ticket of a vehicle (GET_TICKET)", con, LATEST_TICKET, plate);
+		plan("visit count of a vehicle (COUNT_TICKET)", con, COUNT_TICKET, plate);
+		plan("open tickets", con, OPEN_TICKETS, null);
+	}
+
+	private static void plan(String name, Connection con, String sql, String plate) throws SQLException {
+		System.out.println("--- " + name);
+		PreparedStatement explain = con.prepareStatement("explain " + sql);
+		if (plate != null) {
+			explain.setString(1, plate);
+		}
+		ResultSet rs = explain.executeQuery();
+		ResultSetMetaData meta = rs.getMetaData();
+		while (rs.next()) {
+			StringBuilder line = new StringBuilder("    ");
+			for (int i = 1; i <= meta.getColumnCount(); i++) {
+				String column = meta.getColumnLabel(i);
+				if (Arrays.asList("type", "possible_keys", "key", "rows", "Extra").contains(column)) {
+					line.append(column).append('=').append(rs.getString(i)).append("  ");
+				}
+			}
+			System.out.println(line);
+		}
+		explain.close();
+
+		long[] timings = new long[RUNS];
+		PreparedStatement ps = con.prepareStatement(sql);
+		for (int run = 0; run < RUNS; run++) {
+			if (plate != null) {
+				ps.setString(1, plate);
+			}
+			long start = System.nanoTime();
+			ResultSet result = ps.executeQuery();
+			while (result.next()) {
+				// read every row, as the application would
+			}
+			result.close();
+			timings[run] = System.nanoTime() - start;
+		}
+		ps.close();
+		Arrays.sort(timings);
+		System.out.println("    median " + timings[RUNS / 2] / 1000 + " us, max " + timings[RUNS - 1] / 1000 + " us");
+	}
+
+	private static void execute(Connection con, String sql) throws SQLException {
+		Statement statement = con.createStatement();
+		statement.execute(sql);
+		statement.close();
+	}
+}
@@ -0,0 +1,89 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingStorage;
+import com.parkit.parkingsystem.dao.StateSnapshotter;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StateSnapshotterIT {
+
+	private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+	private static DataBasePrepareService dataBasePrepareService = new DataBasePrepareService();
+
+	private Path file;
+
+	@BeforeEach
+	private void setUpPerTest() throws Exception {
+		dataBasePrepareService.clearDataBaseEntries();
+		file = Files.createTempFile("state", ".snapshot");
+		Files.delete(file);
+	}
+
+	@AfterEach
+	private void tearDownPerTest() throws Exception {
+		Files.deleteIfExists(file);
+	}
+
+	/**
+	 * After a snapshot with ABCDEF and GHIJKL parked on spots 1 and 2, ABCDEF
+	 * leaves and MNOPQR enters on spot 1. A restart from the snapshot has GHIJKL
+	 * and MNOPQR parked, and spot 3 as the next free one.
+	 */
+	@Test
+	public void testWarmStartAppliesTicketsSavedSinceSnapshot() throws Exception {
+		ParkingStorage before = ParkingStorage.jdbc(dataBaseTestConfig);
+		Ticket abcdef = enter(before, "ABCDEF");
+		enter(before, "GHIJKL");
+		assertTrue(before.ticketStorage.getNbTicket("ABCDEF") > 0);
+		StateSnapshotter snapshotter = before.snapshotter(file);
+		assertTrue(snapshotter.snapshot());
+		snapshotter.close();
+
+		abcdef.setOutTime(new Date());
+		abcdef.setPrice(1.5);
+		assertTrue(before.parkingTransactionStorage.exit(abcdef));
+		assertEquals(1, enter(before, "MNOPQR").getParkingSpot().getId());
+
+		ParkingStorage after = ParkingStorage.jdbc(dataBaseTestConfig);
+		StateSnapshotter restarted = after.snapshotter(file);
+		assertTrue(restarted.warmStart());
+
+		assertNull(after.ticketStorage.getActiveTicket("ABCDEF"));
+		assertNotNull(after.ticketStorage.getActiveTicket("GHIJKL"));
+		assertNotNull(after.ticketStorage.getActiveTicket("MNOPQR"));
+		assertEquals(2, after.ticketStorage.getActiveTickets().size());
+		assertEquals(3, after.parkingSpotStorage.getNextAvailableSlot(ParkingType.CAR));
+		assertEquals(1, after.ticketStorage.getNbTicket("ABCDEF"));
+	}
+
+	@Test
+	public void testColdStartWithoutSnapshot() throws Exception {
+		ParkingStorage parkingStorage = ParkingStorage.jdbc(dataBaseTestConfig);
+		enter(parkingStorage, "ABCDEF");
+
+		ParkingStorage after = ParkingStorage.jdbc(dataBaseTestConfig);
+		assertFalse(after.snapshotter(file).warmStart());
+		assertEquals(1, after.ticketStorage.getActiveTickets().size());
+	}
+
+	private static Ticket enter(ParkingStorage parkingStorage, String vehicleRegNumber) {
+		Ticket ticket = new Ticket();
+		ticket.setParkingSpot(new ParkingSpot(0, ParkingType.CAR, true));
+		ticket.setVehicleRegNumber(vehicleRegNumber);
+		ticket.setInTime(new Date(System.currentTimeMillis() - 3600 * 1000));
+		assertTrue(parkingStorage.parkingTransactionStorage.enter(ticket) > 0);
+		return ticket;
+	}
+}
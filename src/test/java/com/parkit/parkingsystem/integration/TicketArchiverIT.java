@@ -0,0 +1,108 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.archive.TicketArchiver;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingStorage;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TicketArchiverIT {
+
+	private static final YearMonth MARCH = YearMonth.of(2024, 3);
+	private static final YearMonth APRIL = YearMonth.of(2024, 4);
+
+	private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+	private static DataBasePrepareService dataBasePrepareService = new DataBasePrepareService();
+
+	private ParkingStorage parkingStorage;
+
+	@BeforeEach
+	private void setUpPerTest() throws Exception {
+		dataBasePrepareService.clearDataBaseEntries();
+		execute("drop table if exists " + TicketArchiver.archiveTable(MARCH));
+		execute("drop table if exists " + TicketArchiver.archiveTable(APRIL));
+		parkingStorage = ParkingStorage.jdbc(dataBaseTestConfig);
+	}
+
+	/**
+	 * Of three tickets closed in March, April and May, with a cutoff on May 1st,
+	 * the first two are moved to their monthly archive table in batches of one.
+	 * The tickets left and the open one stay, and the visits of the vehicle are
+	 * still all counted.
+	 */
+	@Test
+	public void testClosedTicketsBeforeCutoffAreArchivedByMonth() throws Exception {
+		exit(enter("ABCDEF", at(MARCH, 10)), at(MARCH, 12));
+		exit(enter("ABCDEF", at(APRIL, 10)), at(APRIL, 12));
+		exit(enter("ABCDEF", at(YearMonth.of(2024, 5), 10)), at(YearMonth.of(2024, 5), 12));
+		enter("GHIJKL", at(MARCH, 9));
+
+		TicketArchiver archiver = new TicketArchiver(dataBaseTestConfig, Duration.ofDays(30), 1, 0);
+		long archived = archiver.archive(at(YearMonth.of(2024, 5), 0));
+		archiver.close();
+
+		assertEquals(2, archived);
+		assertEquals(1, count(TicketArchiver.archiveTable(MARCH), "VEHICLE_REG_NUMBER = 'ABCDEF'"));
+		assertEquals(1, count(TicketArchiver.archiveTable(APRIL), "VEHICLE_REG_NUMBER = 'ABCDEF'"));
+		assertEquals(1, count("ticket", "VEHICLE_REG_NUMBER = 'ABCDEF'"));
+		assertEquals(1, count("ticket", "VEHICLE_REG_NUMBER = 'GHIJKL' and OUT_TIME is null"));
+		assertEquals(1, count("vehicle_stats", "VEHICLE_REG_NUMBER = 'ABCDEF' and ARCHIVED_COUNT = 2"));
+		parkingStorage.ticketStorage.clearCaches();
+		assertEquals(3, parkingStorage.ticketStorage.getNbTicket("ABCDEF"));
+	}
+
+	private Ticket enter(String vehicleRegNumber, Date inTime) {
+		Ticket ticket = new Ticket();
+		ticket.setParkingSpot(new ParkingSpot(0, ParkingType.CAR, true));
+		ticket.setVehicleRegNumber(vehicleRegNumber);
+		ticket.setInTime(inTime);
+		assertTrue(parkingStorage.parkingTransactionStorage.enter(ticket) > 0);
+		return ticket;
+	}
+
+	private void exit(Ticket ticket, Date outTime) {
+		ticket.setOutTime(outTime);
+		ticket.setPrice(1.5);
+		assertTrue(parkingStorage.parkingTransactionStorage.exit(ticket));
+	}
+
+	private static Date at(YearMonth month, int hour) {
+		return Date.from(LocalDateTime.of(month.getYear(), month.getMonth(), 1, hour, 0)
+				.atZone(ZoneId.systemDefault()).toInstant());
+	}
+
+	private static int count(String table, String condition) throws Exception {
+		Connection con = dataBaseTestConfig.getConnection();
+		try {
+			ResultSet rs = con.createStatement()
+					.executeQuery("select count(*) from " + table + " where " + condition);
+			rs.next();
+			return rs.getInt(1);
+		} finally {
+			dataBaseTestConfig.closeConnection(con);
+		}
+	}
+
+	private static void execute(String sql) throws Exception {
+		Connection con = dataBaseTestConfig.getConnection();
+		try {
+			con.createStatement().execute(sql);
+		} finally {
+			dataBaseTestConfig.closeConnection(con);
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package com.parkit.parkingsystem.integration.service;
 
+import com.parkit.parkingsystem.config.SchemaMigrator;
 import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
 
 import java.sql.Connection;
@@ -8,9 +9,17 @@ public class DataBasePrepareService {
 
 	DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
 
+	private static boolean migrated;
+
 	public void clearDataBaseEntries() {
 		Connection connection = null;
 		try {
+			// bring the test database to the same schema version as the application
+			if (!migrated) {
+				new SchemaMigrator(dataBaseTestConfig).migrate();
+				migrated = true;
+			}
+
 			connection = dataBaseTestConfig.getConnection();
 
 			// set parking entries to available
@@ -18,6 +27,9 @@ public class DataBasePrepareService {
 
 			// clear ticket entries;
 			connection.prepareStatement("truncate table ticket").execute();
+			connection.prepareStatement("truncate table vehicle_stats").execute();
+			connection.prepareStatement("truncate table ticket_rollup_hourly").execute();
+			connection.prepareStatement("update journal_checkpoint set SEQUENCE = 0").execute();
 
 		} catch (Exception e) {
 			e.printStackTrace();
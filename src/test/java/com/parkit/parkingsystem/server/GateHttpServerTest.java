@@ -0,0 +1,199 @@
+package com.parkit.parkingsystem.server;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketStorage;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class GateHttpServerTest {
+
+	private static final Instant AT = Instant.parse("2024-03-01T10:00:00Z");
+
+	@Mock
+	private ParkingService parkingService;
+	@Mock
+	private TicketStorage ticketStorage;
+
+	private GateHttpServer server;
+	private HttpClient client;
+
+	@BeforeEach
+	public void setUpPerTest() throws Exception {
+		parkingService.ticketDAO = ticketStorage;
+		server = new GateHttpServer(parkingService, new InetSocketAddress("127.0.0.1", 0), 4);
+		server.start();
+		client = HttpClient.newHttpClient();
+	}
+
+	@AfterEach
+	public void tearDownPerTest() {
+		server.stop(0);
+	}
+
+	/**
+	 * An entry is answered 201 with the allotted spot and ticket.
+	 */
+	@Test
+	public void entryReturnsAllottedSpot() throws Exception {
+		when(parkingService.enter("AB123", ParkingType.CAR, AT))
+				.thenReturn(new EntryResult(EntryResult.Status.OK, "AB123", ParkingType.CAR, 2, 7, AT, true));
+
+		HttpResponse<String> response = post("/entries",
+				"{\"vehicleRegNumber\":\"AB123\",\"parkingType\":\"car\",\"at\":\"2024-03-01T10:00:00Z\"}");
+
+		assertEquals(201, response.statusCode());
+		assertEquals("{\"status\":\"OK\",\"vehicleRegNumber\":\"AB123\",\"parkingType\":\"CAR\",\"parkingNumber\":2,"
+				+ "\"ticketId\":7,\"inTime\":\"2024-03-01T10:00:00Z\",\"recurringUser\":true}", response.body());
+	}
+
+	/**
+	 * Each failed entry status has its own HTTP status.
+	 */
+	@Test
+	public void entryFailuresMapToStatusCodes() throws Exception {
+		when(parkingService.enter("AB123", ParkingType.BIKE, AT)).thenReturn(
+				EntryResult.failed(EntryResult.Status.NO_SPOT_AVAILABLE, "AB123", ParkingType.BIKE),
+				EntryResult.failed(EntryResult.Status.INVALID_REQUEST, "AB123", ParkingType.BIKE),
+				EntryResult.failed(EntryResult.Status.ERROR, "AB123", ParkingType.BIKE));
+		String body = "{\"vehicleRegNumber\":\"AB123\",\"parkingType\":\"BIKE\",\"at\":\"2024-03-01T10:00:00Z\"}";
+
+		HttpResponse<String> noSpot = post("/entries", body);
+		HttpResponse<String> invalid = post("/entries", body);
+		HttpResponse<String> error = post("/entries", body);
+
+		assertEquals(409, noSpot.statusCode());
+		assertTrue(noSpot.body().contains("\"status\":\"NO_SPOT_AVAILABLE\""));
+		assertEquals(400, invalid.statusCode());
+		assertEquals(500, error.statusCode());
+	}
+
+	/**
+	 * An exit is answered 200 with the fare, and each failed exit status has its
+	 * own HTTP status.
+	 */
+	@Test
+	public void exitResultsMapToStatusCodes() throws Exception {
+		Instant outTime = AT.plusSeconds(3600);
+		when(parkingService.exit("AB123", outTime)).thenReturn(
+				new ExitResult(ExitResult.Status.OK, "AB123", 2, 7, AT, outTime, 1.5, false),
+				ExitResult.failed(ExitResult.Status.NOT_PARKED, "AB123"),
+				ExitResult.failed(ExitResult.Status.INVALID_REQUEST, "AB123"),
+				ExitResult.failed(ExitResult.Status.ERROR, "AB123"));
+		String body = "{\"vehicleRegNumber\":\"AB123\",\"at\":\"2024-03-01T11:00:00Z\"}";
+
+		HttpResponse<String> ok = post("/exits", body);
+		HttpResponse<String> notParked = post("/exits", body);
+		HttpResponse<String> invalid = post("/exits", body);
+		HttpResponse<String> error = post("/exits", body);
+
+		assertEquals(200, ok.statusCode());
+		assertTrue(ok.body().contains("\"price\":1.5"));
+		assertEquals(404, notParked.statusCode());
+		assertEquals(400, invalid.statusCode());
+		assertEquals(500, error.statusCode());
+	}
+
+	/**
+	 * The plate of {@code /tickets/{plate}} is URL-decoded before the lookup.
+	 */
+	@Test
+	public void ticketLookupDecodesPlate() throws Exception {
+		Ticket ticket = new Ticket();
+		ticket.setId(7);
+		ticket.setVehicleRegNumber("AB 123");
+		ticket.setParkingSpot(new ParkingSpot(2, ParkingType.CAR, false));
+		ticket.setInTime(Date.from(AT));
+		when(ticketStorage.getActiveTicket("AB 123")).thenReturn(ticket);
+
+		HttpResponse<String> found = get("/tickets/AB%20123");
+		HttpResponse<String> notFound = get("/tickets/CD456");
+
+		assertEquals(200, found.statusCode());
+		assertTrue(found.body().contains("\"vehicleRegNumber\":\"AB 123\""));
+		assertEquals(404, notFound.statusCode());
+		verify(ticketStorage).getActiveTicket("CD456");
+	}
+
+	/**
+	 * An unknown path is answered 404 and a known one called with another method
+	 * 405, without calling the service.
+	 */
+	@Test
+	public void routingChecksPathAndMethod() throws Exception {
+		assertEquals(200, get("/health").statusCode());
+		assertEquals(404, get("/nowhere").statusCode());
+		assertEquals(405, get("/entries").statusCode());
+		assertEquals(405, get("/exits").statusCode());
+		assertEquals(405, post("/health", "{}").statusCode());
+		assertEquals(405, post("/tickets/AB123", "{}").statusCode());
+
+		verifyZeroInteractions(parkingService, ticketStorage);
+	}
+
+	/**
+	 * A body that is not a flat JSON object, or that misses or misspells a field,
+	 * is answered 400 without calling the service.
+	 */
+	@Test
+	public void malformedRequestsAreRejected() throws Exception {
+		assertEquals(400, post("/entries", "{\"vehicleRegNumber\":\"AB123\"").statusCode());
+		assertEquals(400, post("/entries", "[\"AB123\"]").statusCode());
+		assertEquals(400, post("/entries", "{\"vehicleRegNumber\":{\"plate\":\"AB123\"}}").statusCode());
+		assertEquals(400, post("/entries", "{\"vehicleRegNumber\":\"AB123\"}").statusCode());
+		assertEquals(400, post("/entries", "{\"vehicleRegNumber\":\"AB123\",\"parkingType\":\"TRUCK\"}").statusCode());
+		assertEquals(400, post("/exits", "{\"vehicleRegNumber\":\"AB123\",\"at\":\"yesterday\"}").statusCode());
+		assertEquals(400, post("/exits", "").statusCode());
+
+		verifyZeroInteractions(parkingService);
+	}
+
+	/**
+	 * A body larger than the limit is answered 413 without calling the service.
+	 */
+	@Test
+	public void oversizedBodyIsRejected() throws Exception {
+		char[] padding = new char[16 * 1024];
+		Arrays.fill(padding, ' ');
+		String body = "{\"vehicleRegNumber\":\"AB123\",\"parkingType\":\"CAR\"" + new String(padding) + "}";
+
+		HttpResponse<String> response = post("/entries", body);
+
+		assertEquals(413, response.statusCode());
+		verifyZeroInteractions(parkingService);
+	}
+
+	private HttpResponse<String> get(String path) throws Exception {
+		return client.send(HttpRequest.newBuilder(uri(path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+	}
+
+	private HttpResponse<String> post(String path, String body) throws Exception {
+		return client.send(HttpRequest.newBuilder(uri(path)).POST(HttpRequest.BodyPublishers.ofString(body)).build(),
+				HttpResponse.BodyHandlers.ofString());
+	}
+
+	private URI uri(String path) {
+		return URI.create("http://127.0.0.1:" + server.getPort() + path);
+	}
+}
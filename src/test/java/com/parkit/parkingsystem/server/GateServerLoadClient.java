@@ -0,0 +1,130 @@
+package com.parkit.parkingsystem.server;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load client of the {@link GateHttpServer}: simulates gates that each run
+ * entry/exit cycles of their own vehicles, then prints the throughput, the
+ * latency percentiles and the count of every response status.
+ * <p>
+ * Every gate runs on a virtual thread. Usage, against a running server:
+ * </p>
+ *
+ * <pre>
+ * java ... GateServerLoadClient [baseUrl, default http://localhost:8080] [gates, default 200] [seconds, default 30]
+ * </pre>
+ */
+public class GateServerLoadClient {
+
+	public static void main(String[] args) throws Exception {
+		String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+		int gates = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+		HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5))
+				.executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+		long deadline = System.nanoTime() + seconds * 1000000000L;
+
+		List<Future<GateStats>> results = new ArrayList<>();
+		long start = System.nanoTime();
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (int gate = 0; gate < gates; gate++) {
+				int gateNumber = gate;
+				results.add(executor.submit(() -> runGate(client, baseUrl, gateNumber, deadline)));
+			}
+		}
+		double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+		GateStats total = new GateStats();
+		for (Future<GateStats> result : results) {
+			total.add(result.get());
+		}
+		long[] latencies = Arrays.copyOf(total.latencies, total.count);
+		Arrays.sort(latencies);
+
+		System.out.println("=== " + gates + " gates, " + total.count + " requests in "
+				+ String.format("%.1f", elapsedSeconds) + " s: "
+				+ String.format("%.0f", total.count / elapsedSeconds) + " requests/s");
+		if (latencies.length > 0) {
+			System.out.println("    latency p50 " + percentile(latencies, 0.50) + " us, p90 "
+					+ percentile(latencies, 0.90) + " us, p99 " + percentile(latencies, 0.99) + " us, p99.9 "
+					+ percentile(latencies, 0.999) + " us, max " + latencies[latencies.length - 1] / 1000 + " us");
+		}
+		for (int status = 0; status < total.statuses.length; status++) {
+			if (total.statuses[status] > 0) {
+				System.out.println("    status " + (status == 0 ? "failed" : String.valueOf(status)) + ": "
+						+ total.statuses[status]);
+			}
+		}
+	}
+
+	private static GateStats runGate(HttpClient client, String baseUrl, int gate, long deadline) {
+		GateStats stats = new GateStats();
+		String parkingType = gate % 4 == 0 ? "BIKE" : "CAR";
+		int cycle = 0;
+		while (System.nanoTime() < deadline) {
+			String vehicleRegNumber = String.format("G%04dV%04d", gate, cycle++ % 10000);
+			String vehicle = "\"vehicleRegNumber\":\"" + vehicleRegNumber + "\"";
+			int entry = post(client, baseUrl + "/entries",
+					"{" + vehicle + ",\"parkingType\":\"" + parkingType + "\"}", stats);
+			if (entry == 201) {
+				post(client, baseUrl + "/exits", "{" + vehicle + "}", stats);
+			}
+		}
+		return stats;
+	}
+
+	private static int post(HttpClient client, String url, String body, GateStats stats) {
+		HttpRequest request = HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(30))
+				.header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofString(body)).build();
+		long start = System.nanoTime();
+		int status;
+		try {
+			status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+		} catch (Exception e) {
+			status = 0;
+		}
+		stats.record(System.nanoTime() - start, status);
+		return status;
+	}
+
+	private static long percentile(long[] sortedLatencies, double quantile) {
+		int index = (int) Math.ceil(quantile * sortedLatencies.length) - 1;
+		return sortedLatencies[Math.max(0, index)] / 1000;
+	}
+
+	private static final class GateStats {
+		private long[] latencies = new long[1024];
+		private int count;
+		private final long[] statuses = new long[600];
+
+		private void record(long latencyNanos, int status) {
+			if (count == latencies.length) {
+				latencies = Arrays.copyOf(latencies, count * 2);
+			}
+			latencies[count++] = latencyNanos;
+			statuses[status >= 0 && status < statuses.length ? status : 0]++;
+		}
+
+		private void add(GateStats other) {
+			if (count + other.count > latencies.length) {
+				latencies = Arrays.copyOf(latencies, count + other.count);
+			}
+			System.arraycopy(other.latencies, 0, latencies, count, other.count);
+			count += other.count;
+			for (int status = 0; status < statuses.length; status++) {
+				statuses[status] += other.statuses[status];
+			}
+		}
+	}
+}